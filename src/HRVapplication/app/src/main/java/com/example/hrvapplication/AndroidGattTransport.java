@@ -0,0 +1,551 @@
+package com.example.hrvapplication;
+// Based on:
+/*
+ * (c) Matey Nenov (https://www.thinker-talk.com)
+ *
+ * Licensed under Creative Commons: By Attribution 3.0
+ * http://creativecommons.org/licenses/by/3.0/
+ *
+ */
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.BluetoothProfile;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static android.bluetooth.BluetoothProfile.GATT;
+
+import androidx.annotation.RequiresPermission;
+
+/**
+ * {@link HrvTransport} on top of the Android BLE scanner and GATT client.
+ *
+ * The scan is filtered on the HRV service by the Bluetooth controller, so other
+ * advertisers don't wake the application, and runs in low latency mode for
+ * {@link #SCAN_TIMEOUT_MS} at most. A connection is tried directly first;
+ * if that doesn't succeed within {@link #DIRECT_CONNECT_TIMEOUT_MS} the
+ * stack is left to connect in the background as soon as the device advertises.
+ * The attempt is given up, and reported as a disconnection, when the device
+ * didn't show up within {@link #BACKGROUND_CONNECT_TIMEOUT_MS} either.
+ *
+ * Every instance has its own GATT client, and a {@link GattOperationQueue}
+ * which issues its MTU exchange, subscriptions and command writes one at a time.
+ *
+ * The state of the connection attempt lives on the main looper: connect(),
+ * disconnect(), the timeouts and the connection state and service discovery
+ * callbacks all run there, the latter two posted from the Binder thread.
+ */
+public class AndroidGattTransport implements HrvTransport {
+    public static final long SCAN_TIMEOUT_MS = 10000;
+    public static final long DIRECT_CONNECT_TIMEOUT_MS = 5000;
+    public static final long BACKGROUND_CONNECT_TIMEOUT_MS = 30000;
+
+    private BluetoothLeScanner scanner;
+    // Written on the main looper only, read by operations and isConnected() from any thread
+    private volatile BluetoothDevice device;
+    private volatile BluetoothGatt bluetoothGatt;
+    private final BluetoothManager bluetoothManager;
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean scanning = false;
+    // Progress of the connection attempt
+    private boolean autoConnecting = false;
+    private boolean linkUp = false;
+
+    private final HashMap<String, BluetoothDevice> devices = new HashMap<>();
+    private final ConcurrentHashMap<UUID, BluetoothGattCharacteristic> characteristics = new ConcurrentHashMap<>();
+    private final GattOperationQueue gattOperations = new GattOperationQueue();
+
+    private Listener listener;
+    // Android reports the MTU and the PHY but not the interval, the longest the priority allows stands in
+    private volatile LinkParameters link = LinkParameters.DEFAULT;
+
+    public AndroidGattTransport(Context ctx) {
+        this.context = ctx.getApplicationContext();
+        this.bluetoothManager = (BluetoothManager) ctx.getSystemService(Context.BLUETOOTH_SERVICE);
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    @RequiresPermission(value = "android.permission.BLUETOOTH_SCAN")
+    public void startScan() {
+        this.devices.clear();
+        this.scanner = this.bluetoothManager.getAdapter().getBluetoothLeScanner();
+        if (this.scanner == null) return;
+
+        List<ScanFilter> filters = Collections.singletonList(new ScanFilter.Builder()
+                .setServiceUuid(new ParcelUuid(HrvProfile.SERVICE))
+                .build());
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
+                .build();
+        this.scanner.startScan(filters, settings, bleCallback);
+        this.scanning = true;
+        this.handler.postDelayed(scanTimeout, SCAN_TIMEOUT_MS);
+    }
+
+    @Override
+    @RequiresPermission(value = "android.permission.BLUETOOTH_SCAN")
+    public void stopScan() {
+        this.handler.removeCallbacks(scanTimeout);
+        if (this.scanner != null && this.scanning) {
+            this.scanner.stopScan(this.bleCallback);
+        }
+        this.scanning = false;
+    }
+
+    private final Runnable scanTimeout = new Runnable() {
+        @Override
+        @RequiresPermission(value = "android.permission.BLUETOOTH_SCAN")
+        public void run() {
+            if (!scanning) return;
+            Log.i("[BLE]", "scan timed out");
+            stopScan();
+            if (listener != null) {
+                listener.onScanTimeout();
+            }
+        }
+    };
+
+    private final ScanCallback bleCallback = new ScanCallback() {
+        @Override
+        @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+        public void onScanResult(int callbackType, ScanResult result) {
+            deviceFound(result.getDevice());
+        }
+
+        @Override
+        @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+        public void onBatchScanResults(List<ScanResult> results) {
+            for (ScanResult sr : results) {
+                deviceFound(sr.getDevice());
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            Log.i("[BLE]", "scan failed with errorcode: " + errorCode);
+        }
+    };
+
+    @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+    private void deviceFound(BluetoothDevice device) {
+        // Only advertisers of the HRV service pass the scan filter
+        if (device == null || devices.containsKey(device.getAddress())) return;
+        this.devices.put(device.getAddress(), device);
+        if (listener != null) {
+            // The name is in the scan response, which may not have arrived yet
+            String name = device.getName();
+            listener.onDeviceFound(name != null ? name.trim() : HrvProfile.DEVICE_NAME, device.getAddress());
+        }
+    }
+
+    @Override
+    @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+    public void connect(final String address) {
+        if (Looper.myLooper() != this.handler.getLooper()) {
+            this.handler.post(new Runnable() {
+                @Override
+                @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+                public void run() {
+                    connect(address);
+                }
+            });
+            return;
+        }
+
+        BluetoothDevice device = this.devices.get(address);
+        if (device == null) {
+            // Known from an earlier connection, no need to have seen it advertise
+            if (!BluetoothAdapter.checkBluetoothAddress(address)) return;
+            device = this.bluetoothManager.getAdapter().getRemoteDevice(address);
+        }
+        this.device = device;
+        this.autoConnecting = false;
+        this.linkUp = false;
+
+        Log.i("[BLE]", "connect to device " + device.getAddress());
+        this.handler.removeCallbacks(backgroundConnectTimeout);
+        this.bluetoothGatt = device.connectGatt(this.context, false, this.bleConnectCallback, BluetoothDevice.TRANSPORT_LE);
+        this.handler.postDelayed(directConnectTimeout, DIRECT_CONNECT_TIMEOUT_MS);
+    }
+
+    private final Runnable directConnectTimeout = new Runnable() {
+        @Override
+        @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+        public void run() {
+            connectInBackground();
+        }
+    };
+
+    /**
+     * Give up the direct connection and let the stack connect whenever the device advertises.
+     */
+    @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+    private void connectInBackground() {
+        if (this.device == null || this.linkUp || this.autoConnecting) return;
+
+        Log.i("[BLE]", "direct connection failed, waiting for " + this.device.getAddress());
+        this.autoConnecting = true;
+        if (this.bluetoothGatt != null) {
+            this.bluetoothGatt.close();
+        }
+        this.bluetoothGatt = this.device.connectGatt(this.context, true, this.bleConnectCallback, BluetoothDevice.TRANSPORT_LE);
+        this.handler.postDelayed(backgroundConnectTimeout, BACKGROUND_CONNECT_TIMEOUT_MS);
+    }
+
+    private final Runnable backgroundConnectTimeout = new Runnable() {
+        @Override
+        @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+        public void run() {
+            if (device == null || linkUp) return;
+            Log.i("[BLE]", "gave up waiting for " + device.getAddress());
+            cancelConnect(BluetoothGatt.GATT_FAILURE);
+        }
+    };
+
+    @Override
+    @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+    public void subscribe(UUID uuid) {
+        final BluetoothGattCharacteristic characteristic = characteristics.get(uuid);
+        boolean issued = characteristic != null && gattOperations.enqueue(new GattOperationQueue.Operation() {
+            @Override
+            @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+            public boolean start() {
+                BluetoothGatt gatt = bluetoothGatt;
+                BluetoothGattDescriptor descriptor = characteristic.getDescriptor(HrvProfile.CLIENT_CHARACTERISTIC_CONFIG);
+                if (gatt == null || descriptor == null) return false;
+                gatt.setCharacteristicNotification(characteristic, true);
+                descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+                return gatt.writeDescriptor(descriptor);
+            }
+
+            @Override
+            public void failed() {
+                subscribed(characteristic.getUuid(), false);
+            }
+        });
+        if (!issued) {
+            subscribed(uuid, false);
+        }
+    }
+
+    private void subscribed(UUID characteristic, boolean success) {
+        if (!success) {
+            Log.w("[BLE]", "could not subscribe to " + characteristic);
+        }
+        if (listener != null) {
+            listener.onSubscribed(characteristic, success);
+        }
+    }
+
+    @Override
+    @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+    public boolean writeCommand(final byte[] payload) {
+        final BluetoothGattCharacteristic cmdGattChar = characteristics.get(HrvProfile.COMMAND);
+        if (cmdGattChar == null || bluetoothGatt == null) return false;
+
+        // Written once the operations before it completed
+        return gattOperations.enqueue(new GattOperationQueue.Operation() {
+            @Override
+            @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+            public boolean start() {
+                BluetoothGatt gatt = bluetoothGatt;
+                cmdGattChar.setValue(payload);
+                return gatt != null && gatt.writeCharacteristic(cmdGattChar);
+            }
+
+            @Override
+            public void failed() {
+                if (listener != null) {
+                    listener.onCommandWritten(false);
+                }
+            }
+        });
+    }
+
+    @Override
+    @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+    public boolean requestMtu(final int mtu) {
+        if (this.bluetoothGatt == null) return false;
+
+        return gattOperations.enqueue(new GattOperationQueue.Operation() {
+            @Override
+            @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+            public boolean start() {
+                BluetoothGatt gatt = bluetoothGatt;
+                return gatt != null && gatt.requestMtu(mtu);
+            }
+
+            @Override
+            public void failed() {
+                // Carry on at the current MTU
+                if (listener != null) {
+                    listener.onMtuChanged(link.getMtu());
+                }
+            }
+        });
+    }
+
+    @Override
+    @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+    public void requestConnectionPriority(LinkParameters.Priority priority) {
+        BluetoothGatt gatt = this.bluetoothGatt;
+        if (gatt == null) return;
+
+        int value;
+        switch (priority) {
+            case HIGH:
+                value = BluetoothGatt.CONNECTION_PRIORITY_HIGH;
+                break;
+            case LOW_POWER:
+                value = BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER;
+                break;
+            default:
+                value = BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+                break;
+        }
+        if (gatt.requestConnectionPriority(value)) {
+            linkChanged(this.link.withPriority(priority, priority.getMaxIntervalMs()));
+        }
+    }
+
+    @Override
+    @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+    public void setPreferredPhy(int phy) {
+        BluetoothGatt gatt = this.bluetoothGatt;
+        if (gatt == null) return;
+        if (phy == LinkParameters.PHY_2M && !this.bluetoothManager.getAdapter().isLe2MPhySupported()) return;
+
+        int mask = phy == LinkParameters.PHY_2M ? BluetoothDevice.PHY_LE_2M_MASK
+                : phy == LinkParameters.PHY_CODED ? BluetoothDevice.PHY_LE_CODED_MASK : BluetoothDevice.PHY_LE_1M_MASK;
+        gatt.setPreferredPhy(mask, mask, BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+    }
+
+    @Override
+    public LinkParameters getLinkParameters() {
+        return this.link;
+    }
+
+    private void linkChanged(LinkParameters link) {
+        this.link = link;
+        Log.i("[BLE]", "link " + link);
+        if (listener != null) {
+            listener.onLinkChanged(link);
+        }
+    }
+
+    @Override
+    @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+    public void disconnect() {
+        if (Looper.myLooper() != this.handler.getLooper()) {
+            this.handler.post(new Runnable() {
+                @Override
+                @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+                public void run() {
+                    disconnect();
+                }
+            });
+            return;
+        }
+
+        this.handler.removeCallbacks(directConnectTimeout);
+        this.handler.removeCallbacks(backgroundConnectTimeout);
+        if (this.bluetoothGatt == null) return;
+
+        if (this.linkUp) {
+            this.bluetoothGatt.disconnect();
+            return;
+        }
+        cancelConnect(BluetoothGatt.GATT_SUCCESS);
+    }
+
+    /**
+     * Abandon the connection attempt, no callback follows once the client is closed.
+     */
+    @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+    private void cancelConnect(int status) {
+        this.handler.removeCallbacks(directConnectTimeout);
+        this.handler.removeCallbacks(backgroundConnectTimeout);
+        if (this.bluetoothGatt != null) {
+            this.bluetoothGatt.disconnect();
+            this.bluetoothGatt.close();
+            this.bluetoothGatt = null;
+        }
+        this.device = null;
+        this.autoConnecting = false;
+        this.gattOperations.clear();
+        if (listener != null) {
+            listener.onDisconnected(status);
+        }
+    }
+
+    @Override
+    @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+    public boolean isConnected() {
+        return this.device != null
+                && this.bluetoothManager.getConnectionState(this.device, GATT) == BluetoothProfile.STATE_CONNECTED;
+    }
+
+    private final BluetoothGattCallback bleConnectCallback = new BluetoothGattCallback() {
+        @Override
+        public void onConnectionStateChange(final BluetoothGatt gatt, final int status, final int newState) {
+            handler.post(new Runnable() {
+                @Override
+                @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+                public void run() {
+                    connectionStateChanged(gatt, status, newState);
+                }
+            });
+        }
+
+        @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+        private void connectionStateChanged(BluetoothGatt gatt, int status, int newState) {
+            // A client given up meanwhile, it was closed and reported already
+            if (gatt != bluetoothGatt) return;
+
+            if (newState == BluetoothProfile.STATE_CONNECTED) {
+                handler.removeCallbacks(directConnectTimeout);
+                handler.removeCallbacks(backgroundConnectTimeout);
+                linkUp = true;
+                Log.i("[BLE]", "start service discovery " + gatt.discoverServices());
+            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                if (!linkUp && !autoConnecting) {
+                    // The direct connection failed early, e.g. with status 133
+                    handler.removeCallbacks(directConnectTimeout);
+                    handler.post(directConnectTimeout);
+                    return;
+                }
+                handler.removeCallbacks(backgroundConnectTimeout);
+                linkUp = false;
+                gatt.close();
+                bluetoothGatt = null;
+                characteristics.clear();
+                gattOperations.clear();
+                Log.w("[BLE]", "DISCONNECTED with status " + status);
+                device = null;
+                link = LinkParameters.DEFAULT;
+                if (listener != null) {
+                    listener.onDisconnected(status);
+                }
+            } else {
+                Log.i("[BLE]", "unknown state " + newState + " and status " + status);
+            }
+        }
+
+        private boolean hasAllCharacteristics() {
+            return characteristics.containsKey(HrvProfile.COMMAND)
+                    && characteristics.containsKey(HrvProfile.RESPONSE)
+                    && characteristics.containsKey(HrvProfile.BPM)
+                    && characteristics.containsKey(HrvProfile.LIVE_SIGNAL)
+                    && characteristics.containsKey(HrvProfile.LIVE_RR);
+        }
+
+        @Override
+        public void onServicesDiscovered(final BluetoothGatt gatt, final int status) {
+            handler.post(new Runnable() {
+                @Override
+                @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+                public void run() {
+                    servicesDiscovered(gatt);
+                }
+            });
+        }
+
+        @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+        private void servicesDiscovered(BluetoothGatt gatt) {
+            if (gatt != bluetoothGatt) return;
+
+            if (!hasAllCharacteristics()) {
+                for (BluetoothGattService service : gatt.getServices()) {
+                    if (service.getUuid().equals(HrvProfile.SERVICE)) {
+                        for (BluetoothGattCharacteristic bgc : service.getCharacteristics()) {
+                            int chprop = bgc.getProperties();
+                            if (bgc.getUuid().equals(HrvProfile.COMMAND)) {
+                                if (((chprop & BluetoothGattCharacteristic.PROPERTY_WRITE) | (chprop & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE)) > 0) {
+                                    characteristics.put(bgc.getUuid(), bgc);
+                                }
+                            } else if (((chprop & BluetoothGattCharacteristic.PROPERTY_READ) | (chprop & BluetoothGattCharacteristic.PROPERTY_NOTIFY)) > 0) {
+                                characteristics.put(bgc.getUuid(), bgc);
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (hasAllCharacteristics()) {
+                Log.i("[BLE]", "CONNECTED and ready to send");
+                if (listener != null) {
+                    listener.onConnected();
+                }
+            }
+        }
+
+        @Override
+        @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            Log.i("[BLE]", "Wrote descriptor for characteristic");
+            super.onDescriptorWrite(gatt, descriptor, status);
+            subscribed(descriptor.getCharacteristic().getUuid(), status == BluetoothGatt.GATT_SUCCESS);
+            gattOperations.onComplete();
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            if (listener != null && characteristic.getUuid().equals(HrvProfile.COMMAND)) {
+                listener.onCommandWritten(status == BluetoothGatt.GATT_SUCCESS);
+            }
+            gattOperations.onComplete();
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            // A refused exchange leaves the link at its current MTU
+            int negotiated = status == BluetoothGatt.GATT_SUCCESS ? mtu : link.getMtu();
+            linkChanged(link.withMtu(negotiated));
+            if (listener != null) {
+                listener.onMtuChanged(negotiated);
+            }
+            gattOperations.onComplete();
+        }
+
+        @Override
+        public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                linkChanged(link.withPhy(txPhy, rxPhy));
+            }
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            if (listener != null) {
+                listener.onNotification(characteristic.getUuid(), characteristic.getValue());
+            }
+        }
+    };
+}
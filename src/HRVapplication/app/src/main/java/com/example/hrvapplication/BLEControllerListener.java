@@ -14,5 +14,18 @@ public interface BLEControllerListener {
     public void BLEDeviceFound(String name, String address);
     public void BLEDataReceived(byte[] data);
     public void BLEHRVParametersReceived(double data);
-    public void BLELiveDataReceived(int data, String characteristic);
+
+    /**
+     * The scan started by {@link BLEController#init()} found nothing to connect to.
+     */
+    public default void BLEScanTimedOut() {
+    }
+
+    /**
+     * @deprecated Live data goes to {@link HrvDataListener}s, wrap old listeners
+     * in a {@link LegacyLiveDataAdapter} to keep receiving it here.
+     */
+    @Deprecated
+    public default void BLELiveDataReceived(int data, String characteristic) {
+    }
 }
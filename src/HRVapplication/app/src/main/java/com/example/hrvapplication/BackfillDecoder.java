@@ -0,0 +1,63 @@
+package com.example.hrvapplication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Response of the BACKFILL_RR and BACKFILL_SIGNAL commands.
+ *
+ * The frames the peripheral still had, in their live layout: RR frames packed
+ * as many per notification as fit, signal frames one per notification. The
+ * response is closed by a notification of {@link #END_SIZE} bytes holding the
+ * number of frames sent, little endian.
+ */
+public class BackfillDecoder implements CommandQueue.ResponseDecoder<List<byte[]>> {
+    public static final int END_SIZE = 2;
+    /** Frame size of responses carrying one frame per notification. */
+    public static final int ONE_PER_NOTIFICATION = 0;
+
+    private final int frameSize;
+    private final ArrayList<byte[]> frames = new ArrayList<>();
+    private int sentCount = -1;
+
+    /**
+     * @param frameSize Size of the frames packed in a notification, or {@link #ONE_PER_NOTIFICATION}.
+     */
+    public BackfillDecoder(int frameSize) {
+        this.frameSize = frameSize;
+    }
+
+    @Override
+    public boolean onResponse(byte[] payload) {
+        if (payload == null) return false;
+
+        if (payload.length == END_SIZE) {
+            sentCount = (payload[0] & 0xFF) | (payload[1] & 0xFF) << 8;
+            return true;
+        }
+        if (frameSize == ONE_PER_NOTIFICATION) {
+            frames.add(payload.clone());
+        } else {
+            for (int i = 0; i + frameSize <= payload.length; i += frameSize) {
+                frames.add(Arrays.copyOfRange(payload, i, i + frameSize));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Frames received, fewer than {@link #getSentCount()} if notifications were lost.
+     */
+    @Override
+    public List<byte[]> getResult() {
+        return frames;
+    }
+
+    /**
+     * Number of frames the peripheral reported sending, -1 before the end of the response.
+     */
+    public int getSentCount() {
+        return sentCount;
+    }
+}
@@ -0,0 +1,526 @@
+package com.example.hrvapplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the HRV parameters of a recorded session on a {@link ForkJoinPool}.
+ *
+ * The RR intervals are decoded from the chunks in parallel when the session
+ * has an index, each task writing at the position the index gives for its
+ * chunks. They are then split into the 5 minute segments {@link HrvStatistics}
+ * uses, the segments are analyzed in parallel and the partial results merged.
+ * The parameters are the same as HrvStatistics fed the same intervals, and
+ * the gaps of the RR stream through {@link HrvStatistics#markGap}.
+ */
+public class BatchSessionAnalyzer {
+    // Segments, and chunks, analyzed by one task
+    static final int SEGMENTS_PER_TASK = 4;
+    static final int CHUNKS_PER_TASK = 8;
+
+    /**
+     * HRV parameters of a whole session.
+     */
+    public static class Result {
+        private final long beatCount;
+        private final int segmentCount;
+        private final double rmssd;
+        private final double sdann;
+        private final double hti;
+
+        Result(long beatCount, int segmentCount, double rmssd, double sdann, double hti) {
+            this.beatCount = beatCount;
+            this.segmentCount = segmentCount;
+            this.rmssd = rmssd;
+            this.sdann = sdann;
+            this.hti = hti;
+        }
+
+        public long getBeatCount() {
+            return beatCount;
+        }
+
+        /**
+         * Number of complete 5 minute segments.
+         */
+        public int getSegmentCount() {
+            return segmentCount;
+        }
+
+        public double getRmssd() {
+            return rmssd;
+        }
+
+        public double getSdann() {
+            return sdann;
+        }
+
+        public double getHti() {
+            return hti;
+        }
+    }
+
+    /**
+     * Statistics of consecutive beats, merged with those of the beats following them.
+     */
+    static final class Partial {
+        int firstRr = 0;
+        int lastRr = 0;
+        long beats = 0;
+        // RMSSD
+        long differenceCount = 0;
+        double squaredDifferenceSum = 0.0;
+        // SDANN, mean and M2 of the complete segment means
+        int segmentCount = 0;
+        double segmentMean = 0.0;
+        double segmentM2 = 0.0;
+        // HTI
+        final int[] histogram = new int[HrvStatistics.RR_HIST_NUM_BINS];
+        long histogramDensity = 0;
+        // Gaps before the first beat and after the last one, no difference is taken across them
+        boolean gapBeforeFirst = false;
+        boolean gapAfterLast = false;
+
+        void add(int rr) {
+            if (beats == 0) {
+                firstRr = rr;
+            } else if (!gapAfterLast) {
+                double diff = rr - lastRr;
+                differenceCount++;
+                squaredDifferenceSum += diff * diff;
+            }
+            gapAfterLast = false;
+            lastRr = rr;
+            beats++;
+            if (rr < HrvStatistics.RR_HIST_NUM_BINS) {
+                histogram[rr]++;
+                histogramDensity++;
+            }
+        }
+
+        void gap() {
+            if (beats == 0) {
+                gapBeforeFirst = true;
+            } else {
+                gapAfterLast = true;
+            }
+        }
+
+        void addSegmentMean(double mean) {
+            segmentCount++;
+            double delta = mean - segmentMean;
+            segmentMean += delta / segmentCount;
+            segmentM2 += delta * (mean - segmentMean);
+        }
+
+        /**
+         * Append the beats of next, which follow these ones.
+         */
+        Partial merge(Partial next) {
+            if (next.beats == 0) {
+                if (next.gapBeforeFirst) gap();
+                return this;
+            }
+            if (beats == 0) {
+                next.gapBeforeFirst |= gapBeforeFirst;
+                return next;
+            }
+
+            if (gapAfterLast || next.gapBeforeFirst) {
+                differenceCount += next.differenceCount;
+                squaredDifferenceSum += next.squaredDifferenceSum;
+            } else {
+                double diff = next.firstRr - lastRr;
+                differenceCount += next.differenceCount + 1;
+                squaredDifferenceSum += next.squaredDifferenceSum + diff * diff;
+            }
+            gapAfterLast = next.gapAfterLast;
+            lastRr = next.lastRr;
+            beats += next.beats;
+
+            // Chan et al. for the segment means
+            int count = segmentCount + next.segmentCount;
+            if (count > 0) {
+                double delta = next.segmentMean - segmentMean;
+                segmentM2 += next.segmentM2 + delta * delta * segmentCount * next.segmentCount / count;
+                segmentMean += delta * next.segmentCount / count;
+                segmentCount = count;
+            }
+
+            for (int i = 0; i < histogram.length; ++i) {
+                histogram[i] += next.histogram[i];
+            }
+            histogramDensity += next.histogramDensity;
+            return this;
+        }
+
+        Result toResult() {
+            int height = 0;
+            for (int count : histogram) {
+                height = Math.max(height, count);
+            }
+            return new Result(beats, segmentCount,
+                    differenceCount == 0 ? 0.0 : Math.sqrt(squaredDifferenceSum / differenceCount),
+                    segmentCount == 0 ? 0.0 : Math.sqrt(segmentM2 / segmentCount),
+                    height == 0 ? 0.0 : (double) histogramDensity / height);
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    public BatchSessionAnalyzer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public BatchSessionAnalyzer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Analyze a file written by {@link SessionRecorder}. The chunks written
+     * after the index are read up to the first damaged one.
+     *
+     * @throws IOException Also if an indexed chunk is damaged.
+     */
+    public Result analyze(File session) throws IOException {
+        RrIntervals rr = load(session);
+        return analyze(rr.values, rr.count);
+    }
+
+    /**
+     * Analyze the beats held by series, its gaps included.
+     */
+    public Result analyze(RrSeries series) {
+        RrIntervals rr = load(series);
+        return analyze(rr.values, rr.count);
+    }
+
+    /**
+     * Analyze the first count intervals of rr. Zero intervals are ignored,
+     * negative ones are gaps, see {@link #gap(long)}.
+     */
+    public Result analyze(int[] rr, int count) {
+        int[] segmentStarts = segment(rr, count);
+        int segments = segmentStarts.length - 1;
+        return pool.invoke(new SegmentTask(rr, segmentStarts, 0, segments)).toResult();
+    }
+
+    /**
+     * Entry of an RR interval array marking a gap of durationMs.
+     */
+    public static int gap(long durationMs) {
+        return (int) -Math.min(Integer.MAX_VALUE, Math.max(0, durationMs) + 1);
+    }
+
+    private static long gapDuration(int entry) {
+        return -(long) entry - 1;
+    }
+
+    /**
+     * Split the beats into segments the way {@link HrvStatistics} does, the
+     * last segment being the incomplete one, possibly empty.
+     *
+     * @return The index of the first beat of each segment, followed by count.
+     */
+    static int[] segment(int[] rr, int count) {
+        int[] starts = new int[16];
+        int segments = 0;
+        starts[segments++] = 0;
+        long elapsed = 0;
+        for (int i = 0; i < count; ++i) {
+            if (rr[i] == 0) continue;
+            elapsed += rr[i] > 0 ? rr[i] : gapDuration(rr[i]);
+            if (elapsed >= HrvStatistics.SDANN_INTERVAL_MS) {
+                if (segments == starts.length) {
+                    starts = Arrays.copyOf(starts, segments * 2);
+                }
+                starts[segments++] = i + 1;
+                elapsed = 0;
+            }
+        }
+        if (segments == starts.length) {
+            starts = Arrays.copyOf(starts, segments + 1);
+        }
+        starts[segments++] = count;
+        return Arrays.copyOf(starts, segments);
+    }
+
+    private static class SegmentTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] rr;
+        private final int[] segmentStarts;
+        private final int from;
+        private final int to;
+
+        SegmentTask(int[] rr, int[] segmentStarts, int from, int to) {
+            this.rr = rr;
+            this.segmentStarts = segmentStarts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from > SEGMENTS_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                SegmentTask right = new SegmentTask(rr, segmentStarts, mid, to);
+                right.fork();
+                Partial left = new SegmentTask(rr, segmentStarts, from, mid).compute();
+                return left.merge(right.join());
+            }
+
+            int lastSegment = segmentStarts.length - 2;
+            Partial partial = new Partial();
+            for (int segment = from; segment < to; ++segment) {
+                long sum = 0;
+                int beats = 0;
+                for (int i = segmentStarts[segment]; i < segmentStarts[segment + 1]; ++i) {
+                    if (rr[i] < 0) {
+                        partial.gap();
+                        continue;
+                    }
+                    if (rr[i] == 0) continue;
+                    partial.add(rr[i]);
+                    sum += rr[i];
+                    beats++;
+                }
+                // The last segment is still open, one spent in a gap has no mean
+                if (segment < lastSegment && beats > 0) {
+                    partial.addSegmentMean((double) sum / beats);
+                }
+            }
+            return partial;
+        }
+    }
+
+    // Loading
+
+    static final class RrIntervals {
+        int[] values;
+        int count;
+
+        RrIntervals(int capacity) {
+            this.values = new int[Math.max(16, capacity)];
+        }
+
+        void add(int rr) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = rr;
+        }
+
+        /**
+         * Insert the gaps found by a {@link LoadTask} before the intervals they precede.
+         */
+        void insertGaps(LoadedChunks loaded) {
+            if (loaded.gapCount == 0) return;
+
+            int[] merged = new int[count + loaded.gapCount];
+            int from = 0;
+            int to = 0;
+            for (int i = 0; i < loaded.gapCount; ++i) {
+                int position = loaded.gapPositions[i];
+                System.arraycopy(values, from, merged, to, position - from);
+                to += position - from;
+                from = position;
+                merged[to++] = loaded.gaps[i];
+            }
+            System.arraycopy(values, from, merged, to, count - from);
+            values = merged;
+            count = merged.length;
+        }
+    }
+
+    /**
+     * Where a range of chunks ends, and the gaps of the RR stream within it by
+     * the position of the interval following them.
+     */
+    static final class LoadedChunks {
+        long end;
+        int gapCount = 0;
+        int[] gapPositions = new int[4];
+        int[] gaps = new int[4];
+
+        void addGap(int position, long durationMs) {
+            if (gapCount == gaps.length) {
+                gapPositions = Arrays.copyOf(gapPositions, gapCount * 2);
+                gaps = Arrays.copyOf(gaps, gapCount * 2);
+            }
+            gapPositions[gapCount] = position;
+            gaps[gapCount++] = gap(durationMs);
+        }
+
+        /**
+         * Append the chunks following these ones.
+         */
+        LoadedChunks merge(LoadedChunks next) {
+            for (int i = 0; i < next.gapCount; ++i) {
+                addGap(next.gapPositions[i], gapDuration(next.gaps[i]));
+            }
+            end = next.end;
+            return this;
+        }
+    }
+
+    /**
+     * Read the RR intervals of a session, in parallel if it has an index.
+     */
+    RrIntervals load(File session) throws IOException {
+        SessionIndex index = null;
+        if (SessionIndex.fileFor(session).exists()) {
+            index = SessionIndex.open(session);
+        }
+
+        int chunks = index == null ? 0 : index.size();
+        int[] firstRr = new int[chunks + 1];
+        for (int i = 0; i < chunks; ++i) {
+            firstRr[i + 1] = firstRr[i] + index.getRrCount(i);
+        }
+
+        final RrIntervals intervals = new RrIntervals(firstRr[chunks]);
+        long end = SessionFormat.FILE_HEADER_SIZE;
+        if (chunks > 0) {
+            LoadedChunks loaded;
+            try {
+                loaded = pool.invoke(new LoadTask(session, index, firstRr, intervals.values, 0, chunks));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            end = loaded.end;
+            intervals.count = firstRr[chunks];
+            intervals.insertGaps(loaded);
+        }
+
+        // Chunks written after the index was last synced
+        try (SessionReader reader = new SessionReader(session)) {
+            reader.replay(new HrvDataListener() {
+                @Override
+                public void onRrInterval(int rr, long timestamp) {
+                    intervals.add(rr);
+                }
+
+                @Override
+                public void onGap(HrvStream stream, long timestamp, long durationMs) {
+                    if (stream == HrvStream.RR) {
+                        intervals.add(gap(durationMs));
+                    }
+                }
+            }, end, Integer.MAX_VALUE);
+        }
+        return intervals;
+    }
+
+    /**
+     * Copy the intervals out of the series' chunks, a gap taking the time up
+     * to the start of the interval that follows it. A gap no interval followed
+     * is dropped.
+     */
+    RrIntervals load(RrSeries series) {
+        final RrIntervals intervals = new RrIntervals(series.size());
+        series.forEachChunk(new RrSeries.ChunkVisitor() {
+            private boolean inGap = false;
+            private long gapStart = 0;
+
+            @Override
+            public void visit(short[] rr, int[] offsets, int length, long baseTimestamp) {
+                for (int i = 0; i < length; ++i) {
+                    int interval = rr[i] & 0xFFFF;
+                    long timestamp = baseTimestamp + offsets[i];
+                    if (interval == 0) {
+                        // Gaps in a row make one
+                        if (!inGap) {
+                            inGap = true;
+                            gapStart = timestamp;
+                        }
+                        continue;
+                    }
+                    if (inGap) {
+                        intervals.add(gap(timestamp - interval - gapStart));
+                        inGap = false;
+                    }
+                    intervals.add(interval);
+                }
+            }
+        });
+        return intervals;
+    }
+
+    /**
+     * Decodes the RR intervals of a range of indexed chunks into their place.
+     *
+     * @return The position following the last chunk, and the gaps.
+     */
+    private static class LoadTask extends RecursiveTask<LoadedChunks> {
+        private static final long serialVersionUID = 1L;
+
+        private final File session;
+        private final SessionIndex index;
+        private final int[] firstRr;
+        private final int[] rr;
+        private final int from;
+        private final int to;
+
+        LoadTask(File session, SessionIndex index, int[] firstRr, int[] rr, int from, int to) {
+            this.session = session;
+            this.index = index;
+            this.firstRr = firstRr;
+            this.rr = rr;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected LoadedChunks compute() {
+            if (to - from > CHUNKS_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                LoadTask right = new LoadTask(session, index, firstRr, rr, mid, to);
+                right.fork();
+                LoadedChunks left = new LoadTask(session, index, firstRr, rr, from, mid).compute();
+                return left.merge(right.join());
+            }
+
+            final int[] position = {firstRr[from]};
+            final LoadedChunks loaded = new LoadedChunks();
+            HrvDataListener collector = new HrvDataListener() {
+                @Override
+                public void onRrInterval(int interval, long timestamp) {
+                    if (position[0] < firstRr[to]) {
+                        rr[position[0]] = interval;
+                    }
+                    position[0]++;
+                }
+
+                @Override
+                public void onGap(HrvStream stream, long timestamp, long durationMs) {
+                    if (stream == HrvStream.RR) {
+                        loaded.addGap(position[0], durationMs);
+                    }
+                }
+            };
+            try (SessionReader reader = new SessionReader(session)) {
+                long offset = index.getOffset(from);
+                for (int chunk = from; chunk < to; ++chunk) {
+                    int length = reader.readChunk(offset);
+                    if (length < 0) {
+                        throw new IOException("Indexed chunk " + chunk + " is damaged");
+                    }
+                    reader.decode(reader.getPayload(), collector);
+                    offset += SessionFormat.CHUNK_HEADER_SIZE + length;
+                }
+                if (position[0] != firstRr[to]) {
+                    throw new IOException("Index doesn't match chunks " + from + " to " + to);
+                }
+                loaded.end = offset;
+                return loaded;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
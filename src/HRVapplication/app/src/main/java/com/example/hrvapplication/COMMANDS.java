@@ -9,10 +9,20 @@ public enum COMMANDS {
     PAUSE(2),
     RESET(3),
 
+    // Link, the negotiated ATT MTU is sent along
+    LINK_MTU(4),
+
+    // Backfill, the first sequence number (u16) and the frame count (u8) are sent along
+    BACKFILL_RR(5),
+    BACKFILL_SIGNAL(6),
+
     // Monitoring
     DUMP_RMSSD(10),
     DUMP_SDANN(11),
-    DUMP_HTI(12);
+    DUMP_HTI(12),
+    // The histograms are sent in chunks, see HistogramTransferDecoder
+    DUMP_RR_HISTOGRAM(13),
+    DUMP_BPM_HISTOGRAM(14);
 
     private final int value;
 
@@ -0,0 +1,290 @@
+package com.example.hrvapplication;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Serializes writes to the command characteristic.
+ *
+ * Only one command is in flight at a time, the next one is written once the
+ * previous write was acknowledged (or, for commands that expect a response,
+ * once the response arrived). Every command gets a future which is completed
+ * with its own response, so responses no longer have to be matched against a
+ * "last command" field. Commands that aren't acknowledged in time are retried.
+ */
+public class CommandQueue {
+    public static final long DEFAULT_TIMEOUT_MS = 2000;
+    public static final int DEFAULT_RETRIES = 2;
+    private static final long WRITE_BUSY_RETRY_MS = 50;
+
+    public interface Transport {
+        /**
+         * Start writing the payload to the command characteristic.
+         *
+         * @return false if the write could not be issued.
+         */
+        boolean write(byte[] payload);
+    }
+
+    /**
+     * Consumes the notifications of the response characteristic for a single command.
+     */
+    public interface ResponseDecoder<T> {
+        /**
+         * @return true once the full response was received.
+         */
+        boolean onResponse(byte[] payload);
+
+        T getResult();
+    }
+
+    private static class PendingCommand<T> {
+        final COMMANDS command;
+        final byte[] payload;
+        final ResponseDecoder<T> decoder;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        int attemptsLeft;
+        // The write of this command is waiting for its acknowledgement
+        boolean sent = false;
+        boolean written = false;
+        ScheduledFuture<?> timeout;
+
+        PendingCommand(COMMANDS command, byte[] payload, ResponseDecoder<T> decoder, int attempts) {
+            this.command = command;
+            this.payload = payload;
+            this.decoder = decoder;
+            this.attemptsLeft = attempts;
+        }
+
+        void complete() {
+            future.complete(decoder == null ? null : decoder.getResult());
+        }
+    }
+
+    private final Transport transport;
+    private final ScheduledExecutorService scheduler;
+    private final long timeoutMs;
+    private final int retries;
+
+    private final ArrayDeque<PendingCommand<?>> queue = new ArrayDeque<>();
+    private PendingCommand<?> current = null;
+    // Only one GATT write may be outstanding, even if its command already got its response
+    private boolean writeInFlight = false;
+
+    public CommandQueue(Transport transport, ScheduledExecutorService scheduler) {
+        this(transport, scheduler, DEFAULT_TIMEOUT_MS, DEFAULT_RETRIES);
+    }
+
+    public CommandQueue(Transport transport, ScheduledExecutorService scheduler, long timeoutMs, int retries) {
+        this.transport = transport;
+        this.scheduler = scheduler;
+        this.timeoutMs = timeoutMs;
+        this.retries = retries;
+    }
+
+    /**
+     * Queue a command which is complete once its write was acknowledged.
+     */
+    public CompletableFuture<Void> send(COMMANDS command) {
+        return enqueue(new PendingCommand<Void>(command, encode(command, new byte[0]), null, retries + 1));
+    }
+
+    /**
+     * Queue a command with a 16 bit argument, written little endian after the command.
+     */
+    public CompletableFuture<Void> send(COMMANDS command, int argument) {
+        byte[] payload = encode(command, new byte[]{ (byte) argument, (byte) (argument >> 8) });
+        return enqueue(new PendingCommand<Void>(command, payload, null, retries + 1));
+    }
+
+    /**
+     * Queue a command which is complete once the decoder received its full response.
+     */
+    public <T> CompletableFuture<T> request(COMMANDS command, ResponseDecoder<T> decoder) {
+        return enqueue(new PendingCommand<>(command, encode(command, new byte[0]), decoder, retries + 1));
+    }
+
+    /**
+     * Queue a command with arguments written after it, complete once the decoder received its full response.
+     */
+    public <T> CompletableFuture<T> request(COMMANDS command, byte[] arguments, ResponseDecoder<T> decoder) {
+        return enqueue(new PendingCommand<>(command, encode(command, arguments), decoder, retries + 1));
+    }
+
+    private static byte[] encode(COMMANDS command, byte[] arguments) {
+        byte[] payload = new byte[1 + arguments.length];
+        payload[0] = (byte) command.getValue();
+        System.arraycopy(arguments, 0, payload, 1, arguments.length);
+        return payload;
+    }
+
+    private synchronized <T> CompletableFuture<T> enqueue(PendingCommand<T> cmd) {
+        queue.add(cmd);
+        if (current == null) {
+            next();
+        }
+        return cmd.future;
+    }
+
+    /**
+     * Called when the command characteristic write finished.
+     */
+    public synchronized void onWriteComplete(boolean success) {
+        writeInFlight = false;
+
+        PendingCommand<?> cmd = current;
+        if (cmd == null) return;
+
+        if (!cmd.sent) {
+            // Acknowledgement of a previous command, ours can be written now
+            if (!cmd.written) write(cmd);
+            return;
+        }
+
+        cmd.sent = false;
+        if (!success) {
+            retry(cmd, WRITE_BUSY_RETRY_MS);
+            return;
+        }
+
+        cmd.written = true;
+        if (cmd.decoder == null) {
+            finish(cmd);
+        }
+    }
+
+    /**
+     * Called for every notification of the response characteristic.
+     */
+    public synchronized void onResponse(byte[] payload) {
+        PendingCommand<?> cmd = current;
+        if (cmd == null || cmd.decoder == null) return;
+
+        // The response may be notified before the write callback arrives
+        cmd.written = true;
+        if (cmd.decoder.onResponse(payload)) {
+            finish(cmd);
+        } else if (cmd.timeout != null) {
+            // A response of many notifications, e.g. a backfill, times out once they stop
+            cancelTimeout(cmd);
+            scheduleTimeout(cmd);
+        }
+    }
+
+    /**
+     * Fail the in flight and queued commands, e.g. once the device disconnected.
+     */
+    public synchronized void cancelAll(Throwable reason) {
+        writeInFlight = false;
+        if (current != null) {
+            cancelTimeout(current);
+            current.future.completeExceptionally(reason);
+            current = null;
+        }
+        while (!queue.isEmpty()) {
+            queue.poll().future.completeExceptionally(reason);
+        }
+    }
+
+    public synchronized int size() {
+        return queue.size() + (current != null ? 1 : 0);
+    }
+
+    private void next() {
+        current = queue.poll();
+        while (current != null && current.future.isDone()) {
+            // Cancelled by the caller while queued
+            current = queue.poll();
+        }
+
+        if (current != null) {
+            write(current);
+        }
+    }
+
+    private void write(final PendingCommand<?> cmd) {
+        cancelTimeout(cmd);
+        if (writeInFlight) {
+            // Written once the outstanding write is acknowledged, or retried if it never is
+            scheduleTimeout(cmd);
+            return;
+        }
+
+        cmd.attemptsLeft--;
+        cmd.written = false;
+
+        // Set before writing, some transports acknowledge from within write()
+        writeInFlight = true;
+        cmd.sent = true;
+        if (!transport.write(cmd.payload)) {
+            writeInFlight = false;
+            cmd.sent = false;
+            retry(cmd, WRITE_BUSY_RETRY_MS);
+            return;
+        }
+
+        if (current == cmd) {
+            scheduleTimeout(cmd);
+        }
+    }
+
+    private void scheduleTimeout(final PendingCommand<?> cmd) {
+        cmd.timeout = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(cmd);
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void retry(final PendingCommand<?> cmd, long delayMs) {
+        cancelTimeout(cmd);
+
+        if (cmd.attemptsLeft <= 0) {
+            next();
+            cmd.future.completeExceptionally(new TimeoutException("No response to " + cmd.command));
+            return;
+        }
+
+        if (delayMs == 0) {
+            write(cmd);
+            return;
+        }
+
+        cmd.timeout = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (CommandQueue.this) {
+                    if (current == cmd) write(cmd);
+                }
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void onTimeout(PendingCommand<?> cmd) {
+        if (current != cmd) return;
+
+        // Consider the acknowledgement lost
+        writeInFlight = false;
+        cmd.sent = false;
+        retry(cmd, 0);
+    }
+
+    private void finish(PendingCommand<?> cmd) {
+        cancelTimeout(cmd);
+        // Start the next command first so callbacks queueing commands see it in flight
+        next();
+        cmd.complete();
+    }
+
+    private static void cancelTimeout(PendingCommand<?> cmd) {
+        if (cmd.timeout != null) {
+            cmd.timeout.cancel(false);
+            cmd.timeout = null;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.hrvapplication;
+
+/**
+ * Response of the DUMP_RMSSD, DUMP_SDANN and DUMP_HTI commands, a single little-endian double.
+ */
+public class DoubleResponseDecoder implements CommandQueue.ResponseDecoder<Double> {
+    private double value = Double.NaN;
+
+    public static double decode(byte[] payload) {
+        long bits = 0;
+        for (int i = 7; i >= 0; --i) {
+            bits = (bits << 8) | (payload[i] & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    @Override
+    public boolean onResponse(byte[] payload) {
+        if (payload == null || payload.length < 8) return false;
+
+        value = decode(payload);
+        return true;
+    }
+
+    @Override
+    public Double getResult() {
+        return value;
+    }
+}
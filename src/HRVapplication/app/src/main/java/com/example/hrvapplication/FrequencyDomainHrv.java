@@ -0,0 +1,221 @@
+package com.example.hrvapplication;
+
+/**
+ * Streaming LF and HF power of the RR intervals over the last 5 minutes.
+ *
+ * The intervals are resampled at 4 Hz by linear interpolation, time being
+ * measured by the intervals themselves. The spectrum of the 1200 sample window
+ * is kept by a sliding DFT, limited to the bins of the LF and HF bands: every
+ * new sample updates each bin in O(1), nothing is recomputed as the window
+ * slides. The linear trend of the window is removed and a Hann window applied
+ * in the frequency domain when the powers are read.
+ *
+ * Rounding errors of the sliding DFT are dropped by recomputing the bins from
+ * the window once per window length. Nothing is allocated after construction.
+ */
+public class FrequencyDomainHrv {
+    public static final double SAMPLE_RATE_HZ = 4.0;
+    public static final int WINDOW_SAMPLES = 1200;
+    public static final double LF_LOW_HZ = 0.04;
+    public static final double LF_HIGH_HZ = 0.15;
+    public static final double HF_HIGH_HZ = 0.4;
+
+    private static final int N = WINDOW_SAMPLES;
+    private static final long SAMPLE_INTERVAL_MS = (long) (1000 / SAMPLE_RATE_HZ);
+
+    private static final int LF_FIRST = bin(LF_LOW_HZ);
+    private static final int HF_FIRST = bin(LF_HIGH_HZ);
+    private static final int HF_END = bin(HF_HIGH_HZ);
+    // Bins kept, with a neighbour on each side for the Hann window
+    private static final int K_FIRST = LF_FIRST - 1;
+    private static final int BINS = HF_END + 1 - K_FIRST;
+
+    private static final double[] COS = new double[N];
+    private static final double[] SIN = new double[N];
+    // DFT of the ramp 0..N-1, what a unit slope adds to each bin
+    private static final double[] TREND_RE = new double[BINS];
+    private static final double[] TREND_IM = new double[BINS];
+    private static final double MEAN_POSITION = (N - 1) / 2.0;
+    private static final double POSITION_VARIANCE_SUM = N * ((double) N * N - 1) / 12.0;
+
+    static {
+        for (int i = 0; i < N; ++i) {
+            COS[i] = Math.cos(2 * Math.PI * i / N);
+            SIN[i] = Math.sin(2 * Math.PI * i / N);
+        }
+        for (int b = 0; b < BINS; ++b) {
+            int k = K_FIRST + b;
+            for (int p = 0; p < N; ++p) {
+                int angle = (int) ((long) k * p % N);
+                TREND_RE[b] += p * COS[angle];
+                TREND_IM[b] -= p * SIN[angle];
+            }
+        }
+    }
+
+    private static int bin(double frequency) {
+        return (int) Math.round(frequency * N / SAMPLE_RATE_HZ);
+    }
+
+    // Resampling
+    private int prevRrInterval = 0;
+    private long beatTime = 0;
+    private long nextSampleTime = 0;
+
+    // Window of resampled intervals, head is the oldest once it is full
+    private final double[] window = new double[N];
+    private final double[] scratch = new double[N];
+    private int head = 0;
+    private long sampleCount = 0;
+    private int sinceResync = 0;
+    private double sum = 0.0;
+    private double positionSum = 0.0;
+
+    // Sliding DFT of the window relative to its oldest sample
+    private final double[] re = new double[BINS];
+    private final double[] im = new double[BINS];
+
+    public synchronized void addRrInterval(int rrInterval) {
+        if (rrInterval <= 0) return;
+
+        if (prevRrInterval == 0) {
+            prevRrInterval = rrInterval;
+            return;
+        }
+
+        long time = beatTime + rrInterval;
+        while (nextSampleTime <= time) {
+            double fraction = (double) (nextSampleTime - beatTime) / rrInterval;
+            addSample(prevRrInterval + (rrInterval - prevRrInterval) * fraction);
+            nextSampleTime += SAMPLE_INTERVAL_MS;
+        }
+        beatTime = time;
+        prevRrInterval = rrInterval;
+    }
+
+    private void addSample(double x) {
+        if (sampleCount < N) {
+            window[(int) sampleCount] = x;
+            sum += x;
+            positionSum += sampleCount * x;
+            if (++sampleCount == N) {
+                resync();
+            }
+            return;
+        }
+
+        double old = window[head];
+        window[head] = x;
+        head = (head + 1) % N;
+        // Every other sample moves one position down
+        positionSum += (N - 1) * x - (sum - old);
+        sum += x - old;
+        sampleCount++;
+
+        double delta = x - old;
+        for (int b = 0; b < BINS; ++b) {
+            int k = K_FIRST + b;
+            double r = re[b] + delta;
+            double i = im[b];
+            re[b] = r * COS[k] - i * SIN[k];
+            im[b] = r * SIN[k] + i * COS[k];
+        }
+
+        if (++sinceResync == N) {
+            resync();
+        }
+    }
+
+    private void resync() {
+        // Unroll the ring so the bins below run over a plain array
+        System.arraycopy(window, head, scratch, 0, N - head);
+        System.arraycopy(window, 0, scratch, N - head, head);
+
+        sum = 0.0;
+        positionSum = 0.0;
+        for (int p = 0; p < N; ++p) {
+            sum += scratch[p];
+            positionSum += p * scratch[p];
+        }
+        for (int b = 0; b < BINS; ++b) {
+            int k = K_FIRST + b;
+            double r = 0.0;
+            double i = 0.0;
+            int angle = 0;
+            for (int p = 0; p < N; ++p) {
+                r += scratch[p] * COS[angle];
+                i -= scratch[p] * SIN[angle];
+                angle += k;
+                if (angle >= N) angle -= N;
+            }
+            re[b] = r;
+            im[b] = i;
+        }
+        sinceResync = 0;
+    }
+
+    /**
+     * Power in [fromBin, toBin) in ms^2, 0 until the window is full.
+     */
+    private double bandPower(int fromBin, int toBin) {
+        if (sampleCount < N) return 0.0;
+
+        double slope = (positionSum - MEAN_POSITION * sum) / POSITION_VARIANCE_SUM;
+        double power = 0.0;
+        for (int k = fromBin; k < toBin; ++k) {
+            int b = k - K_FIRST;
+            double wRe = 0.5 * detrendedRe(b, slope) - 0.25 * (detrendedRe(b - 1, slope) + detrendedRe(b + 1, slope));
+            double wIm = 0.5 * detrendedIm(b, slope) - 0.25 * (detrendedIm(b - 1, slope) + detrendedIm(b + 1, slope));
+            power += wRe * wRe + wIm * wIm;
+        }
+        // One sided PSD with the Hann window energy of 3N/8, times the bin width
+        return power * 16.0 / (3.0 * N * N);
+    }
+
+    private double detrendedRe(int b, double slope) {
+        return re[b] - slope * TREND_RE[b];
+    }
+
+    private double detrendedIm(int b, double slope) {
+        return im[b] - slope * TREND_IM[b];
+    }
+
+    public synchronized double getLfPower() {
+        return bandPower(LF_FIRST, HF_FIRST);
+    }
+
+    public synchronized double getHfPower() {
+        return bandPower(HF_FIRST, HF_END);
+    }
+
+    public synchronized double getLfHfRatio() {
+        double hf = bandPower(HF_FIRST, HF_END);
+        return hf == 0.0 ? 0.0 : bandPower(LF_FIRST, HF_FIRST) / hf;
+    }
+
+    /**
+     * Whether 5 minutes of intervals were added, the powers are 0 before.
+     */
+    public synchronized boolean isWindowFull() {
+        return sampleCount >= N;
+    }
+
+    /**
+     * RR intervals were lost. The resampling and the window start over with the
+     * next interval, nothing is interpolated across the gap.
+     */
+    public synchronized void markGap() {
+        reset();
+    }
+
+    public synchronized void reset() {
+        prevRrInterval = 0;
+        beatTime = 0;
+        nextSampleTime = 0;
+        head = 0;
+        sampleCount = 0;
+        sinceResync = 0;
+        sum = 0.0;
+        positionSum = 0.0;
+    }
+}
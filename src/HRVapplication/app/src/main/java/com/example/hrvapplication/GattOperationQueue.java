@@ -0,0 +1,99 @@
+package com.example.hrvapplication;
+
+import java.util.ArrayDeque;
+
+/**
+ * Serializes the ATT operations of one GATT client.
+ *
+ * Android's GATT client handles one request at a time, an MTU exchange,
+ * descriptor write or characteristic write issued while another one is
+ * outstanding is refused. Operations are started in order, each once the
+ * callback of the previous one arrived. Every device has a queue of its own,
+ * so the devices of a {@link HrvDeviceManager} don't wait for each other.
+ *
+ * Operations are started without holding the queue's lock, their failure
+ * callbacks may take other locks, e.g. the {@link CommandQueue}'s which is
+ * held while enqueueing a command write.
+ */
+public class GattOperationQueue {
+    public interface Operation {
+        /**
+         * Issue the operation.
+         *
+         * @return false if it could not be issued, the next one is started right away.
+         */
+        boolean start();
+
+        /**
+         * The operation was started after {@link #enqueue} returned and could not be issued.
+         */
+        void failed();
+    }
+
+    private final ArrayDeque<Operation> queue = new ArrayDeque<>();
+    // Started and waiting for its callback
+    private Operation inFlight = null;
+
+    /**
+     * Start the operation once the ones before it completed.
+     *
+     * @return false if the operation was started right away and could not be
+     * issued, {@link Operation#failed()} isn't called then.
+     */
+    public boolean enqueue(Operation operation) {
+        synchronized (this) {
+            queue.add(operation);
+        }
+        return startNext(operation);
+    }
+
+    /**
+     * Called from the callback of the operation in flight.
+     */
+    public void onComplete() {
+        synchronized (this) {
+            inFlight = null;
+        }
+        startNext(null);
+    }
+
+    /**
+     * Drop the queued operations, e.g. once the link is gone and no callback will follow.
+     */
+    public synchronized void clear() {
+        queue.clear();
+        inFlight = null;
+    }
+
+    public synchronized int size() {
+        return queue.size() + (inFlight != null ? 1 : 0);
+    }
+
+    /**
+     * @return false if enqueued was started here and could not be issued.
+     */
+    private boolean startNext(Operation enqueued) {
+        boolean issued = true;
+        while (true) {
+            Operation operation;
+            synchronized (this) {
+                if (inFlight != null || queue.isEmpty()) return issued;
+                // In flight while starting, operations enqueued meanwhile wait for this loop
+                operation = queue.poll();
+                inFlight = operation;
+            }
+            if (operation.start()) return issued;
+
+            synchronized (this) {
+                if (inFlight == operation) {
+                    inFlight = null;
+                }
+            }
+            if (operation == enqueued) {
+                issued = false;
+            } else {
+                operation.failed();
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.hrvapplication;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Response of the DUMP_RR_HISTOGRAM and DUMP_BPM_HISTOGRAM commands.
+ *
+ * <pre>
+ * chunk   := index u8 | run*                         index counts the chunks, modulo 128
+ * trailer := 0x80 + chunks modulo 128 u8 | bins u16 | crc32 u32
+ * run     := zeros:varint count:varint               one for every non-empty bin
+ * </pre>
+ *
+ * Integers are little endian. The runs may be split across chunks, the
+ * CRC-32 covers them all. A lost chunk, a wrong CRC or runs beyond the number
+ * of bins make the transfer invalid: {@link #getResult()} is null then and
+ * {@link #getError()} tells why.
+ */
+public class HistogramTransferDecoder implements CommandQueue.ResponseDecoder<int[]> {
+    public static final int LAST_CHUNK = 0x80;
+    public static final int TRAILER_SIZE = 7;
+    private static final int INDEX_MASK = 0x7F;
+
+    private ByteBuffer runs = ByteBuffer.allocate(256);
+    private int chunks = 0;
+    private int notifications = 0;
+    private int[] bins;
+    private String error;
+
+    /**
+     * Encode a histogram the way hrv.ino sends it.
+     *
+     * @param chunkSize Size of a notification, including the chunk index.
+     */
+    public static List<byte[]> encode(int[] bins, int chunkSize) {
+        ByteBuffer encoded = ByteBuffer.allocate(2 * SessionFormat.MAX_VARINT_SIZE * bins.length);
+        int zeros = 0;
+        for (int count : bins) {
+            if (count == 0) {
+                zeros++;
+                continue;
+            }
+            SessionFormat.putVarint(encoded, zeros);
+            SessionFormat.putVarint(encoded, count);
+            zeros = 0;
+        }
+
+        List<byte[]> notifications = new ArrayList<>();
+        int length = encoded.position();
+        for (int i = 0; i < length; i += chunkSize - 1) {
+            int size = Math.min(chunkSize - 1, length - i);
+            byte[] chunk = new byte[1 + size];
+            chunk[0] = (byte) (notifications.size() & INDEX_MASK);
+            System.arraycopy(encoded.array(), i, chunk, 1, size);
+            notifications.add(chunk);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(encoded.array(), 0, length);
+        long value = crc.getValue();
+        notifications.add(new byte[]{(byte) (LAST_CHUNK | (notifications.size() & INDEX_MASK)),
+                (byte) bins.length, (byte) (bins.length >> 8),
+                (byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24)});
+        return notifications;
+    }
+
+    @Override
+    public boolean onResponse(byte[] payload) {
+        if (payload == null || payload.length == 0) return false;
+        notifications++;
+
+        int header = payload[0] & 0xFF;
+        if ((header & LAST_CHUNK) != 0) {
+            if (payload.length < TRAILER_SIZE) return false;
+            onTrailer(header & INDEX_MASK, payload);
+            return true;
+        }
+
+        if (header != (chunks & INDEX_MASK) && error == null) {
+            error = "Chunk " + chunks + " lost";
+        }
+        chunks++;
+        if (runs.remaining() < payload.length - 1) {
+            runs.flip();
+            runs = ByteBuffer.allocate(2 * (runs.capacity() + payload.length)).put(runs);
+        }
+        runs.put(payload, 1, payload.length - 1);
+        return false;
+    }
+
+    private void onTrailer(int chunkCount, byte[] trailer) {
+        if (error != null) return;
+        if (chunkCount != (chunks & INDEX_MASK)) {
+            error = "Received " + chunks + " chunks, expected " + chunkCount;
+            return;
+        }
+
+        int binCount = (trailer[1] & 0xFF) | (trailer[2] & 0xFF) << 8;
+        int expectedCrc = (trailer[3] & 0xFF) | (trailer[4] & 0xFF) << 8
+                | (trailer[5] & 0xFF) << 16 | (trailer[6] & 0xFF) << 24;
+        CRC32 crc = new CRC32();
+        crc.update(runs.array(), 0, runs.position());
+        if ((int) crc.getValue() != expectedCrc) {
+            error = "CRC mismatch";
+            return;
+        }
+
+        int[] decoded = new int[binCount];
+        ByteBuffer buffer = ByteBuffer.wrap(runs.array(), 0, runs.position());
+        int bin = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                bin += SessionFormat.getVarint(buffer);
+                int count = SessionFormat.getVarint(buffer);
+                if (bin < 0 || bin >= binCount) {
+                    error = "Run beyond " + binCount + " bins";
+                    return;
+                }
+                decoded[bin++] = count;
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            error = "Truncated run";
+            return;
+        }
+        bins = decoded;
+    }
+
+    /**
+     * The counts of the bins, null if the transfer is incomplete or invalid.
+     */
+    @Override
+    public int[] getResult() {
+        return bins;
+    }
+
+    /**
+     * Why the transfer is invalid, null if it isn't.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Notifications received, the trailer included.
+     */
+    public int getNotificationCount() {
+        return notifications;
+    }
+}
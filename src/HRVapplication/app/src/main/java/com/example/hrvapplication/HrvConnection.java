@@ -0,0 +1,689 @@
+package com.example.hrvapplication;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Protocol and decoding for a single HRV peripheral, independent of how it is reached.
+ *
+ * Decodes the notifications of an {@link HrvTransport}, serializes commands
+ * through a {@link CommandQueue} and fans the results out to the
+ * {@link BLEControllerListener}s. The live streams are handed to the
+ * {@link HrvDataListener}s through a {@link LiveDataDispatcher}, so the
+ * transport's callback thread never runs listener code.
+ *
+ * The framed streams carry a sequence number: lost frames are reported to the
+ * listeners through {@link HrvDataListener#onGap}, and short ECG gaps filled
+ * with linearly interpolated samples so the signal keeps its timing. Frames
+ * missed while disconnected are first asked back from the peripheral, see
+ * {@link StreamBackfill}.
+ *
+ * Before subscribing, a new link is tuned for throughput: the largest MTU,
+ * announced to the firmware with {@link COMMANDS#LINK_MTU} so it packs more
+ * samples per frame, the 2M PHY when both ends support it, and a short
+ * connection interval while streaming, a balanced one while paused. The
+ * connection is reported, and LINK_MTU sent, once every subscription was
+ * written, so no command competes with the descriptor writes.
+ */
+public class HrvConnection implements HrvTransport.Listener {
+    /** Longest ECG gap filled with interpolated samples, 1 s at 250 Hz. */
+    public static final int MAX_INTERPOLATED_SAMPLES = 250;
+
+    /**
+     * Decoder of a single notifying characteristic.
+     */
+    interface NotificationHandler {
+        void onNotification(byte[] data);
+    }
+
+    private final HrvTransport transport;
+
+    // Characteristic -> decoder, in subscription order. Adding a characteristic is an entry here.
+    private final LinkedHashMap<UUID, NotificationHandler> notificationHandlers = new LinkedHashMap<>();
+
+    private final CopyOnWriteArrayList<BLEControllerListener> listeners = new CopyOnWriteArrayList<>();
+    private final LiveDataDispatcher dispatcher;
+    private final HashSet<String> devices = new HashSet<>();
+
+    private final LiveSignalFrameDecoder liveSignalDecoder = new LiveSignalFrameDecoder();
+    private final int[] legacySample = new int[1];
+    private final RrFrameDecoder rrDecoder = new RrFrameDecoder();
+    private final SequenceGapDetector signalSequence = new SequenceGapDetector();
+    private final SequenceGapDetector rrSequence = new SequenceGapDetector();
+    // End of the last ECG frame and RR interval received, -1 before the first one
+    private long nextSignalTimestamp = -1;
+    private int lastSignalSample = 0;
+    private long lastRrTimestamp = -1;
+    private final int[] interpolated = new int[MAX_INTERPOLATED_SAMPLES];
+    private final CommandQueue commandQueue;
+    // Times the commands out
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final StreamBackfill signalBackfill;
+    private final StreamBackfill rrBackfill;
+    private volatile RrFilter rrFilter;
+    // Set by RESET, the filter is reset on the thread it runs on
+    private volatile boolean rrFilterReset = false;
+    private final HrvMetrics metrics;
+    private final HrvMetrics.Counter rejectedRrCount;
+    private final HrvMetrics.Counter interpolatedSampleCount;
+    private final HrvMetrics.Counter receivedBytes;
+    private final HrvMetrics.Counter corruptedHistogramCount;
+    private final HrvMetrics.Counter malformedFrameCount;
+    private volatile LinkParameters link = LinkParameters.DEFAULT;
+    // Waiting for the MTU exchange of a new link to subscribe
+    private boolean linkSetup = false;
+    // Subscriptions of the new link not written yet -> retries left
+    private final HashMap<UUID, Integer> pendingSubscriptions = new HashMap<>();
+    private int linkMtu = LiveSignalFrameDecoder.DEFAULT_MTU;
+    private final HrvMetrics.Counter failedSubscriptionCount;
+    private volatile boolean streaming = false;
+    private volatile String deviceAddress;
+    // Start of the scan or connection attempt, -1 when there is none
+    private volatile long connectStartNanos = -1;
+    private volatile long connectTimeNanos = -1;
+    private final HrvMetrics.Latency connectTime;
+    private volatile int lastDisconnectStatus = 0;
+
+    public HrvConnection(HrvTransport transport) {
+        this(transport, new LiveDataDispatcher());
+    }
+
+    public HrvConnection(final HrvTransport transport, LiveDataDispatcher dispatcher) {
+        this(transport, dispatcher, new HrvMetrics());
+    }
+
+    public HrvConnection(final HrvTransport transport, final LiveDataDispatcher dispatcher, HrvMetrics metrics) {
+        this.transport = transport;
+        this.dispatcher = dispatcher;
+        this.metrics = metrics;
+        this.rejectedRrCount = metrics.counter("rr.rejected");
+        this.interpolatedSampleCount = metrics.counter("signal.interpolated");
+        this.receivedBytes = metrics.counter("link.bytes");
+        this.corruptedHistogramCount = metrics.counter("histogram.corrupted");
+        this.malformedFrameCount = metrics.counter("signal.malformed");
+        this.failedSubscriptionCount = metrics.counter("link.subscribe_failed");
+        this.connectTime = metrics.latency("link.connect");
+        this.commandQueue = new CommandQueue(new CommandQueue.Transport() {
+            @Override
+            public boolean write(byte[] payload) {
+                return transport.writeCommand(payload);
+            }
+        }, scheduler);
+        this.signalBackfill = new StreamBackfill(COMMANDS.BACKFILL_SIGNAL, BackfillDecoder.ONE_PER_NOTIFICATION,
+                signalSequence, commandQueue, new StreamBackfill.Sink() {
+                    @Override
+                    public void onFrame(byte[] frame) {
+                        onSignalPayload(frame);
+                    }
+                });
+        this.rrBackfill = new StreamBackfill(COMMANDS.BACKFILL_RR, RrFrameDecoder.FRAME_SIZE,
+                rrSequence, commandQueue, new StreamBackfill.Sink() {
+                    @Override
+                    public void onFrame(byte[] frame) {
+                        onRrPayload(frame);
+                    }
+                });
+
+        addNotificationHandler(HrvProfile.RESPONSE, "response", new NotificationHandler() {
+            @Override
+            public void onNotification(byte[] data) {
+                commandQueue.onResponse(data);
+            }
+        });
+        addNotificationHandler(HrvProfile.BPM, "bpm", new NotificationHandler() {
+            @Override
+            public void onNotification(byte[] data) {
+                HrvConnection.this.dispatcher.publishBpm(LiveSignalFrameDecoder.decodeLegacy(data));
+            }
+        });
+        addNotificationHandler(HrvProfile.LIVE_SIGNAL, "signal", new NotificationHandler() {
+            @Override
+            public void onNotification(byte[] data) {
+                if (!HrvConnection.this.dispatcher.hasListeners(HrvStream.ECG)) {
+                    // Nobody misses these frames, but the sequence must go on
+                    if (LiveSignalFrameDecoder.isPackedFrame(data)) {
+                        signalSequence.next(LiveSignalFrameDecoder.sequenceOf(data));
+                        nextSignalTimestamp = -1;
+                    }
+                    return;
+                }
+
+                if (LiveSignalFrameDecoder.isPackedFrame(data) && signalBackfill.offer(data)) return;
+                onSignalPayload(data);
+            }
+        });
+        addNotificationHandler(HrvProfile.LIVE_RR, "rr", new NotificationHandler() {
+            @Override
+            public void onNotification(byte[] data) {
+                if (RrFrameDecoder.isFrame(data) && rrBackfill.offer(data)) return;
+                onRrPayload(data);
+            }
+        });
+
+        metrics.register("dispatch.latency", dispatcher.getLatency());
+        metrics.register("dispatch.fanout", dispatcher.getFanOutTime());
+        metrics.gauge("dispatch.queue", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return dispatcher.size();
+            }
+        });
+        metrics.gauge("dispatch.dropped", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return dispatcher.getDroppedCount();
+            }
+        });
+        metrics.gauge("dispatch.coalesced", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return dispatcher.getCoalescedCount();
+            }
+        });
+        metrics.gauge("signal.lost", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return signalSequence.getLostCount();
+            }
+        });
+        metrics.gauge("signal.gaps", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return signalSequence.getGapCount();
+            }
+        });
+        metrics.gauge("rr.lost", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return rrSequence.getLostCount();
+            }
+        });
+        metrics.gauge("rr.gaps", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return rrSequence.getGapCount();
+            }
+        });
+        metrics.gauge("backfill.signal", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return signalBackfill.getRecoveredCount();
+            }
+        });
+        metrics.gauge("backfill.rr", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return rrBackfill.getRecoveredCount();
+            }
+        });
+        metrics.gauge("link.mtu", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return link.getMtu();
+            }
+        });
+        metrics.gauge("link.phy", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return link.getRxPhy();
+            }
+        });
+        metrics.gauge("link.interval_us", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return (long) (link.getConnectionIntervalMs() * 1000);
+            }
+        });
+
+        transport.setListener(this);
+    }
+
+    /**
+     * Count and time the notifications of characteristic as notify.name and decode.name.
+     */
+    private void addNotificationHandler(UUID characteristic, String name, final NotificationHandler handler) {
+        final HrvMetrics.Counter count = metrics.counter("notify." + name);
+        final HrvMetrics.Latency decodeTime = metrics.latency("decode." + name);
+        notificationHandlers.put(characteristic, new NotificationHandler() {
+            @Override
+            public void onNotification(byte[] data) {
+                long start = System.nanoTime();
+                handler.onNotification(data);
+                decodeTime.record(System.nanoTime() - start);
+                count.increment();
+            }
+        });
+    }
+
+    private void onSignalPayload(byte[] data) {
+        if (!LiveSignalFrameDecoder.isPackedFrame(data)) {
+            legacySample[0] = LiveSignalFrameDecoder.decodeLegacy(data);
+            dispatcher.publishEcg(legacySample, 0, 1, System.currentTimeMillis());
+        } else if (liveSignalDecoder.decode(data)) {
+            onSignalFrame(liveSignalDecoder);
+        } else {
+            malformedFrameCount.increment();
+        }
+    }
+
+    private void onRrPayload(byte[] data) {
+        long timestamp;
+        int rr;
+        if (rrDecoder.decode(data)) {
+            int lost = rrSequence.next(rrDecoder.getSequence());
+            if (lost == SequenceGapDetector.DUPLICATE) return;
+            rr = rrDecoder.getRr();
+            timestamp = rrDecoder.getTimestamp();
+            // The intervals of the lost beats, up to the start of this one
+            if (lost > 0 && lastRrTimestamp >= 0) {
+                dispatcher.publishGap(HrvStream.RR, lastRrTimestamp, Math.max(0, timestamp - rr - lastRrTimestamp));
+            }
+            lastRrTimestamp = timestamp;
+        } else {
+            timestamp = System.currentTimeMillis();
+            rr = LiveSignalFrameDecoder.decodeLegacy(data);
+        }
+        RrFilter filter = rrFilter;
+        if (filter != null) {
+            if (rrFilterReset) {
+                rrFilterReset = false;
+                filter.reset();
+            }
+            rr = filter.filter(rr, timestamp);
+            if (rr == RrFilter.REJECT) {
+                rejectedRrCount.increment();
+                return;
+            }
+        }
+        dispatcher.publishRrInterval(rr, timestamp);
+    }
+
+    private void onSignalFrame(LiveSignalFrameDecoder frame) {
+        int lost = signalSequence.next(frame.getSequence());
+        if (lost == SequenceGapDetector.DUPLICATE) return;
+
+        int[] samples = frame.getSamples();
+        int length = frame.getLength();
+        long timestamp = frame.getTimestamp();
+        int period = Math.max(1, frame.getSamplePeriodMs());
+        if (lost > 0 && nextSignalTimestamp >= 0 && length > 0) {
+            long duration = Math.max(0, timestamp - nextSignalTimestamp);
+            dispatcher.publishGap(HrvStream.ECG, nextSignalTimestamp, duration);
+            int missing = (int) Math.min(Integer.MAX_VALUE, duration / period);
+            if (missing > 0 && missing <= MAX_INTERPOLATED_SAMPLES) {
+                int from = lastSignalSample;
+                int to = samples[0];
+                for (int i = 0; i < missing; ++i) {
+                    interpolated[i] = from + (int) ((long) (to - from) * (i + 1) / (missing + 1));
+                }
+                interpolatedSampleCount.add(missing);
+                dispatcher.publishEcg(interpolated, 0, missing, nextSignalTimestamp);
+            }
+        }
+        dispatcher.publishEcg(samples, 0, length, timestamp);
+        if (length > 0) {
+            lastSignalSample = samples[length - 1];
+            nextSignalTimestamp = timestamp + (long) length * period;
+        }
+    }
+
+    public HrvTransport getTransport() {
+        return transport;
+    }
+
+    public HrvMetrics getMetrics() {
+        return metrics;
+    }
+
+    public LiveDataDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public void addBLEControllerListener(BLEControllerListener l) {
+        this.listeners.addIfAbsent(l);
+    }
+
+    public void removeBLEControllerListener(BLEControllerListener l) {
+        this.listeners.remove(l);
+    }
+
+    /**
+     * Deliver the given live streams to l, or all of them when none are given.
+     */
+    public void addHrvDataListener(HrvDataListener l, HrvStream... streams) {
+        this.dispatcher.addListener(l, streams);
+    }
+
+    public void removeHrvDataListener(HrvDataListener l) {
+        this.dispatcher.removeListener(l);
+    }
+
+    public void startScan() {
+        this.devices.clear();
+        this.connectStartNanos = System.nanoTime();
+        this.transport.startScan();
+    }
+
+    /**
+     * Connect to a device found by a scan, or straight away to one known from an earlier connection.
+     */
+    public void connect(String address) {
+        if (this.connectStartNanos < 0) {
+            this.connectStartNanos = System.nanoTime();
+        }
+        this.deviceAddress = address;
+        this.transport.stopScan();
+        this.transport.connect(address);
+    }
+
+    public void disconnect() {
+        this.transport.disconnect();
+    }
+
+    public boolean isConnected() {
+        return this.transport.isConnected();
+    }
+
+    /**
+     * Queue a command, the future completes once the device acknowledged the write.
+     */
+    public CompletableFuture<Void> sendCommand(COMMANDS cmd) {
+        if (cmd == COMMANDS.START) {
+            setStreaming(true);
+        } else if (cmd == COMMANDS.PAUSE) {
+            setStreaming(false);
+        } else if (cmd == COMMANDS.RESET) {
+            // The previous measurement's intervals, maybe of another subject, don't judge the next ones
+            this.rrFilterReset = true;
+        }
+        return this.commandQueue.send(cmd);
+    }
+
+    private void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        if (this.transport.isConnected()) {
+            this.transport.requestConnectionPriority(connectionPriority());
+        }
+    }
+
+    private LinkParameters.Priority connectionPriority() {
+        return this.streaming ? LinkParameters.Priority.HIGH : LinkParameters.Priority.BALANCED;
+    }
+
+    /**
+     * Queue one of the DUMP_* commands, the future completes with the value the device responded with.
+     */
+    public CompletableFuture<Double> requestParameter(COMMANDS cmd) {
+        CompletableFuture<Double> response = this.commandQueue.request(cmd, new DoubleResponseDecoder());
+        response.thenAccept(new Consumer<Double>() {
+            @Override
+            public void accept(Double value) {
+                fireHRVDataReceived(value);
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Queue DUMP_RR_HISTOGRAM or DUMP_BPM_HISTOGRAM, the future completes with
+     * the device's histogram, indexed by RR interval in ms or by BPM.
+     *
+     * Transfers failing their integrity check are requested again, up to
+     * {@link CommandQueue#DEFAULT_RETRIES} times, before the future fails with
+     * an IOException.
+     */
+    public CompletableFuture<int[]> requestHistogram(COMMANDS cmd) {
+        CompletableFuture<int[]> histogram = new CompletableFuture<>();
+        requestHistogram(cmd, CommandQueue.DEFAULT_RETRIES, histogram);
+        return histogram;
+    }
+
+    private void requestHistogram(final COMMANDS cmd, final int retriesLeft, final CompletableFuture<int[]> histogram) {
+        final HistogramTransferDecoder decoder = new HistogramTransferDecoder();
+        this.commandQueue.request(cmd, decoder).whenComplete(new BiConsumer<int[], Throwable>() {
+            @Override
+            public void accept(int[] bins, Throwable error) {
+                if (error != null) {
+                    histogram.completeExceptionally(error);
+                } else if (bins != null) {
+                    histogram.complete(bins);
+                } else if (retriesLeft > 0) {
+                    corruptedHistogramCount.increment();
+                    requestHistogram(cmd, retriesLeft - 1, histogram);
+                } else {
+                    corruptedHistogramCount.increment();
+                    histogram.completeExceptionally(new IOException(cmd + ": " + decoder.getError()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop delivering live data, the connection can't be used afterwards.
+     */
+    public void close() {
+        this.transport.disconnect();
+        this.commandQueue.cancelAll(new IllegalStateException("Connection closed"));
+        this.scheduler.shutdown();
+        this.dispatcher.stop();
+    }
+
+    /**
+     * Sequence and losses of the packed live signal frames.
+     */
+    public SequenceGapDetector getSignalSequence() {
+        return signalSequence;
+    }
+
+    /**
+     * Sequence and losses of the framed RR intervals.
+     */
+    public SequenceGapDetector getRrSequence() {
+        return rrSequence;
+    }
+
+    /**
+     * Address of the device connected to, or last tried.
+     */
+    public String getDeviceAddress() {
+        return deviceAddress;
+    }
+
+    /**
+     * Status the transport reported the last disconnection with, 0 (success)
+     * for one asked for by {@link #disconnect()}, also of an attempt still connecting.
+     */
+    public int getLastDisconnectStatus() {
+        return lastDisconnectStatus;
+    }
+
+    /**
+     * Time from the start of the scan, or of the connection when there was none,
+     * until the last connection was ready to use, -1 before the first one.
+     */
+    public long getConnectTimeMillis() {
+        long nanos = connectTimeNanos;
+        return nanos < 0 ? -1 : nanos / 1000000;
+    }
+
+    /**
+     * Parameters the link was last reported with, {@link LinkParameters#DEFAULT} before any.
+     */
+    public LinkParameters getLinkParameters() {
+        return link;
+    }
+
+    /**
+     * Bytes of notification payload received, the link.bytes rate is the effective throughput.
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * Recovery of the signal frames missed while disconnected.
+     */
+    public StreamBackfill getSignalBackfill() {
+        return signalBackfill;
+    }
+
+    /**
+     * Recovery of the RR intervals missed while disconnected.
+     */
+    public StreamBackfill getRrBackfill() {
+        return rrBackfill;
+    }
+
+    public long getMalformedFrameCount() {
+        return malformedFrameCount.get();
+    }
+
+    /**
+     * Pass the RR intervals through filter before they reach the listeners, null for none.
+     * The filter is reset when {@link COMMANDS#RESET} starts a new measurement.
+     */
+    public void setRrFilter(RrFilter filter) {
+        this.rrFilter = filter;
+    }
+
+    public RrFilter getRrFilter() {
+        return rrFilter;
+    }
+
+    @Override
+    public void onDeviceFound(String name, String address) {
+        if (this.devices.add(address)) {
+            fireDeviceFound(name, address);
+        }
+    }
+
+    @Override
+    public void onScanTimeout() {
+        this.connectStartNanos = -1;
+        fireScanTimedOut();
+    }
+
+    @Override
+    public void onConnected() {
+        // The PHY and the interval are link layer procedures, only the MTU
+        // exchange has to complete before the subscriptions are written
+        this.link = this.transport.getLinkParameters();
+        this.transport.setPreferredPhy(LinkParameters.PHY_2M);
+        this.transport.requestConnectionPriority(connectionPriority());
+        this.linkSetup = true;
+        if (!this.transport.requestMtu(LinkParameters.MAX_MTU)) {
+            onMtuChanged(this.link.getMtu());
+        }
+    }
+
+    @Override
+    public void onMtuChanged(int mtu) {
+        if (!this.linkSetup) return;
+        this.linkSetup = false;
+
+        this.liveSignalDecoder.setMtu(mtu);
+        this.linkMtu = mtu;
+        this.pendingSubscriptions.clear();
+        for (UUID uuid : notificationHandlers.keySet()) {
+            this.pendingSubscriptions.put(uuid, CommandQueue.DEFAULT_RETRIES);
+        }
+        for (UUID uuid : notificationHandlers.keySet()) {
+            this.transport.subscribe(uuid);
+        }
+    }
+
+    @Override
+    public void onSubscribed(UUID characteristic, boolean success) {
+        Integer retriesLeft = this.pendingSubscriptions.get(characteristic);
+        if (retriesLeft == null) return;
+
+        if (!success) {
+            this.failedSubscriptionCount.increment();
+            if (retriesLeft > 0 && this.transport.isConnected()) {
+                this.pendingSubscriptions.put(characteristic, retriesLeft - 1);
+                this.transport.subscribe(characteristic);
+                return;
+            }
+        }
+        this.pendingSubscriptions.remove(characteristic);
+        if (!this.pendingSubscriptions.isEmpty()) return;
+
+        // Every descriptor is written, the commands have the link to themselves
+        if (this.linkMtu > LiveSignalFrameDecoder.DEFAULT_MTU) {
+            this.commandQueue.send(COMMANDS.LINK_MTU, this.linkMtu);
+        }
+        if (this.connectStartNanos >= 0) {
+            this.connectTimeNanos = System.nanoTime() - this.connectStartNanos;
+            this.connectTime.record(this.connectTimeNanos);
+            this.connectStartNanos = -1;
+        }
+        fireConnected();
+    }
+
+    @Override
+    public void onLinkChanged(LinkParameters link) {
+        this.link = link;
+    }
+
+    @Override
+    public void onDisconnected(int status) {
+        this.lastDisconnectStatus = status;
+        this.linkSetup = false;
+        this.pendingSubscriptions.clear();
+        this.link = LinkParameters.DEFAULT;
+        this.connectStartNanos = -1;
+        // Delivers what was recovered so far, the next gap is backfilled again
+        this.signalBackfill.onDisconnected();
+        this.rrBackfill.onDisconnected();
+        this.commandQueue.cancelAll(new IllegalStateException("Disconnected with status " + status));
+        fireDisconnected();
+    }
+
+    @Override
+    public void onCommandWritten(boolean success) {
+        this.commandQueue.onWriteComplete(success);
+    }
+
+    @Override
+    public void onNotification(UUID characteristic, byte[] data) {
+        NotificationHandler handler = notificationHandlers.get(characteristic);
+        this.receivedBytes.add(data.length);
+        if (handler != null) {
+            handler.onNotification(data);
+        }
+    }
+
+    private void fireDisconnected() {
+        for (BLEControllerListener l : this.listeners)
+            l.BLEControllerDisconnected();
+    }
+
+    private void fireConnected() {
+        for (BLEControllerListener l : this.listeners)
+            l.BLEControllerConnected();
+    }
+
+    private void fireScanTimedOut() {
+        for (BLEControllerListener l : this.listeners)
+            l.BLEScanTimedOut();
+    }
+
+    private void fireDeviceFound(String name, String address) {
+        for (BLEControllerListener l : this.listeners)
+            l.BLEDeviceFound(name, address);
+    }
+
+    private void fireHRVDataReceived(double data) {
+        for (BLEControllerListener l : this.listeners)
+            l.BLEHRVParametersReceived(data);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.hrvapplication;
+
+/**
+ * Receiver of the decoded live streams, see {@link HrvConnection#addHrvDataListener}.
+ *
+ * Called on the consumer thread of the connection's {@link LiveDataDispatcher},
+ * one listener after the other, so implementations must return quickly to
+ * keep the dispatcher's queue from filling up. Only the streams the listener
+ * subscribed to are delivered.
+ */
+public interface HrvDataListener {
+    /**
+     * @param samples Reused by the connection, only valid during the call.
+     * @param timestamp Time of the first sample in ms.
+     */
+    default void onEcgSamples(int[] samples, int offset, int length, long timestamp) {
+    }
+
+    /**
+     * @param rr Interval between the last two beats in ms.
+     * @param timestamp Time of the beat closing the interval in ms.
+     */
+    default void onRrInterval(int rr, long timestamp) {
+    }
+
+    default void onBpm(int bpm) {
+    }
+
+    /**
+     * Data of the stream was lost from timestamp on for durationMs. For ECG a
+     * gap of up to {@link HrvConnection#MAX_INTERPOLATED_SAMPLES} samples is
+     * then filled with samples interpolated between its ends.
+     */
+    default void onGap(HrvStream stream, long timestamp, long durationMs) {
+    }
+}
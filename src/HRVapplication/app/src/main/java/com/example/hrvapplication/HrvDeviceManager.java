@@ -0,0 +1,221 @@
+package com.example.hrvapplication;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingests from several HRV peripherals at once, one {@link HrvSession} each.
+ *
+ * Sessions share nothing: each has its own transport with its GATT client
+ * and operation queue, its own decode pipeline and dispatcher thread, metrics
+ * and statistics, so the devices stream in parallel and a slow one doesn't
+ * hold up the others. Only the connection attempts are made one at a time,
+ * as the Bluetooth stack handles a single pending connection: the next one
+ * starts once the previous one connected, failed or had
+ * {@link #CONNECT_SLOT_MS} to do so.
+ *
+ * A session that lost its link stays in the manager, {@link #connect(String)}
+ * it again to resume; the connection backfills what was missed. The manager
+ * has the only connection to each of its devices, one made besides it to the
+ * same address would open a second GATT client to the device.
+ */
+public class HrvDeviceManager {
+    /** Links kept up at once by default, about what phone Bluetooth controllers manage. */
+    public static final int DEFAULT_MAX_DEVICES = 7;
+    /** Time a connection attempt has before the next device's attempt starts. */
+    public static final long CONNECT_SLOT_MS = 5000;
+
+    public interface ConnectionFactory {
+        /**
+         * A new connection for the device at address, configured as the caller needs it.
+         */
+        HrvConnection create(String address);
+    }
+
+    private final ConnectionFactory factory;
+    private final int maxDevices;
+    private final LinkedHashMap<String, HrvSession> sessions = new LinkedHashMap<>();
+    private final ArrayDeque<HrvSession> pendingConnects = new ArrayDeque<>();
+    private HrvSession connecting;
+    private ScheduledFuture<?> connectSlot;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    public HrvDeviceManager(ConnectionFactory factory) {
+        this(factory, DEFAULT_MAX_DEVICES);
+    }
+
+    public HrvDeviceManager(ConnectionFactory factory, int maxDevices) {
+        this.factory = factory;
+        this.maxDevices = maxDevices;
+    }
+
+    /**
+     * Connect to the device at address, once the attempts queued before are done.
+     *
+     * @return The device's session, the existing one if there is one.
+     * @throws IllegalStateException if maxDevices sessions exist already.
+     */
+    public synchronized HrvSession connect(String address) {
+        HrvSession session = sessions.get(address);
+        if (session == null) {
+            if (sessions.size() >= maxDevices) {
+                throw new IllegalStateException("Already ingesting from " + maxDevices + " devices");
+            }
+            session = createSession(address);
+            sessions.put(address, session);
+        }
+
+        if (!session.isConnected() && session != connecting && !pendingConnects.contains(session)) {
+            pendingConnects.add(session);
+            nextConnect();
+        }
+        return session;
+    }
+
+    private HrvSession createSession(String address) {
+        final HrvSession session = new HrvSession(address, factory.create(address));
+        session.getConnection().addBLEControllerListener(new BLEControllerListener() {
+            @Override
+            public void BLEControllerConnected() {
+                connectAttemptDone(session);
+            }
+
+            @Override
+            public void BLEControllerDisconnected() {
+                connectAttemptDone(session);
+            }
+
+            @Override
+            public void BLEDeviceFound(String name, String address) {
+            }
+
+            @Override
+            public void BLEDataReceived(byte[] data) {
+            }
+
+            @Override
+            public void BLEHRVParametersReceived(double data) {
+            }
+        });
+        return session;
+    }
+
+    private void nextConnect() {
+        if (connecting != null) return;
+
+        final HrvSession session = pendingConnects.poll();
+        if (session == null) return;
+        connecting = session;
+        connectSlot = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                // The attempt may go on in the background, the next device doesn't wait for it
+                connectAttemptDone(session);
+            }
+        }, CONNECT_SLOT_MS, TimeUnit.MILLISECONDS);
+        session.getConnection().connect(session.getAddress());
+    }
+
+    private synchronized void connectAttemptDone(HrvSession session) {
+        if (session != connecting) return;
+
+        connecting = null;
+        if (connectSlot != null) {
+            connectSlot.cancel(false);
+            connectSlot = null;
+        }
+        nextConnect();
+    }
+
+    /**
+     * Disconnect from the device at address and close its session.
+     */
+    public void disconnect(String address) {
+        HrvSession session;
+        synchronized (this) {
+            session = sessions.remove(address);
+            if (session == null) return;
+            pendingConnects.remove(session);
+        }
+        session.close();
+        connectAttemptDone(session);
+    }
+
+    public synchronized HrvSession getSession(String address) {
+        return sessions.get(address);
+    }
+
+    /**
+     * The sessions in the order they were created.
+     */
+    public synchronized List<HrvSession> getSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Queue a command on every connected device, e.g. to start all measurements together.
+     */
+    public CompletableFuture<Void> sendCommand(COMMANDS cmd) {
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (HrvSession session : getSessions()) {
+            if (session.isConnected()) {
+                writes.add(session.getConnection().sendCommand(cmd));
+            }
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Sum of the counter over all devices, e.g. link.bytes for the total ingest.
+     */
+    public long getTotalCount(String counter) {
+        long total = 0;
+        for (HrvSession session : getSessions()) {
+            total += session.getMetrics().counter(counter).get();
+        }
+        return total;
+    }
+
+    /**
+     * Compute the counter rates of every device, typically once a second.
+     */
+    public void updateRates() {
+        for (HrvSession session : getSessions()) {
+            session.getMetrics().updateRates();
+        }
+    }
+
+    /**
+     * The metrics of every device, by address.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        String separator = "";
+        for (HrvSession session : getSessions()) {
+            json.append(separator).append('"').append(session.getAddress()).append("\":").append(session.getMetrics().toJson());
+            separator = ",";
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * Close every session, the manager can't be used afterwards.
+     */
+    public void close() {
+        for (HrvSession session : getSessions()) {
+            disconnect(session.getAddress());
+        }
+        scheduler.shutdown();
+    }
+}
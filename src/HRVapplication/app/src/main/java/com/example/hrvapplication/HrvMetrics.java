@@ -0,0 +1,254 @@
+package com.example.hrvapplication;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, latency histograms and gauges of the live data path.
+ *
+ * Recording is lock free and allocation free: a counter is a striped
+ * {@link LongAdder}, a latency one increment in a log-linear histogram.
+ * Reading, for the debug overlay or a JSON dump, walks the registered metrics
+ * in registration order.
+ */
+public class HrvMetrics {
+    /**
+     * Event count, with its rate per second between the last two {@link #updateRates()}.
+     */
+    public static final class Counter {
+        private final LongAdder count = new LongAdder();
+        private long lastCount = 0;
+        private long lastNanos = 0;
+        private volatile double rate = 0.0;
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long n) {
+            count.add(n);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        void updateRate(long nowNanos) {
+            long value = count.sum();
+            if (lastNanos != 0 && nowNanos > lastNanos) {
+                rate = (value - lastCount) * 1e9 / (nowNanos - lastNanos);
+            }
+            lastCount = value;
+            lastNanos = nowNanos;
+        }
+
+        void reset() {
+            count.reset();
+            lastCount = 0;
+            rate = 0.0;
+        }
+    }
+
+    /**
+     * Histogram of durations in ns. Buckets are exact below 16 ns, above that
+     * each power of 2 is split into 16, so values are known within 6.25%.
+     */
+    public static final class Latency {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        // Up to 2^40 ns, about 18 minutes
+        private static final int MAX_EXPONENT = 40;
+        static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) << SUB_BITS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        public void record(long nanos) {
+            counts.incrementAndGet(bucket(nanos));
+        }
+
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return value < 0 ? 0 : (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            if (exponent > MAX_EXPONENT) {
+                return BUCKETS - 1;
+            }
+            return ((exponent - SUB_BITS + 1) << SUB_BITS) + (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+        }
+
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+            return (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << (exponent - SUB_BITS);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; ++i) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given fraction of the durations, 0 if there are none.
+         */
+        public long getPercentile(double fraction) {
+            long count = getCount();
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; ++i) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : lowerBound(i);
+                }
+            }
+            return lowerBound(BUCKETS - 1);
+        }
+
+        public long getMax() {
+            return getPercentile(1.0);
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; ++i) {
+                counts.set(i, 0);
+            }
+        }
+    }
+
+    /**
+     * Value read when the metrics are, e.g. a queue depth.
+     */
+    public interface Gauge {
+        long get();
+    }
+
+    private final LinkedHashMap<String, Counter> counters = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Latency> latencies = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Gauge> gauges = new LinkedHashMap<>();
+
+    /**
+     * The counter of that name, created on first use.
+     */
+    public synchronized Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * The latency histogram of that name, created on first use.
+     */
+    public synchronized Latency latency(String name) {
+        Latency latency = latencies.get(name);
+        if (latency == null) {
+            latency = new Latency();
+            latencies.put(name, latency);
+        }
+        return latency;
+    }
+
+    /**
+     * Register a histogram kept by the component measuring it, replacing any of that name.
+     */
+    public synchronized void register(String name, Latency latency) {
+        latencies.put(name, latency);
+    }
+
+    public synchronized void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Remove the histogram or gauge of that name if it is still registered as
+     * metric, e.g. when the component owning it goes away before these metrics do.
+     */
+    public synchronized void unregister(String name, Object metric) {
+        latencies.remove(name, metric);
+        gauges.remove(name, metric);
+    }
+
+    /**
+     * Compute the counter rates since the last call, typically once a second.
+     */
+    public synchronized void updateRates() {
+        long now = System.nanoTime();
+        for (Counter counter : counters.values()) {
+            counter.updateRate(now);
+        }
+    }
+
+    /**
+     * Zero the counters and histograms, e.g. when a measurement starts.
+     */
+    public synchronized void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (Latency latency : latencies.values()) {
+            latency.reset();
+        }
+    }
+
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\"counters\":{");
+        String separator = "";
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            json.append(separator).append('"').append(e.getKey()).append("\":{\"count\":").append(e.getValue().get())
+                    .append(",\"rate\":").append(String.format(Locale.US, "%.1f", e.getValue().getRate())).append('}');
+            separator = ",";
+        }
+        json.append("},\"latencies\":{");
+        separator = "";
+        for (Map.Entry<String, Latency> e : latencies.entrySet()) {
+            Latency l = e.getValue();
+            json.append(separator).append('"').append(e.getKey()).append("\":{\"count\":").append(l.getCount())
+                    .append(",\"p50\":").append(l.getPercentile(0.5))
+                    .append(",\"p99\":").append(l.getPercentile(0.99))
+                    .append(",\"p999\":").append(l.getPercentile(0.999))
+                    .append(",\"max\":").append(l.getMax()).append('}');
+            separator = ",";
+        }
+        json.append("},\"gauges\":{");
+        separator = "";
+        for (Map.Entry<String, Gauge> e : gauges.entrySet()) {
+            json.append(separator).append('"').append(e.getKey()).append("\":").append(e.getValue().get());
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * One line per metric, latencies in us, for the debug overlay.
+     */
+    public synchronized String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            text.append(String.format(Locale.US, "%-20s %10d %8.1f/s%n", e.getKey(), e.getValue().get(), e.getValue().getRate()));
+        }
+        for (Map.Entry<String, Latency> e : latencies.entrySet()) {
+            Latency l = e.getValue();
+            text.append(String.format(Locale.US, "%-20s p50 %.1f p99 %.1f max %.1f us%n", e.getKey(),
+                    l.getPercentile(0.5) / 1000.0, l.getPercentile(0.99) / 1000.0, l.getMax() / 1000.0));
+        }
+        for (Map.Entry<String, Gauge> e : gauges.entrySet()) {
+            text.append(String.format(Locale.US, "%-20s %10d%n", e.getKey(), e.getValue().get()));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.hrvapplication;
+
+import java.util.UUID;
+
+/**
+ * GATT profile of the HRV peripheral, must match the UUIDs in hrv.ino.
+ */
+public final class HrvProfile {
+    public static final String DEVICE_NAME = "Nano 33 BLE Rev2 HRV";
+
+    public static final UUID SERVICE = UUID.fromString("0777dfa9-204b-11ef-8fea-646ee0fcbb46");
+    public static final UUID COMMAND = UUID.fromString("07dba383-204b-11ef-a096-646ee0fcbb46");
+
+    public static final UUID RESPONSE = UUID.fromString("5f0b1b60-2177-11ef-971d-646ee0fcbb46");
+    public static final UUID BPM = UUID.fromString("45ed7702-21d5-11ef-8771-646ee0fcbb46");
+    public static final UUID LIVE_SIGNAL = UUID.fromString("f0a7ba94-2426-11ef-bb71-646ee0fcbb46");
+    public static final UUID LIVE_RR = UUID.fromString("f187ef45-2426-11ef-bb71-646ee0fcbb46");
+
+    public static final UUID CLIENT_CHARACTERISTIC_CONFIG = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    private HrvProfile() {
+    }
+}
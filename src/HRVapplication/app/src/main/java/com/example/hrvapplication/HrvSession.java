@@ -0,0 +1,98 @@
+package com.example.hrvapplication;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * One monitored subject of a {@link HrvDeviceManager}.
+ *
+ * Everything belonging to a single peripheral: its connection, with the GATT
+ * client, decode pipeline and metrics, the HRV statistics of its RR intervals
+ * and, while recording, its session file. Nothing is shared with the other
+ * sessions, so their data never mixes.
+ */
+public class HrvSession {
+    private final String address;
+    private final HrvConnection connection;
+    private final HrvStatistics statistics = new HrvStatistics();
+    private SessionRecorder recorder;
+
+    HrvSession(String address, HrvConnection connection) {
+        this.address = address;
+        this.connection = connection;
+        this.connection.addHrvDataListener(new HrvDataListener() {
+            @Override
+            public void onRrInterval(int rr, long timestamp) {
+                statistics.addRrInterval(rr);
+            }
+
+            @Override
+            public void onGap(HrvStream stream, long timestamp, long durationMs) {
+                statistics.markGap(durationMs);
+            }
+        }, HrvStream.RR);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public HrvConnection getConnection() {
+        return connection;
+    }
+
+    public boolean isConnected() {
+        return connection.isConnected();
+    }
+
+    /**
+     * Statistics of the RR intervals received from this device.
+     */
+    public HrvStatistics getStatistics() {
+        return statistics;
+    }
+
+    public HrvMetrics getMetrics() {
+        return connection.getMetrics();
+    }
+
+    /**
+     * Record the live streams of this device to file until {@link #stopRecording()}.
+     */
+    public synchronized void startRecording(File file) throws IOException {
+        if (recorder != null) return;
+
+        recorder = new SessionRecorder(file, System.currentTimeMillis());
+        connection.addHrvDataListener(recorder);
+    }
+
+    /**
+     * @return Why the recording is incomplete, null if it was written completely.
+     */
+    public synchronized IOException stopRecording() {
+        if (recorder == null) return null;
+
+        connection.removeHrvDataListener(recorder);
+        IOException failure;
+        try {
+            recorder.close();
+            failure = recorder.getFailure();
+        } catch (IOException e) {
+            failure = e;
+        }
+        recorder = null;
+        return failure;
+    }
+
+    public synchronized boolean isRecording() {
+        return recorder != null;
+    }
+
+    /**
+     * Stop recording and close the connection, the session can't be used afterwards.
+     */
+    public void close() {
+        stopRecording();
+        connection.close();
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.hrvapplication;
+
+import java.util.Arrays;
+
+/**
+ * Streaming computation of the HRV parameters hrv.ino reports through the DUMP_* commands.
+ *
+ * Every update is O(1) so the current values can be read at any time during
+ * a recording instead of asking the device for them once it is paused.
+ * Definitions follow hrv.ino: RMSSD over all successive differences, SDANN as
+ * the population standard deviation of the 5 minute segment means and HTI as
+ * the number of intervals divided by the height of the 1ms RR histogram.
+ */
+public class HrvStatistics {
+    public static final long SDANN_INTERVAL_MS = 5 * 60 * 1000;
+    public static final int RR_HIST_NUM_BINS = 1500;
+
+    // RMSSD, running mean of the squared successive differences
+    private int prevRrInterval = 0;
+    private long rrDifferenceCount = 0;
+    private double meanSquaredDifference = 0.0;
+    private long beatCount = 0;
+
+    // SDANN, Welford's algorithm over the completed segment means
+    private long segmentElapsed = 0;
+    private long segmentSum = 0;
+    private int segmentCount = 0;
+    private int annCount = 0;
+    private double annMean = 0.0;
+    private double annM2 = 0.0;
+
+    // HTI
+    private final int[] rrIntervalsHistogram = new int[RR_HIST_NUM_BINS];
+    private int histogramHeight = 0;
+    private long histogramDensity = 0;
+
+    /**
+     * Add the next RR interval. Time is measured by the intervals themselves,
+     * so a segment closes once the intervals added to it span 5 minutes.
+     */
+    public synchronized void addRrInterval(int rrInterval) {
+        if (rrInterval <= 0) return;
+
+        if (prevRrInterval != 0) {
+            double diff = rrInterval - prevRrInterval;
+            rrDifferenceCount++;
+            meanSquaredDifference += (diff * diff - meanSquaredDifference) / rrDifferenceCount;
+        }
+        prevRrInterval = rrInterval;
+        beatCount++;
+
+        segmentSum += rrInterval;
+        segmentCount++;
+        advanceSegment(rrInterval);
+
+        if (rrInterval < RR_HIST_NUM_BINS) {
+            int height = ++rrIntervalsHistogram[rrInterval];
+            if (height > histogramHeight) {
+                histogramHeight = height;
+            }
+            histogramDensity++;
+        }
+    }
+
+    /**
+     * Intervals spanning durationMs were lost: the next interval isn't
+     * compared to the last one, and the time still counts towards the segment.
+     * A segment without any interval is left out of SDANN.
+     */
+    public synchronized void markGap(long durationMs) {
+        prevRrInterval = 0;
+        advanceSegment(Math.max(0, durationMs));
+    }
+
+    private void advanceSegment(long ms) {
+        segmentElapsed += ms;
+        if (segmentElapsed >= SDANN_INTERVAL_MS) {
+            if (segmentCount > 0) {
+                addSegmentMean((double) segmentSum / segmentCount);
+            }
+            segmentElapsed = 0;
+            segmentSum = 0;
+            segmentCount = 0;
+        }
+    }
+
+    private void addSegmentMean(double mean) {
+        annCount++;
+        double delta = mean - annMean;
+        annMean += delta / annCount;
+        annM2 += delta * (mean - annMean);
+    }
+
+    public synchronized double getRmssd() {
+        return Math.sqrt(meanSquaredDifference);
+    }
+
+    public synchronized double getSdann() {
+        return annCount == 0 ? 0.0 : Math.sqrt(annM2 / annCount);
+    }
+
+    public synchronized double getHti() {
+        return histogramHeight == 0 ? 0.0 : (double) histogramDensity / histogramHeight;
+    }
+
+    public synchronized long getBeatCount() {
+        return beatCount;
+    }
+
+    public synchronized int getSegmentCount() {
+        return annCount;
+    }
+
+    public synchronized void reset() {
+        prevRrInterval = 0;
+        rrDifferenceCount = 0;
+        meanSquaredDifference = 0.0;
+        beatCount = 0;
+
+        segmentElapsed = 0;
+        segmentSum = 0;
+        segmentCount = 0;
+        annCount = 0;
+        annMean = 0.0;
+        annM2 = 0.0;
+
+        Arrays.fill(rrIntervalsHistogram, 0);
+        histogramHeight = 0;
+        histogramDensity = 0;
+    }
+}
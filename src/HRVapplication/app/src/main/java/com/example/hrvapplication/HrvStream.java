@@ -0,0 +1,10 @@
+package com.example.hrvapplication;
+
+/**
+ * The live streams of the HRV peripheral a {@link HrvDataListener} can subscribe to.
+ */
+public enum HrvStream {
+    ECG,
+    RR,
+    BPM
+}
@@ -0,0 +1,94 @@
+package com.example.hrvapplication;
+
+import java.util.UUID;
+
+/**
+ * Link to an HRV peripheral.
+ *
+ * Implemented on top of Android's GATT stack by {@link AndroidGattTransport}
+ * and in-process by {@link SimulatedHrvPeripheral}. Listener callbacks may
+ * arrive on any thread, like the Binder thread GATT callbacks arrive on.
+ */
+public interface HrvTransport {
+    interface Listener {
+        void onDeviceFound(String name, String address);
+
+        /**
+         * The scan ended without a device being connected to.
+         */
+        void onScanTimeout();
+
+        /**
+         * Connected and every characteristic of {@link HrvProfile} was discovered.
+         */
+        void onConnected();
+
+        void onDisconnected(int status);
+
+        void onNotification(UUID characteristic, byte[] value);
+
+        void onCommandWritten(boolean success);
+
+        /**
+         * The subscription requested by {@link #subscribe} was written, or could not be.
+         */
+        void onSubscribed(UUID characteristic, boolean success);
+
+        /**
+         * The MTU exchange started by {@link #requestMtu} finished, successfully or not.
+         */
+        void onMtuChanged(int mtu);
+
+        /**
+         * Any of the link parameters changed, the MTU included.
+         */
+        void onLinkChanged(LinkParameters link);
+    }
+
+    void setListener(Listener listener);
+
+    /**
+     * Look for advertising HRV peripherals until one is connected to or the scan times out.
+     */
+    void startScan();
+
+    void stopScan();
+
+    /**
+     * Connect to a device found by a scan, or known from an earlier connection.
+     */
+    void connect(String address);
+
+    /**
+     * Enable notifications of a characteristic, subscriptions are applied in call order
+     * and each is reported through {@link Listener#onSubscribed}.
+     */
+    void subscribe(UUID characteristic);
+
+    /**
+     * Write to the command characteristic, completion is reported through {@link Listener#onCommandWritten}.
+     *
+     * @return false if the write could not be issued.
+     */
+    boolean writeCommand(byte[] payload);
+
+    /**
+     * Start the MTU exchange, answered through {@link Listener#onMtuChanged}.
+     *
+     * @return false if the exchange could not be started.
+     */
+    boolean requestMtu(int mtu);
+
+    void requestConnectionPriority(LinkParameters.Priority priority);
+
+    /**
+     * Ask for a PHY in both directions, used if the peripheral supports it too.
+     */
+    void setPreferredPhy(int phy);
+
+    LinkParameters getLinkParameters();
+
+    void disconnect();
+
+    boolean isConnected();
+}
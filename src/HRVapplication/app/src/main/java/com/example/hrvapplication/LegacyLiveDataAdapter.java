@@ -0,0 +1,33 @@
+package com.example.hrvapplication;
+
+/**
+ * Delivers the live streams to a {@link BLEControllerListener} through the
+ * String tagged {@link BLEControllerListener#BLELiveDataReceived}, one call per value.
+ *
+ * Only meant for listeners that were not migrated to {@link HrvDataListener} yet.
+ */
+@SuppressWarnings("deprecation")
+public class LegacyLiveDataAdapter implements HrvDataListener {
+    private final BLEControllerListener listener;
+
+    public LegacyLiveDataAdapter(BLEControllerListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onEcgSamples(int[] samples, int offset, int length, long timestamp) {
+        for (int i = offset; i < offset + length; ++i) {
+            listener.BLELiveDataReceived(samples[i], "SIG");
+        }
+    }
+
+    @Override
+    public void onRrInterval(int rr, long timestamp) {
+        listener.BLELiveDataReceived(rr, "RR");
+    }
+
+    @Override
+    public void onBpm(int bpm) {
+        listener.BLELiveDataReceived(bpm, "BPM");
+    }
+}
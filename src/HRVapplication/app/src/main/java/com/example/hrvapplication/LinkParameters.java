@@ -0,0 +1,102 @@
+package com.example.hrvapplication;
+
+import java.util.Locale;
+
+/**
+ * Negotiated parameters of a BLE link: ATT MTU, PHY and connection interval.
+ *
+ * Immutable, a transport reports every change as a new instance through
+ * {@link HrvTransport.Listener#onLinkChanged}.
+ */
+public final class LinkParameters {
+    // Values of BluetoothDevice.PHY_LE_*
+    public static final int PHY_1M = 1;
+    public static final int PHY_2M = 2;
+    public static final int PHY_CODED = 3;
+
+    // Largest ATT MTU Android asks for
+    public static final int MAX_MTU = 517;
+
+    /**
+     * Connection priorities an Android central can ask for, with the range
+     * of connection intervals each one stands for.
+     */
+    public enum Priority {
+        BALANCED(30, 50),
+        HIGH(11.25, 15),
+        LOW_POWER(100, 125);
+
+        private final double minIntervalMs;
+        private final double maxIntervalMs;
+
+        Priority(double minIntervalMs, double maxIntervalMs) {
+            this.minIntervalMs = minIntervalMs;
+            this.maxIntervalMs = maxIntervalMs;
+        }
+
+        public double getMinIntervalMs() {
+            return minIntervalMs;
+        }
+
+        public double getMaxIntervalMs() {
+            return maxIntervalMs;
+        }
+    }
+
+    public static final LinkParameters DEFAULT = new LinkParameters(LiveSignalFrameDecoder.DEFAULT_MTU,
+            PHY_1M, PHY_1M, Priority.BALANCED, Priority.BALANCED.getMaxIntervalMs());
+
+    private final int mtu;
+    private final int txPhy;
+    private final int rxPhy;
+    private final Priority priority;
+    private final double connectionIntervalMs;
+
+    /**
+     * @param connectionIntervalMs As reported by the link, or the longest the priority allows when it isn't.
+     */
+    public LinkParameters(int mtu, int txPhy, int rxPhy, Priority priority, double connectionIntervalMs) {
+        this.mtu = mtu;
+        this.txPhy = txPhy;
+        this.rxPhy = rxPhy;
+        this.priority = priority;
+        this.connectionIntervalMs = connectionIntervalMs;
+    }
+
+    public LinkParameters withMtu(int mtu) {
+        return new LinkParameters(mtu, txPhy, rxPhy, priority, connectionIntervalMs);
+    }
+
+    public LinkParameters withPhy(int txPhy, int rxPhy) {
+        return new LinkParameters(mtu, txPhy, rxPhy, priority, connectionIntervalMs);
+    }
+
+    public LinkParameters withPriority(Priority priority, double connectionIntervalMs) {
+        return new LinkParameters(mtu, txPhy, rxPhy, priority, connectionIntervalMs);
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public int getTxPhy() {
+        return txPhy;
+    }
+
+    public int getRxPhy() {
+        return rxPhy;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public double getConnectionIntervalMs() {
+        return connectionIntervalMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "MTU %d, PHY %d/%d, %s %.2f ms", mtu, txPhy, rxPhy, priority, connectionIntervalMs);
+    }
+}
@@ -0,0 +1,416 @@
+package com.example.hrvapplication;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands the live streams from the notification thread to the {@link HrvDataListener}s.
+ *
+ * The notification thread is the only producer: it copies each event into a
+ * preallocated slot of a bounded ring and returns, the listeners are called
+ * from a dedicated consumer thread. What happens when the listeners fall
+ * behind and the ring fills up is set by the {@link Backpressure} policy.
+ *
+ * Listeners can be added and removed from any thread, registration copies the
+ * listener arrays so the consumer never sees them change while delivering.
+ */
+public class LiveDataDispatcher {
+    public enum Backpressure {
+        /** Drop the oldest queued event to make room for the new one. */
+        DROP_OLDEST,
+        /**
+         * Merge new events into one pending slot until there is room again:
+         * ECG samples and RR intervals are appended, BPM keeps the latest value.
+         * The pending slot is published with the next event once there is room,
+         * events that don't fit into it are dropped.
+         */
+        COALESCE,
+        /** Make the producer wait for room. */
+        BLOCK
+    }
+
+    public static final int DEFAULT_CAPACITY = 256;
+    // A packed frame carries at most 255 samples
+    public static final int SLOT_SIZE = 256;
+
+    private static final int SPIN_TRIES = 16;
+
+    private static final int TYPE_ECG = 0;
+    private static final int TYPE_RR = 1;
+    private static final int TYPE_BPM = 2;
+    private static final int TYPE_GAP = 3;
+
+    private static final HrvDataListener[] NO_LISTENERS = new HrvDataListener[0];
+    private static final HrvStream[] STREAMS = HrvStream.values();
+
+    private static final class Slot {
+        int type;
+        int length;
+        long timestamp;
+        long publishedNanos;
+        final int[] values = new int[SLOT_SIZE];
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final Backpressure backpressure;
+
+    private final AtomicLong writeSeq = new AtomicLong();
+    private final AtomicLong readSeq = new AtomicLong();
+    // Producer side, the slot at writeSeq holds events that did not fit yet
+    private boolean stashed = false;
+
+    private volatile HrvDataListener[] ecgListeners = NO_LISTENERS;
+    private volatile HrvDataListener[] rrListeners = NO_LISTENERS;
+    private volatile HrvDataListener[] bpmListeners = NO_LISTENERS;
+
+    // Producer side, the stream and duration of a gap
+    private final int[] gap = new int[2];
+
+    private final Thread consumer;
+    private final Slot scratch = new Slot();
+    private volatile boolean consumerWaiting = false;
+    private volatile boolean consumerBusy = false;
+    private volatile boolean running = true;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    // Time from publishing to delivery, and spent in the listeners
+    private final HrvMetrics.Latency latency = new HrvMetrics.Latency();
+    private final HrvMetrics.Latency fanOutTime = new HrvMetrics.Latency();
+
+    public LiveDataDispatcher() {
+        this(DEFAULT_CAPACITY, Backpressure.DROP_OLDEST);
+    }
+
+    /**
+     * @param capacity Number of slots, rounded up to a power of 2.
+     */
+    public LiveDataDispatcher(int capacity, Backpressure backpressure) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; ++i) {
+            this.slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.backpressure = backpressure;
+
+        this.consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "HrvLiveData");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    /**
+     * Deliver the given streams to l, or all of them when none are given.
+     */
+    public synchronized void addListener(HrvDataListener l, HrvStream... streams) {
+        if (streams.length == 0) {
+            streams = HrvStream.values();
+        }
+        for (HrvStream stream : streams) {
+            switch (stream) {
+                case ECG:
+                    ecgListeners = with(ecgListeners, l);
+                    break;
+                case RR:
+                    rrListeners = with(rrListeners, l);
+                    break;
+                case BPM:
+                    bpmListeners = with(bpmListeners, l);
+                    break;
+            }
+        }
+    }
+
+    public synchronized void removeListener(HrvDataListener l) {
+        ecgListeners = without(ecgListeners, l);
+        rrListeners = without(rrListeners, l);
+        bpmListeners = without(bpmListeners, l);
+    }
+
+    public boolean hasListeners(HrvStream stream) {
+        switch (stream) {
+            case ECG:
+                return ecgListeners.length > 0;
+            case RR:
+                return rrListeners.length > 0;
+            default:
+                return bpmListeners.length > 0;
+        }
+    }
+
+    private static HrvDataListener[] with(HrvDataListener[] listeners, HrvDataListener l) {
+        for (HrvDataListener existing : listeners) {
+            if (existing == l) return listeners;
+        }
+        HrvDataListener[] copy = new HrvDataListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, copy, 0, listeners.length);
+        copy[listeners.length] = l;
+        return copy;
+    }
+
+    private static HrvDataListener[] without(HrvDataListener[] listeners, HrvDataListener l) {
+        for (int i = 0; i < listeners.length; ++i) {
+            if (listeners[i] == l) {
+                HrvDataListener[] copy = new HrvDataListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, copy, 0, i);
+                System.arraycopy(listeners, i + 1, copy, i, listeners.length - i - 1);
+                return copy;
+            }
+        }
+        return listeners;
+    }
+
+    // Producer side, only ever called from the notification thread
+
+    public void publishEcg(int[] samples, int offset, int length, long timestamp) {
+        if (ecgListeners.length == 0) return;
+        for (int done = 0; done < length; done += SLOT_SIZE) {
+            publish(TYPE_ECG, samples, offset + done, Math.min(SLOT_SIZE, length - done), timestamp);
+        }
+    }
+
+    public void publishRrInterval(int rr, long timestamp) {
+        if (rrListeners.length == 0) return;
+        publish(TYPE_RR, null, 0, rr, timestamp);
+    }
+
+    public void publishBpm(int bpm) {
+        if (bpmListeners.length == 0) return;
+        publish(TYPE_BPM, null, 0, bpm, 0);
+    }
+
+    public void publishGap(HrvStream stream, long timestamp, long durationMs) {
+        if (!hasListeners(stream)) return;
+        gap[0] = stream.ordinal();
+        gap[1] = (int) Math.min(Integer.MAX_VALUE, durationMs);
+        publish(TYPE_GAP, gap, 0, gap.length, timestamp);
+    }
+
+    /**
+     * @param values null for a single value, passed in length.
+     */
+    private void publish(int type, int[] values, int offset, int length, long timestamp) {
+        long w = writeSeq.get();
+
+        if (backpressure == Backpressure.COALESCE) {
+            // One slot stays free for the stash
+            boolean full = w - readSeq.get() >= slots.length - 1;
+            if (stashed) {
+                if (!full) {
+                    stashed = false;
+                    advanceWrite(++w);
+                    full = w - readSeq.get() >= slots.length - 1;
+                } else if (merge(slots[(int) (w & mask)], type, values, offset, length)) {
+                    coalescedCount.incrementAndGet();
+                    return;
+                } else {
+                    droppedCount.incrementAndGet();
+                    return;
+                }
+            }
+            fill(slots[(int) (w & mask)], type, values, offset, length, timestamp);
+            if (full) {
+                stashed = true;
+                coalescedCount.incrementAndGet();
+            } else {
+                advanceWrite(w + 1);
+            }
+            return;
+        }
+
+        while (w - readSeq.get() >= slots.length) {
+            if (backpressure == Backpressure.DROP_OLDEST) {
+                long r = readSeq.get();
+                // Fails when the consumer took it meanwhile, which made room as well
+                if (w - r >= slots.length && readSeq.compareAndSet(r, r + 1)) {
+                    droppedCount.incrementAndGet();
+                }
+            } else {
+                LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(50));
+                if (!running) return;
+            }
+        }
+        fill(slots[(int) (w & mask)], type, values, offset, length, timestamp);
+        advanceWrite(w + 1);
+    }
+
+    private static void fill(Slot slot, int type, int[] values, int offset, int length, long timestamp) {
+        slot.type = type;
+        slot.timestamp = timestamp;
+        slot.publishedNanos = System.nanoTime();
+        if (values == null) {
+            slot.values[0] = length;
+            slot.length = 1;
+        } else {
+            System.arraycopy(values, offset, slot.values, 0, length);
+            slot.length = length;
+        }
+    }
+
+    private static boolean merge(Slot slot, int type, int[] values, int offset, int length) {
+        if (slot.type != type || type == TYPE_GAP) return false;
+        if (type == TYPE_BPM) {
+            slot.values[0] = length;
+            return true;
+        }
+        int count = values == null ? 1 : length;
+        if (slot.length + count > SLOT_SIZE) return false;
+        if (values == null) {
+            slot.values[slot.length] = length;
+        } else {
+            System.arraycopy(values, offset, slot.values, slot.length, length);
+        }
+        slot.length += count;
+        return true;
+    }
+
+    private void advanceWrite(long w) {
+        // Volatile store, ordered before reading consumerWaiting
+        writeSeq.set(w);
+        if (consumerWaiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    // Consumer side
+
+    private void consume() {
+        while (running) {
+            consumerBusy = true;
+            long r = readSeq.get();
+            if (r == writeSeq.get()) {
+                consumerBusy = false;
+                // Bursts arrive back to back, a short spin saves the unpark on each of them
+                for (int spin = 0; spin < SPIN_TRIES && r == writeSeq.get(); ++spin) {
+                    Thread.yield();
+                }
+                if (r != writeSeq.get()) continue;
+
+                consumerWaiting = true;
+                if (r == writeSeq.get() && running) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10));
+                }
+                consumerWaiting = false;
+                continue;
+            }
+
+            Slot slot = slots[(int) (r & mask)];
+            scratch.type = slot.type;
+            scratch.timestamp = slot.timestamp;
+            scratch.publishedNanos = slot.publishedNanos;
+            scratch.length = Math.min(slot.length, SLOT_SIZE);
+            System.arraycopy(slot.values, 0, scratch.values, 0, scratch.length);
+
+            // Fails when the producer dropped the slot while it was copied
+            if (readSeq.compareAndSet(r, r + 1)) {
+                long start = System.nanoTime();
+                latency.record(start - scratch.publishedNanos);
+                deliver(scratch);
+                fanOutTime.record(System.nanoTime() - start);
+            }
+            consumerBusy = false;
+        }
+    }
+
+    private void deliver(Slot slot) {
+        switch (slot.type) {
+            case TYPE_ECG: {
+                HrvDataListener[] listeners = ecgListeners;
+                for (HrvDataListener l : listeners) {
+                    l.onEcgSamples(slot.values, 0, slot.length, slot.timestamp);
+                }
+                break;
+            }
+            case TYPE_RR: {
+                HrvDataListener[] listeners = rrListeners;
+                // Coalesced intervals follow each other, so each one ends where the next starts
+                long timestamp = slot.timestamp;
+                for (int i = 0; i < slot.length; ++i) {
+                    if (i > 0) timestamp += slot.values[i];
+                    for (HrvDataListener l : listeners) {
+                        l.onRrInterval(slot.values[i], timestamp);
+                    }
+                }
+                break;
+            }
+            case TYPE_BPM: {
+                HrvDataListener[] listeners = bpmListeners;
+                for (HrvDataListener l : listeners) {
+                    l.onBpm(slot.values[0]);
+                }
+                break;
+            }
+            case TYPE_GAP: {
+                HrvStream stream = STREAMS[slot.values[0]];
+                HrvDataListener[] listeners = stream == HrvStream.ECG ? ecgListeners
+                        : stream == HrvStream.RR ? rrListeners : bpmListeners;
+                for (HrvDataListener l : listeners) {
+                    l.onGap(stream, slot.timestamp, slot.values[1]);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Number of events waiting for the consumer.
+     */
+    public int size() {
+        return (int) (writeSeq.get() - readSeq.get());
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Time events spend queued, from publishing to the first listener.
+     */
+    public HrvMetrics.Latency getLatency() {
+        return latency;
+    }
+
+    /**
+     * Time the listeners take for an event.
+     */
+    public HrvMetrics.Latency getFanOutTime() {
+        return fanOutTime;
+    }
+
+    /**
+     * Wait until every published event was delivered.
+     *
+     * @return false if that did not happen within timeoutMs.
+     */
+    public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (readSeq.get() != writeSeq.get() || consumerBusy) {
+            if (System.nanoTime() > deadline) return false;
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Stop the consumer thread, pending events are discarded.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(consumer);
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.hrvapplication;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram counted on the data thread and displayed on the UI thread.
+ *
+ * {@link #add(int)} counts a value at full resolution and marks its bin as
+ * dirty. {@link #refresh()} folds only the dirty bins into the display bins
+ * and reports which of them changed, so a chart can update just those bars.
+ *
+ * With adaptive binning the display covers only the range of values seen so
+ * far, with the smallest 1-2-5 bin width that keeps it within maxDisplayBins.
+ * The layout changes when the range grows, the counts stay exact as they are
+ * kept at full resolution.
+ */
+public class LiveHistogram {
+    private static final int[] NICE_WIDTHS = {1, 2, 5};
+
+    private final int numBins;
+    private final AtomicIntegerArray counts;
+    private final AtomicLongArray dirty;
+    private final int maxDisplayBins;
+    private final boolean adaptive;
+
+    // Range of the values seen, written by the data thread
+    private volatile int minSeen = Integer.MAX_VALUE;
+    private volatile int maxSeen = Integer.MIN_VALUE;
+    private volatile boolean relayoutRequested = true;
+
+    // Display side, only touched by the UI thread
+    private int origin = 0;
+    private int binWidth = 1;
+    private int displayBins = 0;
+    private final int[] displayCounts;
+    private final int[] changedBins;
+    private int changedCount = 0;
+    private boolean layoutChanged = false;
+
+    /**
+     * A histogram over [0, numBins) shown one value per bar.
+     */
+    public LiveHistogram(int numBins) {
+        this(numBins, 0);
+    }
+
+    /**
+     * @param maxDisplayBins Adaptive binning into at most that many bars, 0 for one bar per value.
+     */
+    public LiveHistogram(int numBins, int maxDisplayBins) {
+        this.numBins = numBins;
+        this.counts = new AtomicIntegerArray(numBins);
+        this.dirty = new AtomicLongArray((numBins + 63) >>> 6);
+        this.adaptive = maxDisplayBins > 0;
+        this.maxDisplayBins = adaptive ? Math.min(maxDisplayBins, numBins) : numBins;
+        this.displayCounts = new int[this.maxDisplayBins];
+        this.changedBins = new int[this.maxDisplayBins];
+    }
+
+    // Data thread
+
+    public void add(int value) {
+        if (value < 0 || value >= numBins) return;
+
+        counts.incrementAndGet(value);
+        if (value < minSeen) minSeen = value;
+        if (value > maxSeen) maxSeen = value;
+
+        int word = value >>> 6;
+        long bit = 1L << (value & 63);
+        long old;
+        do {
+            old = dirty.get(word);
+            if ((old & bit) != 0) return;
+        } while (!dirty.compareAndSet(word, old, old | bit));
+    }
+
+    /**
+     * Forget all values, the next {@link #refresh()} starts a new layout.
+     */
+    public void clear() {
+        for (int i = 0; i < numBins; ++i) {
+            counts.set(i, 0);
+        }
+        minSeen = Integer.MAX_VALUE;
+        maxSeen = Integer.MIN_VALUE;
+        relayoutRequested = true;
+    }
+
+    /**
+     * Replace all values with the given counts, e.g. the device's own
+     * histogram. Bins beyond the histogram's range are ignored.
+     */
+    public void set(int[] counts) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < numBins; ++i) {
+            int count = i < counts.length ? counts[i] : 0;
+            this.counts.set(i, count);
+            if (count > 0) {
+                min = Math.min(min, i);
+                max = i;
+            }
+        }
+        minSeen = min;
+        maxSeen = max;
+        relayoutRequested = true;
+    }
+
+    /**
+     * Make the next {@link #refresh()} rewrite all display bins, e.g. when a chart starts showing them.
+     */
+    public void requestLayout() {
+        relayoutRequested = true;
+    }
+
+    public int getCount(int value) {
+        return counts.get(value);
+    }
+
+    public int getMaxDisplayBins() {
+        return maxDisplayBins;
+    }
+
+    // UI thread
+
+    /**
+     * Apply the values added since the last call to the display bins.
+     *
+     * @return true if anything changed.
+     */
+    public boolean refresh() {
+        changedCount = 0;
+        layoutChanged = false;
+
+        if (relayoutRequested || layoutNeedsRebinning()) {
+            relayoutRequested = false;
+            relayout();
+            return true;
+        }
+
+        for (int word = 0; word < dirty.length(); ++word) {
+            long bits = dirty.getAndSet(word, 0);
+            while (bits != 0) {
+                int value = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int bin = (value - origin) / binWidth;
+                if (bin < 0 || bin >= displayBins) continue;
+                if (changedCount == 0 || changedBins[changedCount - 1] != bin) {
+                    changedBins[changedCount++] = bin;
+                }
+            }
+        }
+        for (int i = 0; i < changedCount; ++i) {
+            displayCounts[changedBins[i]] = sum(changedBins[i]);
+        }
+        return changedCount > 0;
+    }
+
+    private boolean layoutNeedsRebinning() {
+        if (!adaptive) return false;
+        int min = minSeen;
+        int max = maxSeen;
+        return min <= max && (displayBins == 0 || min < origin || max >= origin + displayBins * binWidth);
+    }
+
+    private void relayout() {
+        for (int word = 0; word < dirty.length(); ++word) {
+            dirty.set(word, 0);
+        }
+
+        int min = minSeen;
+        int max = maxSeen;
+        if (!adaptive) {
+            origin = 0;
+            binWidth = 1;
+            displayBins = numBins;
+        } else if (min > max) {
+            origin = 0;
+            binWidth = 1;
+            displayBins = 0;
+        } else {
+            binWidth = niceWidth(max - min + 1);
+            origin = (min / binWidth) * binWidth;
+            displayBins = Math.min(maxDisplayBins, max / binWidth - origin / binWidth + 1);
+        }
+
+        for (int bin = 0; bin < displayBins; ++bin) {
+            displayCounts[bin] = sum(bin);
+        }
+        layoutChanged = true;
+    }
+
+    /**
+     * Smallest 1-2-5 width fitting range values into maxDisplayBins bars,
+     * leaving one bar for the range not starting at a multiple of the width.
+     */
+    private int niceWidth(int range) {
+        for (int scale = 1; ; scale *= 10) {
+            for (int nice : NICE_WIDTHS) {
+                int width = nice * scale;
+                if ((range + width - 1) / width + 1 <= maxDisplayBins || width >= numBins) {
+                    return width;
+                }
+            }
+        }
+    }
+
+    private int sum(int bin) {
+        int from = origin + bin * binWidth;
+        int to = Math.min(numBins, from + binWidth);
+        int sum = 0;
+        for (int value = from; value < to; ++value) {
+            sum += counts.get(value);
+        }
+        return sum;
+    }
+
+    /**
+     * Whether the last {@link #refresh()} changed the origin, width or number of bars.
+     */
+    public boolean isLayoutChanged() {
+        return layoutChanged;
+    }
+
+    public int getDisplayBinCount() {
+        return displayBins;
+    }
+
+    public int getDisplayOrigin() {
+        return origin;
+    }
+
+    public int getDisplayBinWidth() {
+        return binWidth;
+    }
+
+    public int getDisplayCount(int bin) {
+        return displayCounts[bin];
+    }
+
+    /**
+     * Number of bars the last {@link #refresh()} changed without a layout change.
+     */
+    public int getChangedBinCount() {
+        return changedCount;
+    }
+
+    public int getChangedBin(int i) {
+        return changedBins[i];
+    }
+}
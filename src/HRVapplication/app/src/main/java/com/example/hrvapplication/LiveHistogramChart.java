@@ -0,0 +1,102 @@
+package com.example.hrvapplication;
+
+import android.view.Choreographer;
+
+import com.github.mikephil.charting.charts.BarChart;
+import com.github.mikephil.charting.data.BarData;
+import com.github.mikephil.charting.data.BarDataSet;
+import com.github.mikephil.charting.data.BarEntry;
+
+import java.util.ArrayList;
+
+/**
+ * Shows a {@link LiveHistogram} on a bar chart while it is being filled.
+ *
+ * The bar entries, data set and data are created once. Once per display frame
+ * only the bars whose bins changed are rewritten in place, all of them only
+ * when adaptive binning changed the layout.
+ */
+public class LiveHistogramChart implements Choreographer.FrameCallback {
+    private final BarChart chart;
+    private final LiveHistogram histogram;
+    private final BarData barData;
+    private final BarDataSet dataSet;
+    private final BarEntry[] entryPool;
+    private final ArrayList<BarEntry> entries;
+
+    private boolean attached = false;
+
+    public LiveHistogramChart(BarChart chart, LiveHistogram histogram, String label, int color) {
+        this.chart = chart;
+        this.histogram = histogram;
+
+        int bars = histogram.getMaxDisplayBins();
+        this.entryPool = new BarEntry[bars];
+        for (int i = 0; i < bars; ++i) {
+            entryPool[i] = new BarEntry(i, 0);
+        }
+        this.entries = new ArrayList<>(bars);
+
+        this.dataSet = new BarDataSet(entries, label);
+        this.dataSet.setColor(color);
+        this.dataSet.setDrawValues(false);
+        this.barData = new BarData(dataSet);
+    }
+
+    // Called from the UI thread
+    public void attach() {
+        if (attached) return;
+        attached = true;
+
+        chart.setData(barData);
+        chart.getDescription().setEnabled(false);
+        // Everything has to be written once, the chart may have shown another histogram
+        histogram.requestLayout();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    // Called from the UI thread
+    public void detach() {
+        attached = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!attached) return;
+
+        if (histogram.refresh()) {
+            if (histogram.isLayoutChanged()) {
+                relayout();
+            } else {
+                for (int i = 0; i < histogram.getChangedBinCount(); ++i) {
+                    int bin = histogram.getChangedBin(i);
+                    entries.get(bin).setY(histogram.getDisplayCount(bin));
+                }
+            }
+
+            dataSet.notifyDataSetChanged();
+            barData.notifyDataChanged();
+            chart.notifyDataSetChanged();
+            chart.invalidate();
+        }
+
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void relayout() {
+        int bins = histogram.getDisplayBinCount();
+        int width = histogram.getDisplayBinWidth();
+        int origin = histogram.getDisplayOrigin();
+
+        entries.clear();
+        for (int bin = 0; bin < bins; ++bin) {
+            BarEntry entry = entryPool[bin];
+            entry.setX(origin + bin * width + (width - 1) / 2f);
+            entry.setY(histogram.getDisplayCount(bin));
+            entries.add(entry);
+        }
+        barData.setBarWidth(0.9f * width);
+        chart.fitScreen();
+    }
+}
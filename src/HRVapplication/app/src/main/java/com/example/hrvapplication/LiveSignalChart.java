@@ -0,0 +1,300 @@
+package com.example.hrvapplication;
+
+import android.view.Choreographer;
+import android.view.MotionEvent;
+
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
+import com.github.mikephil.charting.listener.ChartTouchListener;
+import com.github.mikephil.charting.listener.OnChartGestureListener;
+
+import java.util.ArrayList;
+
+/**
+ * Feeds the live ECG chart from the BLE thread without per-sample work on the UI thread.
+ *
+ * Samples are written into a lock-free ring buffer by the BLE thread. Once per
+ * display frame the UI thread drains it into a fixed window and rewrites a
+ * preallocated set of chart entries in place, then redraws once.
+ *
+ * Every drained sample also goes into a {@link MinMaxPyramid}, so
+ * {@link #showOverview()} can draw the whole recording with at most 2 points
+ * per pixel however long it is. Zooming or panning the overview queries the
+ * pyramid again for the visible range.
+ *
+ * Chart x values are floats, exact only up to 2^24 samples, about 18 hours at
+ * 250 Hz. They are therefore counted from an origin near the visible range:
+ * the live window's first sample, and in the overview a point moved along
+ * once a gesture ends.
+ */
+public class LiveSignalChart implements Choreographer.FrameCallback {
+    private static final int WINDOW_SIZE = 1000;
+    private static final int VISIBLE_RANGE = 100;
+    private static final int PENDING_CAPACITY = 4096;
+    // 2^14 buckets at 21 levels, about 2.7 MB, the coarsest level reaches back years at 250 Hz
+    private static final int OVERVIEW_CAPACITY = 1 << 14;
+    private static final int OVERVIEW_LEVELS = 21;
+    // Overview origins are multiples of this, exact as floats up to 2^34 samples
+    private static final long ORIGIN_STEP = 1024;
+
+    private final LineChart chart;
+    private final LineData lineData;
+    private final LineDataSet lineDataSet;
+
+    private final SampleRingBuffer pending = new SampleRingBuffer(PENDING_CAPACITY);
+    private final SampleWindow window = new SampleWindow(WINDOW_SIZE);
+    private final int[] drainBuffer = new int[PENDING_CAPACITY];
+    private final Entry[] entryPool = new Entry[WINDOW_SIZE];
+    private final ArrayList<Entry> entries = new ArrayList<>(WINDOW_SIZE);
+
+    private final MinMaxPyramid pyramid = new MinMaxPyramid(OVERVIEW_CAPACITY, OVERVIEW_LEVELS);
+    private final MinMaxPyramid.Range overviewRange = new MinMaxPyramid.Range(0);
+    private Entry[] overviewPool = new Entry[0];
+    private boolean overview = false;
+    // Sample at x 0 of the overview
+    private long overviewOrigin = 0;
+
+    private boolean running = false;
+    private final HrvMetrics.Latency drainTime = new HrvMetrics.Latency();
+
+    public LiveSignalChart(LineChart chart) {
+        this.chart = chart;
+
+        for (int i = 0; i < entryPool.length; ++i) {
+            entryPool[i] = new Entry(0, 0);
+        }
+
+        lineDataSet = new LineDataSet(entries, "Live Signal");
+        lineDataSet.setDrawValues(false);
+        lineDataSet.setDrawCircles(false);
+        lineData = new LineData(lineDataSet);
+        chart.setData(lineData);
+        chart.setOnChartGestureListener(new OverviewGestures());
+        // A fling would pan on past what the last query covered
+        chart.setDragDecelerationEnabled(false);
+    }
+
+    // Called from the BLE thread
+    public void offer(int sample) {
+        pending.offer(sample);
+    }
+
+    // Called from the BLE thread
+    public void offer(int[] samples, int offset, int length) {
+        pending.offer(samples, offset, length);
+    }
+
+    // Called from the UI thread
+    public void start() {
+        if (running) return;
+        running = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    // Called from the UI thread
+    public void stop() {
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    // Called from the UI thread
+    public void clear() {
+        pending.clear();
+        window.clear();
+        pyramid.clear();
+        leaveOverview();
+        entries.clear();
+        refresh();
+        chart.moveViewToX(0);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        long start = System.nanoTime();
+        int n = pending.drain(drainBuffer, 0, drainBuffer.length);
+        if (n > 0) {
+            window.append(drainBuffer, 0, n);
+            pyramid.append(drainBuffer, 0, n);
+            if (!overview) {
+                render();
+            }
+            drainTime.record(System.nanoTime() - start);
+        }
+
+        if (running) {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Time of the frames which drained samples, rendering included.
+     */
+    public HrvMetrics.Latency getDrainTime() {
+        return drainTime;
+    }
+
+    /**
+     * Samples received and not drawn yet.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Samples lost because the UI thread didn't drain them in time.
+     */
+    public long getDroppedCount() {
+        return pending.getDroppedCount();
+    }
+
+    // Called from the UI thread
+    public void showLive() {
+        if (!overview) return;
+        leaveOverview();
+        entries.clear();
+        render();
+    }
+
+    private void leaveOverview() {
+        overview = false;
+        chart.getXAxis().resetAxisMinimum();
+        chart.getXAxis().resetAxisMaximum();
+    }
+
+    /**
+     * Draw everything received since the last {@link #clear()}, decimated to the chart width.
+     */
+    // Called from the UI thread
+    public void showOverview() {
+        overview = true;
+        moveOverviewOrigin(0);
+        query(0, pyramid.getSampleCount());
+        chart.setVisibleXRangeMaximum(Math.max(VISIBLE_RANGE, pyramid.getSampleCount()));
+        chart.fitScreen();
+    }
+
+    /**
+     * Query the pyramid again for the visible range, and the width of it on
+     * each side so a pan has something to show until the next query.
+     */
+    private void queryVisible() {
+        long from = overviewOrigin + (long) Math.floor(chart.getLowestVisibleX());
+        long to = overviewOrigin + (long) Math.ceil(chart.getHighestVisibleX()) + 1;
+        long width = to - from;
+        query(from - width, to + width, 3);
+    }
+
+    private void query(long from, long to) {
+        query(from, to, 1);
+    }
+
+    private void query(long from, long to, int widths) {
+        int pixels = Math.max(1, (int) chart.getViewPortHandler().contentWidth());
+        pyramid.query(from, to, widths * pixels, overviewRange);
+
+        int points = 2 * overviewRange.count;
+        if (overviewPool.length < points) {
+            Entry[] pool = new Entry[points];
+            System.arraycopy(overviewPool, 0, pool, 0, overviewPool.length);
+            for (int i = overviewPool.length; i < points; ++i) {
+                pool[i] = new Entry(0, 0);
+            }
+            overviewPool = pool;
+        }
+
+        // A vertical stroke from min to max per bucket
+        entries.clear();
+        long first = overviewRange.first - overviewOrigin;
+        for (int i = 0; i < overviewRange.count; ++i) {
+            float x = first + i * overviewRange.span;
+            Entry min = overviewPool[2 * i];
+            min.setX(x);
+            min.setY(overviewRange.min[i]);
+            Entry max = overviewPool[2 * i + 1];
+            max.setX(x + overviewRange.span / 2f);
+            max.setY(overviewRange.max[i]);
+            entries.add(min);
+            entries.add(max);
+        }
+        refresh();
+    }
+
+    /**
+     * Count the overview's x values from origin on. The axis moves along with
+     * the data, so what is visible stays in place.
+     */
+    private void moveOverviewOrigin(long origin) {
+        overviewOrigin = origin;
+        chart.getXAxis().setAxisMinimum(-origin);
+        chart.getXAxis().setAxisMaximum(Math.max(1, pyramid.getSampleCount() - origin));
+    }
+
+    /**
+     * Zooming and panning the overview.
+     */
+    private class OverviewGestures implements OnChartGestureListener {
+        @Override
+        public void onChartScale(MotionEvent me, float scaleX, float scaleY) {
+            if (overview) queryVisible();
+        }
+
+        @Override
+        public void onChartTranslate(MotionEvent me, float dX, float dY) {
+            if (overview) queryVisible();
+        }
+
+        @Override
+        public void onChartGestureEnd(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+            if (!overview) return;
+            long lowest = overviewOrigin + (long) Math.floor(chart.getLowestVisibleX());
+            moveOverviewOrigin(Math.max(0, lowest) / ORIGIN_STEP * ORIGIN_STEP);
+            queryVisible();
+        }
+
+        @Override
+        public void onChartGestureStart(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+        }
+
+        @Override
+        public void onChartLongPressed(MotionEvent me) {
+        }
+
+        @Override
+        public void onChartDoubleTapped(MotionEvent me) {
+        }
+
+        @Override
+        public void onChartSingleTapped(MotionEvent me) {
+        }
+
+        @Override
+        public void onChartFling(MotionEvent me1, MotionEvent me2, float velocityX, float velocityY) {
+        }
+    }
+
+    private void render() {
+        while (entries.size() < window.size()) {
+            entries.add(entryPool[entries.size()]);
+        }
+
+        // Counted from the window's first sample
+        for (int i = 0; i < window.size(); ++i) {
+            Entry entry = entries.get(i);
+            entry.setX(i);
+            entry.setY(window.get(i));
+        }
+
+        refresh();
+        chart.setVisibleXRangeMaximum(VISIBLE_RANGE);
+        chart.moveViewToX(window.size());
+    }
+
+    private void refresh() {
+        lineDataSet.notifyDataSetChanged();
+        lineData.notifyDataChanged();
+        chart.notifyDataSetChanged();
+        chart.invalidate();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.hrvapplication;
+
+/**
+ * Decodes the live signal characteristic payloads sent by hrv.ino.
+ *
+ * Two payload layouts are supported:
+ * - Legacy: a single little-endian int32 sample per notification (4 bytes).
+ * - Packed: an 8 byte header followed by N little-endian int16 samples:
+ *   [seq u16][timestamp u32][sample period ms u8][sample count u8][samples...]
+ *
+ * The decoder reuses a single sample buffer, so the decoded block is only
+ * valid until the next call to {@link #decode(byte[])}.
+ */
+public class LiveSignalFrameDecoder {
+    public static final int LEGACY_PAYLOAD_SIZE = 4;
+    public static final int HEADER_SIZE = 8;
+    public static final int BYTES_PER_SAMPLE = 2;
+
+    // ATT notifications carry a 3 byte header (opcode + handle)
+    public static final int ATT_HEADER_SIZE = 3;
+    public static final int DEFAULT_MTU = 23;
+
+    private int[] samples;
+    private int length;
+    private int sequence;
+    private long timestamp;
+    private int samplePeriodMs;
+
+    public LiveSignalFrameDecoder() {
+        this(DEFAULT_MTU);
+    }
+
+    public LiveSignalFrameDecoder(int mtu) {
+        this.samples = new int[Math.max(1, maxSamplesForMtu(mtu))];
+    }
+
+    /**
+     * @return The number of samples a packed frame can hold when sent with the given ATT MTU.
+     */
+    public static int maxSamplesForMtu(int mtu) {
+        return Math.max(0, (mtu - ATT_HEADER_SIZE - HEADER_SIZE) / BYTES_PER_SAMPLE);
+    }
+
+    public static boolean isPackedFrame(byte[] data) {
+        return data != null && data.length >= HEADER_SIZE && data.length != LEGACY_PAYLOAD_SIZE;
+    }
+
+    /**
+     * The sequence number of a packed frame, without decoding it.
+     */
+    public static int sequenceOf(byte[] data) {
+        return (data[0] & 0xFF) | (data[1] & 0xFF) << 8;
+    }
+
+    public static int decodeLegacy(byte[] data) {
+        return (data[0] & 0xFF)
+                | (data[1] & 0xFF) << 8
+                | (data[2] & 0xFF) << 16
+                | (data[3] & 0xFF) << 24;
+    }
+
+    /**
+     * Grow the sample buffer so frames sized to the given MTU fit without reallocating.
+     */
+    public void setMtu(int mtu) {
+        ensureCapacity(maxSamplesForMtu(mtu));
+    }
+
+    /**
+     * Decode a packed frame into the internal sample buffer.
+     *
+     * @return false if the payload is not a well formed packed frame.
+     */
+    public boolean decode(byte[] data) {
+        if (!isPackedFrame(data)) return false;
+
+        int count = data[7] & 0xFF;
+        if (data.length < HEADER_SIZE + count * BYTES_PER_SAMPLE) return false;
+
+        this.sequence = (data[0] & 0xFF) | (data[1] & 0xFF) << 8;
+        this.timestamp = ((data[2] & 0xFF)
+                | (data[3] & 0xFF) << 8
+                | (data[4] & 0xFF) << 16
+                | (long) (data[5] & 0xFF) << 24);
+        this.samplePeriodMs = data[6] & 0xFF;
+
+        ensureCapacity(count);
+        for (int i = 0, pos = HEADER_SIZE; i < count; ++i, pos += BYTES_PER_SAMPLE) {
+            this.samples[i] = (short) ((data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8);
+        }
+        this.length = count;
+        return true;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count > this.samples.length) {
+            this.samples = new int[count];
+        }
+    }
+
+    public int[] getSamples() {
+        return samples;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getSamplePeriodMs() {
+        return samplePeriodMs;
+    }
+}
@@ -1,7 +1,6 @@
 package com.example.hrvapplication;
 
 import static java.lang.Math.round;
-import static java.lang.Thread.sleep;
 
 import android.Manifest;
 import android.annotation.SuppressLint;
@@ -38,19 +37,17 @@ import com.github.mikephil.charting.components.Description;
 import com.github.mikephil.charting.components.Legend;
 import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.components.YAxis;
-import com.github.mikephil.charting.data.BarData;
-import com.github.mikephil.charting.data.BarDataSet;
-import com.github.mikephil.charting.data.BarEntry;
-import com.github.mikephil.charting.data.Entry;
-import com.github.mikephil.charting.data.LineData;
-import com.github.mikephil.charting.data.LineDataSet;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 
 
-public class MainActivity extends AppCompatActivity implements BLEControllerListener {
+public class MainActivity extends AppCompatActivity implements BLEControllerListener, HrvDataListener {
     // UI Components
     Button startButton;
     Button pauseButton;
@@ -64,13 +61,14 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
     TextView htiParameter;
     TextView RMSSDParameter;
     TextView SDANNParameter;
+    TextView lfHfParameter;
     TextView graphTitle;
     TextView ylabel;
+    TextView metricsOverlay;
 
     // Charts and Data
     private LineChart liveECGSignalchart;
-    private LineData lineData;
-    private LineDataSet lineDataSet;
+    private LiveSignalChart liveSignalChart;
     private BarChart histogramChart;
 
     // Flags and State
@@ -78,6 +76,10 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
     private boolean isRunning = false;
     private boolean isFinished = false;
     private boolean paused = false;
+    // Set by the disconnect button, a lost link is reconnected otherwise
+    private boolean userDisconnected = false;
+    // Connecting to the remembered device without a scan
+    private boolean connectingToLastDevice = false;
 
     // BLE Controller and Device Info
     private BLEController bleController;
@@ -89,17 +91,51 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
 
     // Constants
     private static final int BPM_HIST_NUM_BINS = 220;
-    private static final int RR_HIST_NUM_BINS = 1200;
+    // As in hrv.ino, the device's histograms replace the live ones when paused
+    private static final int RR_HIST_NUM_BINS = 1500;
+
+    // Bars of the RR histogram once adaptive binning kicks in
+    private static final int RR_HIST_MAX_BARS = 100;
+
+    // Histograms, filled on the data thread and shown live
+    private final LiveHistogram rrIntervalsHistogram = new LiveHistogram(RR_HIST_NUM_BINS + 1, RR_HIST_MAX_BARS);
+    private final LiveHistogram bpmHistogram = new LiveHistogram(BPM_HIST_NUM_BINS + 1);
+    private LiveHistogramChart rrHistogramChart;
+    private LiveHistogramChart bpmHistogramChart;
+
+    // HRV parameters computed from the live RR intervals
+    private final HrvStatistics hrvStatistics = new HrvStatistics();
+    private final FrequencyDomainHrv frequencyDomainHrv = new FrequencyDomainHrv();
+
+    // R peaks detected on the phone from the live signal, checked against the device's
+    private static final int LIVE_SIGNAL_RATE_HZ = 250;
+    private final HrvStatistics phoneStatistics = new HrvStatistics();
+    private final QrsDetector qrsDetector = new QrsDetector(LIVE_SIGNAL_RATE_HZ, new HrvDataListener() {
+        @Override
+        public void onRrInterval(int rr, long timestamp) {
+            phoneStatistics.addRrInterval(rr);
+        }
+
+        @Override
+        public void onGap(HrvStream stream, long timestamp, long durationMs) {
+            phoneStatistics.markGap(durationMs);
+        }
+    });
+
+    // Every RR interval of the measurement, for the analysis after it
+    private final RrSeries rrSeries = new RrSeries();
+
+    // Debug overlay, shown by a long press on the graph title
+    private HrvMetrics metrics;
+    private HrvMetrics.Gauge pendingGauge;
+    private HrvMetrics.Gauge droppedGauge;
+    private Runnable updateMetrics;
 
-    // Histograms
-    private int[] rrIntervalsHistogram = new int[RR_HIST_NUM_BINS];
-    private int[] bpmHistogram = new int[BPM_HIST_NUM_BINS + 1];
+    // Recording of the running measurement, survives the activity being paused
+    private SessionRecorder sessionRecorder;
 
     // Other Parameters
     private int lastBpm = 0;
-    private COMMANDS lastCmd = COMMANDS.STANDBY;
-    private int sampleCount;
-    private int xIndex;
 
     @SuppressLint({"MissingInflatedId", "SetTextI18n"})
     @Override
@@ -114,8 +150,10 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
         htiParameter = findViewById(R.id.HTILabel);
         RMSSDParameter = findViewById(R.id.RMSSDLabel);
         SDANNParameter = findViewById(R.id.SDANNLabel);
+        lfHfParameter = findViewById(R.id.LFHFLabel);
         graphTitle = findViewById(R.id.graphTitle);
         ylabel = findViewById(R.id.liveSignalYLabel);
+        metricsOverlay = findViewById(R.id.metricsOverlay);
 
         graphTitle.setText("Live Signal");
 
@@ -156,6 +194,50 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
 
         // Initialize the graph
         initializeGraph();
+
+        setupMetricsOverlay();
+    }
+
+    private void setupMetricsOverlay() {
+        metrics = bleController.getMetrics();
+        metrics.register("ui.frame", liveSignalChart.getDrainTime());
+        pendingGauge = new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return liveSignalChart.getPendingCount();
+            }
+        };
+        metrics.gauge("ui.pending", pendingGauge);
+        droppedGauge = new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return liveSignalChart.getDroppedCount();
+            }
+        };
+        metrics.gauge("ui.dropped", droppedGauge);
+
+        // Posted to the overlay, the measurement restarts clear the handler
+        updateMetrics = new Runnable() {
+            @Override
+            public void run() {
+                if (metricsOverlay.getVisibility() != View.VISIBLE) return;
+                metrics.updateRates();
+                metricsOverlay.setText(metrics.toText());
+                metricsOverlay.postDelayed(this, 1000);
+            }
+        };
+        graphTitle.setOnLongClickListener(v -> {
+            if (metricsOverlay.getVisibility() == View.VISIBLE) {
+                metricsOverlay.setVisibility(View.INVISIBLE);
+                metricsOverlay.removeCallbacks(updateMetrics);
+                Log.i("Metrics", metrics.toJson());
+            } else {
+                metricsOverlay.setVisibility(View.VISIBLE);
+                metrics.updateRates();
+                metricsOverlay.post(updateMetrics);
+            }
+            return true;
+        });
     }
 
     // Helper method to disable buttons
@@ -173,38 +255,22 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
     @RequiresPermission(allOf = {"android.permission.BLUETOOTH_SCAN", "android.permission.BLUETOOTH_CONNECT"})
     private void setButtonListeners() {
         // State buttons
-        startButton.setOnClickListener(v -> {
-            try {
-                startHRVMeasurement();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        });
-        pauseButton.setOnClickListener(v -> {
-            try {
-                pauseHRVMeasurement();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        });
-        finishButton.setOnClickListener(v -> {
-            try {
-                finishHRVMeasurement();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        });
+        startButton.setOnClickListener(v -> startHRVMeasurement());
+        pauseButton.setOnClickListener(v -> pauseHRVMeasurement());
+        finishButton.setOnClickListener(v -> finishHRVMeasurement());
 
         // Graph buttons
         switchToLiveViewButton.setOnClickListener(v -> switchToLiveView());
         switchToRRHistViewButton.setOnClickListener(v -> {
             graphTitle.setText("RR Histogram");
-            updateRRHistograms();
+            bpmHistogramChart.detach();
+            rrHistogramChart.attach();
             switchToHistView();
         });
         switchToBPMHistViewButton.setOnClickListener(v -> {
             graphTitle.setText("BPM Histogram");
-            updateBPMHistograms();
+            rrHistogramChart.detach();
+            bpmHistogramChart.attach();
             switchToHistView();
         });
     }
@@ -237,6 +303,8 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
                     pulseTextView.setTextSize(48f);
                 }
 
+                updateHRVParameters();
+
                 // Create the blink animation
                 Animation blink = new AlphaAnimation(0.0f, 1.0f);
                 blink.setDuration(1500);
@@ -255,6 +323,13 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        stopRecording();
+
+        // The metrics outlive the activity, a recreated one registered its own already
+        metricsOverlay.removeCallbacks(updateMetrics);
+        metrics.unregister("ui.frame", liveSignalChart.getDrainTime());
+        metrics.unregister("ui.pending", pendingGauge);
+        metrics.unregister("ui.dropped", droppedGauge);
     }
 
     @Override
@@ -274,6 +349,10 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
 
         isRunning = false;
         bleController.removeBLEControllerListener(this);
+        bleController.removeHrvDataListener(this);
+        liveSignalChart.stop();
+        rrHistogramChart.detach();
+        bpmHistogramChart.detach();
     }
 
     @Override
@@ -281,6 +360,8 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
         super.onResume();
 
         bleController.addBLEControllerListener(this);
+        bleController.addHrvDataListener(this, HrvStream.ECG, HrvStream.RR, HrvStream.BPM);
+        liveSignalChart.start();
     }
 
     @RequiresApi(api = Build.VERSION_CODES.S)
@@ -320,26 +401,27 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
         permissionsGranted = (Arrays.stream(grantResults).sum() == 0);
     }
 
-    @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
-    private void sendCommand(COMMANDS cmd) throws InterruptedException {
-        byte[] cmdBytes = new byte[]{ (byte) cmd.getValue() };
-        lastCmd = cmd;
-        bleController.sendCommand(cmdBytes);
-        sleep(500);
+    private void sendCommand(final COMMANDS cmd) {
+        bleController.sendCommand(cmd).exceptionally(e -> {
+            Log.w("BLE", "Command " + cmd + " failed: " + e);
+            return null;
+        });
     }
 
     @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
-    private void startHRVMeasurement() throws InterruptedException {
+    private void startHRVMeasurement() {
         startButton.setEnabled(false);
         pauseButton.setEnabled(true);
         finishButton.setEnabled(true);
-        switchToLiveViewButton.setEnabled(false);
-        switchToRRHistViewButton.setEnabled(false);
-        switchToBPMHistViewButton.setEnabled(false);
+        // The histograms can be watched while they fill
+        switchToLiveViewButton.setEnabled(true);
+        switchToRRHistViewButton.setEnabled(true);
+        switchToBPMHistViewButton.setEnabled(true);
 
-        htiParameter.setVisibility(View.INVISIBLE);
-        RMSSDParameter.setVisibility(View.INVISIBLE);
-        SDANNParameter.setVisibility(View.INVISIBLE);
+        htiParameter.setVisibility(View.VISIBLE);
+        RMSSDParameter.setVisibility(View.VISIBLE);
+        SDANNParameter.setVisibility(View.VISIBLE);
+        lfHfParameter.setVisibility(View.VISIBLE);
 
         handler.removeCallbacksAndMessages(null);
 
@@ -353,26 +435,88 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
 
         if (isFinished) {
             lastBpm = 0;
+            hrvStatistics.reset();
+            phoneStatistics.reset();
+            qrsDetector.reset();
+            frequencyDomainHrv.reset();
+            rrSeries.clear();
+            metrics.reset();
+            rrIntervalsHistogram.clear();
+            bpmHistogram.clear();
             clearGraphData();
             sendCommand(COMMANDS.RESET);
             isFinished = false;
         }
 
+        liveSignalChart.showLive();
+        startRecording();
         sendCommand(COMMANDS.START);
     }
 
+    private void startRecording() {
+        if (sessionRecorder != null) return;
+
+        File dir = new File(getFilesDir(), "sessions");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w("Session", "Cannot create " + dir);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            sessionRecorder = new SessionRecorder(new File(dir, now + ".hrv"), now);
+            bleController.addHrvDataListener(sessionRecorder);
+        } catch (IOException e) {
+            Log.w("Session", "Cannot start recording: " + e);
+        }
+    }
+
+    private void stopRecording() {
+        if (sessionRecorder == null) return;
+
+        bleController.removeHrvDataListener(sessionRecorder);
+        try {
+            sessionRecorder.close();
+        } catch (IOException e) {
+            Log.w("Session", "Cannot finish recording: " + e);
+        }
+        if (sessionRecorder.getFailure() != null) {
+            Log.w("Session", "Recording failed: " + sessionRecorder.getFailure());
+        }
+        sessionRecorder = null;
+    }
+
     @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
-    private void pauseHRVMeasurement() throws InterruptedException {
+    private void pauseHRVMeasurement() {
         startButton.setEnabled(true);
         pauseButton.setEnabled(false);
         finishButton.setEnabled(true);
 
         paused = true;
         sendCommand(COMMANDS.PAUSE);
+        syncHistograms();
+    }
+
+    /**
+     * Replace the histograms counted from the live notifications with the
+     * device's, which also holds the beats that never reached the phone.
+     */
+    private void syncHistograms() {
+        syncHistogram(COMMANDS.DUMP_RR_HISTOGRAM, rrIntervalsHistogram);
+        syncHistogram(COMMANDS.DUMP_BPM_HISTOGRAM, bpmHistogram);
+    }
+
+    private void syncHistogram(final COMMANDS cmd, final LiveHistogram histogram) {
+        bleController.requestHistogram(cmd).whenComplete((counts, e) -> {
+            if (e != null) {
+                Log.w("BLE", "Command " + cmd + " failed, keeping the live histogram: " + e);
+                return;
+            }
+            histogram.set(counts);
+        });
     }
 
     @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
-    private void finishHRVMeasurement() throws InterruptedException {
+    private void finishHRVMeasurement() {
         startButton.setEnabled(true);
         pauseButton.setEnabled(false);
         finishButton.setEnabled(false);
@@ -383,22 +527,67 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
         htiParameter.setVisibility(View.VISIBLE);
         RMSSDParameter.setVisibility(View.VISIBLE);
         SDANNParameter.setVisibility(View.VISIBLE);
+        lfHfParameter.setVisibility(View.VISIBLE);
 
         paused = true;
         sendCommand(COMMANDS.PAUSE);
-        sendCommand(COMMANDS.DUMP_RMSSD);
-        sendCommand(COMMANDS.DUMP_SDANN);
-        sendCommand(COMMANDS.DUMP_HTI);
+        syncHistograms();
+        updateHRVParameters();
+        Log.i("QRS", "Device: " + hrvStatistics.getBeatCount() + " beats, RMSSD " + round(hrvStatistics.getRmssd())
+                + ", phone: " + phoneStatistics.getBeatCount() + " beats, RMSSD " + round(phoneStatistics.getRmssd()));
+        HrvConnection connection = bleController.getConnection();
+        Log.i("BLE", String.format(Locale.US, "Lost %.3f%% of the signal frames, %.3f%% of the RR intervals",
+                100 * connection.getSignalSequence().getLossRate(), 100 * connection.getRrSequence().getLossRate()));
+        Log.i("BLE", String.format(Locale.US, "Backfilled %d of %d signal frames, %d of %d RR intervals",
+                connection.getSignalBackfill().getRecoveredCount(), connection.getSignalBackfill().getRequestedCount(),
+                connection.getRrBackfill().getRecoveredCount(), connection.getRrBackfill().getRequestedCount()));
+        Log.i("Metrics", metrics.toJson());
+        stopRecording();
+        liveSignalChart.showOverview();
+        analyzeMeasurement();
 
         isFinished = true;
     }
 
+    @SuppressLint("SetTextI18n")
+    /**
+     * Analyze every interval of the measurement off the UI thread and show the
+     * parameters of the whole of it.
+     */
+    private void analyzeMeasurement() {
+        CompletableFuture.supplyAsync(() -> new BatchSessionAnalyzer().analyze(rrSeries)).whenComplete((result, e) -> {
+            if (e != null) {
+                Log.w("HRV", "Analysis of the measurement failed: " + e);
+                return;
+            }
+            Log.i("HRV", String.format(Locale.US, "Measurement: %d beats in %d segments, RMSSD %.1f, SDANN %.1f, HTI %.1f",
+                    result.getBeatCount(), result.getSegmentCount(), result.getRmssd(), result.getSdann(), result.getHti()));
+            runOnUiThread(() -> {
+                RMSSDParameter.setText("RMSSD: " + round(result.getRmssd()));
+                SDANNParameter.setText("SDANN: " + round(result.getSdann()));
+                htiParameter.setText("HTI: " + round(result.getHti()));
+            });
+        });
+    }
+
+    private void updateHRVParameters() {
+        RMSSDParameter.setText("RMSSD: " + round(hrvStatistics.getRmssd()));
+        SDANNParameter.setText("SDANN: " + round(hrvStatistics.getSdann()));
+        htiParameter.setText("HTI: " + round(hrvStatistics.getHti()));
+        if (frequencyDomainHrv.isWindowFull()) {
+            lfHfParameter.setText("LF: " + round(frequencyDomainHrv.getLfPower())
+                    + "  HF: " + round(frequencyDomainHrv.getHfPower())
+                    + "  LF/HF: " + round(frequencyDomainHrv.getLfHfRatio()));
+        }
+    }
+
     @RequiresApi(api = Build.VERSION_CODES.S)
     @RequiresPermission(allOf = {"android.permission.BLUETOOTH_SCAN","android.permission.BLUETOOTH_CONNECT"})
     private void connectToArduinoBT() {
         if (deviceAddress != null) {
             disableButtons();
             btButton.setEnabled(false);
+            userDisconnected = true;
             bleController.disconnect();
             return;
         }
@@ -408,21 +597,34 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
             return;
         }
 
+        userDisconnected = false;
         bleController.addBLEControllerListener(this);
-        bleController.init();
+        bleController.addHrvDataListener(this, HrvStream.ECG, HrvStream.RR, HrvStream.BPM);
+
+        final String lastAddress = bleController.getLastDeviceAddress();
+        if (lastAddress != null) {
+            // Known device, connect without scanning. The button cancels the attempt.
+            this.deviceAddress = lastAddress;
+            connectingToLastDevice = true;
+            bleController.connectToDevice(lastAddress);
+        } else {
+            bleController.init();
+        }
 
         handler.post(new Runnable() {
             @SuppressLint("SetTextI18n")
             @Override
             public void run() {
-                btButton.setEnabled(false);
-                btButton.setText("Scanning...");
+                btButton.setEnabled(lastAddress != null);
+                btButton.setText(lastAddress != null ? "Connecting..." : "Scanning...");
             }
         });
     }
 
     @SuppressLint("SetTextI18n")
     private void switchToLiveView() {
+        rrHistogramChart.detach();
+        bpmHistogramChart.detach();
         if (liveECGSignalchart.getVisibility() == View.INVISIBLE) {
             liveECGSignalchart.setVisibility(View.VISIBLE);
             histogramChart.setVisibility(View.INVISIBLE);
@@ -441,7 +643,8 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
 
     @Override
     public void BLEControllerConnected() {
-        Log.d("BLE", "BLEController connected");
+        Log.d("BLE", "BLEController connected in " + bleController.getConnectTimeMillis() + " ms");
+        connectingToLastDevice = false;
 
         handler.post(new Runnable() {
             @SuppressLint("SetTextI18n")
@@ -454,13 +657,50 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
         });
     }
 
+    @RequiresPermission(allOf = {"android.permission.BLUETOOTH_SCAN","android.permission.BLUETOOTH_CONNECT"})
     @Override
     public void BLEControllerDisconnected() {
-        this.deviceAddress = null;
         Log.d("BLE", "BLEController disconnected");
 
+        // The device keeps measuring, reconnect and let the connection
+        // backfill what was missed. The buttons come back with the data.
+        String lastAddress = bleController.getLastDeviceAddress();
+        boolean measuring = isRunning && !paused && !isFinished;
         isRunning = false;
         disableButtons();
+        if (connectingToLastDevice && !userDisconnected) {
+            // The remembered device didn't show up and was forgotten, look for one
+            Log.i("BLE", "Last device not found, scanning");
+            connectingToLastDevice = false;
+            this.deviceAddress = null;
+            bleController.init();
+            handler.post(new Runnable() {
+                @SuppressLint("SetTextI18n")
+                @Override
+                public void run() {
+                    btButton.setEnabled(false);
+                    btButton.setText("Scanning...");
+                }
+            });
+            return;
+        }
+        connectingToLastDevice = false;
+        if (measuring && !userDisconnected && lastAddress != null) {
+            Log.i("BLE", "Link lost during the measurement, reconnecting");
+            this.deviceAddress = lastAddress;
+            connectingToLastDevice = true;
+            bleController.connectToDevice(lastAddress);
+            handler.post(new Runnable() {
+                @SuppressLint("SetTextI18n")
+                @Override
+                public void run() {
+                    btButton.setEnabled(true);
+                    btButton.setText("Reconnecting...");
+                }
+            });
+            return;
+        }
+        this.deviceAddress = null;
 
         handler.postDelayed(new Runnable() {
             @SuppressLint("SetTextI18n")
@@ -478,6 +718,20 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
         }, 2500);
     }
 
+    @Override
+    public void BLEScanTimedOut() {
+        Log.d("BLE", "No device found");
+
+        handler.post(new Runnable() {
+            @SuppressLint("SetTextI18n")
+            @Override
+            public void run() {
+                btButton.setEnabled(true);
+                btButton.setText("BT Connect");
+            }
+        });
+    }
+
     @RequiresPermission(allOf = {"android.permission.BLUETOOTH_SCAN","android.permission.BLUETOOTH_CONNECT"})
     @Override
     public void BLEDeviceFound(String name, String address) {
@@ -499,61 +753,75 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
         Log.d("BLE", "Received data: " + Arrays.toString(data));
     }
 
-    @SuppressLint("SetTextI18n")
     @Override
     public void BLEHRVParametersReceived(double value) {
-        switch (lastCmd) {
-            case DUMP_RMSSD:
-                RMSSDParameter.setText("RMSSD: " + round(value));
-                break;
-            case DUMP_SDANN:
-                SDANNParameter.setText("SDANN: " + round(value));
-                break;
-            case DUMP_HTI:
-                htiParameter.setText("HTI: " + round(value));
-                break;
+        // Responses are delivered through the futures of BLEController.requestParameter
+        Log.d("BLE", "Received HRV parameter: " + value);
+    }
+
+    @Override
+    public void onEcgSamples(int[] samples, int offset, int length, long timestamp) {
+        if (paused) {
+            return;
+        }
+
+        detectAlreadyRunning();
+        updateGraph(samples, offset, length);
+        qrsDetector.onEcgSamples(samples, offset, length, timestamp);
+    }
+
+    @Override
+    public void onRrInterval(int rr, long timestamp) {
+        if (paused) {
+            return;
         }
+
+        detectAlreadyRunning();
+        hrvStatistics.addRrInterval(rr);
+        frequencyDomainHrv.addRrInterval(rr);
+        rrSeries.append(rr, timestamp);
+        rrIntervalsHistogram.add(rr);
     }
 
     @Override
-    public void BLELiveDataReceived(int data, String characteristic) {
+    public void onGap(HrvStream stream, long timestamp, long durationMs) {
         if (paused) {
             return;
         }
 
-        // Detect already running
+        if (stream == HrvStream.ECG) {
+            qrsDetector.onGap(stream, timestamp, durationMs);
+        } else if (stream == HrvStream.RR) {
+            hrvStatistics.markGap(durationMs);
+            frequencyDomainHrv.markGap();
+            rrSeries.appendGap(timestamp);
+        }
+    }
+
+    @Override
+    public void onBpm(int bpm) {
+        if (paused) {
+            return;
+        }
+
+        detectAlreadyRunning();
+        if (bpm < BPM_HIST_NUM_BINS) {
+            lastBpm = bpm;
+            bpmHistogram.add(bpm);
+        }
+    }
+
+    private void detectAlreadyRunning() {
         if (!isRunning) {
             isRunning = true;
             handler.post(new Runnable() {
                 @RequiresPermission(value = "android.permission.BLUETOOTH_CONNECT")
                 @Override
                 public void run() {
-                    try {
-                        startHRVMeasurement();
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
+                    startHRVMeasurement();
                 }
             });
         }
-
-        switch (characteristic) {
-            case "BPM":
-                if (data < BPM_HIST_NUM_BINS) {
-                    lastBpm = data;
-                    Log.d("BLE", "BPMi: " + data);
-                    bpmHistogram[data]++;
-                }
-                break;
-            case "SIG":
-                updateGraph(data);
-                break;
-            case "RR":
-                if (data < RR_HIST_NUM_BINS) {
-                    rrIntervalsHistogram[data]++;
-                }
-                break;
-        }
     }
 
     private void configureGraphTextColor(Chart<?> chart) {
@@ -593,11 +861,7 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
     private void initializeGraph() {
         histogramChart = findViewById(R.id.histogramChart);
         liveECGSignalchart = findViewById(R.id.ECGLiveSignal);
-        lineDataSet = new LineDataSet(null, "Live Signal");
-        lineDataSet.setDrawValues(false);
-        lineDataSet.setDrawCircles(false);
-        lineData = new LineData(lineDataSet);
-        liveECGSignalchart.setData(lineData);
+        liveSignalChart = new LiveSignalChart(liveECGSignalchart);
 
         configureGraphTextColor(liveECGSignalchart);
         configureGraphTextColor(histogramChart);
@@ -628,35 +892,14 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
         // Initial chart refresh
         liveECGSignalchart.invalidate();
 
-        // Initialize sample count and xIndex
-        sampleCount = 0;
-        xIndex = 0;
-
-        // Initialize histograms
-        rrIntervalsHistogram = new int[RR_HIST_NUM_BINS]; // Ensure HISTOGRAM_SIZE is defined
-        bpmHistogram = new int[BPM_HIST_NUM_BINS]; // Ensure HISTOGRAM_SIZE is defined
+        rrHistogramChart = new LiveHistogramChart(histogramChart, rrIntervalsHistogram, "RR Histogram", Color.rgb(255, 69, 0));
+        bpmHistogramChart = new LiveHistogramChart(histogramChart, bpmHistogram, "BPM Histogram", Color.GREEN);
     }
 
-    private void updateGraph(final int value) {
+    private void updateGraph(int[] samples, int offset, int length) {
         if (isFinished) return;
 
-        handler.post(new Runnable() {
-            @Override
-            public void run() {
-                if (sampleCount >= 1000) {
-                    lineDataSet.removeEntry(0); // Remove the oldest entry
-                } else {
-                    sampleCount++;
-                }
-
-                lineDataSet.addEntry(new Entry(xIndex++, value));
-                lineData.notifyDataChanged();
-                liveECGSignalchart.notifyDataSetChanged();
-                liveECGSignalchart.invalidate();
-                liveECGSignalchart.setVisibleXRangeMaximum(100);
-                liveECGSignalchart.moveViewToX(xIndex);
-            }
-        });
+        liveSignalChart.offer(samples, offset, length);
     }
 
     private void clearGraphData() {
@@ -664,64 +907,9 @@ public class MainActivity extends AppCompatActivity implements BLEControllerList
             @Override
             public void run() {
                 Log.d("ECGGraph", "Clearing graph data");
-
-                lineData.clearValues();
-                lineDataSet = new LineDataSet(null, "Live Signal");
-                lineDataSet.setDrawValues(false);
-                lineDataSet.setDrawCircles(false);
-                lineData.addDataSet(lineDataSet);
-                lineData.notifyDataChanged();               // Notify the data has changed
-                liveECGSignalchart.notifyDataSetChanged();  // Notify the chart data has changed
-                liveECGSignalchart.invalidate();            // Refresh the chart
-                liveECGSignalchart.moveViewToX(0);
-
+                liveSignalChart.clear();
                 Log.d("ECGGraph", "Graph data cleared");
             }
         });
-
-        xIndex = 0;                                 // Reset the xIndex
-        sampleCount = 0;                            // Reset the sample count
-    }
-
-    private void updateBPMHistograms() {
-        // Create BarEntries for BPM histogram
-        List<BarEntry> bpmEntries = new ArrayList<>();
-        for (int i = 0; i < bpmHistogram.length; i++) {
-            bpmEntries.add(new BarEntry(i, bpmHistogram[i]));
-        }
-
-        // Create BarDataSet for BPM histogram
-        BarDataSet bpmDataSet = new BarDataSet(bpmEntries, "BPM Histogram");
-        bpmDataSet.setColor(Color.GREEN);
-
-        // Create BarData object and set it to the BarChart
-        BarData barData = new BarData(bpmDataSet);
-        histogramChart.setData(barData);
-
-        histogramChart.getDescription().setEnabled(false);
-
-        // Refresh chart
-        histogramChart.invalidate();
-    }
-
-    private void updateRRHistograms() {
-        // Create BarEntries for RR histogram
-        List<BarEntry> rrEntries = new ArrayList<>();
-        for (int i = 0; i < rrIntervalsHistogram.length; i++) {
-            rrEntries.add(new BarEntry(i, rrIntervalsHistogram[i]));
-        }
-
-        // Create BarDataSet for RR histogram
-        BarDataSet rrDataSet = new BarDataSet(rrEntries, "RR Histogram");
-        rrDataSet.setColor(Color.rgb(255, 69, 0));
-
-        // Create BarData object and set it to the BarChart
-        BarData barData = new BarData(rrDataSet);
-        histogramChart.setData(barData);
-
-        histogramChart.getDescription().setEnabled(false);
-
-        // Refresh chart
-        histogramChart.invalidate();
     }
 }
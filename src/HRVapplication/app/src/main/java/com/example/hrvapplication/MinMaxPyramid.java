@@ -0,0 +1,165 @@
+package com.example.hrvapplication;
+
+/**
+ * Min/max decimation of a sample stream at every power of two zoom level.
+ *
+ * Level 0 holds the raw samples, level 1 the min and max of every
+ * {@link #BASE} samples and each level above combines two buckets of the one
+ * below. Every level is a ring of the same capacity, so the memory is fixed:
+ * recent samples are available at every resolution, older ones only at the
+ * coarser levels that still reach back to them.
+ *
+ * Appending is O(1) amortized per sample. A query picks the finest level that
+ * covers the range with at most the requested number of buckets, drawing the
+ * min and max of each bucket gives at most 2 points per pixel while keeping
+ * every QRS peak.
+ */
+public class MinMaxPyramid {
+    public static final int BASE = 16;
+
+    /**
+     * Result of a query, the buckets span samples [first + i * span, first + (i + 1) * span).
+     */
+    public static class Range {
+        public long first;
+        public long span;
+        public int count;
+        public int[] min;
+        public int[] max;
+
+        public Range(int capacity) {
+            this.min = new int[capacity];
+            this.max = new int[capacity];
+        }
+    }
+
+    private final int levels;
+    private final int mask;
+    private final int[][] mins;
+    private final int[][] maxs;
+    // Completed buckets per level
+    private final long[] counts;
+
+    // Bucket of each level being combined from the level below
+    private final int[] partialMin;
+    private final int[] partialMax;
+    private final int[] partialFill;
+
+    public MinMaxPyramid(int capacity, int levels) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.levels = Math.max(2, levels);
+        this.mask = size - 1;
+        this.mins = new int[this.levels][size];
+        this.maxs = new int[this.levels][size];
+        this.counts = new long[this.levels];
+        this.partialMin = new int[this.levels];
+        this.partialMax = new int[this.levels];
+        this.partialFill = new int[this.levels];
+    }
+
+    public void append(int[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; ++i) {
+            push(0, samples[i], samples[i]);
+        }
+    }
+
+    public void append(int sample) {
+        push(0, sample, sample);
+    }
+
+    private void push(int level, int min, int max) {
+        while (true) {
+            int index = (int) (counts[level] & mask);
+            mins[level][index] = min;
+            maxs[level][index] = max;
+            counts[level]++;
+
+            int parent = level + 1;
+            if (parent == levels) return;
+
+            if (partialFill[parent] == 0) {
+                partialMin[parent] = min;
+                partialMax[parent] = max;
+            } else {
+                if (min < partialMin[parent]) partialMin[parent] = min;
+                if (max > partialMax[parent]) partialMax[parent] = max;
+            }
+            if (++partialFill[parent] < fanIn(parent)) return;
+
+            partialFill[parent] = 0;
+            level = parent;
+            min = partialMin[parent];
+            max = partialMax[parent];
+        }
+    }
+
+    private static int fanIn(int level) {
+        return level == 1 ? BASE : 2;
+    }
+
+    /**
+     * Number of samples a bucket of level spans.
+     */
+    public static long span(int level) {
+        return level == 0 ? 1 : (long) BASE << (level - 1);
+    }
+
+    public long getSampleCount() {
+        return counts[0];
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Decimate samples [from, to) into at most maxBuckets buckets of a single level.
+     *
+     * The newest samples that don't fill a bucket of the chosen level yet are
+     * left out, as are samples older than the coarsest level reaches.
+     */
+    public void query(long from, long to, int maxBuckets, Range out) {
+        from = Math.max(0, from);
+        to = Math.min(to, counts[0]);
+        out.count = 0;
+        out.first = from;
+        out.span = 1;
+        if (to <= from || maxBuckets <= 0) return;
+
+        int level = 0;
+        long first = 0;
+        long end = 0;
+        for (; level < levels; ++level) {
+            long span = span(level);
+            first = Math.max(from / span, counts[level] - (mask + 1));
+            end = Math.min((to + span - 1) / span, counts[level]);
+            if (first * span <= from && end - first <= maxBuckets) break;
+        }
+        if (level == levels) {
+            // Not even the coarsest level reaches back to from
+            level = levels - 1;
+            end = Math.min(end, first + maxBuckets);
+        }
+
+        int n = (int) Math.max(0, end - first);
+        if (out.min.length < n) {
+            out.min = new int[n];
+            out.max = new int[n];
+        }
+        for (int i = 0; i < n; ++i) {
+            int index = (int) ((first + i) & mask);
+            out.min[i] = mins[level][index];
+            out.max[i] = maxs[level][index];
+        }
+        out.first = first * span(level);
+        out.span = span(level);
+        out.count = n;
+    }
+
+    public void clear() {
+        for (int level = 0; level < levels; ++level) {
+            counts[level] = 0;
+            partialFill[level] = 0;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.hrvapplication;
+
+import java.util.Arrays;
+
+/**
+ * Streaming R peak detection on the live signal, after Pan and Tompkins.
+ *
+ * Each sample goes through a 5-15 Hz band-pass, a 5 point derivative,
+ * squaring and a 150 ms moving window integration. Peaks of the integrated
+ * signal at least 200 ms apart are classified against thresholds adapted to
+ * the running signal and noise peak levels. A beat is searched back with half
+ * the threshold when none was found for 166% of the average RR interval, the
+ * signal level being halved when that finds nothing either. Peaks within
+ * 360 ms of a beat with less than half its slope are taken as T waves. The R
+ * peak is placed at the largest band-passed sample of the window which led to
+ * the detection.
+ *
+ * All state lives in fixed size primitive buffers, the cost per sample is
+ * constant. The detected RR intervals are measured in samples, so they are
+ * exact to a sample period whatever the notification timing. The methods are
+ * synchronized, the detector is fed on the dispatcher thread but reset and
+ * read from the UI.
+ */
+public class QrsDetector implements HrvDataListener {
+    private static final double LOW_CUT_HZ = 5.0;
+    private static final double HIGH_CUT_HZ = 15.0;
+    private static final int LEARNING_MS = 2000;
+    private static final int REFRACTORY_MS = 200;
+    private static final int T_WAVE_MS = 360;
+    private static final int RR_AVERAGE_BEATS = 8;
+
+    private final HrvDataListener target;
+    private final int sampleRateHz;
+    private final double periodMs;
+
+    // Band-pass, a high-pass and a low-pass biquad
+    private final double[] highPass;
+    private final double[] lowPass;
+    private double hx1, hx2, hy1, hy2;
+    private double lx1, lx2, ly1, ly2;
+
+    // Band-passed samples, covering the integration window and the derivative
+    private final double[] filtered;
+    // Squared derivative within the integration window
+    private final double[] squared;
+    private final int window;
+    private double integral = 0.0;
+    private double prevIntegral = 0.0;
+    private double prevPrevIntegral = 0.0;
+
+    private final int refractory;
+    private final int tWave;
+    private final int learning;
+
+    private long sampleIndex = 0;
+    // Timestamp of sample 0, following the frames' timestamps
+    private double timeBase = 0.0;
+
+    // Learning phase
+    private double learningMax = 0.0;
+    private double learningSum = 0.0;
+
+    // Peak levels and thresholds of the integrated signal
+    private double signalLevel = 0.0;
+    private double noiseLevel = 0.0;
+    private double threshold = 0.0;
+
+    // Best peak waiting for REFRACTORY_MS without a larger one
+    private double candidatePeak = 0.0;
+    private long candidateIndex = -1;
+    private long candidateR = 0;
+    private double candidateSlope = 0.0;
+
+    // Largest rejected peak since the last beat, for the search back
+    private double searchPeak = 0.0;
+    private long searchR = -1;
+    private double searchSlope = 0.0;
+
+    private long lastBeat = -1;
+    // Start of the time without a beat, the last beat or failed search back
+    private long searchFrom = -1;
+    private double lastSlope = 0.0;
+    // Last RR intervals in samples
+    private final int[] recentRr = new int[RR_AVERAGE_BEATS];
+    private int recentCount = 0;
+    private long rrSum = 0;
+
+    private long beatCount = 0;
+    private long searchBackCount = 0;
+
+    /**
+     * @param target Receives the RR intervals in ms, with the timestamp of the beat closing them.
+     */
+    public QrsDetector(int sampleRateHz, HrvDataListener target) {
+        this.target = target;
+        this.sampleRateHz = sampleRateHz;
+        this.periodMs = 1000.0 / sampleRateHz;
+        this.highPass = biquad(sampleRateHz, LOW_CUT_HZ, true);
+        this.lowPass = biquad(sampleRateHz, HIGH_CUT_HZ, false);
+        this.window = Math.max(1, (int) Math.round(0.150 * sampleRateHz));
+        this.filtered = new double[window + 4];
+        this.squared = new double[window];
+        this.refractory = samples(REFRACTORY_MS);
+        this.tWave = samples(T_WAVE_MS);
+        this.learning = samples(LEARNING_MS);
+    }
+
+    private int samples(int ms) {
+        return (int) Math.round(ms * sampleRateHz / 1000.0);
+    }
+
+    /**
+     * Butterworth biquad coefficients {b0, b1, b2, a1, a2}, normalized by a0.
+     */
+    private static double[] biquad(int sampleRateHz, double cutoffHz, boolean highPass) {
+        double w = 2 * Math.PI * cutoffHz / sampleRateHz;
+        double alpha = Math.sin(w) / Math.sqrt(2);
+        double cos = Math.cos(w);
+        double a0 = 1 + alpha;
+        double b1 = highPass ? -(1 + cos) : 1 - cos;
+        double b0 = highPass ? (1 + cos) / 2 : (1 - cos) / 2;
+        return new double[]{b0 / a0, b1 / a0, b0 / a0, -2 * cos / a0, (1 - alpha) / a0};
+    }
+
+    @Override
+    public synchronized void onEcgSamples(int[] samples, int offset, int length, long timestamp) {
+        timeBase = timestamp - sampleIndex * periodMs;
+        for (int i = 0; i < length; ++i) {
+            addSample(samples[offset + i]);
+        }
+    }
+
+    /**
+     * A beat may have been lost in the gap, so the interval across it is left
+     * out and the gap passed on to the target.
+     */
+    @Override
+    public synchronized void onGap(HrvStream stream, long timestamp, long durationMs) {
+        if (stream != HrvStream.ECG) return;
+        lastBeat = -1;
+        searchFrom = -1;
+        searchPeak = 0.0;
+        searchR = -1;
+        target.onGap(HrvStream.RR, timestamp, durationMs);
+    }
+
+    public synchronized void addSample(int sample) {
+        double[] h = highPass;
+        double hy = h[0] * sample + h[1] * hx1 + h[2] * hx2 - h[3] * hy1 - h[4] * hy2;
+        hx2 = hx1;
+        hx1 = sample;
+        hy2 = hy1;
+        hy1 = hy;
+        double[] l = lowPass;
+        double y = l[0] * hy + l[1] * lx1 + l[2] * lx2 - l[3] * ly1 - l[4] * ly2;
+        lx2 = lx1;
+        lx1 = hy;
+        ly2 = ly1;
+        ly1 = y;
+
+        long n = sampleIndex;
+        int f = filtered.length;
+        filtered[(int) (n % f)] = y;
+        double derivative = n < 4 ? 0.0 : (2 * y + filtered[(int) ((n - 1) % f)]
+                - filtered[(int) ((n - 3) % f)] - 2 * filtered[(int) ((n - 4) % f)]) / 8;
+
+        int slot = (int) (n % window);
+        double square = derivative * derivative;
+        integral += square - squared[slot];
+        squared[slot] = square;
+        sampleIndex++;
+
+        if (n < learning) {
+            learningMax = Math.max(learningMax, integral);
+            learningSum += integral;
+            if (n == learning - 1) {
+                signalLevel = 0.25 * learningMax;
+                noiseLevel = 0.5 * learningSum / learning;
+                updateThreshold();
+            }
+        } else if (prevIntegral > prevPrevIntegral && prevIntegral >= integral) {
+            onPeak(n - 1, prevIntegral);
+        }
+        prevPrevIntegral = prevIntegral;
+        prevIntegral = integral;
+
+        if (candidateIndex >= 0 && n - candidateIndex >= refractory) {
+            classify(candidatePeak, candidateR, candidateSlope);
+            candidateIndex = -1;
+        }
+        if (lastBeat >= 0 && recentCount > 0 && searchR >= 0
+                && n - searchFrom > 166 * rrSum / recentCount / 100) {
+            searchBack(n);
+        }
+    }
+
+    private void onPeak(long index, double peak) {
+        if (candidateIndex >= 0 && peak <= candidatePeak) return;
+
+        if (candidateIndex >= 0) {
+            rejectPeak(candidatePeak, candidateR, candidateSlope);
+        }
+        candidatePeak = peak;
+        candidateIndex = index;
+        // The R peak and the steepest slope within the integration window
+        int f = filtered.length;
+        double best = Double.NEGATIVE_INFINITY;
+        double slope = 0.0;
+        long r = index;
+        for (long i = Math.max(1, index - window + 1); i <= index; ++i) {
+            double value = filtered[(int) (i % f)];
+            if (value > best) {
+                best = value;
+                r = i;
+            }
+            slope = Math.max(slope, Math.abs(value - filtered[(int) ((i - 1) % f)]));
+        }
+        candidateR = r;
+        candidateSlope = slope;
+    }
+
+    private void classify(double peak, long r, double slope) {
+        boolean tWaveLike = lastBeat >= 0 && r - lastBeat < tWave && slope < lastSlope / 2;
+        if (peak > threshold && (lastBeat < 0 || r - lastBeat >= refractory) && !tWaveLike) {
+            signalLevel = 0.125 * peak + 0.875 * signalLevel;
+            updateThreshold();
+            onBeat(r, slope);
+        } else {
+            rejectPeak(peak, r, slope);
+        }
+    }
+
+    private void rejectPeak(double peak, long r, double slope) {
+        noiseLevel = 0.125 * peak + 0.875 * noiseLevel;
+        updateThreshold();
+        if (peak > searchPeak && (lastBeat < 0 || r - lastBeat >= refractory)) {
+            searchPeak = peak;
+            searchR = r;
+            searchSlope = slope;
+        }
+    }
+
+    private void searchBack(long n) {
+        if (searchPeak > threshold / 2) {
+            searchBackCount++;
+            signalLevel = 0.25 * searchPeak + 0.75 * signalLevel;
+            updateThreshold();
+            onBeat(searchR, searchSlope);
+        } else {
+            // Not even a weak beat, the signal got smaller: lower its level and search again
+            signalLevel = Math.max(noiseLevel, 0.5 * signalLevel);
+            updateThreshold();
+            searchFrom = n;
+            searchR = -1;
+            searchPeak = 0.0;
+        }
+    }
+
+    private void updateThreshold() {
+        threshold = noiseLevel + 0.25 * (signalLevel - noiseLevel);
+    }
+
+    private void onBeat(long r, double slope) {
+        if (lastBeat >= 0) {
+            int interval = (int) (r - lastBeat);
+            int slot = (int) (beatCount % RR_AVERAGE_BEATS);
+            rrSum += interval - recentRr[slot];
+            recentRr[slot] = interval;
+            recentCount = Math.min(recentCount + 1, RR_AVERAGE_BEATS);
+            beatCount++;
+            target.onRrInterval((int) Math.round(interval * periodMs), Math.round(timeBase + r * periodMs));
+        }
+        lastBeat = r;
+        searchFrom = r;
+        lastSlope = slope;
+        searchPeak = 0.0;
+        searchR = -1;
+    }
+
+    /**
+     * Number of RR intervals detected.
+     */
+    public synchronized long getBeatCount() {
+        return beatCount;
+    }
+
+    /**
+     * Number of beats found by the search back with the lower threshold.
+     */
+    public synchronized long getSearchBackCount() {
+        return searchBackCount;
+    }
+
+    public synchronized void reset() {
+        hx1 = hx2 = hy1 = hy2 = 0.0;
+        lx1 = lx2 = ly1 = ly2 = 0.0;
+        Arrays.fill(filtered, 0.0);
+        Arrays.fill(squared, 0.0);
+        integral = prevIntegral = prevPrevIntegral = 0.0;
+        sampleIndex = 0;
+        learningMax = learningSum = 0.0;
+        signalLevel = noiseLevel = threshold = 0.0;
+        candidateIndex = -1;
+        searchPeak = 0.0;
+        searchR = -1;
+        lastBeat = -1;
+        searchFrom = -1;
+        lastSlope = 0.0;
+        Arrays.fill(recentRr, 0);
+        recentCount = 0;
+        rrSum = 0;
+        beatCount = 0;
+        searchBackCount = 0;
+    }
+}
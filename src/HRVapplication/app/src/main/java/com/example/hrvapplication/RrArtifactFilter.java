@@ -0,0 +1,146 @@
+package com.example.hrvapplication;
+
+import java.util.Arrays;
+
+/**
+ * Rejects or corrects RR intervals coming from missed or extra beats.
+ *
+ * Intervals outside the physiological bounds hrv.ino uses are rejected.
+ * Within them, an interval differing from the median of the last accepted
+ * ones by more than a percentage is an artifact: it is rejected, or replaced
+ * by that median when correcting. As many artifacts in a row as the window
+ * holds mean the rhythm itself changed, the window then starts over from the
+ * current interval.
+ *
+ * The window has a fixed size, each interval costs O(window).
+ */
+public class RrArtifactFilter implements RrFilter {
+    // MIN_RR_INTERVAL and MAX_RR_INTERVAL of hrv.ino
+    public static final int MIN_RR_INTERVAL = 250;
+    public static final int MAX_RR_INTERVAL = 1500;
+
+    public static final int DEFAULT_WINDOW = 5;
+    public static final int DEFAULT_MAX_CHANGE_PERCENT = 20;
+    // Accepted intervals needed before the median is trusted
+    private static final int MIN_REFERENCE = 3;
+
+    private final int window;
+    private final int maxChangePercent;
+    private final boolean correct;
+
+    // Last accepted intervals in arrival order, and sorted for the median
+    private final int[] recent;
+    private final int[] sorted;
+    private int count = 0;
+    private int next = 0;
+    private int artifactsInRow = 0;
+
+    // Written by the filtering thread only
+    private volatile long acceptedCount = 0;
+    private volatile long outOfBoundsCount = 0;
+    private volatile long artifactCount = 0;
+    private volatile long correctedCount = 0;
+
+    public RrArtifactFilter() {
+        this(DEFAULT_WINDOW, DEFAULT_MAX_CHANGE_PERCENT, false);
+    }
+
+    /**
+     * @param correct Replace artifacts by the median instead of rejecting them.
+     */
+    public RrArtifactFilter(int window, int maxChangePercent, boolean correct) {
+        this.window = window;
+        this.maxChangePercent = maxChangePercent;
+        this.correct = correct;
+        this.recent = new int[window];
+        this.sorted = new int[window];
+    }
+
+    @Override
+    public int filter(int rr, long timestamp) {
+        if (rr < MIN_RR_INTERVAL || rr > MAX_RR_INTERVAL) {
+            outOfBoundsCount++;
+            return REJECT;
+        }
+
+        if (count >= MIN_REFERENCE) {
+            int median = median();
+            if (Math.abs(rr - median) * 100L > (long) maxChangePercent * median) {
+                if (++artifactsInRow < window) {
+                    artifactCount++;
+                    if (correct) {
+                        correctedCount++;
+                        return median;
+                    }
+                    return REJECT;
+                }
+                // Too many in a row to be artifacts
+                count = 0;
+                next = 0;
+            }
+        }
+
+        artifactsInRow = 0;
+        accept(rr);
+        acceptedCount++;
+        return rr;
+    }
+
+    private void accept(int rr) {
+        if (count < window) {
+            recent[next] = rr;
+            insert(count, rr);
+            count++;
+        } else {
+            int old = recent[next];
+            recent[next] = rr;
+            // Drop the oldest from the sorted copy, then insert the new one
+            int i = Arrays.binarySearch(sorted, 0, count, old);
+            System.arraycopy(sorted, i + 1, sorted, i, count - i - 1);
+            insert(count - 1, rr);
+        }
+        next = (next + 1) % window;
+    }
+
+    private void insert(int size, int rr) {
+        int i = size;
+        while (i > 0 && sorted[i - 1] > rr) {
+            sorted[i] = sorted[i - 1];
+            i--;
+        }
+        sorted[i] = rr;
+    }
+
+    private int median() {
+        return count % 2 == 1 ? sorted[count / 2] : (sorted[count / 2 - 1] + sorted[count / 2]) / 2;
+    }
+
+    @Override
+    public void reset() {
+        count = 0;
+        next = 0;
+        artifactsInRow = 0;
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    /**
+     * Intervals rejected for being outside [MIN_RR_INTERVAL, MAX_RR_INTERVAL].
+     */
+    public long getOutOfBoundsCount() {
+        return outOfBoundsCount;
+    }
+
+    /**
+     * Intervals taken as artifacts, rejected or corrected.
+     */
+    public long getArtifactCount() {
+        return artifactCount;
+    }
+
+    public long getCorrectedCount() {
+        return correctedCount;
+    }
+}
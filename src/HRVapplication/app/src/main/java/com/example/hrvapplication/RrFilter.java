@@ -0,0 +1,23 @@
+package com.example.hrvapplication;
+
+/**
+ * Stage the RR intervals go through before they reach the {@link HrvDataListener}s.
+ *
+ * Called on a single thread, in the order the intervals arrive.
+ */
+public interface RrFilter {
+    /**
+     * Returned by {@link #filter} for an interval which must not be passed on.
+     */
+    int REJECT = -1;
+
+    /**
+     * @return The interval to pass on, possibly corrected, or {@link #REJECT}.
+     */
+    int filter(int rr, long timestamp);
+
+    /**
+     * Forget the intervals seen so far, e.g. when a measurement starts over.
+     */
+    void reset();
+}
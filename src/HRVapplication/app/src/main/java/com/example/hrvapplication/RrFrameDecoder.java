@@ -0,0 +1,48 @@
+package com.example.hrvapplication;
+
+/**
+ * Decodes the live RR characteristic payloads sent by hrv.ino.
+ *
+ * Two payload layouts are supported:
+ * - Legacy: the interval in ms as a single little-endian int32 (4 bytes).
+ * - Framed: [seq u16][rr ms u16][timestamp u32] (8 bytes, little endian), the
+ *   timestamp being the device time of the beat closing the interval.
+ */
+public class RrFrameDecoder {
+    public static final int FRAME_SIZE = 8;
+
+    private int sequence;
+    private int rr;
+    private long timestamp;
+
+    public static boolean isFrame(byte[] data) {
+        return data != null && data.length >= FRAME_SIZE;
+    }
+
+    /**
+     * @return false if the payload is not a framed interval.
+     */
+    public boolean decode(byte[] data) {
+        if (!isFrame(data)) return false;
+
+        this.sequence = (data[0] & 0xFF) | (data[1] & 0xFF) << 8;
+        this.rr = (data[2] & 0xFF) | (data[3] & 0xFF) << 8;
+        this.timestamp = ((data[4] & 0xFF)
+                | (data[5] & 0xFF) << 8
+                | (data[6] & 0xFF) << 16
+                | (long) (data[7] & 0xFF) << 24);
+        return true;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getRr() {
+        return rr;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.hrvapplication;
+
+/**
+ * The RR intervals of a session in order, with the time each one was received.
+ *
+ * Intervals are kept as unsigned 16 bit values and timestamps as 32 bit ms
+ * offsets from the first beat, in chunks of {@link #CHUNK_SIZE} beats. Appending
+ * is O(1) and doesn't box. Once maxBeats are held the oldest chunk is dropped
+ * and its arrays are reused, so a full series allocates nothing anymore.
+ *
+ * Gaps of the RR stream are held as entries of interval 0 at the time the gap
+ * starts, see {@link #appendGap}.
+ *
+ * Analytics read the chunks in place through {@link #forEachChunk}.
+ */
+public class RrSeries {
+    public static final int CHUNK_SIZE = 4096;
+    // A day at up to 90 BPM
+    public static final int DEFAULT_MAX_BEATS = 32 * CHUNK_SIZE;
+
+    /**
+     * Receives the beats of the series one chunk at a time.
+     */
+    public interface ChunkVisitor {
+        /**
+         * @param rr Intervals of the chunk, read as rr[i] &amp; 0xFFFF, 0 for a gap.
+         * @param offsets Times of the beats in ms after baseTimestamp.
+         * @param length Number of beats of the chunk, from index 0.
+         */
+        void visit(short[] rr, int[] offsets, int length, long baseTimestamp);
+    }
+
+    private final int maxChunks;
+    private final short[][] rrChunks;
+    private final int[][] offsetChunks;
+    // Ring of chunks, the last one is being filled
+    private int firstChunk = 0;
+    private int chunkCount = 0;
+    private int lastFill = CHUNK_SIZE;
+
+    private long baseTimestamp = 0;
+    private long dropped = 0;
+
+    public RrSeries() {
+        this(DEFAULT_MAX_BEATS);
+    }
+
+    /**
+     * @param maxBeats Beats kept at least, rounded up to whole chunks.
+     */
+    public RrSeries(int maxBeats) {
+        // One more chunk, the oldest is dropped only when a new one is needed
+        this.maxChunks = Math.max(1, (maxBeats + CHUNK_SIZE - 1) / CHUNK_SIZE) + 1;
+        this.rrChunks = new short[maxChunks][];
+        this.offsetChunks = new int[maxChunks][];
+    }
+
+    public synchronized void append(int rr, long timestamp) {
+        if (chunkCount == 0) {
+            baseTimestamp = timestamp;
+        }
+        if (lastFill == CHUNK_SIZE) {
+            nextChunk();
+        }
+        int chunk = (firstChunk + chunkCount - 1) % maxChunks;
+        rrChunks[chunk][lastFill] = (short) Math.min(rr, 0xFFFF);
+        offsetChunks[chunk][lastFill] = (int) (timestamp - baseTimestamp);
+        lastFill++;
+    }
+
+    /**
+     * RR intervals were lost from timestamp on. The gap lasts until the
+     * interval of the beat appended next starts, its timestamp minus its rr.
+     */
+    public void appendGap(long timestamp) {
+        append(0, timestamp);
+    }
+
+    private void nextChunk() {
+        if (chunkCount == maxChunks) {
+            // The slot of the oldest chunk becomes the newest one
+            dropped += CHUNK_SIZE;
+            firstChunk = (firstChunk + 1) % maxChunks;
+            chunkCount--;
+        }
+        int chunk = (firstChunk + chunkCount) % maxChunks;
+        if (rrChunks[chunk] == null) {
+            rrChunks[chunk] = new short[CHUNK_SIZE];
+            offsetChunks[chunk] = new int[CHUNK_SIZE];
+        }
+        chunkCount++;
+        lastFill = 0;
+    }
+
+    /**
+     * Number of beats held, gaps included.
+     */
+    public synchronized int size() {
+        return chunkCount == 0 ? 0 : (chunkCount - 1) * CHUNK_SIZE + lastFill;
+    }
+
+    /**
+     * Number of beats dropped from the start to bound the memory.
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * @param index 0 for the oldest beat held.
+     */
+    public synchronized int getRr(int index) {
+        return rrChunks[chunkOf(index)][index % CHUNK_SIZE] & 0xFFFF;
+    }
+
+    public synchronized long getTimestamp(int index) {
+        return baseTimestamp + offsetChunks[chunkOf(index)][index % CHUNK_SIZE];
+    }
+
+    private int chunkOf(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Beat " + index + " of " + size());
+        }
+        return (firstChunk + index / CHUNK_SIZE) % maxChunks;
+    }
+
+    /**
+     * Hand the chunks to visitor from the oldest to the newest, without copying.
+     * The series is locked meanwhile.
+     */
+    public synchronized void forEachChunk(ChunkVisitor visitor) {
+        for (int i = 0; i < chunkCount; ++i) {
+            int chunk = (firstChunk + i) % maxChunks;
+            visitor.visit(rrChunks[chunk], offsetChunks[chunk], i == chunkCount - 1 ? lastFill : CHUNK_SIZE, baseTimestamp);
+        }
+    }
+
+    /**
+     * Copy the intervals of the beats [from, from + length) into dst.
+     */
+    public synchronized void copyRr(int from, int[] dst, int offset, int length) {
+        for (int i = 0; i < length; ++i) {
+            int index = from + i;
+            dst[offset + i] = rrChunks[chunkOf(index)][index % CHUNK_SIZE] & 0xFFFF;
+        }
+    }
+
+    /**
+     * Drop all beats, the chunks are kept for reuse.
+     */
+    public synchronized void clear() {
+        firstChunk = 0;
+        chunkCount = 0;
+        lastFill = CHUNK_SIZE;
+        dropped = 0;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.hrvapplication;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single producer / single consumer ring buffer of int samples.
+ *
+ * The BLE callback thread is the producer and the UI thread is the consumer.
+ * When the buffer is full new samples are dropped (and counted) rather than
+ * blocking the producer. Nothing is allocated after construction.
+ */
+public class SampleRingBuffer {
+    private final int[] buffer;
+    private final int mask;
+
+    // Sequence of the next sample to write, only advanced by the producer
+    private final AtomicLong head = new AtomicLong();
+    // Sequence of the next sample to read, only advanced by the consumer
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity Rounded up to the next power of two.
+     */
+    public SampleRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.buffer = new int[size];
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Producer side.
+     *
+     * @return false if the buffer is full and the sample was dropped.
+     */
+    public boolean offer(int sample) {
+        long h = head.get();
+        if (h - tail.get() >= buffer.length) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        buffer[(int) h & mask] = sample;
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * Producer side.
+     *
+     * @return The number of samples written, the rest are dropped.
+     */
+    public int offer(int[] samples, int offset, int length) {
+        long h = head.get();
+        int free = buffer.length - (int) (h - tail.get());
+        int n = Math.min(free, length);
+
+        for (int i = 0; i < n; ++i) {
+            buffer[(int) (h + i) & mask] = samples[offset + i];
+        }
+        head.lazySet(h + n);
+
+        if (n < length) {
+            dropped.addAndGet(length - n);
+        }
+        return n;
+    }
+
+    /**
+     * Consumer side. Move up to maxLength of the oldest samples into dst.
+     *
+     * @return The number of samples drained.
+     */
+    public int drain(int[] dst, int offset, int maxLength) {
+        long t = tail.get();
+        int n = (int) Math.min(head.get() - t, maxLength);
+
+        for (int i = 0; i < n; ++i) {
+            dst[offset + i] = buffer[(int) (t + i) & mask];
+        }
+        tail.lazySet(t + n);
+        return n;
+    }
+
+    /**
+     * Consumer side. Discard everything written so far.
+     */
+    public void clear() {
+        tail.lazySet(head.get());
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.hrvapplication;
+
+/**
+ * Fixed size window over the most recent samples of a stream.
+ *
+ * Appending is O(1) per sample and never shifts or allocates, unlike
+ * removing the first entry of an ArrayList once the window is full.
+ */
+public class SampleWindow {
+    private final int[] samples;
+    private int start;
+    private int size;
+    private long totalCount;
+
+    public SampleWindow(int capacity) {
+        this.samples = new int[capacity];
+    }
+
+    public void append(int[] src, int offset, int length) {
+        // Only the last capacity samples can end up in the window
+        if (length > samples.length) {
+            offset += length - samples.length;
+            totalCount += length - samples.length;
+            length = samples.length;
+        }
+
+        for (int i = 0; i < length; ++i) {
+            int end = start + size;
+            if (end >= samples.length) end -= samples.length;
+            samples[end] = src[offset + i];
+
+            if (size < samples.length) {
+                size++;
+            } else if (++start == samples.length) {
+                start = 0;
+            }
+        }
+        totalCount += length;
+    }
+
+    /**
+     * @param i Index from the oldest (0) to the newest (size() - 1) sample.
+     */
+    public int get(int i) {
+        int idx = start + i;
+        if (idx >= samples.length) idx -= samples.length;
+        return samples[idx];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return samples.length;
+    }
+
+    /**
+     * @return The number of samples ever appended.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public void clear() {
+        start = 0;
+        size = 0;
+        totalCount = 0;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.hrvapplication;
+
+/**
+ * Follows the rolling 16 bit sequence number of the frames of one stream and
+ * counts the frames lost on the way.
+ *
+ * A frame at least half the range ahead of the expected one, and any other
+ * than a repeat of the last one behind it, is taken as the peripheral starting
+ * over, e.g. after a reset, and followed from there. Single writer:
+ * {@link #next(int)} and {@link #reset()} must be called from the same thread,
+ * the counters can be read from any thread.
+ */
+public class SequenceGapDetector {
+    /** Returned by {@link #next(int)} for a frame received again. */
+    public static final int DUPLICATE = -1;
+
+    private static final int RANGE = 1 << 16;
+    private static final int MASK = RANGE - 1;
+
+    private int expected = -1;
+    private volatile long receivedCount = 0;
+    private volatile long lostCount = 0;
+    private volatile long gapCount = 0;
+    private volatile long duplicateCount = 0;
+    private volatile long restartCount = 0;
+
+    /**
+     * @return The number of frames lost right before this one, or {@link #DUPLICATE}.
+     */
+    public int next(int sequence) {
+        sequence &= MASK;
+        if (expected < 0) {
+            expected = (sequence + 1) & MASK;
+            receivedCount++;
+            return 0;
+        }
+
+        int lost = (sequence - expected) & MASK;
+        if (lost == MASK) {
+            duplicateCount++;
+            return DUPLICATE;
+        }
+        expected = (sequence + 1) & MASK;
+        receivedCount++;
+        if (lost >= RANGE / 2) {
+            restartCount++;
+            return 0;
+        }
+        if (lost > 0) {
+            gapCount++;
+            lostCount += lost;
+        }
+        return lost;
+    }
+
+    /**
+     * Sequence number of the next frame, -1 before the first one.
+     */
+    public int getExpected() {
+        return expected;
+    }
+
+    public long getReceivedCount() {
+        return receivedCount;
+    }
+
+    public long getLostCount() {
+        return lostCount;
+    }
+
+    /**
+     * Number of times one or more consecutive frames were lost.
+     */
+    public long getGapCount() {
+        return gapCount;
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    public long getRestartCount() {
+        return restartCount;
+    }
+
+    /**
+     * Fraction of the frames sent which were lost, 0 before any was received.
+     */
+    public double getLossRate() {
+        long lost = lostCount;
+        long total = lost + receivedCount;
+        return total == 0 ? 0.0 : (double) lost / total;
+    }
+
+    /**
+     * Forget the sequence and the counts, e.g. for a new measurement.
+     */
+    public void reset() {
+        expected = -1;
+        receivedCount = 0;
+        lostCount = 0;
+        gapCount = 0;
+        duplicateCount = 0;
+        restartCount = 0;
+    }
+}
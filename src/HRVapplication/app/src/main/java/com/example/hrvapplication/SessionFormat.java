@@ -0,0 +1,93 @@
+package com.example.hrvapplication;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the session files written by {@link SessionRecorder}.
+ *
+ * <pre>
+ * file   := header chunk*
+ * header := magic u32 | version u16 | reserved u16 | startTime u64      (16 bytes)
+ * chunk  := length u32 | records u32 | crc32 u32 | payload[length]
+ * record := TAG_ECG count:varint dt:zigzag sample-delta:zigzag*count
+ *         | TAG_RR dt:zigzag rr:varint
+ *         | TAG_BPM bpm:varint
+ *         | TAG_GAP stream:u8 dt:zigzag duration:varint              (version 2)
+ * </pre>
+ *
+ * Integers in headers are big endian. Timestamps are stored relative to the
+ * previous record of the chunk and samples relative to the previous sample,
+ * both start from 0 in every chunk so each chunk decodes on its own. The CRC
+ * covers the payload, a chunk that doesn't match it ends the readable part of
+ * the file.
+ */
+final class SessionFormat {
+    static final int MAGIC = 0x48525653;     // "HRVS"
+    static final short VERSION = 2;
+    static final int FILE_HEADER_SIZE = 16;
+    static final int CHUNK_HEADER_SIZE = 12;
+
+    static final byte TAG_ECG = 1;
+    static final byte TAG_RR = 2;
+    static final byte TAG_BPM = 3;
+    static final byte TAG_GAP = 4;
+
+    // Largest encoding of a single varint
+    static final int MAX_VARINT_SIZE = 5;
+    static final int MAX_VARLONG_SIZE = 10;
+
+    private SessionFormat() {
+    }
+
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static void putVarlong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    static long getVarlong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.hrvapplication;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Time index of a session file, one fixed size entry per chunk.
+ *
+ * <pre>
+ * file  := magic u32 | version u16 | entrySize u16 | reserved u64         (16 bytes)
+ * entry := firstTimestamp u64 | lastTimestamp u64 | offset u64 | sampleSum u64
+ *          | sampleCount u32 | sampleMin u32 | sampleMax u32 | rrCount u32 | rrSum u64
+ * </pre>
+ *
+ * Timestamps are the ones of the ECG records, a chunk without any carries
+ * over the last timestamp of the chunk before. The index is written next to
+ * the session by {@link SessionRecorder} and read through a memory map, so
+ * opening it and finding a time is independent of the length of the recording.
+ */
+public class SessionIndex {
+    static final int MAGIC = 0x48525649;     // "HRVI"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 56;
+
+    private static final int FIRST_TIMESTAMP = 0;
+    private static final int LAST_TIMESTAMP = 8;
+    private static final int OFFSET = 16;
+    private static final int SAMPLE_SUM = 24;
+    private static final int SAMPLE_COUNT = 32;
+    private static final int SAMPLE_MIN = 36;
+    private static final int SAMPLE_MAX = 40;
+    private static final int RR_COUNT = 44;
+    private static final int RR_SUM = 48;
+
+    /**
+     * Aggregate over the chunks of a time range.
+     */
+    public static class Summary {
+        public long sampleCount;
+        public int sampleMin = Integer.MAX_VALUE;
+        public int sampleMax = Integer.MIN_VALUE;
+        public long sampleSum;
+        public long rrCount;
+        public long rrSum;
+
+        public double getSampleMean() {
+            return sampleCount > 0 ? (double) sampleSum / sampleCount : 0;
+        }
+
+        public double getRrMean() {
+            return rrCount > 0 ? (double) rrSum / rrCount : 0;
+        }
+    }
+
+    private final MappedByteBuffer map;
+    private final int count;
+
+    private SessionIndex(MappedByteBuffer map) {
+        this.map = map;
+        this.count = (map.capacity() - HEADER_SIZE) / ENTRY_SIZE;
+    }
+
+    public static File fileFor(File session) {
+        return new File(session.getPath() + ".idx");
+    }
+
+    /**
+     * Map the index of a session file.
+     */
+    public static SessionIndex open(File session) throws IOException {
+        File file = fileFor(session);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.capacity() < HEADER_SIZE
+                    || map.getInt(0) != MAGIC
+                    || map.getShort(4) != VERSION
+                    || map.getShort(6) != ENTRY_SIZE) {
+                throw new IOException("Not a session index: " + file);
+            }
+            return new SessionIndex(map);
+        }
+    }
+
+    /**
+     * Number of indexed chunks.
+     */
+    public int size() {
+        return count;
+    }
+
+    private int at(int entry, int field) {
+        return HEADER_SIZE + entry * ENTRY_SIZE + field;
+    }
+
+    public long getFirstTimestamp(int entry) {
+        return map.getLong(at(entry, FIRST_TIMESTAMP));
+    }
+
+    public long getLastTimestamp(int entry) {
+        return map.getLong(at(entry, LAST_TIMESTAMP));
+    }
+
+    /**
+     * Position of the chunk in the session file, see {@link SessionReader#replay(HrvDataListener, long, int)}.
+     */
+    public long getOffset(int entry) {
+        return map.getLong(at(entry, OFFSET));
+    }
+
+    public int getSampleCount(int entry) {
+        return map.getInt(at(entry, SAMPLE_COUNT));
+    }
+
+    public int getSampleMin(int entry) {
+        return map.getInt(at(entry, SAMPLE_MIN));
+    }
+
+    public int getSampleMax(int entry) {
+        return map.getInt(at(entry, SAMPLE_MAX));
+    }
+
+    public double getSampleMean(int entry) {
+        int samples = getSampleCount(entry);
+        return samples > 0 ? (double) map.getLong(at(entry, SAMPLE_SUM)) / samples : 0;
+    }
+
+    public int getRrCount(int entry) {
+        return map.getInt(at(entry, RR_COUNT));
+    }
+
+    public long getStartTimestamp() {
+        return count > 0 ? getFirstTimestamp(0) : 0;
+    }
+
+    public long getEndTimestamp() {
+        return count > 0 ? getLastTimestamp(count - 1) : 0;
+    }
+
+    /**
+     * The chunk holding timestamp, that is the last one starting at or before it.
+     *
+     * @return 0 for timestamps before the recording, -1 for an empty index.
+     */
+    public int find(long timestamp) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (getFirstTimestamp(mid) <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return count == 0 ? -1 : Math.max(0, high);
+    }
+
+    /**
+     * Aggregate the chunks overlapping [from, to].
+     */
+    public Summary summarize(long from, long to) {
+        Summary summary = new Summary();
+        for (int entry = Math.max(0, find(from)); entry < count && getFirstTimestamp(entry) <= to; ++entry) {
+            if (getLastTimestamp(entry) < from) continue;
+            int samples = getSampleCount(entry);
+            if (samples > 0) {
+                summary.sampleCount += samples;
+                summary.sampleSum += map.getLong(at(entry, SAMPLE_SUM));
+                summary.sampleMin = Math.min(summary.sampleMin, getSampleMin(entry));
+                summary.sampleMax = Math.max(summary.sampleMax, getSampleMax(entry));
+            }
+            summary.rrCount += getRrCount(entry);
+            summary.rrSum += map.getLong(at(entry, RR_SUM));
+        }
+        return summary;
+    }
+
+    /**
+     * Appends the entries while {@link SessionRecorder} writes the chunks.
+     */
+    static class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer entry = ByteBuffer.allocateDirect(ENTRY_SIZE);
+
+        // Statistics of the chunk being filled
+        private boolean hasTimestamp = false;
+        private long firstTimestamp = 0;
+        private long lastTimestamp = 0;
+        private long sampleSum = 0;
+        private int sampleCount = 0;
+        private int sampleMin = Integer.MAX_VALUE;
+        private int sampleMax = Integer.MIN_VALUE;
+        private int rrCount = 0;
+        private long rrSum = 0;
+
+        Writer(File session) throws IOException {
+            this.channel = FileChannel.open(fileFor(session).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort((short) ENTRY_SIZE);
+            header.putLong(0);
+            header.flip();
+            write(header);
+        }
+
+        void addSamples(int[] samples, int offset, int length, long timestamp) {
+            if (!hasTimestamp) {
+                firstTimestamp = timestamp;
+                hasTimestamp = true;
+            }
+            lastTimestamp = timestamp;
+
+            int min = sampleMin;
+            int max = sampleMax;
+            long sum = sampleSum;
+            for (int i = offset; i < offset + length; ++i) {
+                int sample = samples[i];
+                if (sample < min) min = sample;
+                if (sample > max) max = sample;
+                sum += sample;
+            }
+            sampleMin = min;
+            sampleMax = max;
+            sampleSum = sum;
+            sampleCount += length;
+        }
+
+        void addRrInterval(int rr) {
+            rrCount++;
+            rrSum += rr;
+        }
+
+        /**
+         * Write the entry of the chunk just written at offset and start the next one.
+         */
+        void chunkWritten(long offset) throws IOException {
+            if (!hasTimestamp) {
+                firstTimestamp = lastTimestamp;
+            }
+            entry.clear();
+            entry.putLong(firstTimestamp);
+            entry.putLong(lastTimestamp);
+            entry.putLong(offset);
+            entry.putLong(sampleSum);
+            entry.putInt(sampleCount);
+            entry.putInt(sampleCount > 0 ? sampleMin : 0);
+            entry.putInt(sampleCount > 0 ? sampleMax : 0);
+            entry.putInt(rrCount);
+            entry.putLong(rrSum);
+            entry.flip();
+            write(entry);
+
+            hasTimestamp = false;
+            sampleSum = 0;
+            sampleCount = 0;
+            sampleMin = Integer.MAX_VALUE;
+            sampleMax = Integer.MIN_VALUE;
+            rrCount = 0;
+            rrSum = 0;
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        void sync() throws IOException {
+            channel.force(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
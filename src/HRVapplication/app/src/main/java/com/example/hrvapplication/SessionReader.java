@@ -0,0 +1,184 @@
+package com.example.hrvapplication;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Replays a file written by {@link SessionRecorder}.
+ *
+ * Reading stops at the first truncated or corrupted chunk, which is what a
+ * recording interrupted by a process death ends with.
+ */
+public class SessionReader implements Closeable {
+    private final FileChannel channel;
+    private final long startTime;
+    private final ByteBuffer header = ByteBuffer.allocate(SessionFormat.CHUNK_HEADER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer payload = ByteBuffer.allocate(SessionRecorder.DEFAULT_CHUNK_SIZE);
+    private int[] samples = new int[LiveDataDispatcher.SLOT_SIZE];
+
+    private boolean truncated = false;
+    private boolean corrupted = false;
+
+    public SessionReader(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        ByteBuffer fileHeader = ByteBuffer.allocate(SessionFormat.FILE_HEADER_SIZE);
+        boolean valid = readFully(fileHeader, 0) && fileHeader.getInt() == SessionFormat.MAGIC;
+        // Each version only adds records
+        short version = valid ? fileHeader.getShort() : 0;
+        if (version < 1 || version > SessionFormat.VERSION) {
+            channel.close();
+            throw new IOException("Not a session file: " + file);
+        }
+        fileHeader.getShort();
+        this.startTime = fileHeader.getLong();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Whether the last replay ended in a chunk that was only partially written.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Whether the last replay ended in a chunk that didn't match its CRC.
+     */
+    public boolean isCorrupted() {
+        return corrupted;
+    }
+
+    /**
+     * Deliver every record of the file to l, in recording order.
+     *
+     * @return The number of chunks replayed.
+     */
+    public int replay(HrvDataListener l) throws IOException {
+        return replay(l, SessionFormat.FILE_HEADER_SIZE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Deliver the records of at most maxChunks chunks, starting with the one
+     * at position, typically found through {@link SessionIndex#getOffset(int)}.
+     *
+     * @return The number of chunks replayed.
+     */
+    public int replay(HrvDataListener l, long position, int maxChunks) throws IOException {
+        truncated = false;
+        corrupted = false;
+
+        int chunks = 0;
+        while (chunks < maxChunks) {
+            int length = readChunk(position);
+            if (length < 0) break;
+            decode(payload, l);
+            position += SessionFormat.CHUNK_HEADER_SIZE + length;
+            chunks++;
+        }
+        return chunks;
+    }
+
+    /**
+     * Load and verify the chunk at position into payload.
+     *
+     * @return The payload length, or -1 at the end of the readable part of the file.
+     */
+    int readChunk(long position) throws IOException {
+        header.clear();
+        if (!readFully(header, position)) {
+            truncated = header.position() > 0;
+            return -1;
+        }
+        int length = header.getInt();
+        header.getInt();
+        int expectedCrc = header.getInt();
+        if (length < 0 || length > channel.size()) {
+            corrupted = true;
+            return -1;
+        }
+
+        if (payload.capacity() < length) {
+            payload = ByteBuffer.allocate(length);
+        }
+        payload.clear();
+        payload.limit(length);
+        if (!readFully(payload, position + SessionFormat.CHUNK_HEADER_SIZE)) {
+            truncated = true;
+            return -1;
+        }
+
+        crc.reset();
+        crc.update(payload.array(), 0, length);
+        if ((int) crc.getValue() != expectedCrc) {
+            corrupted = true;
+            return -1;
+        }
+        return length;
+    }
+
+    ByteBuffer getPayload() {
+        return payload;
+    }
+
+    void decode(ByteBuffer chunk, HrvDataListener l) {
+        long timestamp = 0;
+        int sample = 0;
+        while (chunk.hasRemaining()) {
+            byte tag = chunk.get();
+            switch (tag) {
+                case SessionFormat.TAG_ECG: {
+                    int count = SessionFormat.getVarint(chunk);
+                    timestamp += SessionFormat.unzigzag(SessionFormat.getVarlong(chunk));
+                    if (samples.length < count) {
+                        samples = new int[count];
+                    }
+                    for (int i = 0; i < count; ++i) {
+                        sample += SessionFormat.unzigzag(SessionFormat.getVarint(chunk));
+                        samples[i] = sample;
+                    }
+                    l.onEcgSamples(samples, 0, count, timestamp);
+                    break;
+                }
+                case SessionFormat.TAG_RR: {
+                    timestamp += SessionFormat.unzigzag(SessionFormat.getVarlong(chunk));
+                    l.onRrInterval(SessionFormat.getVarint(chunk), timestamp);
+                    break;
+                }
+                case SessionFormat.TAG_BPM:
+                    l.onBpm(SessionFormat.getVarint(chunk));
+                    break;
+                case SessionFormat.TAG_GAP: {
+                    HrvStream stream = HrvStream.values()[chunk.get()];
+                    timestamp += SessionFormat.unzigzag(SessionFormat.getVarlong(chunk));
+                    l.onGap(stream, timestamp, SessionFormat.getVarint(chunk));
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown record tag " + tag);
+            }
+        }
+    }
+
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) return false;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
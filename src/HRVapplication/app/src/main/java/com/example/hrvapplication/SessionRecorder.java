@@ -0,0 +1,285 @@
+package com.example.hrvapplication;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Appends the live streams to a session file, see {@link SessionFormat} for the layout.
+ *
+ * Records are encoded into a preallocated chunk buffer, a chunk is written
+ * once when it is full or flushIntervalMs after its first record, and the
+ * file is synced at most every syncIntervalMs. A timer writes the chunks no
+ * further record arrives for, e.g. while the measurement is paused. Every byte is written exactly
+ * once, so a process death loses at most the chunk being filled. A
+ * {@link SessionIndex} entry is written next to the session for every chunk.
+ *
+ * The callbacks don't throw: the first I/O error stops the recording and is
+ * kept in {@link #getFailure()}.
+ */
+public class SessionRecorder implements HrvDataListener, Closeable {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 10000;
+
+    private static final int MIN_CHUNK_SIZE = 4096;
+
+    // Shared by the recorders, doesn't keep the process alive
+    private static final ScheduledExecutorService FLUSH_TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "SessionRecorder");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final FileChannel channel;
+    private final SessionIndex.Writer index;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(SessionFormat.CHUNK_HEADER_SIZE);
+    private final ByteBuffer payload;
+    private final ByteBuffer[] chunk;
+    private final CRC32 crc = new CRC32();
+    private final long flushIntervalNanos;
+    private final long syncIntervalNanos;
+    private final ScheduledFuture<?> flushTimer;
+
+    // Delta state of the chunk being filled
+    private int records = 0;
+    private long lastTimestamp = 0;
+    private int lastSample = 0;
+    private long chunkStartNanos;
+    private long lastSyncNanos;
+
+    private long bytesWritten = 0;
+    private long chunksWritten = 0;
+    private long samplesWritten = 0;
+    private long syncCount = 0;
+
+    private IOException failure;
+    private boolean closed = false;
+
+    public SessionRecorder(File file, long startTime) throws IOException {
+        this(file, startTime, DEFAULT_CHUNK_SIZE, DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_SYNC_INTERVAL_MS);
+    }
+
+    /**
+     * @param startTime Wall clock time the session started at in ms, stored in the file header.
+     */
+    public SessionRecorder(File file, long startTime, int chunkSize, long flushIntervalMs, long syncIntervalMs) throws IOException {
+        this.payload = ByteBuffer.allocateDirect(Math.max(MIN_CHUNK_SIZE, chunkSize));
+        this.chunk = new ByteBuffer[]{header, payload};
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMs);
+
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer fileHeader = ByteBuffer.allocate(SessionFormat.FILE_HEADER_SIZE);
+        fileHeader.putInt(SessionFormat.MAGIC);
+        fileHeader.putShort(SessionFormat.VERSION);
+        fileHeader.putShort((short) 0);
+        fileHeader.putLong(startTime);
+        fileHeader.flip();
+        try {
+            write(new ByteBuffer[]{fileHeader});
+            this.index = new SessionIndex.Writer(file);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.lastSyncNanos = System.nanoTime();
+        this.flushTimer = FLUSH_TIMER.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                flushIfDue();
+            }
+        }, flushIntervalMs, Math.max(1, flushIntervalMs), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void onEcgSamples(int[] samples, int offset, int length, long timestamp) {
+        if (!reserve(1 + SessionFormat.MAX_VARINT_SIZE + SessionFormat.MAX_VARLONG_SIZE
+                + length * SessionFormat.MAX_VARINT_SIZE)) return;
+
+        payload.put(SessionFormat.TAG_ECG);
+        SessionFormat.putVarint(payload, length);
+        putTimestamp(timestamp);
+        int last = lastSample;
+        for (int i = offset; i < offset + length; ++i) {
+            SessionFormat.putVarint(payload, SessionFormat.zigzag(samples[i] - last));
+            last = samples[i];
+        }
+        lastSample = last;
+        samplesWritten += length;
+        index.addSamples(samples, offset, length, timestamp);
+        recordAdded();
+    }
+
+    @Override
+    public synchronized void onRrInterval(int rr, long timestamp) {
+        if (!reserve(1 + SessionFormat.MAX_VARLONG_SIZE + SessionFormat.MAX_VARINT_SIZE)) return;
+
+        payload.put(SessionFormat.TAG_RR);
+        putTimestamp(timestamp);
+        SessionFormat.putVarint(payload, rr);
+        index.addRrInterval(rr);
+        recordAdded();
+    }
+
+    @Override
+    public synchronized void onBpm(int bpm) {
+        if (!reserve(1 + SessionFormat.MAX_VARINT_SIZE)) return;
+
+        payload.put(SessionFormat.TAG_BPM);
+        SessionFormat.putVarint(payload, bpm);
+        recordAdded();
+    }
+
+    @Override
+    public synchronized void onGap(HrvStream stream, long timestamp, long durationMs) {
+        if (!reserve(2 + SessionFormat.MAX_VARLONG_SIZE + SessionFormat.MAX_VARINT_SIZE)) return;
+
+        payload.put(SessionFormat.TAG_GAP);
+        payload.put((byte) stream.ordinal());
+        putTimestamp(timestamp);
+        SessionFormat.putVarint(payload, (int) Math.min(Integer.MAX_VALUE, durationMs));
+        recordAdded();
+    }
+
+    private void putTimestamp(long timestamp) {
+        SessionFormat.putVarlong(payload, SessionFormat.zigzag(timestamp - lastTimestamp));
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * Make room for a record of at most size bytes, false if nothing can be recorded anymore.
+     */
+    private boolean reserve(int size) {
+        if (closed || failure != null) return false;
+        if (payload.remaining() < size) {
+            writeChunk();
+        }
+        if (payload.remaining() < size) {
+            failure = new IOException("Record of " + size + " bytes exceeds the chunk size");
+            return false;
+        }
+        return failure == null;
+    }
+
+    private void recordAdded() {
+        long now = System.nanoTime();
+        if (records++ == 0) {
+            chunkStartNanos = now;
+        } else if (now - chunkStartNanos >= flushIntervalNanos) {
+            writeChunk();
+        }
+    }
+
+    private synchronized void flushIfDue() {
+        if (closed || failure != null || records == 0) return;
+        if (System.nanoTime() - chunkStartNanos >= flushIntervalNanos) {
+            writeChunk();
+        }
+    }
+
+    private void writeChunk() {
+        if (records == 0) return;
+
+        payload.flip();
+        crc.reset();
+        crc.update(payload);
+        payload.rewind();
+
+        header.clear();
+        header.putInt(payload.limit());
+        header.putInt(records);
+        header.putInt((int) crc.getValue());
+        header.flip();
+
+        try {
+            long offset = bytesWritten;
+            write(chunk);
+            index.chunkWritten(offset);
+            chunksWritten++;
+            long now = System.nanoTime();
+            if (now - lastSyncNanos >= syncIntervalNanos) {
+                sync(now);
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        payload.clear();
+        records = 0;
+        lastTimestamp = 0;
+        lastSample = 0;
+    }
+
+    private void write(ByteBuffer[] buffers) throws IOException {
+        while (buffers[buffers.length - 1].hasRemaining()) {
+            bytesWritten += channel.write(buffers);
+        }
+    }
+
+    private void sync(long now) throws IOException {
+        channel.force(false);
+        index.sync();
+        lastSyncNanos = now;
+        syncCount++;
+    }
+
+    /**
+     * Write the chunk being filled and sync the file.
+     */
+    public synchronized void flush() throws IOException {
+        if (closed) return;
+        writeChunk();
+        if (failure != null) throw failure;
+        sync(System.nanoTime());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        try {
+            flush();
+        } finally {
+            closed = true;
+            flushTimer.cancel(false);
+            index.close();
+            channel.close();
+        }
+    }
+
+    public synchronized IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Bytes written to the file so far, headers included.
+     */
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public synchronized long getChunksWritten() {
+        return chunksWritten;
+    }
+
+    public synchronized long getSamplesWritten() {
+        return samplesWritten;
+    }
+
+    public synchronized long getSyncCount() {
+        return syncCount;
+    }
+}
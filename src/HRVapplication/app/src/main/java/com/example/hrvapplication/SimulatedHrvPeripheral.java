@@ -0,0 +1,705 @@
+package com.example.hrvapplication;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * In-process stand-in for the hrv.ino peripheral.
+ *
+ * Generates a synthetic ECG with the matching RR and BPM streams and speaks
+ * the same command protocol as {@link COMMANDS}, so the whole data path can
+ * run on a plain JVM. Time only moves through {@link #advance(long)}, which
+ * either a test drives directly (as fast as the CPU allows) or the thread
+ * started by {@link #start()} drives in real time.
+ *
+ * Like a real GATT link, every request (connect, command writes, ...) is
+ * answered asynchronously on the simulation thread.
+ *
+ * The link itself can be modeled with {@link #setLinkModel(int, int)}:
+ * notifications then wait in a bounded transmit queue for the next connection
+ * event, which carries a limited number of link layer packets. The interval
+ * follows the requested connection priority, the 2M PHY doubles the packets
+ * per event and the MTU sets how much a notification holds.
+ */
+public class SimulatedHrvPeripheral implements HrvTransport {
+    public static final String ADDRESS = "00:00:5E:00:53:01";
+
+    // Frames kept for backfill, as in hrv.ino
+    public static final int RR_RING_FRAMES = 256;
+    public static final int SIGNAL_RING_FRAMES = 1024;
+    public static final int SIGNAL_RING_SAMPLES = 8192;
+
+    // Histogram bins, as in hrv.ino
+    public static final int RR_HIST_BINS = 1500 + 1;
+    public static final int BPM_HIST_BINS = 220 + 1;
+
+    private static final int ECG_BASELINE = 512;
+    private static final int ECG_R_AMPLITUDE = 400;
+
+    private final ConcurrentLinkedQueue<Runnable> requests = new ConcurrentLinkedQueue<>();
+    private final Set<UUID> subscriptions = new HashSet<>();
+    private final Random random;
+    private final String address;
+    private final HrvStatistics statistics = new HrvStatistics();
+    private final int[] rrHistogram = new int[RR_HIST_BINS];
+    private final int[] bpmHistogram = new int[BPM_HIST_BINS];
+
+    private volatile Listener listener;
+    private volatile boolean connected = false;
+    private boolean running = false;
+
+    // LE data length extension, the largest link layer payload
+    private static final int LL_PAYLOAD_SIZE = 251;
+    // L2CAP and ATT headers of a notification
+    private static final int NOTIFICATION_OVERHEAD = 7;
+
+    // Stream configuration
+    private int sampleRateHz = 250;
+    // Link MTU, and the one the central announced with LINK_MTU which sizes the frames
+    private int mtu = LiveSignalFrameDecoder.DEFAULT_MTU;
+    private int frameMtu = LiveSignalFrameDecoder.DEFAULT_MTU;
+    private boolean packedFrames = true;
+    private int heartRateBpm = 70;
+
+    // Bursts: every burstEveryMs the sample rate is raised to burstRateHz for burstDurationMs
+    private int burstRateHz = 0;
+    private long burstEveryMs = 0;
+    private long burstDurationMs = 0;
+
+    // Impairments
+    private double dropoutProbability = 0.0;
+    private long reconnectEveryMs = 0;
+    private long reconnectDowntimeMs = 0;
+    private int responseDrops = 0;
+
+    // Link
+    private volatile boolean advertising = true;
+    private int maxMtu = LiveSignalFrameDecoder.DEFAULT_MTU;
+    private boolean phy2MSupported = true;
+    private int phy = LinkParameters.PHY_1M;
+    private LinkParameters.Priority priority = LinkParameters.Priority.BALANCED;
+    private int packetsPerEvent = 0;
+    private int txQueueDepth = 0;
+    private final ArrayDeque<Object[]> txQueue = new ArrayDeque<>();
+    private long nextEventUs = 0;
+    private long txDroppedCount = 0;
+
+    // Simulation state, in microseconds since power up
+    private long nowUs = 0;
+    private long nextSampleUs = 0;
+    private long lastBeatUs = 0;
+    private long nextBeatUs = 0;
+    private long disconnectedAtUs = -1;
+    private long nextDropUs = 0;
+
+    private final int[] frameSamples = new int[255];
+    private int frameCount = 0;
+    private long frameTimestampMs = 0;
+    private int frameSeq = 0;
+    private int rrSeq = 0;
+
+    // Backfill rings, indexed by sequence number
+    private final byte[][] rrRing = new byte[RR_RING_FRAMES][];
+    private final byte[][] signalRing = new byte[SIGNAL_RING_FRAMES][];
+    private final long[] signalRingStart = new long[SIGNAL_RING_FRAMES];
+    private long signalSampleCount = 0;
+    private boolean backfillEnabled = true;
+
+    private Thread thread;
+
+    public SimulatedHrvPeripheral() {
+        this(1);
+    }
+
+    public SimulatedHrvPeripheral(long seed) {
+        this(seed, ADDRESS);
+    }
+
+    /**
+     * @param address Address the peripheral is found and connected at, to simulate several of them.
+     */
+    public SimulatedHrvPeripheral(long seed, String address) {
+        this.random = new Random(seed);
+        this.address = address;
+        this.nextBeatUs = nextRrInterval() * 1000L;
+    }
+
+    public void setSampleRate(int hz) {
+        this.sampleRateHz = hz;
+    }
+
+    /**
+     * Set the link MTU as if it had been negotiated and announced, frames are sized to it right away.
+     */
+    public void setMtu(int mtu) {
+        this.mtu = mtu;
+        this.frameMtu = mtu;
+    }
+
+    /**
+     * Largest MTU the peripheral accepts in an MTU exchange, 23 (no exchange) by default.
+     */
+    public void setMaxMtu(int mtu) {
+        this.maxMtu = mtu;
+    }
+
+    public void set2MPhySupported(boolean supported) {
+        this.phy2MSupported = supported;
+    }
+
+    /**
+     * Answer the BACKFILL_* commands with the frames kept, or with none like older firmware.
+     */
+    public void setBackfill(boolean enabled) {
+        this.backfillEnabled = enabled;
+    }
+
+    /**
+     * A peripheral which doesn't advertise is neither found by a scan nor connected to.
+     */
+    public void setAdvertising(boolean advertising) {
+        this.advertising = advertising;
+    }
+
+    /**
+     * Deliver the notifications at connection events only.
+     *
+     * @param packetsPerEvent Link layer packets per connection event at 1M PHY, 0 to deliver right away.
+     * @param txQueueDepth Notifications waiting for an event, further ones are dropped.
+     */
+    public void setLinkModel(int packetsPerEvent, int txQueueDepth) {
+        this.packetsPerEvent = packetsPerEvent;
+        this.txQueueDepth = txQueueDepth;
+        this.nextEventUs = nowUs;
+    }
+
+    /**
+     * Notifications dropped because the transmit queue was full.
+     */
+    public long getTxDroppedCount() {
+        return txDroppedCount;
+    }
+
+    /**
+     * @param packed false to send one int per live signal notification, like hrv.ino without PACKED_LIVE_SIGNAL.
+     */
+    public void setPackedFrames(boolean packed) {
+        this.packedFrames = packed;
+    }
+
+    public void setHeartRate(int bpm) {
+        this.heartRateBpm = bpm;
+    }
+
+    public void setBursts(int rateHz, long everyMs, long durationMs) {
+        this.burstRateHz = rateHz;
+        this.burstEveryMs = everyMs;
+        this.burstDurationMs = durationMs;
+    }
+
+    /**
+     * @param probability Probability of losing any single notification.
+     */
+    public void setDropout(double probability) {
+        this.dropoutProbability = probability;
+    }
+
+    /**
+     * Lose the next count notifications of the response characteristic.
+     */
+    public void dropResponses(int count) {
+        this.responseDrops = count;
+    }
+
+    /**
+     * Drop the link every everyMs and reconnect after downtimeMs, while the signal keeps running.
+     */
+    public void setReconnects(long everyMs, long downtimeMs) {
+        this.reconnectEveryMs = everyMs;
+        this.reconnectDowntimeMs = downtimeMs;
+        this.nextDropUs = nowUs + everyMs * 1000;
+    }
+
+    public HrvStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Histogram of the RR intervals in ms, a copy of the one the device keeps.
+     */
+    public int[] getRrHistogram() {
+        return rrHistogram.clone();
+    }
+
+    public int[] getBpmHistogram() {
+        return bpmHistogram.clone();
+    }
+
+    public long getTimeMillis() {
+        return nowUs / 1000;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void startScan() {
+        requests.add(new Runnable() {
+            @Override
+            public void run() {
+                Listener l = listener;
+                if (l == null) return;
+                if (advertising) {
+                    l.onDeviceFound(HrvProfile.DEVICE_NAME, SimulatedHrvPeripheral.this.address);
+                } else {
+                    l.onScanTimeout();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void stopScan() {
+    }
+
+    @Override
+    public void connect(String address) {
+        if (!this.address.equals(address) || !advertising) return;
+        requests.add(new Runnable() {
+            @Override
+            public void run() {
+                setConnected(true, 0);
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(final UUID characteristic) {
+        requests.add(new Runnable() {
+            @Override
+            public void run() {
+                if (connected) {
+                    subscriptions.add(characteristic);
+                }
+                Listener l = listener;
+                if (l != null) l.onSubscribed(characteristic, connected);
+            }
+        });
+    }
+
+    @Override
+    public boolean writeCommand(final byte[] payload) {
+        if (!connected) return false;
+        requests.add(new Runnable() {
+            @Override
+            public void run() {
+                Listener l = listener;
+                if (l != null) l.onCommandWritten(true);
+                dispatchCommand(payload);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean requestMtu(final int mtu) {
+        if (!connected) return false;
+        requests.add(new Runnable() {
+            @Override
+            public void run() {
+                SimulatedHrvPeripheral.this.mtu = Math.max(LiveSignalFrameDecoder.DEFAULT_MTU, Math.min(mtu, maxMtu));
+                Listener l = listener;
+                if (l == null) return;
+                l.onLinkChanged(getLinkParameters());
+                l.onMtuChanged(SimulatedHrvPeripheral.this.mtu);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void requestConnectionPriority(final LinkParameters.Priority priority) {
+        requests.add(new Runnable() {
+            @Override
+            public void run() {
+                if (!connected || SimulatedHrvPeripheral.this.priority == priority) return;
+                SimulatedHrvPeripheral.this.priority = priority;
+                linkChanged();
+            }
+        });
+    }
+
+    @Override
+    public void setPreferredPhy(final int phy) {
+        requests.add(new Runnable() {
+            @Override
+            public void run() {
+                int used = phy == LinkParameters.PHY_2M && !phy2MSupported ? LinkParameters.PHY_1M : phy;
+                if (!connected || SimulatedHrvPeripheral.this.phy == used) return;
+                SimulatedHrvPeripheral.this.phy = used;
+                linkChanged();
+            }
+        });
+    }
+
+    @Override
+    public LinkParameters getLinkParameters() {
+        return new LinkParameters(mtu, phy, phy, priority, connectionIntervalUs() / 1000.0);
+    }
+
+    private long connectionIntervalUs() {
+        return (long) (priority.getMaxIntervalMs() * 1000);
+    }
+
+    private void linkChanged() {
+        Listener l = listener;
+        if (l != null) l.onLinkChanged(getLinkParameters());
+    }
+
+    @Override
+    public void disconnect() {
+        requests.add(new Runnable() {
+            @Override
+            public void run() {
+                disconnectedAtUs = -1;
+                setConnected(false, 0);
+            }
+        });
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Run the simulation on a background thread in real time.
+     */
+    public synchronized void start() {
+        if (thread != null) return;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long last = System.nanoTime();
+                while (!Thread.currentThread().isInterrupted()) {
+                    long now = System.nanoTime();
+                    advanceMicros((now - last) / 1000);
+                    last += ((now - last) / 1000) * 1000;
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "SimulatedHrvPeripheral");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread == null) return;
+        thread.interrupt();
+        thread = null;
+    }
+
+    /**
+     * Move simulated time forward, handling pending requests and emitting every notification due.
+     */
+    public void advance(long millis) {
+        advanceMicros(millis * 1000);
+    }
+
+    private void advanceMicros(long micros) {
+        Runnable request;
+        while ((request = requests.poll()) != null) {
+            request.run();
+        }
+
+        long endUs = nowUs + micros;
+        while (nowUs < endUs) {
+            long next = endUs;
+            if (running) {
+                next = Math.min(next, Math.min(nextSampleUs, nextBeatUs));
+            }
+            if (packetsPerEvent > 0) {
+                next = Math.min(next, nextEventUs);
+            }
+            nowUs = next;
+            updateLink();
+
+            if (packetsPerEvent > 0 && nowUs >= nextEventUs) {
+                connectionEvent();
+                nextEventUs += connectionIntervalUs();
+            }
+            if (!running) continue;
+
+            if (nowUs >= nextBeatUs) {
+                beat();
+            }
+            if (nowUs >= nextSampleUs) {
+                sample();
+                nextSampleUs += 1000000L / currentSampleRate();
+            }
+        }
+    }
+
+    private int currentSampleRate() {
+        if (burstRateHz > 0 && burstEveryMs > 0 && (nowUs / 1000) % burstEveryMs < burstDurationMs) {
+            return burstRateHz;
+        }
+        return sampleRateHz;
+    }
+
+    private void updateLink() {
+        if (reconnectEveryMs <= 0) return;
+
+        if (connected && nowUs >= nextDropUs) {
+            disconnectedAtUs = nowUs;
+            setConnected(false, 8);     // GATT_CONN_TIMEOUT
+        } else if (!connected && disconnectedAtUs >= 0 && nowUs - disconnectedAtUs >= reconnectDowntimeMs * 1000) {
+            disconnectedAtUs = -1;
+            nextDropUs = nowUs + reconnectEveryMs * 1000;
+            setConnected(true, 0);
+        }
+    }
+
+    private void setConnected(boolean connected, int status) {
+        if (this.connected == connected) return;
+        this.connected = connected;
+        subscriptions.clear();
+        // A new link starts over from the defaults
+        txQueue.clear();
+        mtu = LiveSignalFrameDecoder.DEFAULT_MTU;
+        frameMtu = LiveSignalFrameDecoder.DEFAULT_MTU;
+        phy = LinkParameters.PHY_1M;
+        priority = LinkParameters.Priority.BALANCED;
+
+        Listener l = listener;
+        if (l == null) return;
+        if (connected) {
+            l.onConnected();
+        } else {
+            l.onDisconnected(status);
+        }
+    }
+
+    private void dispatchCommand(byte[] payload) {
+        int action = payload[0] & 0xFF;
+        if (action == COMMANDS.LINK_MTU.getValue()) {
+            if (payload.length >= 3) {
+                frameMtu = (payload[1] & 0xFF) | (payload[2] & 0xFF) << 8;
+            }
+        } else if (action == COMMANDS.BACKFILL_RR.getValue() || action == COMMANDS.BACKFILL_SIGNAL.getValue()) {
+            if (payload.length >= 4) {
+                int first = (payload[1] & 0xFF) | (payload[2] & 0xFF) << 8;
+                backfill(action == COMMANDS.BACKFILL_RR.getValue(), first, payload[3] & 0xFF);
+            }
+        } else if (action == COMMANDS.START.getValue()) {
+            if (!running) {
+                running = true;
+                nextSampleUs = nowUs;
+                nextBeatUs = nowUs + nextRrInterval() * 1000L;
+                lastBeatUs = nowUs;
+                frameCount = 0;
+            }
+        } else if (action == COMMANDS.PAUSE.getValue()) {
+            running = false;
+        } else if (action == COMMANDS.RESET.getValue()) {
+            statistics.reset();
+            Arrays.fill(rrHistogram, 0);
+            Arrays.fill(bpmHistogram, 0);
+        } else if (action == COMMANDS.DUMP_RMSSD.getValue()) {
+            respond(statistics.getRmssd());
+        } else if (action == COMMANDS.DUMP_SDANN.getValue()) {
+            respond(statistics.getSdann());
+        } else if (action == COMMANDS.DUMP_HTI.getValue()) {
+            respond(statistics.getHti());
+        } else if (action == COMMANDS.DUMP_RR_HISTOGRAM.getValue()) {
+            respond(rrHistogram);
+        } else if (action == COMMANDS.DUMP_BPM_HISTOGRAM.getValue()) {
+            respond(bpmHistogram);
+        }
+    }
+
+    private int nextRrInterval() {
+        double mean = 60000.0 / heartRateBpm;
+        // Respiratory sinus arrhythmia plus beat to beat noise
+        double rsa = 0.05 * mean * Math.sin(2 * Math.PI * nowUs / 4000000.0);
+        int rr = (int) Math.round(mean + rsa + random.nextGaussian() * 0.02 * mean);
+        return Math.max(250, Math.min(1500, rr));
+    }
+
+    private void beat() {
+        int rr = (int) ((nextBeatUs - lastBeatUs) / 1000);
+        lastBeatUs = nextBeatUs;
+        nextBeatUs += nextRrInterval() * 1000L;
+
+        int bpm = Math.min(60000 / rr, BPM_HIST_BINS - 1);
+        statistics.addRrInterval(rr);
+        rrHistogram[rr]++;
+        bpmHistogram[bpm]++;
+        notify(HrvProfile.LIVE_RR, rrFrame(rr, lastBeatUs / 1000));
+        notify(HrvProfile.BPM, intPayload(bpm));
+    }
+
+    private int ecgValue() {
+        // Gaussian shaped R wave around the last and next beat, small T wave after it
+        double sinceBeatMs = (nowUs - lastBeatUs) / 1000.0;
+        double toBeatMs = (nextBeatUs - nowUs) / 1000.0;
+        double r = Math.exp(-sinceBeatMs * sinceBeatMs / 200.0) + Math.exp(-toBeatMs * toBeatMs / 200.0);
+        double t = 0.2 * Math.exp(-(sinceBeatMs - 250) * (sinceBeatMs - 250) / 2000.0);
+        return (int) (ECG_BASELINE + ECG_R_AMPLITUDE * (r + t) + random.nextGaussian() * 4);
+    }
+
+    private void sample() {
+        int value = ecgValue();
+        if (!packedFrames) {
+            notify(HrvProfile.LIVE_SIGNAL, intPayload(value));
+            return;
+        }
+
+        if (frameCount == 0) {
+            frameTimestampMs = nowUs / 1000;
+        }
+        frameSamples[frameCount++] = value;
+
+        int maxSamples = Math.min(frameSamples.length,
+                Math.max(1, LiveSignalFrameDecoder.maxSamplesForMtu(Math.min(mtu, frameMtu))));
+        if (frameCount >= maxSamples) {
+            notify(HrvProfile.LIVE_SIGNAL, packedFrame());
+            frameCount = 0;
+        }
+    }
+
+    private byte[] packedFrame() {
+        byte[] frame = new byte[LiveSignalFrameDecoder.HEADER_SIZE + 2 * frameCount];
+        int seq = frameSeq++ & 0xFFFF;
+        frame[0] = (byte) seq;
+        frame[1] = (byte) (seq >> 8);
+        frame[2] = (byte) frameTimestampMs;
+        frame[3] = (byte) (frameTimestampMs >> 8);
+        frame[4] = (byte) (frameTimestampMs >> 16);
+        frame[5] = (byte) (frameTimestampMs >> 24);
+        frame[6] = (byte) Math.max(1, 1000 / currentSampleRate());
+        frame[7] = (byte) frameCount;
+        for (int i = 0; i < frameCount; ++i) {
+            frame[8 + 2 * i] = (byte) frameSamples[i];
+            frame[9 + 2 * i] = (byte) (frameSamples[i] >> 8);
+        }
+        signalRing[seq % SIGNAL_RING_FRAMES] = frame;
+        signalRingStart[seq % SIGNAL_RING_FRAMES] = signalSampleCount;
+        signalSampleCount += frameCount;
+        return frame;
+    }
+
+    private byte[] rrFrame(int rr, long timestampMs) {
+        int seq = rrSeq++ & 0xFFFF;
+        byte[] frame = new byte[]{(byte) seq, (byte) (seq >> 8), (byte) rr, (byte) (rr >> 8),
+                (byte) timestampMs, (byte) (timestampMs >> 8), (byte) (timestampMs >> 16), (byte) (timestampMs >> 24)};
+        rrRing[seq % RR_RING_FRAMES] = frame;
+        return frame;
+    }
+
+    /**
+     * Send the kept frames of count from first: RR frames packed as many per
+     * notification as fit, signal frames one per notification, then the number sent.
+     */
+    private void backfill(boolean rr, int first, int count) {
+        int capacity = Math.min(mtu, frameMtu) - LiveSignalFrameDecoder.ATT_HEADER_SIZE;
+        byte[] packed = new byte[capacity - capacity % RrFrameDecoder.FRAME_SIZE];
+        int length = 0;
+        int sent = 0;
+        for (int i = 0; i < count && backfillEnabled; ++i) {
+            int seq = (first + i) & 0xFFFF;
+            byte[] frame = rr ? keptRrFrame(seq) : keptSignalFrame(seq);
+            if (frame == null || frame.length > capacity) continue;
+            sent++;
+            if (!rr) {
+                notify(HrvProfile.RESPONSE, frame);
+                continue;
+            }
+            System.arraycopy(frame, 0, packed, length, frame.length);
+            length += frame.length;
+            if (length == packed.length) {
+                notify(HrvProfile.RESPONSE, Arrays.copyOf(packed, length));
+                length = 0;
+            }
+        }
+        if (length > 0) {
+            notify(HrvProfile.RESPONSE, Arrays.copyOf(packed, length));
+        }
+        notify(HrvProfile.RESPONSE, new byte[]{(byte) sent, (byte) (sent >> 8)});
+    }
+
+    private byte[] keptRrFrame(int seq) {
+        int age = (rrSeq - seq) & 0xFFFF;
+        if (age == 0 || age > RR_RING_FRAMES) return null;
+        return rrRing[seq % RR_RING_FRAMES];
+    }
+
+    private byte[] keptSignalFrame(int seq) {
+        int age = (frameSeq - seq) & 0xFFFF;
+        if (age == 0 || age > SIGNAL_RING_FRAMES) return null;
+        // Its samples may have been overwritten by newer frames already
+        if (signalSampleCount - signalRingStart[seq % SIGNAL_RING_FRAMES] > SIGNAL_RING_SAMPLES) return null;
+        return signalRing[seq % SIGNAL_RING_FRAMES];
+    }
+
+    private void respond(double value) {
+        long bits = Double.doubleToLongBits(value);
+        byte[] payload = new byte[8];
+        for (int i = 0; i < 8; ++i) {
+            payload[i] = (byte) (bits >> (8 * i));
+        }
+        notify(HrvProfile.RESPONSE, payload);
+    }
+
+    private void respond(int[] histogram) {
+        int chunkSize = Math.min(mtu, frameMtu) - LiveSignalFrameDecoder.ATT_HEADER_SIZE;
+        for (byte[] chunk : HistogramTransferDecoder.encode(histogram, chunkSize)) {
+            notify(HrvProfile.RESPONSE, chunk);
+        }
+    }
+
+    private static byte[] intPayload(int value) {
+        return new byte[]{(byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24)};
+    }
+
+    private void notify(UUID characteristic, byte[] payload) {
+        Listener l = listener;
+        if (!connected || l == null || !subscriptions.contains(characteristic)) return;
+        if (dropoutProbability > 0 && random.nextDouble() < dropoutProbability) return;
+        if (responseDrops > 0 && characteristic.equals(HrvProfile.RESPONSE)) {
+            responseDrops--;
+            return;
+        }
+        if (packetsPerEvent <= 0) {
+            l.onNotification(characteristic, payload);
+        } else if (txQueue.size() < txQueueDepth) {
+            txQueue.add(new Object[]{characteristic, payload});
+        } else {
+            txDroppedCount++;
+        }
+    }
+
+    private void connectionEvent() {
+        Listener l = listener;
+        int packets = packetsPerEvent * (phy == LinkParameters.PHY_2M ? 2 : 1);
+        while (!txQueue.isEmpty() && l != null) {
+            byte[] payload = (byte[]) txQueue.peek()[1];
+            int needed = (payload.length + NOTIFICATION_OVERHEAD + LL_PAYLOAD_SIZE - 1) / LL_PAYLOAD_SIZE;
+            if (needed > packets) break;
+            packets -= needed;
+            Object[] notification = txQueue.poll();
+            l.onNotification((UUID) notification[0], payload);
+        }
+    }
+}
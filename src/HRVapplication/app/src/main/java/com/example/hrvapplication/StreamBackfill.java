@@ -0,0 +1,218 @@
+package com.example.hrvapplication;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Recovers the frames of a live stream the peripheral produced while disconnected.
+ *
+ * hrv.ino keeps the last frames of each stream in a ring. After a reconnect
+ * the first live frame shows how many were missed: that frame and the next
+ * ones are held back while the missing range is requested in batches of
+ * {@link #MAX_BATCH}. The recovered frames, then the held ones, are handed to
+ * the sink in sequence order, so the listeners get the stream as if it had
+ * never been interrupted. Frames the ring no longer had reach the sink's
+ * sequence detector as a gap, like any lost frame.
+ *
+ * Live frames and responses must be passed in from the transport's callback
+ * thread, the sink is called on it.
+ */
+public class StreamBackfill {
+    /** Frames requested at once, bounds how long the peripheral is busy sending. */
+    public static final int MAX_BATCH = 64;
+    /** Live frames held back at most, the rest of the backfill is given up beyond. */
+    public static final int MAX_HELD = 4096;
+
+    private static final int RANGE = 1 << 16;
+    private static final int MASK = RANGE - 1;
+
+    /**
+     * Processes a frame as if it was just received live.
+     */
+    public interface Sink {
+        void onFrame(byte[] frame);
+    }
+
+    private enum State {
+        IDLE,
+        // Disconnected, the next live frame is checked for a gap
+        ARMED,
+        REQUESTING,
+        // The requests ended, the frames are delivered with the next live one
+        DONE
+    }
+
+    private final COMMANDS command;
+    private final int frameSize;
+    private final SequenceGapDetector sequence;
+    private final CommandQueue commandQueue;
+    private final Sink sink;
+
+    private volatile State state = State.IDLE;
+    // Requests of an earlier backfill are ignored when they complete
+    private volatile int generation = 0;
+    private final ArrayDeque<byte[]> held = new ArrayDeque<>();
+    // Offset from first -> frame, in order and without duplicates from retried requests
+    private final TreeMap<Integer, byte[]> recovered = new TreeMap<>();
+    private int first;
+    private int total;
+    private int requested;
+
+    private volatile long requestedCount = 0;
+    private volatile long recoveredCount = 0;
+    private volatile long abandonedCount = 0;
+
+    /**
+     * @param command BACKFILL_* command of the stream.
+     * @param frameSize Size of the frames, {@link BackfillDecoder#ONE_PER_NOTIFICATION} if they vary.
+     * @param sequence Detector the sink passes the frames through.
+     */
+    public StreamBackfill(COMMANDS command, int frameSize, SequenceGapDetector sequence, CommandQueue commandQueue, Sink sink) {
+        this.command = command;
+        this.frameSize = frameSize;
+        this.sequence = sequence;
+        this.commandQueue = commandQueue;
+        this.sink = sink;
+    }
+
+    /**
+     * Offer a live frame before processing it.
+     *
+     * @return true if the frame is held back, to be passed to the sink later.
+     */
+    public boolean offer(byte[] frame) {
+        switch (state) {
+            case ARMED: {
+                int expected = sequence.getExpected();
+                int lost = expected < 0 ? 0 : (LiveSignalFrameDecoder.sequenceOf(frame) - expected) & MASK;
+                if (lost == 0 || lost >= RANGE / 2) {
+                    state = State.IDLE;
+                    return false;
+                }
+                start(expected, lost);
+                held.add(frame.clone());
+                return true;
+            }
+            case REQUESTING:
+                if (held.size() < MAX_HELD) {
+                    held.add(frame.clone());
+                    return true;
+                }
+                abandonedCount++;
+                flush();
+                return false;
+            case DONE:
+                flush();
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Deliver what was recovered so far and wait for the next gap, called once disconnected.
+     */
+    public void onDisconnected() {
+        if (state == State.REQUESTING || state == State.DONE) {
+            flush();
+        }
+        generation++;
+        if (sequence.getExpected() >= 0) {
+            state = State.ARMED;
+        }
+    }
+
+    /**
+     * Forget any backfill in progress without delivering it, e.g. for a new measurement.
+     */
+    public void reset() {
+        generation++;
+        held.clear();
+        recovered.clear();
+        state = State.IDLE;
+    }
+
+    public boolean isBackfilling() {
+        State s = state;
+        return s == State.REQUESTING || s == State.DONE;
+    }
+
+    /**
+     * Frames missed while disconnected and asked for.
+     */
+    public long getRequestedCount() {
+        return requestedCount;
+    }
+
+    public long getRecoveredCount() {
+        return recoveredCount;
+    }
+
+    /**
+     * Backfills given up because too many live frames were held back.
+     */
+    public long getAbandonedCount() {
+        return abandonedCount;
+    }
+
+    private void start(int first, int count) {
+        generation++;
+        this.first = first;
+        this.total = count;
+        this.requested = 0;
+        this.recovered.clear();
+        this.requestedCount += count;
+        state = State.REQUESTING;
+        requestNext();
+    }
+
+    private void requestNext() {
+        final int batchGeneration = generation;
+        int from = (first + requested) & MASK;
+        int count = Math.min(MAX_BATCH, total - requested);
+        requested += count;
+
+        byte[] arguments = new byte[]{(byte) from, (byte) (from >> 8), (byte) count};
+        commandQueue.request(command, arguments, new BackfillDecoder(frameSize)).whenComplete(new BiConsumer<List<byte[]>, Throwable>() {
+            @Override
+            public void accept(List<byte[]> frames, Throwable error) {
+                if (batchGeneration != generation || state != State.REQUESTING) return;
+                if (error != null) {
+                    // Called from the timeout thread, delivered with the next live frame
+                    state = State.DONE;
+                    return;
+                }
+                onBatch(frames);
+            }
+        });
+    }
+
+    private void onBatch(List<byte[]> frames) {
+        for (byte[] frame : frames) {
+            int offset = (LiveSignalFrameDecoder.sequenceOf(frame) - first) & MASK;
+            if (offset < total) {
+                recovered.put(offset, frame);
+            }
+        }
+        if (requested < total) {
+            requestNext();
+        } else {
+            flush();
+        }
+    }
+
+    private void flush() {
+        generation++;
+        state = State.IDLE;
+        recoveredCount += recovered.size();
+        for (byte[] frame : recovered.values()) {
+            sink.onFrame(frame);
+        }
+        recovered.clear();
+        while (!held.isEmpty()) {
+            sink.onFrame(held.poll());
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.hrvapplication;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class BatchSessionAnalyzerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static int[] rrIntervals(int count) {
+        Random random = new Random(5);
+        int[] rr = new int[count];
+        for (int i = 0; i < count; ++i) {
+            rr[i] = 600 + random.nextInt(600) + (i % 1000 == 0 ? 1200 : 0);
+        }
+        return rr;
+    }
+
+    private static void assertMatches(HrvStatistics expected, BatchSessionAnalyzer.Result result) {
+        assertEquals(expected.getBeatCount(), result.getBeatCount());
+        assertEquals(expected.getSegmentCount(), result.getSegmentCount());
+        assertEquals(expected.getRmssd(), result.getRmssd(), 1e-9 * expected.getRmssd());
+        assertEquals(expected.getSdann(), result.getSdann(), 1e-9 * expected.getSdann());
+        assertEquals(expected.getHti(), result.getHti(), 1e-9);
+    }
+
+    @Test
+    public void matchesTheLiveStatistics() {
+        int[] rr = rrIntervals(50000);
+        rr[123] = 0;
+        HrvStatistics expected = new HrvStatistics();
+        for (int interval : rr) {
+            expected.addRrInterval(interval);
+        }
+        assertTrue(expected.getSegmentCount() > 100);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertMatches(expected, new BatchSessionAnalyzer(pool).analyze(rr, rr.length));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void handlesGapsLikeTheLiveStatistics() {
+        int[] rr = rrIntervals(50000);
+        HrvStatistics expected = new HrvStatistics();
+        for (int i = 0; i < rr.length; ++i) {
+            // Short gaps, and some longer than a segment
+            if (i % 997 == 0) {
+                long duration = i % 3 == 0 ? 2 * HrvStatistics.SDANN_INTERVAL_MS : 20000;
+                rr[i] = BatchSessionAnalyzer.gap(duration);
+                expected.markGap(duration);
+            } else {
+                expected.addRrInterval(rr[i]);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertMatches(expected, new BatchSessionAnalyzer(pool).analyze(rr, rr.length));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void analyzesAnRrSeries() {
+        int[] rr = rrIntervals(50000);
+        HrvStatistics expected = new HrvStatistics();
+        RrSeries series = new RrSeries();
+        long time = 1700000000000L;
+        for (int i = 0; i < rr.length; ++i) {
+            if (i % 997 == 0) {
+                long duration = i % 3 == 0 ? 2 * HrvStatistics.SDANN_INTERVAL_MS : 20000;
+                series.appendGap(time);
+                time += duration;
+                expected.markGap(duration);
+            }
+            time += rr[i];
+            series.append(rr[i], time);
+            expected.addRrInterval(rr[i]);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertMatches(expected, new BatchSessionAnalyzer(pool).analyze(series));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void segmentsLikeTheLiveStatistics() {
+        int[] rr = {100000, 100000, 100000, 500, 299999, 1, 5};
+        int[] starts = BatchSessionAnalyzer.segment(rr, rr.length);
+        assertArrayEquals(new int[]{0, 3, 5, 7}, starts);
+
+        BatchSessionAnalyzer.Result result = new BatchSessionAnalyzer().analyze(new int[0], 0);
+        assertEquals(0, result.getBeatCount());
+        assertEquals(0.0, result.getRmssd(), 0.0);
+    }
+
+    @Test
+    public void analyzesARecordedSession() throws Exception {
+        int[] rr = rrIntervals(20000);
+        File file = folder.newFile("session.hrv");
+        SessionRecorder recorder = new SessionRecorder(file, 0, 4096, Long.MAX_VALUE, Long.MAX_VALUE);
+        int[] frame = new int[20];
+        long time = 0;
+        HrvStatistics expected = new HrvStatistics();
+        for (int interval : rr) {
+            for (int i = 0; i < frame.length; ++i) {
+                frame[i] = 512 + i;
+            }
+            recorder.onEcgSamples(frame, 0, frame.length, time);
+            time += interval;
+            recorder.onRrInterval(interval, time);
+            expected.addRrInterval(interval);
+        }
+        recorder.close();
+        assertTrue(recorder.getChunksWritten() > BatchSessionAnalyzer.CHUNKS_PER_TASK * 4);
+
+        assertMatches(expected, new BatchSessionAnalyzer().analyze(file));
+
+        // Without its index the session is read sequentially
+        assertTrue(SessionIndex.fileFor(file).delete());
+        assertMatches(expected, new BatchSessionAnalyzer().analyze(file));
+    }
+
+    @Test
+    public void analyzesASessionWithGaps() throws Exception {
+        int[] rr = rrIntervals(20000);
+        File file = folder.newFile("session.hrv");
+        SessionRecorder recorder = new SessionRecorder(file, 0, 4096, Long.MAX_VALUE, Long.MAX_VALUE);
+        long time = 0;
+        HrvStatistics expected = new HrvStatistics();
+        for (int i = 0; i < rr.length; ++i) {
+            if (i % 1500 == 0) {
+                // Disconnected for 90 s, the ECG gap doesn't count twice
+                recorder.onGap(HrvStream.ECG, time, 90000);
+                recorder.onGap(HrvStream.RR, time, 90000);
+                expected.markGap(90000);
+                time += 90000;
+            }
+            time += rr[i];
+            recorder.onRrInterval(rr[i], time);
+            expected.addRrInterval(rr[i]);
+        }
+        recorder.close();
+
+        assertMatches(expected, new BatchSessionAnalyzer().analyze(file));
+        assertTrue(SessionIndex.fileFor(file).delete());
+        assertMatches(expected, new BatchSessionAnalyzer().analyze(file));
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.hrvapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class CommandQueueTest {
+    private static class FakeGatt implements CommandQueue.Transport {
+        final List<Integer> writes = new ArrayList<>();
+        boolean busy = false;
+
+        @Override
+        public synchronized boolean write(byte[] payload) {
+            if (busy) return false;
+            writes.add((int) payload[0]);
+            return true;
+        }
+
+        synchronized int writeCount() {
+            return writes.size();
+        }
+    }
+
+    private static byte[] doubleResponse(double value) {
+        long bits = Double.doubleToLongBits(value);
+        byte[] payload = new byte[8];
+        for (int i = 0; i < 8; ++i) {
+            payload[i] = (byte) (bits >> (8 * i));
+        }
+        return payload;
+    }
+
+    private ScheduledExecutorService scheduler;
+    private FakeGatt gatt;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        gatt = new FakeGatt();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void writesOneCommandAtATime() throws Exception {
+        CommandQueue queue = new CommandQueue(gatt, scheduler);
+        CompletableFuture<Void> pause = queue.send(COMMANDS.PAUSE);
+        CompletableFuture<Double> rmssd = queue.request(COMMANDS.DUMP_RMSSD, new DoubleResponseDecoder());
+        CompletableFuture<Double> hti = queue.request(COMMANDS.DUMP_HTI, new DoubleResponseDecoder());
+
+        assertEquals(1, gatt.writeCount());
+        queue.onWriteComplete(true);
+        assertTrue(pause.isDone());
+        assertEquals(2, gatt.writeCount());
+
+        queue.onWriteComplete(true);
+        assertFalse(rmssd.isDone());
+        queue.onResponse(doubleResponse(42.5));
+        assertEquals(42.5, rmssd.get(), 0);
+
+        queue.onWriteComplete(true);
+        queue.onResponse(doubleResponse(7.0));
+        assertEquals(7.0, hti.get(), 0);
+
+        assertEquals(COMMANDS.PAUSE.getValue(), (int) gatt.writes.get(0));
+        assertEquals(COMMANDS.DUMP_RMSSD.getValue(), (int) gatt.writes.get(1));
+        assertEquals(COMMANDS.DUMP_HTI.getValue(), (int) gatt.writes.get(2));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void responseBeforeWriteAcknowledgementDoesNotSkipTheNextWrite() throws Exception {
+        CommandQueue queue = new CommandQueue(gatt, scheduler);
+        CompletableFuture<Double> sdann = queue.request(COMMANDS.DUMP_SDANN, new DoubleResponseDecoder());
+        CompletableFuture<Void> start = queue.send(COMMANDS.START);
+
+        queue.onResponse(doubleResponse(3.0));
+        assertEquals(3.0, sdann.get(), 0);
+        // START must wait for the acknowledgement of DUMP_SDANN
+        assertEquals(1, gatt.writeCount());
+
+        queue.onWriteComplete(true);
+        assertEquals(2, gatt.writeCount());
+        assertFalse(start.isDone());
+
+        queue.onWriteComplete(true);
+        assertTrue(start.isDone());
+    }
+
+    @Test
+    public void retriesAndThenTimesOut() throws Exception {
+        CommandQueue queue = new CommandQueue(gatt, scheduler, 20, 2);
+        CompletableFuture<Double> rmssd = queue.request(COMMANDS.DUMP_RMSSD, new DoubleResponseDecoder());
+
+        try {
+            rmssd.get(2, TimeUnit.SECONDS);
+            fail("Expected a timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(3, gatt.writeCount());
+    }
+
+    @Test
+    public void aResponseInProgressDoesNotTimeOut() throws Exception {
+        CommandQueue queue = new CommandQueue(gatt, scheduler, 100, 0);
+        CompletableFuture<Integer> backfill = queue.request(COMMANDS.BACKFILL_SIGNAL, new CommandQueue.ResponseDecoder<Integer>() {
+            private int notifications = 0;
+
+            @Override
+            public boolean onResponse(byte[] payload) {
+                return ++notifications == 10;
+            }
+
+            @Override
+            public Integer getResult() {
+                return notifications;
+            }
+        });
+        queue.onWriteComplete(true);
+
+        // Well past the timeout in all, never longer than it between two notifications
+        for (int i = 0; i < 10; ++i) {
+            Thread.sleep(30);
+            queue.onResponse(new byte[1]);
+        }
+        assertEquals(10, (int) backfill.get(1, TimeUnit.SECONDS));
+        assertEquals(1, gatt.writeCount());
+    }
+
+    @Test
+    public void retriesWhileTheTransportIsBusy() throws Exception {
+        gatt.busy = true;
+        CommandQueue queue = new CommandQueue(gatt, scheduler);
+        CompletableFuture<Void> start = queue.send(COMMANDS.START);
+
+        Thread.sleep(20);
+        synchronized (gatt) {
+            gatt.busy = false;
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        while (gatt.writeCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        queue.onWriteComplete(true);
+        start.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void cancelAllFailsPendingCommands() {
+        CommandQueue queue = new CommandQueue(gatt, scheduler);
+        CompletableFuture<Void> start = queue.send(COMMANDS.START);
+        CompletableFuture<Void> pause = queue.send(COMMANDS.PAUSE);
+
+        queue.cancelAll(new IllegalStateException("Disconnected"));
+
+        assertTrue(start.isCompletedExceptionally());
+        assertTrue(pause.isCompletedExceptionally());
+        assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrequencyDomainHrvTest {
+    /**
+     * Power of a sine of the given amplitude, A^2 / 2, as seen through the linear
+     * interpolation between beats 800 ms apart, which scales it by sinc^4.
+     */
+    private static double expectedPower(double amplitude, double frequency) {
+        double x = Math.PI * frequency * 0.8;
+        double sinc = Math.sin(x) / x;
+        return amplitude * amplitude / 2 * Math.pow(sinc, 4);
+    }
+
+    /**
+     * Feed beats whose interval follows 800 ms plus the given modulations, up to the given time.
+     */
+    private static void feed(FrequencyDomainHrv hrv, double lfAmplitude, double hfAmplitude, double trendPerSecond, double seconds) {
+        double time = 0.0;
+        while (time < seconds) {
+            double rr = 800 + lfAmplitude * Math.sin(2 * Math.PI * 0.1 * time)
+                    + hfAmplitude * Math.sin(2 * Math.PI * 0.25 * time)
+                    + trendPerSecond * time;
+            hrv.addRrInterval((int) Math.round(rr));
+            time += rr / 1000.0;
+        }
+    }
+
+    @Test
+    public void needsAFullWindow() {
+        FrequencyDomainHrv hrv = new FrequencyDomainHrv();
+        feed(hrv, 40, 20, 0, 200);
+        assertFalse(hrv.isWindowFull());
+        assertEquals(0.0, hrv.getLfPower(), 0.0);
+        assertEquals(0.0, hrv.getLfHfRatio(), 0.0);
+
+        feed(hrv, 40, 20, 0, 120);
+        assertTrue(hrv.isWindowFull());
+        assertTrue(hrv.getLfPower() > 0);
+    }
+
+    @Test
+    public void measuresThePowerOfEachBand() {
+        FrequencyDomainHrv hrv = new FrequencyDomainHrv();
+        // Several window lengths, so the bins went through the sliding updates and resyncs
+        feed(hrv, 40, 20, 0, 1000);
+
+        double lf = expectedPower(40, 0.1);
+        double hf = expectedPower(20, 0.25);
+        assertEquals(lf, hrv.getLfPower(), 0.05 * lf);
+        assertEquals(hf, hrv.getHfPower(), 0.05 * hf);
+        assertEquals(lf / hf, hrv.getLfHfRatio(), 0.1 * lf / hf);
+    }
+
+    @Test
+    public void ignoresTheTrend() {
+        FrequencyDomainHrv hrv = new FrequencyDomainHrv();
+        feed(hrv, 0, 0, 0.5, 400);
+        assertTrue(hrv.isWindowFull());
+        assertTrue(hrv.getLfPower() < 5);
+        assertTrue(hrv.getHfPower() < 5);
+    }
+
+    @Test
+    public void aGapRestartsTheWindow() {
+        FrequencyDomainHrv hrv = new FrequencyDomainHrv();
+        feed(hrv, 40, 20, 0, 400);
+        assertTrue(hrv.isWindowFull());
+        hrv.markGap();
+        assertFalse(hrv.isWindowFull());
+
+        // The window isn't bridged across the gap, it fills from the next interval on
+        feed(hrv, 40, 20, 0, 200);
+        assertFalse(hrv.isWindowFull());
+        feed(hrv, 40, 20, 0, 120);
+        assertTrue(hrv.isWindowFull());
+    }
+
+    @Test
+    public void resetStartsOver() {
+        FrequencyDomainHrv hrv = new FrequencyDomainHrv();
+        feed(hrv, 40, 20, 0, 400);
+        hrv.reset();
+        assertFalse(hrv.isWindowFull());
+
+        feed(hrv, 0, 20, 0, 400);
+        assertTrue(hrv.getLfPower() < 20);
+        assertEquals(expectedPower(20, 0.25), hrv.getHfPower(), 10);
+    }
+}
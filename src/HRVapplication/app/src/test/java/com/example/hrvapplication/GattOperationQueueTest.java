@@ -0,0 +1,132 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GattOperationQueueTest {
+    private final GattOperationQueue queue = new GattOperationQueue();
+    private final List<String> started = new ArrayList<>();
+    private final List<String> failed = new ArrayList<>();
+
+    private GattOperationQueue.Operation operation(final String name, final boolean issued) {
+        return new GattOperationQueue.Operation() {
+            @Override
+            public boolean start() {
+                started.add(name);
+                return issued;
+            }
+
+            @Override
+            public void failed() {
+                failed.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void startsOneOperationAtATime() {
+        queue.enqueue(operation("mtu", true));
+        queue.enqueue(operation("subscribe", true));
+        queue.enqueue(operation("write", true));
+        assertEquals(1, started.size());
+        assertEquals(3, queue.size());
+
+        queue.onComplete();
+        assertEquals(2, started.size());
+        queue.onComplete();
+        queue.onComplete();
+        assertEquals(0, queue.size());
+        assertEquals("[mtu, subscribe, write]", started.toString());
+    }
+
+    @Test
+    public void skipsOperationsThatCouldNotBeIssued() {
+        queue.enqueue(operation("mtu", true));
+        queue.enqueue(operation("refused", false));
+        queue.enqueue(operation("write", true));
+
+        queue.onComplete();
+        assertEquals("[mtu, refused, write]", started.toString());
+        assertEquals("[refused]", failed.toString());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void refusesAnOperationThatFailsRightAway() {
+        assertFalse(queue.enqueue(operation("refused", false)));
+        assertTrue(queue.enqueue(operation("mtu", true)));
+        assertTrue(queue.enqueue(operation("write", false)));
+        assertEquals(0, failed.size());
+
+        queue.onComplete();
+        assertEquals("[write]", failed.toString());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void operationsEnqueuedWhileStartingWait() {
+        // A refused MTU exchange reports the MTU right away, which subscribes
+        queue.enqueue(new GattOperationQueue.Operation() {
+            @Override
+            public boolean start() {
+                started.add("mtu");
+                queue.enqueue(operation("subscribe", true));
+                queue.enqueue(operation("subscribe", true));
+                return false;
+            }
+
+            @Override
+            public void failed() {
+                fail();
+            }
+        });
+
+        assertEquals("[mtu, subscribe]", started.toString());
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void startsOperationsOutsideTheLock() throws Exception {
+        // Like a failing write reporting to a CommandQueue another thread holds while enqueueing
+        final Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                queue.enqueue(operation("write", true));
+            }
+        });
+        queue.enqueue(new GattOperationQueue.Operation() {
+            @Override
+            public boolean start() {
+                other.start();
+                try {
+                    other.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }
+
+            @Override
+            public void failed() {
+            }
+        });
+
+        assertFalse(other.isAlive());
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void clearForgetsTheOperationInFlight() {
+        queue.enqueue(operation("write", true));
+        queue.enqueue(operation("write", true));
+        queue.clear();
+        assertEquals(0, queue.size());
+
+        queue.enqueue(operation("mtu", true));
+        assertEquals("[write, mtu]", started.toString());
+    }
+}
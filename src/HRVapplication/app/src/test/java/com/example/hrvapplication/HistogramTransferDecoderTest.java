@@ -0,0 +1,84 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HistogramTransferDecoderTest {
+    private static int[] rrHistogram() {
+        // About 10 minutes at 70 BPM, spread over a couple hundred intervals
+        int[] bins = new int[1501];
+        for (int rr = 760; rr < 960; ++rr) {
+            bins[rr] = 1 + (rr * 31) % 7;
+        }
+        bins[1500] = 100000;
+        return bins;
+    }
+
+    private static HistogramTransferDecoder decode(List<byte[]> notifications) {
+        HistogramTransferDecoder decoder = new HistogramTransferDecoder();
+        for (int i = 0; i < notifications.size(); ++i) {
+            assertEquals(i == notifications.size() - 1, decoder.onResponse(notifications.get(i)));
+        }
+        return decoder;
+    }
+
+    @Test
+    public void roundTripsASparseHistogram() {
+        int[] bins = rrHistogram();
+        List<byte[]> notifications = HistogramTransferDecoder.encode(bins, 244);
+        HistogramTransferDecoder decoder = decode(notifications);
+
+        assertNull(decoder.getError());
+        assertArrayEquals(bins, decoder.getResult());
+        // 1501 bins in a few notifications
+        assertEquals(3, notifications.size());
+        assertEquals(3, decoder.getNotificationCount());
+    }
+
+    @Test
+    public void runsSpanChunksAtTheDefaultMtu() {
+        int[] bins = rrHistogram();
+        List<byte[]> notifications = HistogramTransferDecoder.encode(bins, 20);
+        assertArrayEquals(bins, decode(notifications).getResult());
+        assertEquals(23, notifications.size());
+
+        // Every bin filled, beyond 128 chunks the index wraps
+        int[] dense = new int[1501];
+        for (int i = 0; i < dense.length; ++i) {
+            dense[i] = 200 + i;
+        }
+        notifications = HistogramTransferDecoder.encode(dense, 20);
+        assertArrayEquals(dense, decode(notifications).getResult());
+        assertTrue(notifications.size() > 128);
+    }
+
+    @Test
+    public void emptyHistogramIsOnlyTheTrailer() {
+        List<byte[]> notifications = HistogramTransferDecoder.encode(new int[221], 20);
+        assertEquals(1, notifications.size());
+        assertArrayEquals(new int[221], decode(notifications).getResult());
+    }
+
+    @Test
+    public void rejectsALostChunk() {
+        List<byte[]> notifications = HistogramTransferDecoder.encode(rrHistogram(), 20);
+        notifications.remove(5);
+        HistogramTransferDecoder decoder = decode(notifications);
+
+        assertNull(decoder.getResult());
+        assertNotNull(decoder.getError());
+    }
+
+    @Test
+    public void rejectsACorruptedChunk() {
+        List<byte[]> notifications = HistogramTransferDecoder.encode(rrHistogram(), 20);
+        notifications.get(3)[7] ^= 0x10;
+        HistogramTransferDecoder decoder = decode(notifications);
+
+        assertNull(decoder.getResult());
+        assertEquals("CRC mismatch", decoder.getError());
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.hrvapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HrvDeviceManagerTest {
+    private final Map<String, SimulatedHrvPeripheral> peripherals = new LinkedHashMap<>();
+    private HrvDeviceManager manager;
+
+    @Before
+    public void setUp() {
+        for (int i = 1; i <= 3; ++i) {
+            String address = "00:00:5E:00:53:0" + i;
+            SimulatedHrvPeripheral peripheral = new SimulatedHrvPeripheral(i, address);
+            // Different subjects
+            peripheral.setHeartRate(50 + 10 * i);
+            peripherals.put(address, peripheral);
+        }
+        manager = new HrvDeviceManager(new HrvDeviceManager.ConnectionFactory() {
+            @Override
+            public HrvConnection create(String address) {
+                return new HrvConnection(peripherals.get(address), new LiveDataDispatcher(1024, LiveDataDispatcher.Backpressure.BLOCK));
+            }
+        }, 3);
+    }
+
+    @After
+    public void tearDown() {
+        manager.close();
+    }
+
+    private void advance(long millis) throws InterruptedException {
+        for (SimulatedHrvPeripheral peripheral : peripherals.values()) {
+            peripheral.advance(millis);
+        }
+        for (HrvSession session : manager.getSessions()) {
+            assertTrue(session.getConnection().getDispatcher().awaitIdle(1000));
+        }
+    }
+
+    private void advance(HrvSession session, long millis) throws InterruptedException {
+        peripherals.get(session.getAddress()).advance(millis);
+        assertTrue(session.getConnection().getDispatcher().awaitIdle(1000));
+    }
+
+    private void connectAll() throws InterruptedException {
+        for (String address : peripherals.keySet()) {
+            manager.connect(address);
+        }
+        for (int i = 0; i < peripherals.size(); ++i) {
+            advance(1);
+        }
+    }
+
+    @Test
+    public void connectsOneDeviceAtATime() throws Exception {
+        for (String address : peripherals.keySet()) {
+            manager.connect(address);
+        }
+        assertEquals(3, manager.size());
+
+        // Only the first attempt was started, the others follow as each one connects
+        HrvSession a = manager.getSession("00:00:5E:00:53:01");
+        HrvSession b = manager.getSession("00:00:5E:00:53:02");
+        advance(b, 1000);
+        assertFalse(b.isConnected());
+        advance(a, 1);
+        assertTrue(a.isConnected());
+        assertFalse(b.isConnected());
+        advance(b, 1);
+        assertTrue(b.isConnected());
+        assertSame(manager.getSession("00:00:5E:00:53:02"), manager.connect("00:00:5E:00:53:02"));
+    }
+
+    @Test
+    public void ingestsEveryDeviceIntoItsOwnSession() throws Exception {
+        connectAll();
+        manager.sendCommand(COMMANDS.START);
+        for (int i = 0; i < 60; ++i) {
+            advance(1000);
+        }
+
+        int rate = 60;
+        long bytes = 0;
+        for (HrvSession session : manager.getSessions()) {
+            // 60 s at 60, 70 and 80 BPM
+            assertEquals(rate, session.getStatistics().getBeatCount(), 5);
+            assertEquals(0, session.getConnection().getSignalSequence().getLostCount());
+            bytes += session.getConnection().getReceivedBytes();
+            rate += 10;
+        }
+        assertEquals(bytes, manager.getTotalCount("link.bytes"));
+        assertTrue(manager.toJson().contains("\"00:00:5E:00:53:03\":{\"counters\""));
+    }
+
+    @Test
+    public void aDeviceDroppingOutDoesntAffectTheOthers() throws Exception {
+        connectAll();
+        manager.sendCommand(COMMANDS.START);
+        advance(10 * 1000);
+
+        manager.disconnect("00:00:5E:00:53:01");
+        advance(50 * 1000);
+
+        assertEquals(2, manager.size());
+        assertNull(manager.getSession("00:00:5E:00:53:01"));
+        for (HrvSession session : manager.getSessions()) {
+            assertTrue(session.isConnected());
+            assertTrue(session.getStatistics().getBeatCount() > 50);
+        }
+    }
+
+    @Test
+    public void recordsEachDeviceToItsOwnFile() throws Exception {
+        connectAll();
+        File dir = File.createTempFile("sessions", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        try {
+            for (HrvSession session : manager.getSessions()) {
+                session.startRecording(fileOf(dir, session));
+            }
+            manager.sendCommand(COMMANDS.START);
+            advance(10 * 1000);
+
+            for (HrvSession session : manager.getSessions()) {
+                assertTrue(session.isRecording());
+                assertNull(session.stopRecording());
+                assertTrue(fileOf(dir, session).length() > SessionFormat.FILE_HEADER_SIZE);
+            }
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static File fileOf(File dir, HrvSession session) {
+        return new File(dir, session.getAddress().replace(':', '_') + ".hrv");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesMoreThanMaxDevices() {
+        for (String address : peripherals.keySet()) {
+            manager.connect(address);
+        }
+        manager.connect(SimulatedHrvPeripheral.ADDRESS.replace("01", "04"));
+    }
+}
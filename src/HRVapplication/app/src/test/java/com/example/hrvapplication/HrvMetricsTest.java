@@ -0,0 +1,127 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HrvMetricsTest {
+    @Test
+    public void bucketsCoverTheirBounds() {
+        for (long value = 0; value < 1 << 20; value += 1 + value / 64) {
+            int bucket = HrvMetrics.Latency.bucket(value);
+            assertTrue(HrvMetrics.Latency.lowerBound(bucket) <= value);
+            assertTrue(value < HrvMetrics.Latency.lowerBound(bucket + 1));
+        }
+        assertEquals(0, HrvMetrics.Latency.bucket(-5));
+        assertEquals(HrvMetrics.Latency.BUCKETS - 1, HrvMetrics.Latency.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesWithinABucket() {
+        HrvMetrics.Latency latency = new HrvMetrics.Latency();
+        assertEquals(0, latency.getPercentile(0.5));
+        Random random = new Random(3);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = 1000 + random.nextInt(1000000);
+            latency.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, latency.getCount());
+        for (double fraction : new double[]{0.5, 0.99, 0.999, 1.0}) {
+            long exact = values[(int) Math.ceil(fraction * values.length) - 1];
+            long estimate = latency.getPercentile(fraction);
+            assertTrue(estimate >= exact);
+            assertTrue(estimate <= exact * 1.0625);
+        }
+    }
+
+    @Test
+    public void countsRatesAndReset() throws Exception {
+        HrvMetrics metrics = new HrvMetrics();
+        HrvMetrics.Counter counter = metrics.counter("notify.rr");
+        assertSame(counter, metrics.counter("notify.rr"));
+        metrics.updateRates();
+        counter.add(100);
+        counter.increment();
+        Thread.sleep(20);
+        metrics.updateRates();
+        assertEquals(101, counter.get());
+        assertTrue(counter.getRate() > 0);
+
+        metrics.latency("decode.rr").record(5);
+        metrics.reset();
+        assertEquals(0, counter.get());
+        assertEquals(0, metrics.latency("decode.rr").getCount());
+    }
+
+    @Test
+    public void dumpsJson() {
+        HrvMetrics metrics = new HrvMetrics();
+        metrics.counter("notify.bpm").add(3);
+        metrics.latency("decode.bpm").record(10);
+        metrics.gauge("queue", new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return 7;
+            }
+        });
+        assertEquals("{\"counters\":{\"notify.bpm\":{\"count\":3,\"rate\":0.0}},"
+                + "\"latencies\":{\"decode.bpm\":{\"count\":1,\"p50\":10,\"p99\":10,\"p999\":10,\"max\":10}},"
+                + "\"gauges\":{\"queue\":7}}", metrics.toJson());
+        assertTrue(metrics.toText().contains("queue"));
+    }
+
+    @Test
+    public void unregistersOnlyWhatIsStillRegistered() {
+        HrvMetrics metrics = new HrvMetrics();
+        HrvMetrics.Latency old = new HrvMetrics.Latency();
+        HrvMetrics.Latency current = new HrvMetrics.Latency();
+        HrvMetrics.Gauge gauge = new HrvMetrics.Gauge() {
+            @Override
+            public long get() {
+                return 1;
+            }
+        };
+        metrics.register("ui.frame", old);
+        metrics.register("ui.frame", current);
+        metrics.gauge("ui.pending", gauge);
+
+        // Replaced by a newer registration, e.g. of a recreated activity
+        metrics.unregister("ui.frame", old);
+        assertTrue(metrics.toJson().contains("ui.frame"));
+        metrics.unregister("ui.frame", current);
+        metrics.unregister("ui.pending", gauge);
+        assertFalse(metrics.toJson().contains("ui."));
+    }
+
+    @Test
+    public void connectionCountsAndTimesNotifications() throws Exception {
+        SimulatedHrvPeripheral peripheral = new SimulatedHrvPeripheral(3);
+        HrvConnection connection = new HrvConnection(peripheral, new LiveDataDispatcher(1024, LiveDataDispatcher.Backpressure.BLOCK));
+        try {
+            connection.addHrvDataListener(new HrvDataListener() {
+            }, HrvStream.RR, HrvStream.ECG);
+            connection.startScan();
+            peripheral.advance(1);
+            connection.connect(SimulatedHrvPeripheral.ADDRESS);
+            peripheral.advance(1);
+            connection.sendCommand(COMMANDS.START);
+            peripheral.advance(10000);
+            assertTrue(connection.getDispatcher().awaitIdle(1000));
+
+            HrvMetrics metrics = connection.getMetrics();
+            long notifications = metrics.counter("notify.rr").get();
+            assertTrue(notifications > 0);
+            assertEquals(notifications, metrics.latency("decode.rr").getCount());
+            assertTrue(metrics.counter("notify.signal").get() > 0);
+            assertTrue(metrics.latency("dispatch.latency").getCount() > 0);
+            assertTrue(metrics.toJson().contains("\"dispatch.queue\":0"));
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HrvStatisticsTest {
+    private static int[] syntheticRrSeries(int count, long seed) {
+        Random random = new Random(seed);
+        int[] rr = new int[count];
+        for (int i = 0; i < count; ++i) {
+            // Slow drift plus beat to beat variability
+            rr[i] = (int) (800 + 100 * Math.sin(i / 500.0) + random.nextGaussian() * 30);
+        }
+        return rr;
+    }
+
+    @Test
+    public void matchesBatchDefinitions() {
+        int[] rr = syntheticRrSeries(20000, 42);
+        HrvStatistics stats = new HrvStatistics();
+        for (int v : rr) {
+            stats.addRrInterval(v);
+        }
+
+        // RMSSD
+        double sumSq = 0;
+        for (int i = 1; i < rr.length; ++i) {
+            sumSq += (double) (rr[i] - rr[i - 1]) * (rr[i] - rr[i - 1]);
+        }
+        assertEquals(Math.sqrt(sumSq / (rr.length - 1)), stats.getRmssd(), 1e-9);
+
+        // SDANN
+        List<Double> means = new ArrayList<>();
+        long elapsed = 0, sum = 0;
+        int n = 0;
+        for (int v : rr) {
+            elapsed += v;
+            sum += v;
+            n++;
+            if (elapsed >= HrvStatistics.SDANN_INTERVAL_MS) {
+                means.add((double) sum / n);
+                elapsed = 0;
+                sum = 0;
+                n = 0;
+            }
+        }
+        double mean = 0;
+        for (double m : means) mean += m;
+        mean /= means.size();
+        double var = 0;
+        for (double m : means) var += (m - mean) * (m - mean);
+        assertEquals(means.size(), stats.getSegmentCount());
+        assertEquals(Math.sqrt(var / means.size()), stats.getSdann(), 1e-9);
+
+        // HTI
+        int[] hist = new int[HrvStatistics.RR_HIST_NUM_BINS];
+        int height = 0;
+        for (int v : rr) {
+            height = Math.max(height, ++hist[v]);
+        }
+        assertEquals((double) rr.length / height, stats.getHti(), 1e-9);
+    }
+
+    @Test
+    public void emptyAndResetStatisticsAreZero() {
+        HrvStatistics stats = new HrvStatistics();
+        assertEquals(0.0, stats.getRmssd(), 0);
+        assertEquals(0.0, stats.getSdann(), 0);
+        assertEquals(0.0, stats.getHti(), 0);
+
+        for (int v : syntheticRrSeries(1000, 7)) {
+            stats.addRrInterval(v);
+        }
+        assertEquals(1000, stats.getBeatCount());
+
+        stats.reset();
+        assertEquals(0, stats.getBeatCount());
+        assertEquals(0.0, stats.getHti(), 0);
+    }
+
+    @Test
+    public void gapsBreakTheSuccessiveDifferences() {
+        HrvStatistics stats = new HrvStatistics();
+        stats.addRrInterval(800);
+        stats.addRrInterval(810);
+        stats.markGap(2000);
+        stats.addRrInterval(1000);
+        stats.addRrInterval(990);
+        // Only 810-800 and 990-1000, not the jump across the gap
+        assertEquals(10.0, stats.getRmssd(), 1e-9);
+        assertEquals(4, stats.getBeatCount());
+
+        // The gap time closes segments, empty ones are left out
+        HrvStatistics segments = new HrvStatistics();
+        for (int i = 0; i < 250; ++i) {
+            segments.addRrInterval(1000);
+        }
+        segments.markGap(HrvStatistics.SDANN_INTERVAL_MS);
+        segments.markGap(HrvStatistics.SDANN_INTERVAL_MS);
+        for (int i = 0; i < 400; ++i) {
+            segments.addRrInterval(800);
+        }
+        assertEquals(2, segments.getSegmentCount());
+        assertEquals(100.0, segments.getSdann(), 1e-9);
+    }
+}
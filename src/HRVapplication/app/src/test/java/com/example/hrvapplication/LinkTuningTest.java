@@ -0,0 +1,177 @@
+package com.example.hrvapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class LinkTuningTest {
+    private final List<String> operations = new ArrayList<>();
+    private int refusedSubscriptions = 0;
+    private SimulatedHrvPeripheral peripheral;
+    private HrvConnection connection;
+
+    @Before
+    public void setUp() {
+        // Logs the GATT operations in the order they are issued
+        peripheral = new SimulatedHrvPeripheral(5) {
+            @Override
+            public void subscribe(UUID characteristic) {
+                if (refusedSubscriptions > 0) {
+                    refusedSubscriptions--;
+                    operations.add("refused");
+                    connection.onSubscribed(characteristic, false);
+                    return;
+                }
+                operations.add("subscribe");
+                super.subscribe(characteristic);
+            }
+
+            @Override
+            public boolean writeCommand(byte[] payload) {
+                operations.add(payload[0] == COMMANDS.LINK_MTU.getValue() ? "LINK_MTU" : "command");
+                return super.writeCommand(payload);
+            }
+        };
+        connection = new HrvConnection(peripheral, new LiveDataDispatcher(1024, LiveDataDispatcher.Backpressure.BLOCK));
+        connection.addBLEControllerListener(new BLEControllerListener() {
+            @Override
+            public void BLEControllerConnected() {
+                operations.add("connected");
+            }
+
+            @Override
+            public void BLEControllerDisconnected() {
+            }
+
+            @Override
+            public void BLEDeviceFound(String name, String address) {
+            }
+
+            @Override
+            public void BLEDataReceived(byte[] data) {
+            }
+
+            @Override
+            public void BLEHRVParametersReceived(double data) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        connection.close();
+    }
+
+    private void advance(long millis) throws InterruptedException {
+        peripheral.advance(millis);
+        assertTrue(connection.getDispatcher().awaitIdle(1000));
+    }
+
+    private void connect() throws InterruptedException {
+        connection.connect(SimulatedHrvPeripheral.ADDRESS);
+        advance(1);
+        assertTrue(connection.isConnected());
+    }
+
+    @Test
+    public void negotiatesTheLargestMtuAnd2M() throws Exception {
+        peripheral.setMaxMtu(247);
+        connect();
+
+        LinkParameters link = connection.getLinkParameters();
+        assertEquals(247, link.getMtu());
+        assertEquals(LinkParameters.PHY_2M, link.getRxPhy());
+        assertEquals(LinkParameters.Priority.BALANCED, link.getPriority());
+
+        connection.sendCommand(COMMANDS.START);
+        advance(1);
+        assertEquals(LinkParameters.Priority.HIGH, connection.getLinkParameters().getPriority());
+        assertEquals(15.0, connection.getLinkParameters().getConnectionIntervalMs(), 0);
+
+        connection.sendCommand(COMMANDS.PAUSE);
+        advance(1);
+        assertEquals(LinkParameters.Priority.BALANCED, connection.getLinkParameters().getPriority());
+    }
+
+    @Test
+    public void announcesTheMtuOnceSubscribed() throws Exception {
+        peripheral.setMaxMtu(247);
+        connect();
+
+        assertEquals("[subscribe, subscribe, subscribe, subscribe, LINK_MTU, connected]", operations.toString());
+    }
+
+    @Test
+    public void retriesARefusedSubscription() throws Exception {
+        refusedSubscriptions = 1;
+        connect();
+
+        assertEquals("[refused, subscribe, subscribe, subscribe, subscribe, connected]", operations.toString());
+        assertEquals(1, connection.getMetrics().counter("link.subscribe_failed").get());
+    }
+
+    @Test
+    public void keepsTheDefaultsTheDeviceCantDo() throws Exception {
+        peripheral.set2MPhySupported(false);
+        connect();
+
+        LinkParameters link = connection.getLinkParameters();
+        assertEquals(LiveSignalFrameDecoder.DEFAULT_MTU, link.getMtu());
+        assertEquals(LinkParameters.PHY_1M, link.getRxPhy());
+    }
+
+    @Test
+    public void resetsTheLinkOnReconnect() throws Exception {
+        peripheral.setMaxMtu(247);
+        connect();
+        connection.sendCommand(COMMANDS.START);
+        advance(1);
+
+        connection.disconnect();
+        advance(1);
+        assertEquals(LinkParameters.DEFAULT.getMtu(), connection.getLinkParameters().getMtu());
+
+        // Still streaming, the new link is tuned for it right away
+        connect();
+        assertEquals(247, connection.getLinkParameters().getMtu());
+        assertEquals(LinkParameters.Priority.HIGH, connection.getLinkParameters().getPriority());
+    }
+
+    @Test
+    public void tunedLinkKeepsUpWith1kHz() throws Exception {
+        peripheral.setSampleRate(1000);
+        peripheral.setLinkModel(4, 8);
+        peripheral.setMaxMtu(247);
+        connect();
+        connection.sendCommand(COMMANDS.START);
+        advance(60 * 1000);
+
+        assertEquals(0, peripheral.getTxDroppedCount());
+        assertEquals(0, connection.getSignalSequence().getLostCount());
+        assertTrue(connection.getSignalSequence().getReceivedCount() > 0);
+        // 2 bytes per sample, plus the frame headers
+        assertTrue(connection.getReceivedBytes() / 60 > 2 * 1000);
+    }
+
+    @Test
+    public void untunedLinkLosesFramesAt1kHz() throws Exception {
+        peripheral.setSampleRate(1000);
+        peripheral.setLinkModel(4, 8);
+        peripheral.set2MPhySupported(false);
+        connect();
+        // Streaming without asking for the short interval
+        peripheral.writeCommand(new byte[]{(byte) COMMANDS.START.getValue()});
+        advance(60 * 1000);
+
+        // 6 samples per frame at the default MTU, 4 frames per 50 ms event
+        assertEquals(LinkParameters.Priority.BALANCED, connection.getLinkParameters().getPriority());
+        assertTrue(peripheral.getTxDroppedCount() > 0);
+        assertEquals(0.5, connection.getSignalSequence().getLossRate(), 0.1);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.hrvapplication;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LiveDataDispatcherTest {
+    private static class CollectingListener implements HrvDataListener {
+        final List<Integer> samples = new ArrayList<>();
+        final List<Integer> rrIntervals = new ArrayList<>();
+        final List<Long> rrTimestamps = new ArrayList<>();
+        final CountDownLatch release;
+
+        CollectingListener(CountDownLatch release) {
+            this.release = release;
+        }
+
+        private void await() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void onEcgSamples(int[] samples, int offset, int length, long timestamp) {
+            await();
+            for (int i = offset; i < offset + length; ++i) {
+                this.samples.add(samples[i]);
+            }
+        }
+
+        @Override
+        public void onRrInterval(int rr, long timestamp) {
+            await();
+            rrIntervals.add(rr);
+            rrTimestamps.add(timestamp);
+        }
+    }
+
+    private LiveDataDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    private static void assertIncreasing(List<Integer> values) {
+        for (int i = 1; i < values.size(); ++i) {
+            assertTrue(values.get(i) > values.get(i - 1));
+        }
+    }
+
+    @Test
+    public void blockDeliversEverythingInOrder() throws Exception {
+        dispatcher = new LiveDataDispatcher(4, LiveDataDispatcher.Backpressure.BLOCK);
+        CollectingListener listener = new CollectingListener(new CountDownLatch(0));
+        dispatcher.addListener(listener, HrvStream.ECG);
+
+        int[] frame = new int[3];
+        for (int i = 0; i < 10000; ++i) {
+            frame[0] = 3 * i;
+            frame[1] = 3 * i + 1;
+            frame[2] = 3 * i + 2;
+            dispatcher.publishEcg(frame, 0, 3, i);
+        }
+
+        assertTrue(dispatcher.awaitIdle(5000));
+        assertEquals(30000, listener.samples.size());
+        assertIncreasing(listener.samples);
+        assertEquals(0, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void dropOldestNeverBlocksTheProducer() throws Exception {
+        dispatcher = new LiveDataDispatcher(8, LiveDataDispatcher.Backpressure.DROP_OLDEST);
+        CountDownLatch release = new CountDownLatch(1);
+        CollectingListener listener = new CollectingListener(release);
+        dispatcher.addListener(listener, HrvStream.RR);
+
+        for (int i = 1; i <= 100; ++i) {
+            dispatcher.publishRrInterval(i, i);
+        }
+        assertTrue(dispatcher.getDroppedCount() >= 100 - 8 - 1);
+
+        release.countDown();
+        assertTrue(dispatcher.awaitIdle(1000));
+        assertEquals(100, listener.rrIntervals.size() + dispatcher.getDroppedCount());
+        assertIncreasing(listener.rrIntervals);
+        // The newest events survive
+        assertEquals(100, (int) listener.rrIntervals.get(listener.rrIntervals.size() - 1));
+    }
+
+    @Test
+    public void coalesceMergesWhileTheListenerIsBehind() throws Exception {
+        dispatcher = new LiveDataDispatcher(4, LiveDataDispatcher.Backpressure.COALESCE);
+        CountDownLatch release = new CountDownLatch(1);
+        CollectingListener listener = new CollectingListener(release);
+        dispatcher.addListener(listener, HrvStream.RR);
+
+        for (int i = 1; i <= 20; ++i) {
+            dispatcher.publishRrInterval(800 + i, 1000L * i);
+        }
+        assertTrue(dispatcher.getCoalescedCount() > 0);
+
+        release.countDown();
+        assertTrue(dispatcher.awaitIdle(1000));
+        // The stash goes out with the next event
+        dispatcher.publishRrInterval(900, 30000);
+        assertTrue(dispatcher.awaitIdle(1000));
+
+        assertEquals(0, dispatcher.getDroppedCount());
+        assertEquals(21, listener.rrIntervals.size());
+        assertIncreasing(listener.rrIntervals);
+        for (int i = 1; i < 20; ++i) {
+            assertTrue(listener.rrTimestamps.get(i) > listener.rrTimestamps.get(i - 1));
+        }
+    }
+
+    @Test
+    public void listenersCanUnregisterWhileBeingCalled() throws Exception {
+        dispatcher = new LiveDataDispatcher(16, LiveDataDispatcher.Backpressure.BLOCK);
+        final int[] calls = new int[1];
+        dispatcher.addListener(new HrvDataListener() {
+            @Override
+            public void onBpm(int bpm) {
+                calls[0]++;
+                dispatcher.removeListener(this);
+            }
+        }, HrvStream.BPM);
+        CollectingListener other = new CollectingListener(new CountDownLatch(0));
+        dispatcher.addListener(other);
+
+        dispatcher.publishBpm(60);
+        assertTrue(dispatcher.awaitIdle(1000));
+        dispatcher.publishBpm(61);
+        assertTrue(dispatcher.awaitIdle(1000));
+
+        assertEquals(1, calls[0]);
+        assertTrue(dispatcher.hasListeners(HrvStream.BPM));
+    }
+}
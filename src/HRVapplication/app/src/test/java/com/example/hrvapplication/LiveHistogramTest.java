@@ -0,0 +1,106 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LiveHistogramTest {
+    @Test
+    public void reportsOnlyTheBinsThatChanged() {
+        LiveHistogram histogram = new LiveHistogram(221);
+        assertTrue(histogram.refresh());
+        assertTrue(histogram.isLayoutChanged());
+        assertEquals(221, histogram.getDisplayBinCount());
+
+        assertFalse(histogram.refresh());
+
+        histogram.add(70);
+        histogram.add(70);
+        histogram.add(72);
+        histogram.add(500);
+        assertTrue(histogram.refresh());
+        assertFalse(histogram.isLayoutChanged());
+        assertEquals(2, histogram.getChangedBinCount());
+        assertEquals(70, histogram.getChangedBin(0));
+        assertEquals(72, histogram.getChangedBin(1));
+        assertEquals(2, histogram.getDisplayCount(70));
+        assertEquals(1, histogram.getDisplayCount(72));
+
+        assertFalse(histogram.refresh());
+    }
+
+    @Test
+    public void adaptiveBinningCoversTheValuesSeen() {
+        LiveHistogram histogram = new LiveHistogram(1200, 100);
+        assertTrue(histogram.refresh());
+        assertEquals(0, histogram.getDisplayBinCount());
+
+        for (int rr = 800; rr < 850; ++rr) {
+            histogram.add(rr);
+        }
+        assertTrue(histogram.refresh());
+        assertTrue(histogram.isLayoutChanged());
+        assertEquals(1, histogram.getDisplayBinWidth());
+        assertEquals(800, histogram.getDisplayOrigin());
+        assertEquals(50, histogram.getDisplayBinCount());
+
+        // Within the range only the bin is updated
+        histogram.add(820);
+        assertTrue(histogram.refresh());
+        assertFalse(histogram.isLayoutChanged());
+        assertEquals(1, histogram.getChangedBinCount());
+        assertEquals(2, histogram.getDisplayCount(20));
+
+        // A wider range means wider bins, the counts stay exact
+        histogram.add(600);
+        histogram.add(1100);
+        assertTrue(histogram.refresh());
+        assertTrue(histogram.isLayoutChanged());
+        assertEquals(10, histogram.getDisplayBinWidth());
+        assertEquals(600, histogram.getDisplayOrigin());
+        assertTrue(histogram.getDisplayBinCount() <= 100);
+        int total = 0;
+        for (int bin = 0; bin < histogram.getDisplayBinCount(); ++bin) {
+            total += histogram.getDisplayCount(bin);
+        }
+        assertEquals(53, total);
+        // 820 to 829, 820 twice
+        assertEquals(11, histogram.getDisplayCount((820 - 600) / 10));
+    }
+
+    @Test
+    public void clearStartsOver() {
+        LiveHistogram histogram = new LiveHistogram(1200, 100);
+        histogram.add(900);
+        histogram.refresh();
+        histogram.clear();
+
+        assertTrue(histogram.refresh());
+        assertTrue(histogram.isLayoutChanged());
+        assertEquals(0, histogram.getDisplayBinCount());
+        assertEquals(0, histogram.getCount(900));
+    }
+
+    @Test
+    public void setReplacesTheCounts() {
+        LiveHistogram histogram = new LiveHistogram(1501, 100);
+        histogram.add(900);
+        histogram.refresh();
+
+        int[] counts = new int[1501];
+        counts[800] = 3;
+        counts[1500] = 1;
+        histogram.set(counts);
+
+        assertTrue(histogram.refresh());
+        assertTrue(histogram.isLayoutChanged());
+        assertEquals(0, histogram.getCount(900));
+        assertEquals(3, histogram.getCount(800));
+        assertEquals(800, histogram.getDisplayOrigin());
+        int total = 0;
+        for (int bin = 0; bin < histogram.getDisplayBinCount(); ++bin) {
+            total += histogram.getDisplayCount(bin);
+        }
+        assertEquals(4, total);
+    }
+}
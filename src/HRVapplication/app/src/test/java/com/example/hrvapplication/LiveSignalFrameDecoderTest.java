@@ -0,0 +1,76 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LiveSignalFrameDecoderTest {
+    private static byte[] packedFrame(int seq, long timestamp, int period, int... samples) {
+        byte[] frame = new byte[LiveSignalFrameDecoder.HEADER_SIZE + 2 * samples.length];
+        frame[0] = (byte) seq;
+        frame[1] = (byte) (seq >> 8);
+        frame[2] = (byte) timestamp;
+        frame[3] = (byte) (timestamp >> 8);
+        frame[4] = (byte) (timestamp >> 16);
+        frame[5] = (byte) (timestamp >> 24);
+        frame[6] = (byte) period;
+        frame[7] = (byte) samples.length;
+        for (int i = 0; i < samples.length; ++i) {
+            frame[8 + 2 * i] = (byte) samples[i];
+            frame[9 + 2 * i] = (byte) (samples[i] >> 8);
+        }
+        return frame;
+    }
+
+    @Test
+    public void decodesPackedFrame() {
+        LiveSignalFrameDecoder decoder = new LiveSignalFrameDecoder();
+        assertTrue(decoder.decode(packedFrame(0xBEEF, 0xF0000001L, 4, 512, 1023, 0, -3, 700, 1)));
+
+        assertEquals(0xBEEF, decoder.getSequence());
+        assertEquals(0xF0000001L, decoder.getTimestamp());
+        assertEquals(4, decoder.getSamplePeriodMs());
+        assertEquals(6, decoder.getLength());
+        int[] expected = {512, 1023, 0, -3, 700, 1};
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(expected[i], decoder.getSamples()[i]);
+        }
+    }
+
+    @Test
+    public void legacyPayloadIsNotAPackedFrame() {
+        byte[] legacy = {(byte) 0x10, (byte) 0x02, 0, 0};
+        assertFalse(LiveSignalFrameDecoder.isPackedFrame(legacy));
+        assertEquals(0x210, LiveSignalFrameDecoder.decodeLegacy(legacy));
+    }
+
+    @Test
+    public void rejectsTruncatedFrame() {
+        byte[] frame = packedFrame(1, 0, 4, 1, 2, 3);
+        byte[] truncated = new byte[frame.length - 1];
+        System.arraycopy(frame, 0, truncated, 0, truncated.length);
+
+        assertFalse(new LiveSignalFrameDecoder().decode(truncated));
+    }
+
+    @Test
+    public void decodesFeedOfFramesLargerThanTheDefaultMtu() {
+        LiveSignalFrameDecoder decoder = new LiveSignalFrameDecoder();
+        int perFrame = LiveSignalFrameDecoder.maxSamplesForMtu(247);
+        int[] samples = new int[perFrame];
+        long received = 0;
+
+        for (int seq = 0; seq < 100; ++seq) {
+            for (int i = 0; i < perFrame; ++i) {
+                samples[i] = seq * perFrame + i;
+            }
+            assertTrue(decoder.decode(packedFrame(seq, seq * perFrame * 4L, 4, samples)));
+            assertEquals(seq, decoder.getSequence());
+            for (int i = 0; i < decoder.getLength(); ++i) {
+                assertEquals((short) (received++), decoder.getSamples()[i]);
+            }
+        }
+
+        assertEquals(100L * perFrame, received);
+    }
+}
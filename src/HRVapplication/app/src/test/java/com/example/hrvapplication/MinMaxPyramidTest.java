@@ -0,0 +1,92 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MinMaxPyramidTest {
+    private static int[] signal(int n) {
+        Random random = new Random(3);
+        int[] samples = new int[n];
+        for (int i = 0; i < n; ++i) {
+            samples[i] = 512 + random.nextInt(40) + (i % 200 == 0 ? 400 : 0);
+        }
+        return samples;
+    }
+
+    private static void assertMatchesSamples(int[] samples, MinMaxPyramid.Range range) {
+        for (int i = 0; i < range.count; ++i) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            long start = range.first + i * range.span;
+            for (long s = start; s < start + range.span; ++s) {
+                min = Math.min(min, samples[(int) s]);
+                max = Math.max(max, samples[(int) s]);
+            }
+            assertEquals(min, range.min[i]);
+            assertEquals(max, range.max[i]);
+        }
+    }
+
+    @Test
+    public void bucketsHoldTheMinAndMaxOfTheirSamples() {
+        int[] samples = signal(100000);
+        MinMaxPyramid pyramid = new MinMaxPyramid(1 << 16, 12);
+        for (int off = 0; off < samples.length; off += 7) {
+            pyramid.append(samples, off, Math.min(7, samples.length - off));
+        }
+        assertEquals(samples.length, pyramid.getSampleCount());
+
+        MinMaxPyramid.Range range = new MinMaxPyramid.Range(16);
+        int[][] queries = {{0, 100000, 500}, {1000, 1100, 500}, {1000, 1100, 10}, {12345, 67890, 1080}};
+        for (int[] q : queries) {
+            pyramid.query(q[0], q[1], q[2], range);
+            assertTrue(range.count > 0);
+            assertTrue(range.count <= q[2]);
+            assertTrue(range.first <= q[0]);
+            assertTrue(range.first + range.count * range.span >= q[1] - range.span);
+            assertMatchesSamples(samples, range);
+        }
+
+        // Small recent ranges come back at full resolution
+        pyramid.query(90000, 90100, 500, range);
+        assertEquals(1, range.span);
+        assertEquals(100, range.count);
+    }
+
+    @Test
+    public void keepsEveryPeakAtAnyZoom() {
+        int[] samples = signal(50000);
+        MinMaxPyramid pyramid = new MinMaxPyramid(1 << 16, 12);
+        pyramid.append(samples, 0, samples.length);
+
+        MinMaxPyramid.Range range = new MinMaxPyramid.Range(16);
+        pyramid.query(0, samples.length, 250, range);
+        assertTrue(range.span >= samples.length / 250);
+        // 250 peaks, 1 every 200 samples, at least one per bucket
+        for (int i = 0; i < range.count; ++i) {
+            assertTrue(range.max[i] >= 912);
+        }
+    }
+
+    @Test
+    public void memoryIsBoundedAndOldRangesUseCoarseLevels() {
+        MinMaxPyramid pyramid = new MinMaxPyramid(1024, 20);
+        int[] samples = signal(1000000);
+        pyramid.append(samples, 0, samples.length);
+
+        MinMaxPyramid.Range range = new MinMaxPyramid.Range(16);
+        // Only the newest 1024 raw samples are left
+        pyramid.query(0, 100, 1000, range);
+        assertTrue(range.span > 1);
+        assertTrue(range.first <= 0);
+        assertMatchesSamples(samples, range);
+
+        pyramid.query(samples.length - 100, samples.length, 1000, range);
+        assertEquals(1, range.span);
+        assertEquals(100, range.count);
+        assertMatchesSamples(samples, range);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QrsDetectorTest {
+    private static class RrCollector implements HrvDataListener {
+        final List<Integer> rr = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+
+        @Override
+        public void onRrInterval(int rr, long timestamp) {
+            this.rr.add(rr);
+            timestamps.add(timestamp);
+        }
+    }
+
+    /**
+     * 250 Hz ECG with R waves after the given intervals, T waves, baseline wander and noise.
+     */
+    private static int[] ecg(int[] rrIntervals, double rScale, int weakBeat) {
+        Random random = new Random(7);
+        int total = 0;
+        for (int rr : rrIntervals) {
+            total += rr;
+        }
+        int[] samples = new int[(total + 1000) / 4];
+        double[] beats = new double[rrIntervals.length + 1];
+        beats[0] = 500;
+        for (int i = 0; i < rrIntervals.length; ++i) {
+            beats[i + 1] = beats[i] + rrIntervals[i];
+        }
+        int beat = 0;
+        for (int n = 0; n < samples.length; ++n) {
+            double t = 4.0 * n;
+            while (beat + 1 < beats.length && beats[beat + 1] <= t) {
+                beat++;
+            }
+            double value = 512 + 30 * Math.sin(2 * Math.PI * t / 7000) + random.nextGaussian() * 4;
+            for (int b = Math.max(0, beat - 1); b <= Math.min(beats.length - 1, beat + 1); ++b) {
+                double d = t - beats[b];
+                double amplitude = 400 * rScale * (b == weakBeat ? 0.6 : 1.0);
+                value += amplitude * Math.exp(-d * d / 200) + 80 * Math.exp(-(d - 250) * (d - 250) / 2000);
+            }
+            samples[n] = (int) value;
+        }
+        return samples;
+    }
+
+    private static int[] rrIntervals(int count) {
+        Random random = new Random(11);
+        int[] rr = new int[count];
+        for (int i = 0; i < count; ++i) {
+            rr[i] = 4 * (150 + random.nextInt(100));
+        }
+        return rr;
+    }
+
+    @Test
+    public void findsEveryBeatToTheSample() {
+        int[] rr = rrIntervals(300);
+        int[] samples = ecg(rr, 1.0, -1);
+        RrCollector collector = new RrCollector();
+        QrsDetector detector = new QrsDetector(250, collector);
+        for (int off = 0; off < samples.length; off += 29) {
+            detector.onEcgSamples(samples, off, Math.min(29, samples.length - off), 4L * off);
+        }
+
+        // The first beats fall into the learning phase
+        int missed = rr.length - collector.rr.size();
+        assertTrue(missed >= 0 && missed <= 3);
+        for (int i = 0; i < collector.rr.size(); ++i) {
+            assertEquals(rr[missed + i], collector.rr.get(i), 4);
+        }
+        assertEquals(collector.rr.size(), detector.getBeatCount());
+        // Timestamps follow the frames, a few samples of filter delay after the R peak
+        long beat = 500;
+        for (int i = 0; i <= missed; ++i) {
+            beat += rr[i];
+        }
+        assertEquals(beat, collector.timestamps.get(0), 40);
+    }
+
+    @Test
+    public void adaptsToTheAmplitudeAndSearchesBackWeakBeats() {
+        int[] rr = rrIntervals(200);
+        RrCollector collector = new RrCollector();
+        QrsDetector detector = new QrsDetector(250, collector);
+        // A large signal first, then a much smaller one with one weak beat
+        for (int sample : ecg(rr, 3.0, -1)) {
+            detector.addSample(sample);
+        }
+        long before = collector.rr.size();
+        for (int sample : ecg(rr, 0.5, 100)) {
+            detector.addSample(sample);
+        }
+
+        // Beats across the switch from one signal to the other may be missed, not invented
+        int found = (int) (collector.rr.size() - before);
+        assertTrue(found >= rr.length - 8);
+        assertTrue(found <= rr.length + 1);
+        assertTrue(detector.getSearchBackCount() > 0);
+        // Including the intervals around the weak beat
+        int tail = collector.rr.size();
+        for (int i = 1; i <= 120; ++i) {
+            assertEquals(rr[rr.length - i], collector.rr.get(tail - i), 4);
+        }
+    }
+
+    @Test
+    public void matchesTheDeviceIntervals() throws Exception {
+        SimulatedHrvPeripheral peripheral = new SimulatedHrvPeripheral(3);
+        HrvConnection connection = new HrvConnection(peripheral, new LiveDataDispatcher(1024, LiveDataDispatcher.Backpressure.BLOCK));
+        try {
+            RrCollector device = new RrCollector();
+            RrCollector phone = new RrCollector();
+            connection.addHrvDataListener(device, HrvStream.RR);
+            connection.addHrvDataListener(new QrsDetector(250, phone), HrvStream.ECG);
+
+            connection.startScan();
+            peripheral.advance(1);
+            connection.connect(SimulatedHrvPeripheral.ADDRESS);
+            peripheral.advance(1);
+            peripheral.setMtu(247);
+            connection.sendCommand(COMMANDS.START);
+            peripheral.advance(5 * 60 * 1000);
+            assertTrue(connection.getDispatcher().awaitIdle(1000));
+
+            // Align the two series on their last beat, the detector lags by the refractory delay at most
+            int d = device.rr.size() - 1;
+            int p = phone.rr.size() - 1;
+            if (Math.abs(device.timestamps.get(d) - phone.timestamps.get(p)) > 300) {
+                d--;
+            }
+            int compared = 0;
+            for (; d >= 0 && p >= 0; --d, --p) {
+                assertEquals(device.rr.get(d), phone.rr.get(p), 8);
+                compared++;
+            }
+            assertTrue(compared > 300);
+        } finally {
+            connection.close();
+        }
+    }
+}
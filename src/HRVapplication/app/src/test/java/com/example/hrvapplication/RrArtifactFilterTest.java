@@ -0,0 +1,90 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RrArtifactFilterTest {
+    @Test
+    public void rejectsIntervalsOutOfBounds() {
+        RrArtifactFilter filter = new RrArtifactFilter();
+        assertEquals(RrFilter.REJECT, filter.filter(249, 0));
+        assertEquals(RrFilter.REJECT, filter.filter(1501, 0));
+        assertEquals(RrFilter.REJECT, filter.filter(0, 0));
+        assertEquals(250, filter.filter(250, 0));
+        assertEquals(3, filter.getOutOfBoundsCount());
+        assertEquals(1, filter.getAcceptedCount());
+    }
+
+    @Test
+    public void cleansANoisySeries() {
+        Random random = new Random(13);
+        RrArtifactFilter filter = new RrArtifactFilter();
+        HrvStatistics clean = new HrvStatistics();
+        HrvStatistics filtered = new HrvStatistics();
+        HrvStatistics raw = new HrvStatistics();
+
+        int artifacts = 0;
+        for (int i = 0; i < 5000; ++i) {
+            int rr = 800 + (int) (random.nextGaussian() * 20);
+            clean.addRrInterval(rr);
+
+            int[] received;
+            double p = random.nextDouble();
+            if (p < 0.01) {
+                // Missed beat, two intervals in one
+                received = new int[]{rr + 800};
+                artifacts++;
+            } else if (p < 0.02) {
+                // Extra beat, the interval split in two
+                received = new int[]{rr / 3, rr - rr / 3};
+                artifacts += 2;
+            } else {
+                received = new int[]{rr};
+            }
+            for (int value : received) {
+                raw.addRrInterval(value);
+                int out = filter.filter(value, i);
+                if (out != RrFilter.REJECT) {
+                    filtered.addRrInterval(out);
+                }
+            }
+        }
+
+        assertEquals(artifacts, filter.getArtifactCount() + filter.getOutOfBoundsCount(), artifacts / 10);
+        assertTrue(raw.getRmssd() > 2 * clean.getRmssd());
+        assertEquals(clean.getRmssd(), filtered.getRmssd(), 0.2 * clean.getRmssd());
+        assertEquals(0, filter.getCorrectedCount());
+    }
+
+    @Test
+    public void correctsWithTheMedian() {
+        RrArtifactFilter filter = new RrArtifactFilter(5, 20, true);
+        int[] series = {800, 810, 790, 805, 1200, 795};
+        int[] expected = {800, 810, 790, 805, 802, 795};
+        for (int i = 0; i < series.length; ++i) {
+            assertEquals(expected[i], filter.filter(series[i], i));
+        }
+        assertEquals(1, filter.getCorrectedCount());
+        assertEquals(1, filter.getArtifactCount());
+    }
+
+    @Test
+    public void followsARealChangeOfRate() {
+        RrArtifactFilter filter = new RrArtifactFilter();
+        for (int i = 0; i < 20; ++i) {
+            assertEquals(1000, filter.filter(1000, i));
+        }
+        // The first intervals after the jump look like artifacts, then the window starts over
+        int rejected = 0;
+        for (int i = 0; i < 20; ++i) {
+            if (filter.filter(600, i) == RrFilter.REJECT) {
+                rejected++;
+            }
+        }
+        assertEquals(RrArtifactFilter.DEFAULT_WINDOW - 1, rejected);
+        assertEquals(610, filter.filter(610, 0));
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RrSeriesTest {
+    @Test
+    public void keepsTheBeatsInOrder() {
+        RrSeries series = new RrSeries();
+        assertEquals(0, series.size());
+
+        long time = 1700000000000L;
+        for (int i = 0; i < 10000; ++i) {
+            time += 600 + i % 700;
+            series.append(600 + i % 700, time);
+        }
+        assertEquals(10000, series.size());
+        assertEquals(600, series.getRr(0));
+        assertEquals(1700000000600L, series.getTimestamp(0));
+        assertEquals(600 + 9999 % 700, series.getRr(9999));
+        assertEquals(time, series.getTimestamp(9999));
+
+        int[] copy = new int[3];
+        series.copyRr(4095, copy, 0, 3);
+        assertArrayEquals(new int[]{600 + 4095 % 700, 600 + 4096 % 700, 600 + 4097 % 700}, copy);
+    }
+
+    @Test
+    public void visitsEveryBeatWithoutCopying() {
+        RrSeries series = new RrSeries();
+        for (int i = 0; i < 3 * RrSeries.CHUNK_SIZE + 5; ++i) {
+            series.append(800, 1000L * i);
+        }
+
+        final long[] sum = new long[1];
+        final int[] beats = new int[1];
+        final long[] last = new long[1];
+        series.forEachChunk(new RrSeries.ChunkVisitor() {
+            @Override
+            public void visit(short[] rr, int[] offsets, int length, long baseTimestamp) {
+                for (int i = 0; i < length; ++i) {
+                    sum[0] += rr[i] & 0xFFFF;
+                    last[0] = baseTimestamp + offsets[i];
+                }
+                beats[0] += length;
+            }
+        });
+        assertEquals(series.size(), beats[0]);
+        assertEquals(800L * beats[0], sum[0]);
+        assertEquals(1000L * (beats[0] - 1), last[0]);
+    }
+
+    @Test
+    public void dropsTheOldestChunkWhenFull() {
+        RrSeries series = new RrSeries(2 * RrSeries.CHUNK_SIZE);
+        int total = 10 * RrSeries.CHUNK_SIZE + 7;
+        for (int i = 0; i < total; ++i) {
+            series.append(i % 1500, i);
+        }
+
+        // At least maxBeats are kept, never more than a chunk beyond
+        assertTrue(series.size() >= 2 * RrSeries.CHUNK_SIZE);
+        assertTrue(series.size() <= 3 * RrSeries.CHUNK_SIZE);
+        assertEquals(total, series.getDroppedCount() + series.size());
+
+        int first = (int) series.getDroppedCount();
+        assertEquals(first % 1500, series.getRr(0));
+        assertEquals(first, series.getTimestamp(0));
+        assertEquals((total - 1) % 1500, series.getRr(series.size() - 1));
+
+        series.clear();
+        assertEquals(0, series.size());
+        series.append(900, 5);
+        assertEquals(900, series.getRr(0));
+        assertEquals(5, series.getTimestamp(0));
+    }
+
+    @Test
+    public void holdsGapsAsIntervalsOf0() {
+        RrSeries series = new RrSeries();
+        series.append(800, 10800);
+        series.appendGap(10800);
+        series.append(900, 15000);
+
+        assertEquals(3, series.size());
+        assertEquals(0, series.getRr(1));
+        assertEquals(10800, series.getTimestamp(1));
+        // The gap lasts until the next interval starts
+        assertEquals(3300, series.getTimestamp(2) - series.getRr(2) - series.getTimestamp(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsBeatsNotHeld() {
+        RrSeries series = new RrSeries();
+        series.append(800, 0);
+        series.getRr(1);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SampleRingBufferTest {
+    @Test
+    public void drainsInOrderAcrossWrapAround() {
+        SampleRingBuffer ring = new SampleRingBuffer(8);
+        int[] out = new int[8];
+        int next = 0;
+        int expected = 0;
+
+        for (int round = 0; round < 10; ++round) {
+            for (int i = 0; i < 5; ++i) {
+                assertTrue(ring.offer(next++));
+            }
+            int n = ring.drain(out, 0, out.length);
+            assertEquals(5, n);
+            for (int i = 0; i < n; ++i) {
+                assertEquals(expected++, out[i]);
+            }
+        }
+    }
+
+    @Test
+    public void dropsWhenFull() {
+        SampleRingBuffer ring = new SampleRingBuffer(4);
+        int[] block = {1, 2, 3, 4, 5, 6};
+
+        assertEquals(4, ring.offer(block, 0, block.length));
+        assertFalse(ring.offer(7));
+        assertEquals(3, ring.getDroppedCount());
+
+        int[] out = new int[4];
+        assertEquals(4, ring.drain(out, 0, out.length));
+        assertArrayEquals(new int[]{1, 2, 3, 4}, out);
+    }
+
+    @Test
+    public void concurrentProducerAndConsumerSeeEverySampleOnce() throws InterruptedException {
+        final SampleRingBuffer ring = new SampleRingBuffer(1024);
+        final int total = 200000;
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < total; ) {
+                    if (ring.offer(i)) i++;
+                }
+            }
+        });
+        producer.start();
+
+        int[] out = new int[256];
+        int expected = 0;
+        while (expected < total) {
+            int n = ring.drain(out, 0, out.length);
+            for (int i = 0; i < n; ++i) {
+                assertEquals(expected++, out[i]);
+            }
+        }
+        producer.join();
+
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void windowKeepsNewestSamples() {
+        SampleWindow window = new SampleWindow(3);
+        window.append(new int[]{1, 2}, 0, 2);
+        window.append(new int[]{3, 4, 5, 6, 7}, 1, 3);
+
+        assertEquals(3, window.size());
+        assertEquals(5, window.getTotalCount());
+        assertEquals(4, window.get(0));
+        assertEquals(5, window.get(1));
+        assertEquals(6, window.get(2));
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.hrvapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SequenceGapDetectorTest {
+    @Test
+    public void countsLostFrames() {
+        SequenceGapDetector detector = new SequenceGapDetector();
+        assertEquals(0, detector.next(10));
+        assertEquals(0, detector.next(11));
+        assertEquals(3, detector.next(15));
+        assertEquals(0, detector.next(16));
+        assertEquals(1, detector.next(18));
+
+        assertEquals(5, detector.getReceivedCount());
+        assertEquals(4, detector.getLostCount());
+        assertEquals(2, detector.getGapCount());
+        assertEquals(4.0 / 9, detector.getLossRate(), 1e-9);
+    }
+
+    @Test
+    public void followsTheWrapAround() {
+        SequenceGapDetector detector = new SequenceGapDetector();
+        assertEquals(0, detector.next(0xFFFE));
+        assertEquals(0, detector.next(0xFFFF));
+        assertEquals(0, detector.next(0));
+        assertEquals(2, detector.next(3));
+        assertEquals(0, detector.next(0x10004));
+        assertEquals(2, detector.getLostCount());
+    }
+
+    @Test
+    public void skipsDuplicatesAndFollowsARestart() {
+        SequenceGapDetector detector = new SequenceGapDetector();
+        detector.next(500);
+        assertEquals(SequenceGapDetector.DUPLICATE, detector.next(500));
+        assertEquals(1, detector.getDuplicateCount());
+
+        // The peripheral started over
+        assertEquals(0, detector.next(0));
+        assertEquals(0, detector.next(1));
+        assertEquals(1, detector.getRestartCount());
+        assertEquals(0, detector.getLostCount());
+
+        detector.reset();
+        assertEquals(0, detector.getReceivedCount());
+        assertEquals(0.0, detector.getLossRate(), 0);
+        assertEquals(0, detector.next(42));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.hrvapplication;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class SessionIndexTest {
+    private static final int FRAME_SAMPLES = 6;
+    private static final int SAMPLE_PERIOD_MS = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long totalSamples;
+    private long totalRr;
+
+    /**
+     * A synthetic recording with a sawtooth signal between 100 and 1099 and a beat every 800 ms.
+     */
+    private SessionRecorder record(File file, long durationMs) throws Exception {
+        SessionRecorder recorder = new SessionRecorder(file, 0, 4096, Long.MAX_VALUE, Long.MAX_VALUE);
+        int[] frame = new int[FRAME_SAMPLES];
+        int value = 0;
+        for (long t = 0; t < durationMs; t += FRAME_SAMPLES * SAMPLE_PERIOD_MS) {
+            for (int i = 0; i < FRAME_SAMPLES; ++i) {
+                frame[i] = 100 + value++ % 1000;
+            }
+            recorder.onEcgSamples(frame, 0, FRAME_SAMPLES, t);
+            totalSamples += FRAME_SAMPLES;
+            if (t % 792 == 0) {
+                recorder.onRrInterval(800, t);
+                totalRr++;
+            }
+        }
+        recorder.close();
+        return recorder;
+    }
+
+    @Test
+    public void findsTheChunkOfAnyTime() throws Exception {
+        File file = folder.newFile("session.hrv");
+        long duration = 60 * 60 * 1000L;
+        SessionRecorder recorder = record(file, duration);
+
+        SessionIndex index = SessionIndex.open(file);
+        assertEquals(recorder.getChunksWritten(), index.size());
+        assertTrue(index.size() > 100);
+        assertEquals(0, index.getStartTimestamp());
+
+        for (long t = 0; t < duration; t += 7919) {
+            int entry = index.find(t);
+            assertTrue(index.getFirstTimestamp(entry) <= t);
+            if (entry + 1 < index.size()) {
+                assertTrue(index.getFirstTimestamp(entry + 1) > t);
+            }
+        }
+        assertEquals(0, index.find(-100));
+        assertEquals(index.size() - 1, index.find(duration * 2));
+    }
+
+    @Test
+    public void seeksIntoTheSessionFile() throws Exception {
+        File file = folder.newFile("session.hrv");
+        record(file, 10 * 60 * 1000L);
+        SessionIndex index = SessionIndex.open(file);
+
+        final int entry = index.find(5 * 60 * 1000L);
+        final long[] firstTimestamp = {-1};
+        final int[] samples = {0};
+        try (SessionReader reader = new SessionReader(file)) {
+            assertEquals(1, reader.replay(new HrvDataListener() {
+                @Override
+                public void onEcgSamples(int[] s, int offset, int length, long timestamp) {
+                    if (firstTimestamp[0] < 0) firstTimestamp[0] = timestamp;
+                    samples[0] += length;
+                }
+            }, index.getOffset(entry), 1));
+        }
+        assertEquals(index.getFirstTimestamp(entry), firstTimestamp[0]);
+        assertEquals(index.getSampleCount(entry), samples[0]);
+    }
+
+    @Test
+    public void summarizesTimeRanges() throws Exception {
+        File file = folder.newFile("session.hrv");
+        record(file, 30 * 60 * 1000L);
+        SessionIndex index = SessionIndex.open(file);
+
+        SessionIndex.Summary all = index.summarize(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(totalSamples, all.sampleCount);
+        assertEquals(100, all.sampleMin);
+        assertEquals(1099, all.sampleMax);
+        assertEquals(totalRr, all.rrCount);
+        assertEquals(800, all.getRrMean(), 0);
+
+        SessionIndex.Summary minute = index.summarize(60 * 1000L, 2 * 60 * 1000L);
+        // Whole chunks, so a bit more than the 15000 samples of the minute
+        assertTrue(minute.sampleCount >= 15000);
+        assertTrue(minute.sampleCount < 15000 + 3 * index.getSampleCount(0));
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.hrvapplication;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SessionRecorderTest {
+    private static class CollectingListener implements HrvDataListener {
+        long samples = 0;
+        long sampleSum = 0;
+        long lastEcgTimestamp = -1;
+        final List<Integer> rrIntervals = new ArrayList<>();
+        final List<Long> rrTimestamps = new ArrayList<>();
+        final List<Integer> bpms = new ArrayList<>();
+        final List<String> gaps = new ArrayList<>();
+
+        @Override
+        public void onEcgSamples(int[] samples, int offset, int length, long timestamp) {
+            for (int i = offset; i < offset + length; ++i) {
+                sampleSum += samples[i];
+            }
+            this.samples += length;
+            lastEcgTimestamp = timestamp;
+        }
+
+        @Override
+        public void onRrInterval(int rr, long timestamp) {
+            rrIntervals.add(rr);
+            rrTimestamps.add(timestamp);
+        }
+
+        @Override
+        public void onBpm(int bpm) {
+            bpms.add(bpm);
+        }
+
+        @Override
+        public void onGap(HrvStream stream, long timestamp, long durationMs) {
+            gaps.add(stream + "@" + timestamp + "+" + durationMs);
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Record minutes of the simulated stream, returns what the listeners saw live.
+     */
+    private CollectingListener record(File file, int minutes) throws Exception {
+        SimulatedHrvPeripheral peripheral = new SimulatedHrvPeripheral(5);
+        peripheral.setDropout(0.01);
+        HrvConnection connection = new HrvConnection(peripheral, new LiveDataDispatcher(1024, LiveDataDispatcher.Backpressure.BLOCK));
+        CollectingListener live = new CollectingListener();
+        SessionRecorder recorder = new SessionRecorder(file, 1234L, 4096, 1000, 10000);
+        connection.addHrvDataListener(live);
+        connection.addHrvDataListener(recorder);
+
+        connection.startScan();
+        peripheral.advance(1);
+        connection.connect(SimulatedHrvPeripheral.ADDRESS);
+        peripheral.advance(1);
+        connection.sendCommand(COMMANDS.START);
+        peripheral.advance(minutes * 60 * 1000L);
+        assertTrue(connection.getDispatcher().awaitIdle(5000));
+        connection.close();
+        recorder.close();
+
+        assertNull(recorder.getFailure());
+        assertEquals(live.samples, recorder.getSamplesWritten());
+        assertEquals(file.length(), recorder.getBytesWritten());
+        return live;
+    }
+
+    @Test
+    public void replaysWhatWasRecorded() throws Exception {
+        File file = folder.newFile("session.hrv");
+        CollectingListener live = record(file, 10);
+
+        CollectingListener replayed = new CollectingListener();
+        try (SessionReader reader = new SessionReader(file)) {
+            assertEquals(1234L, reader.getStartTime());
+            assertTrue(reader.replay(replayed) > 1);
+            assertFalse(reader.isTruncated());
+            assertFalse(reader.isCorrupted());
+        }
+
+        assertEquals(10 * 60 * 250, live.samples, 10);
+        assertEquals(live.samples, replayed.samples);
+        assertEquals(live.sampleSum, replayed.sampleSum);
+        assertEquals(live.lastEcgTimestamp, replayed.lastEcgTimestamp);
+        assertEquals(live.rrIntervals, replayed.rrIntervals);
+        assertEquals(live.rrTimestamps, replayed.rrTimestamps);
+        assertEquals(live.bpms, replayed.bpms);
+        assertFalse(live.gaps.isEmpty());
+        assertEquals(live.gaps, replayed.gaps);
+
+        // Deltas of a 10 bit signal stay well below 2 bytes per sample
+        assertTrue(file.length() < live.samples * 2);
+    }
+
+    @Test
+    public void writesAChunkNoRecordFollows() throws Exception {
+        File file = folder.newFile("session.hrv");
+        SessionRecorder recorder = new SessionRecorder(file, 0, 4096, 50, 10000);
+        try {
+            recorder.onRrInterval(800, 800);
+            // Paused, the timer writes the chunk
+            long deadline = System.currentTimeMillis() + 2000;
+            while (recorder.getChunksWritten() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, recorder.getChunksWritten());
+            assertEquals(file.length(), recorder.getBytesWritten());
+        } finally {
+            recorder.close();
+        }
+    }
+
+    @Test
+    public void stopsAtATruncatedChunk() throws Exception {
+        File file = folder.newFile("session.hrv");
+        CollectingListener live = record(file, 2);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(file.length() - 10);
+        }
+
+        CollectingListener replayed = new CollectingListener();
+        try (SessionReader reader = new SessionReader(file)) {
+            reader.replay(replayed);
+            assertTrue(reader.isTruncated());
+        }
+        assertTrue(replayed.samples > 0);
+        assertTrue(replayed.samples < live.samples);
+    }
+
+    @Test
+    public void stopsAtACorruptedChunk() throws Exception {
+        File file = folder.newFile("session.hrv");
+        CollectingListener live = record(file, 2);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long position = file.length() - 100;
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0x55);
+        }
+
+        CollectingListener replayed = new CollectingListener();
+        try (SessionReader reader = new SessionReader(file)) {
+            reader.replay(replayed);
+            assertTrue(reader.isCorrupted());
+        }
+        assertTrue(replayed.samples > 0);
+        assertTrue(replayed.samples < live.samples);
+    }
+}
@@ -0,0 +1,425 @@
+package com.example.hrvapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class SimulatedHrvPeripheralTest {
+    private static class RecordingListener implements BLEControllerListener, HrvDataListener {
+        String foundAddress;
+        int connected = 0;
+        int disconnected = 0;
+        int scanTimeouts = 0;
+        long samples = 0;
+        int rrIntervals = 0;
+        int bpms = 0;
+        long nextTimestamp = -1;
+        int timestampGaps = 0;
+        int ecgGaps = 0;
+        int rrGaps = 0;
+
+        @Override
+        public void BLEControllerConnected() {
+            connected++;
+        }
+
+        @Override
+        public void BLEControllerDisconnected() {
+            disconnected++;
+        }
+
+        @Override
+        public void BLEDeviceFound(String name, String address) {
+            foundAddress = address;
+        }
+
+        @Override
+        public void BLEScanTimedOut() {
+            scanTimeouts++;
+        }
+
+        @Override
+        public void BLEDataReceived(byte[] data) {
+        }
+
+        @Override
+        public void BLEHRVParametersReceived(double data) {
+        }
+
+        @Override
+        public void onEcgSamples(int[] samples, int offset, int length, long timestamp) {
+            // At most 4 ms per sample, bursts only make frames shorter
+            if (nextTimestamp >= 0 && timestamp > nextTimestamp) {
+                timestampGaps++;
+            }
+            nextTimestamp = timestamp + 4L * length;
+            this.samples += length;
+        }
+
+        @Override
+        public void onGap(HrvStream stream, long timestamp, long durationMs) {
+            if (stream == HrvStream.ECG) {
+                ecgGaps++;
+            } else {
+                rrGaps++;
+            }
+        }
+
+        @Override
+        public void onRrInterval(int rr, long timestamp) {
+            rrIntervals++;
+        }
+
+        @Override
+        public void onBpm(int bpm) {
+            bpms++;
+        }
+    }
+
+    private static class LegacyListener implements BLEControllerListener {
+        int samples = 0;
+        int rrIntervals = 0;
+
+        @Override
+        public void BLEControllerConnected() {
+        }
+
+        @Override
+        public void BLEControllerDisconnected() {
+        }
+
+        @Override
+        public void BLEDeviceFound(String name, String address) {
+        }
+
+        @Override
+        public void BLEDataReceived(byte[] data) {
+        }
+
+        @Override
+        public void BLEHRVParametersReceived(double data) {
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void BLELiveDataReceived(int data, String characteristic) {
+            if ("SIG".equals(characteristic)) samples++;
+            if ("RR".equals(characteristic)) rrIntervals++;
+        }
+    }
+
+    private SimulatedHrvPeripheral peripheral;
+    private HrvConnection connection;
+    private RecordingListener listener;
+
+    @After
+    public void tearDown() {
+        connection.close();
+    }
+
+    private void advance(long millis) throws InterruptedException {
+        peripheral.advance(millis);
+        assertTrue(connection.getDispatcher().awaitIdle(1000));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        peripheral = new SimulatedHrvPeripheral(3);
+        connection = new HrvConnection(peripheral, new LiveDataDispatcher(1024, LiveDataDispatcher.Backpressure.BLOCK));
+        listener = new RecordingListener();
+        connection.addBLEControllerListener(listener);
+        connection.addHrvDataListener(listener);
+
+        connection.startScan();
+        advance(1);
+        assertEquals(SimulatedHrvPeripheral.ADDRESS, listener.foundAddress);
+
+        connection.connect(listener.foundAddress);
+        advance(1);
+        assertEquals(1, listener.connected);
+        assertTrue(connection.getConnectTimeMillis() >= 0);
+        assertEquals(1, connection.getMetrics().latency("link.connect").getCount());
+    }
+
+    @Test
+    public void streamsAtTheConfiguredRate() throws Exception {
+        peripheral.setMtu(247);
+        connection.sendCommand(COMMANDS.START);
+        advance(60 * 1000);
+
+        int perFrame = LiveSignalFrameDecoder.maxSamplesForMtu(247);
+        assertEquals(60 * 250, listener.samples, perFrame);
+        assertEquals(0, listener.timestampGaps);
+        // 70 BPM on average
+        assertEquals(70, listener.rrIntervals, 5);
+        assertEquals(listener.rrIntervals, listener.bpms);
+    }
+
+    @Test
+    public void filtersRrIntervalsBeforeTheListeners() throws Exception {
+        RrArtifactFilter filter = new RrArtifactFilter();
+        connection.setRrFilter(filter);
+        connection.sendCommand(COMMANDS.START);
+        advance(60 * 1000);
+
+        assertTrue(filter.getAcceptedCount() > 0);
+        assertEquals(filter.getAcceptedCount(), listener.rrIntervals);
+        assertEquals(listener.bpms, filter.getAcceptedCount() + filter.getArtifactCount() + filter.getOutOfBoundsCount());
+    }
+
+    @Test
+    public void resetsTheRrFilterForANewMeasurement() throws Exception {
+        final int[] resets = {0};
+        connection.setRrFilter(new RrFilter() {
+            @Override
+            public int filter(int rr, long timestamp) {
+                return rr;
+            }
+
+            @Override
+            public void reset() {
+                resets[0]++;
+            }
+        });
+        connection.sendCommand(COMMANDS.START);
+        advance(10 * 1000);
+        assertEquals(0, resets[0]);
+
+        connection.sendCommand(COMMANDS.RESET);
+        connection.sendCommand(COMMANDS.START);
+        // Reset along with the next interval, on the thread filtering them
+        assertEquals(0, resets[0]);
+        advance(10 * 1000);
+        assertEquals(1, resets[0]);
+    }
+
+    @Test
+    public void legacyPerSampleNotifications() throws Exception {
+        peripheral.setPackedFrames(false);
+        peripheral.setSampleRate(1000);
+        connection.sendCommand(COMMANDS.START);
+        advance(10 * 1000);
+
+        assertEquals(10 * 1000, listener.samples, 1);
+    }
+
+    @Test
+    public void answersDumpCommands() throws Exception {
+        connection.sendCommand(COMMANDS.START);
+        advance(10 * 60 * 1000);
+        connection.sendCommand(COMMANDS.PAUSE);
+        CompletableFuture<Double> rmssd = connection.requestParameter(COMMANDS.DUMP_RMSSD);
+        CompletableFuture<Double> hti = connection.requestParameter(COMMANDS.DUMP_HTI);
+        for (int i = 0; i < 10 && !hti.isDone(); ++i) {
+            advance(1);
+        }
+
+        assertEquals(peripheral.getStatistics().getRmssd(), rmssd.get(), 0);
+        assertEquals(peripheral.getStatistics().getHti(), hti.get(), 0);
+        assertTrue(rmssd.get() > 0);
+    }
+
+    @Test
+    public void transfersTheDeviceHistograms() throws Exception {
+        peripheral.setMaxMtu(247);
+        connection.disconnect();
+        advance(1);
+        connection.connect(SimulatedHrvPeripheral.ADDRESS);
+        advance(1);
+        // Disconnected for a while, the device keeps counting
+        peripheral.setReconnects(60 * 1000, 30 * 1000);
+        connection.sendCommand(COMMANDS.START);
+        for (int i = 0; i < 1000; ++i) {
+            advance(100);
+        }
+        connection.sendCommand(COMMANDS.PAUSE);
+        advance(1);
+        HrvMetrics.Counter responses = connection.getMetrics().counter("notify.response");
+        long before = responses.get();
+        CompletableFuture<int[]> rr = connection.requestHistogram(COMMANDS.DUMP_RR_HISTOGRAM);
+        CompletableFuture<int[]> bpm = connection.requestHistogram(COMMANDS.DUMP_BPM_HISTOGRAM);
+        for (int i = 0; i < 10 && !bpm.isDone(); ++i) {
+            advance(1);
+        }
+
+        assertArrayEquals(peripheral.getRrHistogram(), rr.get());
+        assertArrayEquals(peripheral.getBpmHistogram(), bpm.get());
+        int beats = 0;
+        for (int count : rr.get()) {
+            beats += count;
+        }
+        assertEquals(peripheral.getStatistics().getBeatCount(), beats);
+        // A few notifications for 1501 and 221 bins
+        assertTrue(responses.get() - before <= 6);
+    }
+
+    @Test
+    public void retriesAHistogramTransferMissingAChunk() throws Exception {
+        connection.sendCommand(COMMANDS.START);
+        advance(10 * 60 * 1000);
+        connection.sendCommand(COMMANDS.PAUSE);
+        advance(1);
+        peripheral.dropResponses(1);
+        CompletableFuture<int[]> rr = connection.requestHistogram(COMMANDS.DUMP_RR_HISTOGRAM);
+        for (int i = 0; i < 10 && !rr.isDone(); ++i) {
+            advance(1);
+        }
+
+        // The first transfer fails its integrity check, the second one is complete
+        assertArrayEquals(peripheral.getRrHistogram(), rr.get());
+        assertEquals(1, connection.getMetrics().counter("histogram.corrupted").get());
+    }
+
+    @Test
+    public void dropoutsAndReconnects() throws Exception {
+        // Frames missed while disconnected stay lost without backfill
+        peripheral.setBackfill(false);
+        peripheral.setDropout(0.05);
+        peripheral.setReconnects(10 * 1000, 500);
+        peripheral.setBursts(1000, 5000, 1000);
+        connection.sendCommand(COMMANDS.START);
+        // In steps, so the subscriptions are renewed soon after each reconnect
+        for (int i = 0; i < 600; ++i) {
+            advance(100);
+        }
+
+        assertEquals(5, listener.disconnected, 1);
+        assertEquals(listener.disconnected + 1, listener.connected);
+        assertTrue(listener.samples > 0);
+        // Lost frames are reported, the dropouts and the link downtime
+        SequenceGapDetector signal = connection.getSignalSequence();
+        assertEquals(signal.getGapCount(), listener.ecgGaps);
+        assertEquals(0.05 + 0.05, signal.getLossRate(), 0.02);
+        assertEquals(connection.getRrSequence().getGapCount(), listener.rrGaps);
+        assertTrue(listener.rrGaps > 0);
+    }
+
+    @Test
+    public void backfillsAfterReconnects() throws Exception {
+        peripheral.setReconnects(10 * 1000, 2000);
+        connection.sendCommand(COMMANDS.START);
+        for (int i = 0; i < 600; ++i) {
+            advance(100);
+        }
+
+        assertEquals(5, listener.disconnected, 1);
+        // Everything produced while disconnected was recovered, in order
+        assertEquals(0, connection.getSignalSequence().getLostCount());
+        assertEquals(0, connection.getRrSequence().getLostCount());
+        assertEquals(0, listener.ecgGaps + listener.rrGaps + listener.timestampGaps);
+        assertEquals(connection.getSignalSequence().getReceivedCount()
+                * LiveSignalFrameDecoder.maxSamplesForMtu(LiveSignalFrameDecoder.DEFAULT_MTU), listener.samples);
+        assertEquals(70, listener.rrIntervals, 5);
+        assertTrue(connection.getSignalBackfill().getRecoveredCount() > 0);
+        assertEquals(connection.getRrBackfill().getRequestedCount(), connection.getRrBackfill().getRecoveredCount());
+        assertFalse(connection.getRrBackfill().isBackfilling());
+    }
+
+    @Test
+    public void backfillsWhatThePeripheralKept() throws Exception {
+        peripheral.setReconnects(5 * 1000, 50 * 1000);
+        connection.sendCommand(COMMANDS.START);
+        for (int i = 0; i < 580; ++i) {
+            advance(100);
+        }
+
+        // The ring holds about 25 s of signal at this frame size, the rest of the downtime is a gap
+        StreamBackfill backfill = connection.getSignalBackfill();
+        assertEquals(1, listener.disconnected);
+        assertEquals(1, listener.ecgGaps);
+        assertEquals(SimulatedHrvPeripheral.SIGNAL_RING_FRAMES, backfill.getRecoveredCount(), 8);
+        assertEquals(backfill.getRequestedCount() - backfill.getRecoveredCount(), connection.getSignalSequence().getLostCount());
+        // The RR intervals of 50 s fit, none is lost
+        assertEquals(0, connection.getRrSequence().getLostCount());
+        assertEquals(0, listener.rrGaps);
+    }
+
+    @Test
+    public void interpolatesLostFrames() throws Exception {
+        peripheral.setDropout(0.05);
+        connection.sendCommand(COMMANDS.START);
+        advance(60 * 1000);
+
+        // The signal keeps its timing and length despite the lost frames
+        int perFrame = LiveSignalFrameDecoder.maxSamplesForMtu(LiveSignalFrameDecoder.DEFAULT_MTU);
+        assertEquals(0, listener.timestampGaps);
+        assertEquals(60 * 250, listener.samples, perFrame);
+        assertTrue(listener.ecgGaps > 0);
+        assertEquals(connection.getSignalSequence().getLostCount() * perFrame,
+                connection.getMetrics().counter("signal.interpolated").get());
+    }
+
+    @Test
+    public void deliversOnlySubscribedStreams() throws Exception {
+        RecordingListener rrOnly = new RecordingListener();
+        connection.addHrvDataListener(rrOnly, HrvStream.RR);
+        LegacyListener legacy = new LegacyListener();
+        connection.addHrvDataListener(new LegacyLiveDataAdapter(legacy), HrvStream.ECG, HrvStream.RR);
+
+        connection.sendCommand(COMMANDS.START);
+        advance(10 * 1000);
+
+        assertEquals(0, rrOnly.samples);
+        assertEquals(0, rrOnly.bpms);
+        assertEquals(listener.rrIntervals, rrOnly.rrIntervals);
+        assertEquals(listener.samples, legacy.samples);
+        assertEquals(listener.rrIntervals, legacy.rrIntervals);
+        assertTrue(rrOnly.rrIntervals > 0);
+    }
+
+    @Test
+    public void reportsTheDisconnectStatus() throws Exception {
+        peripheral.setReconnects(1000, 500);
+        advance(1200);
+        assertEquals(1, listener.disconnected);
+        // GATT_CONN_TIMEOUT
+        assertEquals(8, connection.getLastDisconnectStatus());
+
+        advance(500);
+        connection.disconnect();
+        advance(1);
+        assertEquals(2, listener.disconnected);
+        assertEquals(0, connection.getLastDisconnectStatus());
+    }
+
+    @Test
+    public void connectsToAKnownDeviceWithoutScanning() throws Exception {
+        SimulatedHrvPeripheral known = new SimulatedHrvPeripheral(3);
+        HrvConnection direct = new HrvConnection(known);
+        RecordingListener directListener = new RecordingListener();
+        direct.addBLEControllerListener(directListener);
+        try {
+            direct.connect(connection.getDeviceAddress());
+            known.advance(1);
+
+            assertEquals(1, directListener.connected);
+            assertNull(directListener.foundAddress);
+            assertEquals(SimulatedHrvPeripheral.ADDRESS, direct.getDeviceAddress());
+            assertTrue(direct.getConnectTimeMillis() >= 0);
+        } finally {
+            direct.close();
+        }
+    }
+
+    @Test
+    public void reportsAScanFindingNothing() throws Exception {
+        connection.disconnect();
+        advance(1);
+        peripheral.setAdvertising(false);
+        listener.foundAddress = null;
+
+        connection.startScan();
+        advance(1);
+        assertNull(listener.foundAddress);
+        assertEquals(1, listener.scanTimeouts);
+
+        // Not advertising, the device can't be connected to either
+        connection.connect(SimulatedHrvPeripheral.ADDRESS);
+        advance(1);
+        assertEquals(1, listener.connected);
+    }
+}
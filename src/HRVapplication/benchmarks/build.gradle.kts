@@ -0,0 +1,35 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+// Benchmark the plain Java part of the app on the host JVM. Classes which
+// depend on the Android SDK are left out and must be listed here.
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            exclude(
+                "**/MainActivity.java",
+                "**/BLEController.java",
+                "**/AndroidGattTransport.java",
+                "**/LiveSignalChart.java",
+                "**/LiveHistogramChart.java"
+            )
+        }
+    }
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+}
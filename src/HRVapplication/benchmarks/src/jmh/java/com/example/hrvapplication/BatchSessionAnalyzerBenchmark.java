@@ -0,0 +1,85 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Segments analyzed per second in a synthetic 24 h recording, by number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchSessionAnalyzerBenchmark {
+    private static final long DURATION_MS = 24 * 60 * 60 * 1000L;
+    private static final int SEGMENTS_24H = 288;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private File file;
+    private int[] rrIntervals;
+    private ForkJoinPool pool;
+    private BatchSessionAnalyzer analyzer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(1);
+        file = File.createTempFile("session", ".hrv");
+        SessionRecorder recorder = new SessionRecorder(file, 0, SessionRecorder.DEFAULT_CHUNK_SIZE, Long.MAX_VALUE, Long.MAX_VALUE);
+        int[] frame = new int[LiveSignalFrameDecoder.maxSamplesForMtu(247)];
+        long frameMs = 4L * frame.length;
+        long nextBeat = 0;
+        for (long t = 0; t < DURATION_MS; t += frameMs) {
+            for (int i = 0; i < frame.length; ++i) {
+                frame[i] = 512 + random.nextInt(64);
+            }
+            recorder.onEcgSamples(frame, 0, frame.length, t);
+            while (nextBeat < t + frameMs) {
+                int rr = 700 + random.nextInt(200);
+                recorder.onRrInterval(rr, nextBeat);
+                nextBeat += rr;
+            }
+        }
+        recorder.close();
+
+        pool = new ForkJoinPool(threads);
+        analyzer = new BatchSessionAnalyzer(pool);
+        BatchSessionAnalyzer.RrIntervals intervals = analyzer.load(file);
+        rrIntervals = Arrays.copyOf(intervals.values, intervals.count);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+        file.delete();
+        SessionIndex.fileFor(file).delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SEGMENTS_24H)
+    public double analyzeFile() throws IOException {
+        return analyzer.analyze(file).getSdann();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SEGMENTS_24H)
+    public double analyzeIntervals() {
+        return analyzer.analyze(rrIntervals, rrIntervals.length).getSdann();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.hrvapplication;
+
+import java.util.UUID;
+
+/**
+ * No-op transport for benchmarking the protocol layer in isolation.
+ */
+final class BenchmarkTransports {
+    private BenchmarkTransports() {
+    }
+
+    static class NullTransport implements HrvTransport {
+        @Override
+        public void setListener(Listener listener) {
+        }
+
+        @Override
+        public void startScan() {
+        }
+
+        @Override
+        public void stopScan() {
+        }
+
+        @Override
+        public void connect(String address) {
+        }
+
+        @Override
+        public void subscribe(UUID characteristic) {
+        }
+
+        @Override
+        public boolean writeCommand(byte[] payload) {
+            return true;
+        }
+
+        @Override
+        public boolean requestMtu(int mtu) {
+            return false;
+        }
+
+        @Override
+        public void requestConnectionPriority(LinkParameters.Priority priority) {
+        }
+
+        @Override
+        public void setPreferredPhy(int phy) {
+        }
+
+        @Override
+        public LinkParameters getLinkParameters() {
+            return LinkParameters.DEFAULT;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per sample of getting live signal samples into the chart window.
+ *
+ * One invocation is a display frame at 250Hz and 60fps, i.e. a few frames of
+ * samples written by the BLE thread and drained once by the UI thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChartBufferBenchmark {
+    private static final int WINDOW_SIZE = 1000;
+    private static final int SAMPLES_PER_FRAME = 6;
+    private static final int FRAMES_PER_DISPLAY_FRAME = 4;
+    private static final int SAMPLES = SAMPLES_PER_FRAME * FRAMES_PER_DISPLAY_FRAME;
+
+    private final SampleRingBuffer ring = new SampleRingBuffer(4096);
+    private final SampleWindow window = new SampleWindow(WINDOW_SIZE);
+    private final int[] frame = new int[SAMPLES_PER_FRAME];
+    private final int[] drainBuffer = new int[4096];
+    private final ArrayList<float[]> legacyWindow = new ArrayList<>(WINDOW_SIZE);
+    private int value = 0;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < WINDOW_SIZE; ++i) {
+            legacyWindow.add(new float[]{i, 0});
+        }
+        int[] fill = new int[WINDOW_SIZE];
+        window.append(fill, 0, fill.length);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long ringBufferIngest() {
+        for (int f = 0; f < FRAMES_PER_DISPLAY_FRAME; ++f) {
+            for (int i = 0; i < SAMPLES_PER_FRAME; ++i) {
+                frame[i] = value++ & 1023;
+            }
+            ring.offer(frame, 0, SAMPLES_PER_FRAME);
+        }
+
+        int n = ring.drain(drainBuffer, 0, drainBuffer.length);
+        window.append(drainBuffer, 0, n);
+        return window.getTotalCount();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int legacyListIngest() {
+        // An (x, y) allocation and a remove(0) shift per sample, like the old updateGraph
+        for (int i = 0; i < SAMPLES; ++i) {
+            legacyWindow.remove(0);
+            legacyWindow.add(new float[]{value, value++ & 1023});
+        }
+        return legacyWindow.size();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LF/HF over a synthetic 24 h RR series: the whole day has to take a tiny
+ * fraction of 24 h to keep up with a live recording on a slow phone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FrequencyDomainHrvBenchmark {
+    private final FrequencyDomainHrv hrv = new FrequencyDomainHrv();
+    private int[] rrIntervals;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        int[] rr = new int[120000];
+        double time = 0;
+        int beats = 0;
+        while (time < 24 * 60 * 60) {
+            double value = 800 + 40 * Math.sin(2 * Math.PI * 0.1 * time)
+                    + 20 * Math.sin(2 * Math.PI * 0.25 * time) + random.nextGaussian() * 10;
+            rr[beats++] = (int) value;
+            time += value / 1000;
+        }
+        rrIntervals = new int[beats];
+        System.arraycopy(rr, 0, rrIntervals, 0, beats);
+        wholeDay();
+    }
+
+    @Benchmark
+    public double wholeDay() {
+        hrv.reset();
+        for (int rr : rrIntervals) {
+            hrv.addRrInterval(rr);
+        }
+        return hrv.getLfHfRatio();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void addRrInterval() {
+        hrv.addRrInterval(rrIntervals[next]);
+        next = next + 1 == rrIntervals.length ? 0 : next + 1;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double readLfHf() {
+        return hrv.getLfHfRatio();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the instrumentation added per notification: a counter increment,
+ * a clock read and a histogram record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HrvMetricsBenchmark {
+    private final HrvMetrics metrics = new HrvMetrics();
+    private final HrvMetrics.Counter counter = metrics.counter("notify.signal");
+    private final HrvMetrics.Latency latency = metrics.latency("decode.signal");
+    private long value = 0;
+
+    @Benchmark
+    public void increment() {
+        counter.increment();
+    }
+
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Benchmark
+    public void record() {
+        value = (value * 31 + 17) & 0xFFFFF;
+        latency.record(value);
+    }
+
+    @Benchmark
+    public void notification() {
+        long start = System.nanoTime();
+        counter.increment();
+        latency.record(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per beat cost of the histograms and HRV statistics fed by the RR and BPM streams.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HrvStatisticsBenchmark {
+    private static final int SERIES_SIZE = 1 << 16;
+
+    private final int[] rrSeries = new int[SERIES_SIZE];
+    private final int[] rrIntervalsHistogram = new int[1200];
+    private final int[] bpmHistogram = new int[221];
+    private final HrvStatistics statistics = new HrvStatistics();
+    private int index = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        for (int i = 0; i < SERIES_SIZE; ++i) {
+            rrSeries[i] = (int) (800 + 100 * Math.sin(i / 500.0) + random.nextGaussian() * 30);
+        }
+        for (int i = 0; i < SERIES_SIZE; ++i) {
+            statistics.addRrInterval(rrSeries[i]);
+        }
+    }
+
+    @Benchmark
+    public void updateHistograms() {
+        int rr = rrSeries[index++ & (SERIES_SIZE - 1)];
+        if (rr < rrIntervalsHistogram.length) {
+            rrIntervalsHistogram[rr]++;
+        }
+        int bpm = 60000 / rr;
+        if (bpm < bpmHistogram.length) {
+            bpmHistogram[bpm]++;
+        }
+    }
+
+    @Benchmark
+    public void addRrInterval() {
+        statistics.addRrInterval(rrSeries[index++ & (SERIES_SIZE - 1)]);
+    }
+
+    @Benchmark
+    public double readStatistics() {
+        return statistics.getRmssd() + statistics.getSdann() + statistics.getHti();
+    }
+}
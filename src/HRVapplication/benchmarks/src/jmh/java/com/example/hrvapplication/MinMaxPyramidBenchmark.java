@@ -0,0 +1,62 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest cost per packed frame and query cost of a full width chart over a 24 h recording.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MinMaxPyramidBenchmark {
+    private static final long SAMPLES_24H = 24L * 60 * 60 * 250;
+
+    @Param({"1080", "2400"})
+    public int pixels;
+
+    private MinMaxPyramid pyramid;
+    private final MinMaxPyramid.Range range = new MinMaxPyramid.Range(4096);
+    private final int[] frame = new int[LiveSignalFrameDecoder.maxSamplesForMtu(247)];
+    private final Random random = new Random(1);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < frame.length; ++i) {
+            frame[i] = 512 + random.nextInt(64);
+        }
+        pyramid = new MinMaxPyramid(1 << 14, 21);
+        for (long n = 0; n < SAMPLES_24H; n += frame.length) {
+            pyramid.append(frame, 0, frame.length);
+        }
+    }
+
+    @Benchmark
+    public long appendFrame() {
+        pyramid.append(frame, 0, frame.length);
+        return pyramid.getSampleCount();
+    }
+
+    @Benchmark
+    public int queryWholeRecording() {
+        pyramid.query(0, pyramid.getSampleCount(), pixels, range);
+        return range.count;
+    }
+
+    @Benchmark
+    public int queryRandomMinute() {
+        long from = (long) (random.nextDouble() * (pyramid.getSampleCount() - 15000));
+        pyramid.query(from, from + 15000, pixels, range);
+        return range.count;
+    }
+}
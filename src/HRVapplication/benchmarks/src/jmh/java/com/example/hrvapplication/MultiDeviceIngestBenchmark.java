@@ -0,0 +1,96 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One simulated second of the high rate stream from N devices at once, each
+ * peripheral driven by a thread of its own like the radio would. As long as
+ * there are cores for the devices, the time stays flat: ingest scales linearly
+ * up to the 7 links of the radio.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MultiDeviceIngestBenchmark {
+    @Param({"1", "2", "4", "7"})
+    public int devices;
+
+    private final Map<String, SimulatedHrvPeripheral> peripherals = new HashMap<>();
+    private HrvDeviceManager manager;
+    private ExecutorService radio;
+    private List<Callable<Long>> streamOneSecond;
+
+    @Setup
+    public void setUp() throws Exception {
+        for (int i = 0; i < devices; ++i) {
+            SimulatedHrvPeripheral peripheral = new SimulatedHrvPeripheral(i, "00:00:5E:00:53:0" + i);
+            peripheral.setSampleRate(1000);
+            peripheral.setMtu(247);
+            peripherals.put("00:00:5E:00:53:0" + i, peripheral);
+        }
+        manager = new HrvDeviceManager(new HrvDeviceManager.ConnectionFactory() {
+            @Override
+            public HrvConnection create(String address) {
+                return new HrvConnection(peripherals.get(address), new LiveDataDispatcher(1024, LiveDataDispatcher.Backpressure.BLOCK));
+            }
+        }, devices);
+
+        streamOneSecond = new ArrayList<>();
+        for (final String address : peripherals.keySet()) {
+            final HrvSession session = manager.connect(address);
+            streamOneSecond.add(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    peripherals.get(address).advance(1000);
+                    session.getConnection().getDispatcher().awaitIdle(1000);
+                    return session.getConnection().getReceivedBytes();
+                }
+            });
+        }
+        // The connection attempts are made one after the other
+        for (int i = 0; i < devices; ++i) {
+            for (HrvSession session : manager.getSessions()) {
+                peripherals.get(session.getAddress()).advance(1);
+                session.getConnection().getDispatcher().awaitIdle(1000);
+            }
+        }
+        manager.sendCommand(COMMANDS.START);
+        for (HrvSession session : manager.getSessions()) {
+            peripherals.get(session.getAddress()).advance(1);
+        }
+        radio = Executors.newFixedThreadPool(devices);
+    }
+
+    @TearDown
+    public void tearDown() {
+        radio.shutdown();
+        manager.close();
+    }
+
+    @Benchmark
+    public long streamOneSecond() throws Exception {
+        long bytes = 0;
+        for (Future<Long> device : radio.invokeAll(streamOneSecond)) {
+            bytes += device.get();
+        }
+        return bytes;
+    }
+}
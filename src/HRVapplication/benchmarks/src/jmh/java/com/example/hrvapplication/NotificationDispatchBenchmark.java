@@ -0,0 +1,131 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per notification cost of routing, decoding and fanning out the live streams.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NotificationDispatchBenchmark {
+    @Param({"1", "4"})
+    public int listenerCount;
+
+    private HrvConnection connection;
+    private SumListener[] listeners;
+    private final LiveSignalFrameDecoder decoder = new LiveSignalFrameDecoder(247);
+
+    // Android hands out its own UUID instances, so don't rely on identity with HrvProfile
+    private final UUID rrUuid = UUID.fromString(HrvProfile.LIVE_RR.toString());
+    private final UUID signalUuid = UUID.fromString(HrvProfile.LIVE_SIGNAL.toString());
+    private final UUID unknownUuid = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+    private final byte[] rrPayload = {(byte) 0x20, (byte) 0x03, 0, 0};
+    private byte[] framePayload;
+
+    @Setup
+    public void setUp() {
+        connection = new HrvConnection(new BenchmarkTransports.NullTransport());
+        listeners = new SumListener[listenerCount];
+        for (int i = 0; i < listenerCount; ++i) {
+            listeners[i] = new SumListener();
+            connection.addHrvDataListener(listeners[i]);
+        }
+
+        int samples = LiveSignalFrameDecoder.maxSamplesForMtu(247);
+        framePayload = new byte[LiveSignalFrameDecoder.HEADER_SIZE + 2 * samples];
+        framePayload[6] = 4;
+        framePayload[7] = (byte) samples;
+        for (int i = 0; i < samples; ++i) {
+            framePayload[8 + 2 * i] = (byte) i;
+            framePayload[9 + 2 * i] = 2;
+        }
+    }
+
+    @Benchmark
+    public long dispatchRrInterval() {
+        connection.onNotification(rrUuid, rrPayload);
+        return listeners[0].sum;
+    }
+
+    @Benchmark
+    public long dispatchSignalFrame() {
+        connection.onNotification(signalUuid, framePayload);
+        return listeners[0].sum;
+    }
+
+    @Benchmark
+    public int routeByUuidString() {
+        // How BLEController used to route every notification
+        String uuid = rrUuid.toString();
+        if (uuid.equalsIgnoreCase("5f0b1b60-2177-11ef-971d-646ee0fcbb46")) return 0;
+        if (uuid.equalsIgnoreCase("45ed7702-21d5-11ef-8771-646ee0fcbb46")) return 1;
+        if (uuid.equalsIgnoreCase("f0a7ba94-2426-11ef-bb71-646ee0fcbb46")) return 2;
+        if (uuid.equalsIgnoreCase("f187ef45-2426-11ef-bb71-646ee0fcbb46")) return 3;
+        return -1;
+    }
+
+    @Benchmark
+    public int routeByUuid() {
+        if (HrvProfile.RESPONSE.equals(rrUuid)) return 0;
+        if (HrvProfile.BPM.equals(rrUuid)) return 1;
+        if (HrvProfile.LIVE_SIGNAL.equals(rrUuid)) return 2;
+        if (HrvProfile.LIVE_RR.equals(rrUuid)) return 3;
+        return -1;
+    }
+
+    @Benchmark
+    public long dispatchUnknownCharacteristic() {
+        connection.onNotification(unknownUuid, rrPayload);
+        return listeners[0].sum;
+    }
+
+    @Benchmark
+    public int decodeIntByteBuffer() {
+        return ByteBuffer.wrap(rrPayload).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+
+    @Benchmark
+    public int decodeIntManual() {
+        return LiveSignalFrameDecoder.decodeLegacy(rrPayload);
+    }
+
+    @Benchmark
+    public int decodeSignalFrame() {
+        decoder.decode(framePayload);
+        return decoder.getLength();
+    }
+
+    static class SumListener implements HrvDataListener {
+        long sum;
+
+        @Override
+        public void onEcgSamples(int[] samples, int offset, int length, long timestamp) {
+            for (int i = offset; i < offset + length; ++i) {
+                sum += samples[i];
+            }
+        }
+
+        @Override
+        public void onRrInterval(int rr, long timestamp) {
+            sum += rr;
+        }
+
+        @Override
+        public void onBpm(int bpm) {
+            sum += bpm;
+        }
+    }
+}
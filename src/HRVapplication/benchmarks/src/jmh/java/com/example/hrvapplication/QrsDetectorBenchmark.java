@@ -0,0 +1,57 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per sample of the R peak detection, 4 ms of signal in real time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QrsDetectorBenchmark {
+    // A minute of signal
+    private static final int SAMPLES = 60 * 250;
+
+    private final int[] signal = new int[SAMPLES];
+    private final NotificationDispatchBenchmark.SumListener listener = new NotificationDispatchBenchmark.SumListener();
+    private final QrsDetector detector = new QrsDetector(250, listener);
+    private final int frame = LiveSignalFrameDecoder.maxSamplesForMtu(247);
+    private long timestamp = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        double nextBeat = 500;
+        double lastBeat = -1000;
+        for (int n = 0; n < SAMPLES; ++n) {
+            double t = 4.0 * n;
+            if (t >= nextBeat) {
+                lastBeat = nextBeat;
+                nextBeat += 700 + random.nextInt(300);
+            }
+            double d = Math.min(t - lastBeat, nextBeat - t);
+            signal[n] = (int) (512 + 400 * Math.exp(-d * d / 200) + random.nextGaussian() * 4);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long detectMinute() {
+        for (int off = 0; off < SAMPLES; off += frame) {
+            detector.onEcgSamples(signal, off, Math.min(frame, SAMPLES - off), timestamp);
+            timestamp += 4L * frame;
+        }
+        return detector.getBeatCount();
+    }
+}
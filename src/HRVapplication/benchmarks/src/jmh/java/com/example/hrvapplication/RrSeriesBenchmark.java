@@ -0,0 +1,90 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A day of RR intervals in a {@link RrSeries} against boxed lists: filling it
+ * and a pass over all beats as done by the analysis.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RrSeriesBenchmark {
+    private static final int BEATS_24H = 100000;
+
+    private final RrSeries series = new RrSeries();
+    private final ArrayList<Integer> rrList = new ArrayList<>();
+    private final ArrayList<Long> timeList = new ArrayList<>();
+
+    private final long[] sum = new long[1];
+    private final RrSeries.ChunkVisitor summer = new RrSeries.ChunkVisitor() {
+        @Override
+        public void visit(short[] rr, int[] offsets, int length, long baseTimestamp) {
+            long s = 0;
+            for (int i = 0; i < length; ++i) {
+                s += rr[i] & 0xFFFF;
+            }
+            sum[0] += s;
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fillSeries();
+        fillList();
+    }
+
+    private static int rr(int i) {
+        return 700 + (i * 37) % 400;
+    }
+
+    @Benchmark
+    public int fillSeries() {
+        series.clear();
+        long time = 0;
+        for (int i = 0; i < BEATS_24H; ++i) {
+            time += rr(i);
+            series.append(rr(i), time);
+        }
+        return series.size();
+    }
+
+    @Benchmark
+    public int fillList() {
+        rrList.clear();
+        timeList.clear();
+        long time = 0;
+        for (int i = 0; i < BEATS_24H; ++i) {
+            time += rr(i);
+            rrList.add(rr(i));
+            timeList.add(time);
+        }
+        return rrList.size();
+    }
+
+    @Benchmark
+    public long sumSeries() {
+        sum[0] = 0;
+        series.forEachChunk(summer);
+        return sum[0];
+    }
+
+    @Benchmark
+    public long sumList() {
+        long s = 0;
+        for (int i = 0; i < rrList.size(); ++i) {
+            s += rrList.get(i);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a synthetic 24 h recording at a random time and decoding the chunk found there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SessionIndexBenchmark {
+    private static final long DURATION_MS = 24 * 60 * 60 * 1000L;
+
+    private File file;
+    private final Random random = new Random(1);
+    private final NotificationDispatchBenchmark.SumListener listener = new NotificationDispatchBenchmark.SumListener();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("session", ".hrv");
+        SessionRecorder recorder = new SessionRecorder(file, 0, SessionRecorder.DEFAULT_CHUNK_SIZE, Long.MAX_VALUE, Long.MAX_VALUE);
+        int[] frame = new int[LiveSignalFrameDecoder.maxSamplesForMtu(247)];
+        long frameMs = 4L * frame.length;
+        for (long t = 0; t < DURATION_MS; t += frameMs) {
+            for (int i = 0; i < frame.length; ++i) {
+                frame[i] = 512 + random.nextInt(64);
+            }
+            recorder.onEcgSamples(frame, 0, frame.length, t);
+            if (t % 800 < frameMs) {
+                recorder.onRrInterval(800, t);
+            }
+        }
+        recorder.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+        SessionIndex.fileFor(file).delete();
+    }
+
+    @Benchmark
+    public int openIndexAndFind() throws IOException {
+        SessionIndex index = SessionIndex.open(file);
+        return index.find((long) (random.nextDouble() * DURATION_MS));
+    }
+
+    @Benchmark
+    public long openAndReplayChunk() throws IOException {
+        SessionIndex index = SessionIndex.open(file);
+        int entry = index.find((long) (random.nextDouble() * DURATION_MS));
+        try (SessionReader reader = new SessionReader(file)) {
+            reader.replay(listener, index.getOffset(entry), 1);
+        }
+        return listener.sum;
+    }
+}
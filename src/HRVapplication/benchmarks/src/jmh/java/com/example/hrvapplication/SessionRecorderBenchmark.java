@@ -0,0 +1,52 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of appending one packed frame of the live signal to a session file,
+ * chunk writes and syncs amortized over the frames.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SessionRecorderBenchmark {
+    private File file;
+    private SessionRecorder recorder;
+    private final int[] frame = new int[LiveSignalFrameDecoder.maxSamplesForMtu(247)];
+    private long timestamp = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(1);
+        for (int i = 0; i < frame.length; ++i) {
+            frame[i] = 512 + random.nextInt(64);
+        }
+        file = File.createTempFile("session", ".hrv");
+        recorder = new SessionRecorder(file, System.currentTimeMillis());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        recorder.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public long recordSignalFrame() {
+        recorder.onEcgSamples(frame, 0, frame.length, timestamp);
+        timestamp += 4 * frame.length;
+        return timestamp;
+    }
+}
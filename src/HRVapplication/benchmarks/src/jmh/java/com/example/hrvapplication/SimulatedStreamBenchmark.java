@@ -0,0 +1,51 @@
+package com.example.hrvapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end cost of one simulated second of the high rate stream: generation,
+ * routing, decoding and fan out. Divide by the sample rate for the per sample cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SimulatedStreamBenchmark {
+    @Param({"false", "true"})
+    public boolean packedFrames;
+
+    private SimulatedHrvPeripheral peripheral;
+    private NotificationDispatchBenchmark.SumListener listener;
+
+    @Setup
+    public void setUp() {
+        peripheral = new SimulatedHrvPeripheral();
+        peripheral.setSampleRate(1000);
+        peripheral.setMtu(247);
+        peripheral.setPackedFrames(packedFrames);
+
+        HrvConnection connection = new HrvConnection(peripheral);
+        listener = new NotificationDispatchBenchmark.SumListener();
+        connection.addHrvDataListener(listener);
+        connection.startScan();
+        peripheral.advance(1);
+        connection.connect(SimulatedHrvPeripheral.ADDRESS);
+        peripheral.advance(1);
+        connection.sendCommand(COMMANDS.START);
+        peripheral.advance(1);
+    }
+
+    @Benchmark
+    public long streamOneSecond() {
+        peripheral.advance(1000);
+        return listener.sum;
+    }
+}
@@ -22,4 +22,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "HRV application"
 include(":app")
+include(":benchmarks")
  
\ No newline at end of file
@@ -6,6 +6,9 @@
 // Undef this to print the live signal to the serial connection
 // #define DEBUG_LIVE_SIGNAL
 
+// Undef this to send a single int notification per live signal sample
+#define PACKED_LIVE_SIGNAL
+
 bool g_loggedNoCentral = false;
 bool g_loggedDisconnectedCentral = false;
 
@@ -150,8 +153,6 @@ double hti = 0.0;
 /////////////////////////////// COMMUNICATION /////////////////////////////////
 ///////////////////////////////////////////////////////////////////////////////
 
-byte prevAction = 0;
-
 // Service
 const char* hrvServiceUUID = "0777dfa9-204b-11ef-8fea-646ee0fcbb46";
 
@@ -168,15 +169,37 @@ const char* hrvBPMCharacteristicUUID = "45ed7702-21d5-11ef-8771-646ee0fcbb46";
 const char* hrvLiveSignalCharacteristicUUID = "f0a7ba94-2426-11ef-bb71-646ee0fcbb46";
 const char* hrvLiveRRCharacteristicUUID = "f187ef45-2426-11ef-bb71-646ee0fcbb46";
 
+#define ATT_HEADER_SIZE (3)
+#define DEFAULT_ATT_MTU (23)
+#define MAX_ATT_MTU (247)
+// Responses hold a double, or as many backfilled frames as fit the MTU
+#define RESPONSE_MAX_SIZE (MAX_ATT_MTU - ATT_HEADER_SIZE)
+
 BLEService hrvService(hrvServiceUUID);
 BLEIntCharacteristic hrvCommandCharacteristic(hrvCommandCharacteristicUUID, BLEWrite);
-BLEDoubleCharacteristic hrvResponseCharacteristic(hrvResponseCharacteristicUUID, BLERead | BLENotify);
+BLECharacteristic hrvResponseCharacteristic(hrvResponseCharacteristicUUID, BLERead | BLENotify, RESPONSE_MAX_SIZE);
 BLEIntCharacteristic hrvBPMCharacteristic(hrvBPMCharacteristicUUID, BLERead | BLENotify);
+#ifdef PACKED_LIVE_SIGNAL
+// Packed frame layout (little endian):
+// [seq u16][timestamp u32][sample period ms u8][sample count u8][samples int16...]
+#define LIVE_SIGNAL_HEADER_SIZE (8)
+// Samples that fit a notification at the given ATT MTU
+#define LIVE_SIGNAL_SAMPLES_FOR_MTU(mtu) (((mtu) - ATT_HEADER_SIZE - LIVE_SIGNAL_HEADER_SIZE) / 2)
+#define LIVE_SIGNAL_MAX_FRAME_SIZE (LIVE_SIGNAL_HEADER_SIZE + 2 * LIVE_SIGNAL_SAMPLES_FOR_MTU(MAX_ATT_MTU))
+#define LIVE_SIGNAL_SAMPLE_PERIOD (4)       // 250Hz
+BLECharacteristic hrvLiveSignalCharacteristic(hrvLiveSignalCharacteristicUUID, BLERead | BLENotify, LIVE_SIGNAL_MAX_FRAME_SIZE);
+#else  // !PACKED_LIVE_SIGNAL
 BLEIntCharacteristic hrvLiveSignalCharacteristic(hrvLiveSignalCharacteristicUUID, BLERead | BLENotify);
-BLEIntCharacteristic hrvLiveRRCharacteristic(hrvLiveRRCharacteristicUUID, BLERead | BLENotify);
+#endif  // PACKED_LIVE_SIGNAL
+// RR frame layout (little endian):
+// [seq u16][rr ms u16][timestamp of the closing beat u32]
+#define LIVE_RR_FRAME_SIZE (8)
+BLECharacteristic hrvLiveRRCharacteristic(hrvLiveRRCharacteristicUUID, BLERead | BLENotify, LIVE_RR_FRAME_SIZE);
 
 bool g_isConnected = false;
 bool g_running = false;
+// ATT MTU the application announced with LINK_MTU
+int g_attMtu = DEFAULT_ATT_MTU;
 
 enum COMMANDS {
     STANDBY = 0,
@@ -186,15 +209,232 @@ enum COMMANDS {
     PAUSE = 2,
     RESET = 3,
 
+    // Link, the negotiated ATT MTU follows as u16 in the same write
+    LINK_MTU = 4,
+
+    // Backfill, the first sequence number (u16) and the frame count (u8)
+    // follow in the same write
+    BACKFILL_RR = 5,
+    BACKFILL_SIGNAL = 6,
+
     // Monitoring
     DUMP_RMSSD = 10,
     DUMP_SDANN = 11,
     DUMP_HTI = 12,
+    DUMP_RR_HISTOGRAM = 13,
+    DUMP_BPM_HISTOGRAM = 14,
 };
 
 int lastSigTimestamp = 0;
 const int sigDeltaT = 50;
 
+uint8_t liveRRFrame[LIVE_RR_FRAME_SIZE] = {};
+uint16_t liveRRSeq = 0;
+unsigned long rrTimestamp = 0;
+
+// Backfill: the last frames of each stream are kept, so the application can
+// ask for the ones it missed while disconnected. Frames are found by
+// sequence number, the ring sizes divide 2^16 so the slots survive its wrap.
+#define RR_RING_FRAMES (256)                // Minutes of beats
+uint8_t rrRing[RR_RING_FRAMES][LIVE_RR_FRAME_SIZE];
+uint16_t rrRingCount = 0;
+
+#ifdef PACKED_LIVE_SIGNAL
+uint8_t liveSignalFrame[LIVE_SIGNAL_MAX_FRAME_SIZE] = {};
+uint16_t liveSignalSeq = 0;
+uint8_t liveSignalCount = 0;
+// Samples per frame, as many as the MTU the application announced allows
+uint8_t liveSignalFrameSamples = LIVE_SIGNAL_SAMPLES_FOR_MTU(DEFAULT_ATT_MTU);
+
+// Samples of the last frames, and where each frame starts in them
+#define LIVE_SIGNAL_RING_FRAMES (1024)
+#define LIVE_SIGNAL_RING_SAMPLES (8192)     // About 33 s at 250Hz
+struct LiveSignalFrameRecord {
+    uint32_t firstSample;
+    uint32_t timestamp;
+    uint8_t count;
+};
+LiveSignalFrameRecord liveSignalRing[LIVE_SIGNAL_RING_FRAMES];
+int16_t liveSignalRingSamples[LIVE_SIGNAL_RING_SAMPLES];
+uint32_t liveSignalSampleCount = 0;
+uint16_t liveSignalRingCount = 0;
+uint32_t liveSignalFrameTimestamp = 0;
+
+void setLiveSignalMtu(int mtu) {
+    mtu = constrain(mtu, DEFAULT_ATT_MTU, MAX_ATT_MTU);
+    liveSignalFrameSamples = LIVE_SIGNAL_SAMPLES_FOR_MTU(mtu);
+}
+
+void resetLiveSignalFrame() {
+    liveSignalCount = 0;
+}
+
+void appendLiveSignalSample(int ecgReading) {
+    if (liveSignalCount == 0) {
+        unsigned long now = millis();
+        liveSignalFrameTimestamp = now;
+        liveSignalFrame[0] = liveSignalSeq & 0xFF;
+        liveSignalFrame[1] = (liveSignalSeq >> 8) & 0xFF;
+        liveSignalFrame[2] = now & 0xFF;
+        liveSignalFrame[3] = (now >> 8) & 0xFF;
+        liveSignalFrame[4] = (now >> 16) & 0xFF;
+        liveSignalFrame[5] = (now >> 24) & 0xFF;
+        liveSignalFrame[6] = LIVE_SIGNAL_SAMPLE_PERIOD;
+    }
+
+    int pos = LIVE_SIGNAL_HEADER_SIZE + 2 * liveSignalCount;
+    liveSignalFrame[pos] = ecgReading & 0xFF;
+    liveSignalFrame[pos + 1] = (ecgReading >> 8) & 0xFF;
+    liveSignalCount++;
+    liveSignalRingSamples[liveSignalSampleCount % LIVE_SIGNAL_RING_SAMPLES] = ecgReading;
+    liveSignalSampleCount++;
+
+    if (liveSignalCount >= liveSignalFrameSamples) {
+        liveSignalFrame[7] = liveSignalCount;
+        LiveSignalFrameRecord& record = liveSignalRing[liveSignalSeq % LIVE_SIGNAL_RING_FRAMES];
+        record.firstSample = liveSignalSampleCount - liveSignalCount;
+        record.timestamp = liveSignalFrameTimestamp;
+        record.count = liveSignalCount;
+        if (liveSignalRingCount < LIVE_SIGNAL_RING_FRAMES) {
+            liveSignalRingCount++;
+        }
+        // Frames are numbered while disconnected too, so the application
+        // sees how many it missed
+        if (g_isConnected) {
+            hrvLiveSignalCharacteristic.writeValue(liveSignalFrame, LIVE_SIGNAL_HEADER_SIZE + 2 * liveSignalCount);
+        }
+        liveSignalSeq++;
+        liveSignalCount = 0;
+    }
+}
+
+/**
+ * @brief Rebuild the frame of the given sequence number from the ring.
+ * @return The frame size, 0 if the ring no longer holds all of it.
+ */
+int keptLiveSignalFrame(uint16_t seq, uint8_t* frame) {
+    uint16_t age = liveSignalSeq - seq;
+    if (age == 0 || age > liveSignalRingCount) {
+        return 0;
+    }
+    const LiveSignalFrameRecord& record = liveSignalRing[seq % LIVE_SIGNAL_RING_FRAMES];
+    if (liveSignalSampleCount - record.firstSample > LIVE_SIGNAL_RING_SAMPLES) {
+        return 0;
+    }
+
+    frame[0] = seq & 0xFF;
+    frame[1] = (seq >> 8) & 0xFF;
+    frame[2] = record.timestamp & 0xFF;
+    frame[3] = (record.timestamp >> 8) & 0xFF;
+    frame[4] = (record.timestamp >> 16) & 0xFF;
+    frame[5] = (record.timestamp >> 24) & 0xFF;
+    frame[6] = LIVE_SIGNAL_SAMPLE_PERIOD;
+    frame[7] = record.count;
+    for (int i = 0; i < record.count; ++i) {
+        int16_t sample = liveSignalRingSamples[(record.firstSample + i) % LIVE_SIGNAL_RING_SAMPLES];
+        frame[LIVE_SIGNAL_HEADER_SIZE + 2 * i] = sample & 0xFF;
+        frame[LIVE_SIGNAL_HEADER_SIZE + 2 * i + 1] = (sample >> 8) & 0xFF;
+    }
+    return LIVE_SIGNAL_HEADER_SIZE + 2 * record.count;
+}
+#endif  // PACKED_LIVE_SIGNAL
+
+// Backfill in progress. One notification is sent per loop() pass, so
+// sampling and beat detection keep their timing while it is sent.
+struct BackfillState {
+    int action;                             // STANDBY while idle
+    uint16_t next;
+    uint8_t remaining;
+    uint16_t sent;
+};
+BackfillState backfill = { STANDBY, 0, 0, 0 };
+
+/**
+ * @brief Close a backfill response with the number of frames sent.
+ */
+void writeBackfillEnd(uint16_t sent) {
+    uint8_t end[2] = { (uint8_t)(sent & 0xFF), (uint8_t)((sent >> 8) & 0xFF) };
+    hrvResponseCharacteristic.writeValue(end, sizeof(end));
+}
+
+/**
+ * @brief Start sending the kept frames of a stream from first on.
+ */
+void startBackfill(int action, uint16_t first, uint8_t count) {
+    if (backfill.action != STANDBY) {
+        // A new request closes the one still being sent
+        writeBackfillEnd(backfill.sent);
+    }
+    backfill.action = action;
+    backfill.next = first;
+    backfill.remaining = count;
+    backfill.sent = 0;
+}
+
+/**
+ * @brief Send the next kept RR frames, as many as the MTU allows in one
+ * notification.
+ */
+void backfillRR() {
+    uint8_t response[RESPONSE_MAX_SIZE];
+    int perNotification = (g_attMtu - ATT_HEADER_SIZE) / LIVE_RR_FRAME_SIZE;
+    int length = 0;
+    while (backfill.remaining > 0 && length < perNotification * LIVE_RR_FRAME_SIZE) {
+        uint16_t seq = backfill.next++;
+        backfill.remaining--;
+        uint16_t age = liveRRSeq - seq;
+        if (age == 0 || age > rrRingCount) {
+            continue;
+        }
+        memcpy(response + length, rrRing[seq % RR_RING_FRAMES], LIVE_RR_FRAME_SIZE);
+        length += LIVE_RR_FRAME_SIZE;
+        backfill.sent++;
+    }
+    if (length > 0) {
+        hrvResponseCharacteristic.writeValue(response, length);
+    }
+}
+
+/**
+ * @brief Send the next kept signal frame, one per notification.
+ */
+void backfillSignal() {
+#ifdef PACKED_LIVE_SIGNAL
+    uint8_t frame[LIVE_SIGNAL_MAX_FRAME_SIZE];
+    while (backfill.remaining > 0) {
+        int length = keptLiveSignalFrame(backfill.next++, frame);
+        backfill.remaining--;
+        // Frames of a larger MTU than the current one are skipped
+        if (length == 0 || length > g_attMtu - ATT_HEADER_SIZE) {
+            continue;
+        }
+        hrvResponseCharacteristic.writeValue(frame, length);
+        backfill.sent++;
+        return;
+    }
+#else  // !PACKED_LIVE_SIGNAL
+    backfill.remaining = 0;
+#endif  // PACKED_LIVE_SIGNAL
+}
+
+/**
+ * @brief Send the next notification of the backfill in progress, or close
+ * it once all frames were sent.
+ */
+void continueBackfill() {
+    if (backfill.action == STANDBY) {
+        return;
+    }
+    if (backfill.remaining == 0) {
+        writeBackfillEnd(backfill.sent);
+        backfill.action = STANDBY;
+    } else if (backfill.action == BACKFILL_RR) {
+        backfillRR();
+    } else {
+        backfillSignal();
+    }
+}
+
 ///////////////////////////////////////////////////////////////////////////////
 ////////////////////////////////// ANALYSIS ///////////////////////////////////
 ///////////////////////////////////////////////////////////////////////////////
@@ -215,7 +455,7 @@ void dumpRMSSD() {
         }
     }
 
-    hrvResponseCharacteristic.writeValue(rmssd);
+    hrvResponseCharacteristic.writeValue((uint8_t*)&rmssd, sizeof(rmssd));
 }
 
 void dumpSDANN() {
@@ -236,7 +476,7 @@ void dumpSDANN() {
         sdann = sqrt(sdann / annIndex);
     }
 
-    hrvResponseCharacteristic.writeValue(sdann);
+    hrvResponseCharacteristic.writeValue((uint8_t*)&sdann, sizeof(sdann));
     SERIAL_PRINT("sdann: ");
     SERIAL_PRINTLN(sdann);
 }
@@ -259,18 +499,110 @@ void dumpHTI() {
         }
     }
 
-    hrvResponseCharacteristic.writeValue(hti);
+    hrvResponseCharacteristic.writeValue((uint8_t*)&hti, sizeof(hti));
     SERIAL_PRINT("hti: ");
     SERIAL_PRINTLN(hti);
 }
 
+// Histogram transfer (little endian):
+// chunk   := index u8 | runs...        index counts the chunks, modulo 128
+// trailer := 0x80 + chunks modulo 128 u8 | bins u16 | crc32 u32
+// run     := zeros varint | count varint, one for every non-empty bin
+// The CRC-32 covers the runs of all chunks. Most bins are empty, so a
+// histogram takes a few notifications instead of one per bin.
+#define HISTOGRAM_CHUNK_LAST (0x80)
+
+struct HistogramChunker {
+    uint8_t buffer[RESPONSE_MAX_SIZE];
+    int length;
+    int capacity;
+    uint8_t index;
+    uint32_t crc;
+};
+
+void histogramChunkerFlush(HistogramChunker& chunker) {
+    if (chunker.length <= 1) {
+        return;
+    }
+    chunker.buffer[0] = chunker.index & 0x7F;
+    hrvResponseCharacteristic.writeValue(chunker.buffer, chunker.length);
+    chunker.index++;
+    chunker.length = 1;
+}
+
+void histogramChunkerPut(HistogramChunker& chunker, uint8_t b) {
+    chunker.crc ^= b;
+    for (int i = 0; i < 8; ++i) {
+        chunker.crc = (chunker.crc >> 1) ^ (0xEDB88320 & -(chunker.crc & 1));
+    }
+    chunker.buffer[chunker.length++] = b;
+    if (chunker.length == chunker.capacity) {
+        histogramChunkerFlush(chunker);
+    }
+}
+
+void histogramChunkerPutVarint(HistogramChunker& chunker, uint32_t value) {
+    while (value >= 0x80) {
+        histogramChunkerPut(chunker, (value & 0x7F) | 0x80);
+        value >>= 7;
+    }
+    histogramChunkerPut(chunker, value);
+}
+
+/**
+ * @brief Send a histogram as run length encoded chunks, closed by a trailer
+ * to check it against.
+ */
+void dumpHistogram(const unsigned int* histogram, int bins) {
+    HistogramChunker chunker;
+    chunker.length = 1;
+    chunker.capacity = g_attMtu - ATT_HEADER_SIZE;
+    chunker.index = 0;
+    chunker.crc = 0xFFFFFFFF;
+
+    uint32_t zeros = 0;
+    for (int i = 0; i < bins; ++i) {
+        if (histogram[i] == 0) {
+            zeros++;
+            continue;
+        }
+        histogramChunkerPutVarint(chunker, zeros);
+        histogramChunkerPutVarint(chunker, histogram[i]);
+        zeros = 0;
+    }
+    histogramChunkerFlush(chunker);
+
+    uint32_t crc = ~chunker.crc;
+    uint8_t trailer[7] = {
+        (uint8_t)(HISTOGRAM_CHUNK_LAST | (chunker.index & 0x7F)),
+        (uint8_t)(bins & 0xFF), (uint8_t)((bins >> 8) & 0xFF),
+        (uint8_t)(crc & 0xFF), (uint8_t)((crc >> 8) & 0xFF),
+        (uint8_t)((crc >> 16) & 0xFF), (uint8_t)((crc >> 24) & 0xFF)
+    };
+    hrvResponseCharacteristic.writeValue(trailer, sizeof(trailer));
+}
+
 void updateRRHistogram(unsigned long rrInterval) {
     rrIntervalsHistogram[rrInterval]++;
 
+    liveRRFrame[0] = liveRRSeq & 0xFF;
+    liveRRFrame[1] = (liveRRSeq >> 8) & 0xFF;
+    liveRRFrame[2] = rrInterval & 0xFF;
+    liveRRFrame[3] = (rrInterval >> 8) & 0xFF;
+    liveRRFrame[4] = rrTimestamp & 0xFF;
+    liveRRFrame[5] = (rrTimestamp >> 8) & 0xFF;
+    liveRRFrame[6] = (rrTimestamp >> 16) & 0xFF;
+    liveRRFrame[7] = (rrTimestamp >> 24) & 0xFF;
+    memcpy(rrRing[liveRRSeq % RR_RING_FRAMES], liveRRFrame, LIVE_RR_FRAME_SIZE);
+    if (rrRingCount < RR_RING_FRAMES) {
+        rrRingCount++;
+    }
+
     // We might've started running and then disconnected from the central
     if (g_isConnected) {
-        hrvLiveRRCharacteristic.writeValue(rrInterval);
+        hrvLiveRRCharacteristic.writeValue(liveRRFrame, LIVE_RR_FRAME_SIZE);
     }
+    liveRRSeq++;
 }
 
 void updateBPMHistogram(unsigned long rrInterval) {
@@ -356,12 +688,16 @@ void calibrateThresholds() {
 }
 
 void dispatchCommand() {
-    int action = hrvCommandCharacteristic.value();
-    if (action == prevAction) {
+    // Handle every write once, so the application can repeat or retry a
+    // command without it being ignored.
+    if (!hrvCommandCharacteristic.written()) {
         return;
     }
 
-    prevAction = action;
+    // Only the first byte is the command, the others hold its argument or
+    // are left over from a longer write
+    int value = hrvCommandCharacteristic.value();
+    int action = value & 0xFF;
     SERIAL_PRINT("Received command: ");
 
     switch (action) {
@@ -375,6 +711,9 @@ void dispatchCommand() {
             calibrateThresholds();
             g_running = true;
             lastSigTimestamp = millis();
+#ifdef PACKED_LIVE_SIGNAL
+            resetLiveSignalFrame();
+#endif  // PACKED_LIVE_SIGNAL
             SET_LED_GREEN();
             break;
         case PAUSE:
@@ -386,6 +725,25 @@ void dispatchCommand() {
             SERIAL_PRINTLN("RESET");
             resetAll();
             break;
+        case LINK_MTU:
+            SERIAL_PRINT("LINK_MTU ");
+            SERIAL_PRINTLN((value >> 8) & 0xFFFF);
+            if (hrvCommandCharacteristic.valueLength() >= 3) {
+                g_attMtu = constrain((value >> 8) & 0xFFFF, DEFAULT_ATT_MTU, MAX_ATT_MTU);
+#ifdef PACKED_LIVE_SIGNAL
+                setLiveSignalMtu(g_attMtu);
+#endif  // PACKED_LIVE_SIGNAL
+            }
+            break;
+        case BACKFILL_RR:
+        case BACKFILL_SIGNAL:
+            SERIAL_PRINTLN(action == BACKFILL_RR ? "BACKFILL_RR" : "BACKFILL_SIGNAL");
+            if (hrvCommandCharacteristic.valueLength() >= 4) {
+                uint16_t first = (value >> 8) & 0xFFFF;
+                uint8_t count = (value >> 24) & 0xFF;
+                startBackfill(action, first, count);
+            }
+            break;
         case DUMP_RMSSD:
             SERIAL_PRINTLN("DUMP_RMSSD");
             dumpRMSSD();
@@ -398,6 +756,14 @@ void dispatchCommand() {
             SERIAL_PRINTLN("DUMP_HTI");
             dumpHTI();
             break;
+        case DUMP_RR_HISTOGRAM:
+            SERIAL_PRINTLN("DUMP_RR_HISTOGRAM");
+            dumpHistogram(rrIntervalsHistogram, RR_HIST_NUM_BINS + 1);
+            break;
+        case DUMP_BPM_HISTOGRAM:
+            SERIAL_PRINTLN("DUMP_BPM_HISTOGRAM");
+            dumpHistogram(bpmHistogram, BPM_HIST_NUM_BINS + 1);
+            break;
         default:
             SERIAL_PRINT("Unknown command : ");
             SERIAL_PRINTLN(action);
@@ -488,6 +854,8 @@ void setDisconnectedLed() {
         SET_LED_CYAN();
     }
 
+    // The application asks again once it reconnects
+    backfill.action = STANDBY;
     g_isConnected = false;
 }
 
@@ -510,6 +878,11 @@ void loop() {
                     SET_LED_YELLOW();
                 }
 
+                // A new link starts at the default MTU until the application announces another
+                g_attMtu = DEFAULT_ATT_MTU;
+#ifdef PACKED_LIVE_SIGNAL
+                setLiveSignalMtu(DEFAULT_ATT_MTU);
+#endif  // PACKED_LIVE_SIGNAL
                 g_isConnected = true;
                 g_loggedNoCentral = false;
                 g_loggedDisconnectedCentral = false;
@@ -524,6 +897,7 @@ void loop() {
 
     if (g_isConnected) {
         dispatchCommand();
+        continueBackfill();
     }
 
     if (!g_running) {
@@ -535,6 +909,24 @@ void loop() {
     SERIAL_PRINTLN(ecgReading);
 #endif // DEBUG_LIVE_SIGNAL
 
+#ifdef PACKED_LIVE_SIGNAL
+    // Every sample is framed, batched into frames of
+    // liveSignalFrameSamples samples per notification.
+    if (millis() - lastSigTimestamp >= LIVE_SIGNAL_SAMPLE_PERIOD) {
+        appendLiveSignalSample(ecgReading);
+        lastSigTimestamp = millis();
+    }
+#endif  // PACKED_LIVE_SIGNAL
+
+#ifdef PACKED_LIVE_SIGNAL
+    // Beats are framed while disconnected too, the application asks for the
+    // ones it missed once it reconnects
+    if (!sentBPM) {
+        updateRRHistogram(rrInterval);
+        updateBPMHistogram(rrInterval);
+        sentBPM = true;
+    }
+#else  // !PACKED_LIVE_SIGNAL
     // We might've started running and then disconnected from the central
     if (g_isConnected) {
         // Don't overwhelm the application. Only send a live signal reading
@@ -554,6 +946,7 @@ void loop() {
             sentBPM = true;
         }
     }
+#endif  // PACKED_LIVE_SIGNAL
 
     // Measure the ECG reading minus an offset to bring it into the same
     // range as the heart rate (i.e. around 60 to 100 bpm)
@@ -570,6 +963,7 @@ void loop() {
             // again
             secondPeakTime = millis();
             rrInterval = secondPeakTime - firstPeakTime;
+            rrTimestamp = secondPeakTime;
 
             // Probably noise
             if (rrInterval < MIN_RR_INTERVAL || rrInterval > MAX_RR_INTERVAL) {